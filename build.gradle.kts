@@ -5,6 +5,7 @@ plugins {
   id("org.hypertrace.publish-maven-central-plugin") version "1.1.2"
   id("org.hypertrace.ci-utils-plugin") version "0.4.0"
   id("org.gradle.test-retry") version "1.5.0" apply false
+  id("me.champeau.jmh") version "0.7.2" apply false
   id("org.owasp.dependencycheck") version "7.1.1"
 }
 
@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.ServiceLoader;
+import org.hypertrace.agent.core.config.EnvironmentProperties;
 import org.hypertrace.agent.filter.api.Filter;
 import org.hypertrace.agent.filter.spi.FilterProvider;
 import org.hypertrace.agent.filter.spi.FilterProviderConfig;
@@ -33,6 +34,10 @@ import org.slf4j.LoggerFactory;
  * Provides access to the {@link Filter} implementations. The {@link Filter} implementation are
  * created via Java service loader.
  *
+ * <p>Multiple filters are evaluated in sequence on the request thread. With {@code
+ * ht.filter.parallel.enabled} they are evaluated concurrently and the evaluation fails open after
+ * {@code ht.filter.parallel.timeout.ms}, see {@link ParallelMultiFilter}.
+ *
  * @see Filter
  * @see FilterProvider
  */
@@ -47,7 +52,7 @@ public class FilterRegistry {
   /**
    * Get {@link Filter}
    *
-   * @return the filter evaluator.
+   * @return the filter evaluator, {@link NoopFilter#INSTANCE} if no filter is registered.
    */
   public static Filter getFilter() {
     if (filter == null) {
@@ -62,6 +67,7 @@ public class FilterRegistry {
                     Thread.currentThread().getContextClassLoader());
           } catch (Throwable t) {
             logger.error("Throwable thrown while loading filter jars", t);
+            filter = NoopFilter.INSTANCE;
           }
         }
       }
@@ -82,6 +88,7 @@ public class FilterRegistry {
       filter = load(providerConfig, jarPaths, cl);
     } catch (Throwable t) {
       logger.error("Throwable thrown while loading filter jars", t);
+      filter = NoopFilter.INSTANCE;
     }
   }
 
@@ -103,6 +110,17 @@ public class FilterRegistry {
         filters.add(filter);
       }
     }
+    if (filters.isEmpty()) {
+      return NoopFilter.INSTANCE;
+    }
+    if (filters.size() > 1
+        && EnvironmentProperties.getBoolean("ht.filter.parallel.enabled", false)) {
+      return new ParallelMultiFilter(
+          filters,
+          EnvironmentProperties.getInt("ht.filter.parallel.threads", 2 * filters.size()),
+          EnvironmentProperties.getInt("ht.filter.parallel.queue.size", 1024),
+          EnvironmentProperties.getInt("ht.filter.parallel.timeout.ms", 50));
+    }
     return new MultiFilter(filters);
   }
 
@@ -126,6 +144,6 @@ public class FilterRegistry {
   }
 
   public static String getProperty(String name) {
-    return System.getProperty(name, System.getenv(name.replaceAll("\\.", "_").toUpperCase()));
+    return EnvironmentProperties.getProperty(name);
   }
 }
@@ -17,9 +17,14 @@
 package org.hypertrace.agent.filter;
 
 import io.opentelemetry.api.trace.Span;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import org.hypertrace.agent.core.filter.FilterResult;
+import org.hypertrace.agent.core.filter.RequestBodyEvaluation;
 import org.hypertrace.agent.filter.api.Filter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,9 +34,26 @@ class MultiFilter implements Filter {
   private static final Logger logger = LoggerFactory.getLogger(MultiFilter.class);
 
   private final List<Filter> filters;
+  private final boolean evaluatesRequestHeaders;
+  private final boolean evaluatesRequestBody;
+  private final boolean evaluatesRequestBodyIncrementally;
 
   public MultiFilter(List<Filter> filters) {
     this.filters = filters;
+    boolean headers = false;
+    boolean body = false;
+    boolean incremental = true;
+    for (Filter filter : filters) {
+      headers |= filter.evaluatesRequestHeaders();
+      if (filter.evaluatesRequestBody()) {
+        body = true;
+        // the body is passed in chunks only if no filter needs it as a string
+        incremental &= filter.evaluatesRequestBodyIncrementally();
+      }
+    }
+    this.evaluatesRequestHeaders = headers;
+    this.evaluatesRequestBody = body;
+    this.evaluatesRequestBodyIncrementally = body && incremental;
   }
 
   @Override
@@ -49,7 +71,7 @@ class MultiFilter implements Filter {
             t);
       }
     }
-    return new FilterResult(false, 0, "");
+    return FilterResult.ALLOW;
   }
 
   @Override
@@ -67,6 +89,81 @@ class MultiFilter implements Filter {
             t);
       }
     }
-    return new FilterResult(false, 0, "");
+    return FilterResult.ALLOW;
+  }
+
+  @Override
+  public boolean evaluatesRequestHeaders() {
+    return evaluatesRequestHeaders;
+  }
+
+  @Override
+  public boolean evaluatesRequestBody() {
+    return evaluatesRequestBody;
+  }
+
+  @Override
+  public boolean evaluatesRequestBodyIncrementally() {
+    return evaluatesRequestBodyIncrementally;
+  }
+
+  @Override
+  public RequestBodyEvaluation startRequestBodyEvaluation(Span span, Map<String, String> headers) {
+    List<RequestBodyEvaluation> evaluations = new ArrayList<>(filters.size());
+    for (Filter filter : filters) {
+      if (filter.evaluatesRequestBody()) {
+        try {
+          evaluations.add(filter.startRequestBodyEvaluation(span, headers));
+        } catch (Throwable t) {
+          logger.warn(
+              "Throwable thrown while starting Request body evaluation for filter {}",
+              filter.getClass().getName(),
+              t);
+        }
+      }
+    }
+    return new MultiRequestBodyEvaluation(evaluations);
+  }
+
+  private static class MultiRequestBodyEvaluation implements RequestBodyEvaluation {
+
+    private final List<RequestBodyEvaluation> evaluations;
+
+    MultiRequestBodyEvaluation(List<RequestBodyEvaluation> evaluations) {
+      this.evaluations = evaluations;
+    }
+
+    @Override
+    public FilterResult evaluateChunk(ByteBuffer chunk) {
+      // every evaluation reads the chunk from its start
+      return evaluate(evaluation -> evaluation.evaluateChunk(chunk.duplicate()));
+    }
+
+    @Override
+    public FilterResult evaluateChunk(CharBuffer chunk) {
+      return evaluate(evaluation -> evaluation.evaluateChunk(chunk.duplicate()));
+    }
+
+    @Override
+    public FilterResult evaluateEnd() {
+      return evaluate(RequestBodyEvaluation::evaluateEnd);
+    }
+
+    private FilterResult evaluate(Function<RequestBodyEvaluation, FilterResult> evaluate) {
+      for (RequestBodyEvaluation evaluation : evaluations) {
+        try {
+          FilterResult filterResult = evaluate.apply(evaluation);
+          if (filterResult.shouldBlock()) {
+            return filterResult;
+          }
+        } catch (Throwable t) {
+          logger.warn(
+              "Throwable thrown while evaluating Request body for evaluation {}",
+              evaluation.getClass().getName(),
+              t);
+        }
+      }
+      return FilterResult.ALLOW;
+    }
   }
 }
@@ -0,0 +1,53 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.filter;
+
+import io.opentelemetry.api.trace.Span;
+import java.util.Map;
+import org.hypertrace.agent.core.filter.FilterResult;
+import org.hypertrace.agent.filter.api.Filter;
+
+/**
+ * {@link Filter} used when no filter provider is registered. It never blocks and reports that it
+ * evaluates neither headers nor body, so instrumentations skip preparing data for it.
+ */
+public final class NoopFilter implements Filter {
+
+  public static final NoopFilter INSTANCE = new NoopFilter();
+
+  private NoopFilter() {}
+
+  @Override
+  public FilterResult evaluateRequestHeaders(Span span, Map<String, String> headers) {
+    return FilterResult.ALLOW;
+  }
+
+  @Override
+  public FilterResult evaluateRequestBody(Span span, String body, Map<String, String> headers) {
+    return FilterResult.ALLOW;
+  }
+
+  @Override
+  public boolean evaluatesRequestHeaders() {
+    return false;
+  }
+
+  @Override
+  public boolean evaluatesRequestBody() {
+    return false;
+  }
+}
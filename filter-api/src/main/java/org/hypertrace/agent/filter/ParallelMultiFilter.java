@@ -0,0 +1,198 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.filter;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Context;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hypertrace.agent.core.filter.FilterResult;
+import org.hypertrace.agent.filter.api.Filter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link MultiFilter} that evaluates the filters concurrently on a dedicated executor.
+ *
+ * <p>The first blocking result is returned. Filters that did not complete within the timeout are
+ * ignored i.e. the evaluation fails open. Filters that cannot be queued because the executor is
+ * saturated are skipped as well and counted in the {@code hypertrace.filter.rejected} counter. The
+ * filters are evaluated in the {@link Context} of the calling thread. The duration of every filter
+ * evaluation is recorded in the {@code hypertrace.filter.duration} histogram.
+ *
+ * <p>Incremental request body evaluation is inherited from {@link MultiFilter}: the chunks are
+ * evaluated sequentially on the calling thread, without the timeout and without being recorded in
+ * the histogram.
+ */
+class ParallelMultiFilter extends MultiFilter {
+
+  private static final Logger logger = LoggerFactory.getLogger(ParallelMultiFilter.class);
+
+  private static final AttributeKey<String> FILTER_KEY = AttributeKey.stringKey("filter");
+  private static final AttributeKey<String> PHASE_KEY = AttributeKey.stringKey("phase");
+
+  private final List<Filter> filters;
+  private final long timeoutNanos;
+  private final ThreadPoolExecutor executor;
+  private final DoubleHistogram duration;
+  private final LongCounter rejected;
+  private final Attributes[] headersAttributes;
+  private final Attributes[] bodyAttributes;
+
+  ParallelMultiFilter(List<Filter> filters, int threads, int queueSize, long timeoutMillis) {
+    super(filters);
+    this.filters = filters;
+    this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    this.executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize),
+            new DaemonThreadFactory(),
+            // never evaluate on the request thread, it would not be bound by the timeout
+            new ThreadPoolExecutor.AbortPolicy());
+    Meter meter = GlobalOpenTelemetry.getMeter("org.hypertrace.agent.filter");
+    this.duration =
+        meter
+            .histogramBuilder("hypertrace.filter.duration")
+            .setDescription("Duration of request evaluation by a filter")
+            .setUnit("ms")
+            .build();
+    this.rejected =
+        meter
+            .counterBuilder("hypertrace.filter.rejected")
+            .setDescription("Filter evaluations skipped because the filter executor is saturated")
+            .build();
+    this.headersAttributes = new Attributes[filters.size()];
+    this.bodyAttributes = new Attributes[filters.size()];
+    for (int i = 0; i < filters.size(); i++) {
+      String filterName = filters.get(i).getClass().getName();
+      headersAttributes[i] = Attributes.of(FILTER_KEY, filterName, PHASE_KEY, "headers");
+      bodyAttributes[i] = Attributes.of(FILTER_KEY, filterName, PHASE_KEY, "body");
+    }
+  }
+
+  @Override
+  public FilterResult evaluateRequestHeaders(Span span, Map<String, String> headers) {
+    return evaluate(false, filter -> filter.evaluateRequestHeaders(span, headers));
+  }
+
+  @Override
+  public FilterResult evaluateRequestBody(Span span, String body, Map<String, String> headers) {
+    return evaluate(true, filter -> filter.evaluateRequestBody(span, body, headers));
+  }
+
+  private FilterResult evaluate(boolean body, Evaluation evaluation) {
+    CompletionService<FilterResult> completionService = new ExecutorCompletionService<>(executor);
+    List<Future<FilterResult>> futures = new ArrayList<>(filters.size());
+    // the filters see the context of the request e.g. the current span and baggage
+    Context context = Context.current();
+    long deadline = System.nanoTime() + timeoutNanos;
+    for (int i = 0; i < filters.size(); i++) {
+      Filter filter = filters.get(i);
+      if (body ? !filter.evaluatesRequestBody() : !filter.evaluatesRequestHeaders()) {
+        continue;
+      }
+      Attributes attributes = body ? bodyAttributes[i] : headersAttributes[i];
+      try {
+        futures.add(
+            completionService.submit(context.wrap(() -> timed(filter, evaluation, attributes))));
+      } catch (RejectedExecutionException e) {
+        // fail open for this filter
+        rejected.add(1, attributes);
+        logger.debug(
+            "Filter executor is saturated, skipping filter {}", filter.getClass().getName());
+      }
+    }
+
+    try {
+      for (int i = 0; i < futures.size(); i++) {
+        Future<FilterResult> future =
+            completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        if (future == null) {
+          logger.debug(
+              "Filter evaluation timed out, {} filters did not complete", futures.size() - i);
+          break;
+        }
+        FilterResult filterResult = future.get();
+        if (filterResult.shouldBlock()) {
+          return filterResult;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      // timed(...) does not throw
+      logger.warn("Throwable thrown while evaluating request", e.getCause());
+    } finally {
+      // the filters that are already running complete in the background
+      for (Future<FilterResult> future : futures) {
+        future.cancel(false);
+      }
+    }
+    return FilterResult.ALLOW;
+  }
+
+  private FilterResult timed(Filter filter, Evaluation evaluation, Attributes attributes) {
+    long start = System.nanoTime();
+    try {
+      return evaluation.evaluate(filter);
+    } catch (Throwable t) {
+      logger.warn(
+          "Throwable thrown while evaluating request for filter {}",
+          filter.getClass().getName(),
+          t);
+      return FilterResult.ALLOW;
+    } finally {
+      duration.record((System.nanoTime() - start) / 1_000_000.0, attributes);
+    }
+  }
+
+  private interface Evaluation {
+    FilterResult evaluate(Filter filter);
+  }
+
+  private static class DaemonThreadFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "hypertrace-filter-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
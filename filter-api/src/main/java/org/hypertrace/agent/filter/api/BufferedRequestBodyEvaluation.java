@@ -0,0 +1,117 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.filter.api;
+
+import io.opentelemetry.api.trace.Span;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.hypertrace.agent.core.config.InstrumentationConfig;
+import org.hypertrace.agent.core.filter.FilterResult;
+import org.hypertrace.agent.core.filter.RequestBodyEvaluation;
+
+/**
+ * Default {@link RequestBodyEvaluation} of a {@link Filter} that evaluates the request body only as
+ * a whole. The chunks are copied up to the maximum size and the body is passed to {@link
+ * Filter#evaluateRequestBody} when it is complete. Byte chunks are decoded as UTF-8.
+ */
+final class BufferedRequestBodyEvaluation implements RequestBodyEvaluation {
+
+  /** Evaluation of a filter that does not evaluate request bodies. */
+  static final RequestBodyEvaluation ALLOW =
+      new RequestBodyEvaluation() {
+        @Override
+        public FilterResult evaluateChunk(ByteBuffer chunk) {
+          return FilterResult.ALLOW;
+        }
+
+        @Override
+        public FilterResult evaluateChunk(CharBuffer chunk) {
+          return FilterResult.ALLOW;
+        }
+
+        @Override
+        public FilterResult evaluateEnd() {
+          return FilterResult.ALLOW;
+        }
+      };
+
+  private final Filter filter;
+  private final Span span;
+  private final Map<String, String> headers;
+  private final int maxSize;
+  private ByteArrayOutputStream bytes;
+  private StringBuilder chars;
+
+  BufferedRequestBodyEvaluation(Filter filter, Span span, Map<String, String> headers) {
+    this(filter, span, headers, maxBodySizeBytes());
+  }
+
+  BufferedRequestBodyEvaluation(
+      Filter filter, Span span, Map<String, String> headers, int maxSize) {
+    this.filter = filter;
+    this.span = span;
+    this.headers = headers;
+    this.maxSize = maxSize;
+  }
+
+  @Override
+  public FilterResult evaluateChunk(ByteBuffer chunk) {
+    if (bytes == null) {
+      bytes = new ByteArrayOutputStream();
+    }
+    int length = Math.min(chunk.remaining(), maxSize - bytes.size());
+    if (chunk.hasArray()) {
+      bytes.write(chunk.array(), chunk.arrayOffset() + chunk.position(), length);
+    } else {
+      for (int i = 0; i < length; i++) {
+        bytes.write(chunk.get(chunk.position() + i));
+      }
+    }
+    return FilterResult.ALLOW;
+  }
+
+  @Override
+  public FilterResult evaluateChunk(CharBuffer chunk) {
+    if (chars == null) {
+      chars = new StringBuilder();
+    }
+    int length = Math.min(chunk.remaining(), maxSize - chars.length());
+    chars.append(chunk, 0, length);
+    return FilterResult.ALLOW;
+  }
+
+  @Override
+  public FilterResult evaluateEnd() {
+    String body;
+    if (chars != null) {
+      body = chars.toString();
+    } else if (bytes != null) {
+      body = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    } else {
+      body = "";
+    }
+    return filter.evaluateRequestBody(span, body, headers);
+  }
+
+  private static int maxBodySizeBytes() {
+    InstrumentationConfig config = InstrumentationConfig.ConfigProvider.get();
+    return config != null ? config.maxBodySizeBytes() : Integer.MAX_VALUE;
+  }
+}
@@ -19,11 +19,20 @@ package org.hypertrace.agent.filter.api;
 import io.opentelemetry.api.trace.Span;
 import java.util.Map;
 import org.hypertrace.agent.core.filter.FilterResult;
+import org.hypertrace.agent.core.filter.RequestBodyEvaluation;
 import org.hypertrace.agent.filter.FilterRegistry;
 
 /**
  * {@link Filter} evaluates given request/RPC and the result is used to block further processing of
  * the request. The instrumentations access filters via {@link FilterRegistry}.
+ *
+ * <p>The request headers are usually passed as a {@link HeaderView} that copies them on first
+ * access.
+ *
+ * <p>A filter that can evaluate the request body in chunks as it is read returns true from {@link
+ * #evaluatesRequestBodyIncrementally()}. Instrumentations that support it then call {@link
+ * #startRequestBodyEvaluation} for each request instead of {@link #evaluateRequestBody}, so the
+ * request can be blocked before the whole body is read.
  */
 public interface Filter {
 
@@ -44,4 +53,50 @@ public interface Filter {
    * @return filter result
    */
   FilterResult evaluateRequestBody(Span span, String body, Map<String, String> headers);
+
+  /**
+   * Returns false if {@link #evaluateRequestHeaders} never blocks. Instrumentations then skip
+   * collecting the headers for the filter and do not call it.
+   *
+   * @return whether the request headers are evaluated
+   */
+  default boolean evaluatesRequestHeaders() {
+    return true;
+  }
+
+  /**
+   * Returns false if {@link #evaluateRequestBody} never blocks. Instrumentations then skip
+   * calling it.
+   *
+   * @return whether the request body is evaluated
+   */
+  default boolean evaluatesRequestBody() {
+    return true;
+  }
+
+  /**
+   * Returns true if the request body can be evaluated by {@link #startRequestBodyEvaluation}.
+   *
+   * @return whether the request body is evaluated incrementally
+   */
+  default boolean evaluatesRequestBodyIncrementally() {
+    return false;
+  }
+
+  /**
+   * Starts incremental evaluation of a request body. Usually called only if {@link
+   * #evaluatesRequestBodyIncrementally()} returns true. By default the body is buffered and passed
+   * to {@link #evaluateRequestBody} when it is complete, or always allowed if {@link
+   * #evaluatesRequestBody()} returns false.
+   *
+   * @param span of the HTTP request associated with this body
+   * @param headers of the request associated with this body
+   * @return evaluation of the body chunks of this request
+   */
+  default RequestBodyEvaluation startRequestBodyEvaluation(Span span, Map<String, String> headers) {
+    if (!evaluatesRequestBody()) {
+      return BufferedRequestBodyEvaluation.ALLOW;
+    }
+    return new BufferedRequestBodyEvaluation(this, span, headers);
+  }
 }
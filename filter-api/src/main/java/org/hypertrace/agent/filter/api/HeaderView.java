@@ -0,0 +1,94 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.filter.api;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Unmodifiable view of request headers passed to {@link Filter}. It wraps the native header
+ * container of the instrumented library (e.g. servlet request, Netty {@code HttpHeaders}, gRPC
+ * {@code Metadata}) and copies the headers only when the view is accessed for the first time, so
+ * no map is built if no filter reads the headers.
+ *
+ * <p>The keys are lower case span attribute names e.g. {@code http.request.header.content-type},
+ * lookups ignore the case of the key. If a header has multiple values the last one added by {@link
+ * #collect(Map)} is kept. A view is thread-safe, filters evaluated in parallel may read it
+ * concurrently and the headers are copied only once.
+ */
+public abstract class HeaderView extends AbstractMap<String, String> {
+
+  private volatile Map<String, String> headers;
+
+  /**
+   * Adds all headers from the native container to the map.
+   *
+   * @param headers map to add the headers to, keyed by span attribute name
+   */
+  protected abstract void collect(Map<String, String> headers);
+
+  /** Returns true if the headers have been copied from the native container. */
+  public boolean isMaterialized() {
+    return headers != null;
+  }
+
+  @Override
+  public Set<Entry<String, String>> entrySet() {
+    return headers().entrySet();
+  }
+
+  @Override
+  public String get(Object key) {
+    Map<String, String> headers = headers();
+    String value = headers.get(key);
+    if (value == null && key instanceof String) {
+      value = headers.get(((String) key).toLowerCase());
+    }
+    return value;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    Map<String, String> headers = headers();
+    return headers.containsKey(key)
+        || (key instanceof String && headers.containsKey(((String) key).toLowerCase()));
+  }
+
+  @Override
+  public int size() {
+    return headers().size();
+  }
+
+  private Map<String, String> headers() {
+    Map<String, String> headers = this.headers;
+    if (headers == null) {
+      synchronized (this) {
+        headers = this.headers;
+        if (headers == null) {
+          Map<String, String> collected = new LinkedHashMap<>();
+          collect(collected);
+          headers = Collections.unmodifiableMap(collected);
+          this.headers = headers;
+        }
+      }
+    }
+    return headers;
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.filter;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import org.hypertrace.agent.core.filter.FilterResult;
+import org.hypertrace.agent.filter.api.Filter;
+import org.hypertrace.agent.filter.spi.FilterProviderConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class FilterRegistryTest {
+
+  @Test
+  public void noProviderLoadsNoopFilter() {
+    FilterRegistry.initialize(
+        new FilterProviderConfig(),
+        Collections.emptyList(),
+        new URLClassLoader(new URL[0], null));
+
+    Filter filter = FilterRegistry.getFilter();
+    Assertions.assertSame(NoopFilter.INSTANCE, filter);
+    Assertions.assertFalse(filter.evaluatesRequestHeaders());
+    Assertions.assertFalse(filter.evaluatesRequestBody());
+    Assertions.assertFalse(filter.evaluatesRequestBodyIncrementally());
+    Assertions.assertSame(
+        FilterResult.ALLOW, filter.evaluateRequestHeaders(null, Collections.emptyMap()));
+    Assertions.assertSame(
+        FilterResult.ALLOW, filter.evaluateRequestBody(null, "body", Collections.emptyMap()));
+  }
+}
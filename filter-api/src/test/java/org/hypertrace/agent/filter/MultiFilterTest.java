@@ -0,0 +1,100 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.filter;
+
+import io.opentelemetry.api.trace.Span;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import org.hypertrace.agent.core.filter.FilterResult;
+import org.hypertrace.agent.filter.api.Filter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MultiFilterTest {
+
+  @Test
+  public void allowedRequestReturnsSharedResult() {
+    MultiFilter filter =
+        new MultiFilter(Arrays.asList(new TestFilter(false, true), new TestFilter(true, false)));
+
+    Assertions.assertSame(
+        FilterResult.ALLOW, filter.evaluateRequestHeaders(null, Collections.emptyMap()));
+    Assertions.assertSame(
+        FilterResult.ALLOW, filter.evaluateRequestBody(null, "body", Collections.emptyMap()));
+  }
+
+  @Test
+  public void blockingResultIsReturned() {
+    TestFilter blocking = new TestFilter(true, true);
+    blocking.result = new FilterResult(true, 403, "blocked");
+    MultiFilter filter = new MultiFilter(Arrays.asList(new TestFilter(true, true), blocking));
+
+    Assertions.assertSame(
+        blocking.result, filter.evaluateRequestHeaders(null, Collections.emptyMap()));
+    Assertions.assertSame(
+        blocking.result, filter.evaluateRequestBody(null, "body", Collections.emptyMap()));
+  }
+
+  @Test
+  public void capabilitiesAreCombined() {
+    MultiFilter headersOnly =
+        new MultiFilter(Arrays.asList(new TestFilter(true, false), new TestFilter(false, false)));
+    Assertions.assertTrue(headersOnly.evaluatesRequestHeaders());
+    Assertions.assertFalse(headersOnly.evaluatesRequestBody());
+
+    MultiFilter bodyOnly =
+        new MultiFilter(Arrays.asList(new TestFilter(false, false), new TestFilter(false, true)));
+    Assertions.assertFalse(bodyOnly.evaluatesRequestHeaders());
+    Assertions.assertTrue(bodyOnly.evaluatesRequestBody());
+
+    MultiFilter none = new MultiFilter(Collections.emptyList());
+    Assertions.assertFalse(none.evaluatesRequestHeaders());
+    Assertions.assertFalse(none.evaluatesRequestBody());
+  }
+
+  static class TestFilter implements Filter {
+    private final boolean headers;
+    private final boolean body;
+    FilterResult result = FilterResult.ALLOW;
+
+    TestFilter(boolean headers, boolean body) {
+      this.headers = headers;
+      this.body = body;
+    }
+
+    @Override
+    public FilterResult evaluateRequestHeaders(Span span, Map<String, String> headers) {
+      return result;
+    }
+
+    @Override
+    public FilterResult evaluateRequestBody(Span span, String body, Map<String, String> headers) {
+      return result;
+    }
+
+    @Override
+    public boolean evaluatesRequestHeaders() {
+      return headers;
+    }
+
+    @Override
+    public boolean evaluatesRequestBody() {
+      return body;
+    }
+  }
+}
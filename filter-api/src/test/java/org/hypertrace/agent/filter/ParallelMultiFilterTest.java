@@ -0,0 +1,156 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.filter;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.ContextKey;
+import io.opentelemetry.context.Scope;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.hypertrace.agent.core.filter.FilterResult;
+import org.hypertrace.agent.filter.api.Filter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ParallelMultiFilterTest {
+
+  private static final FilterResult BLOCK = new FilterResult(true, 403, "blocked");
+  private static final ContextKey<String> REQUEST_KEY = ContextKey.named("request");
+
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @AfterEach
+  public void releaseFilters() {
+    release.countDown();
+  }
+
+  @Test
+  public void firstBlockingResultShortCircuits() {
+    ParallelMultiFilter filter =
+        new ParallelMultiFilter(
+            // the slow filter of the first evaluation still occupies a thread in the second one
+            Arrays.asList(filter(this::awaitRelease), filter(() -> BLOCK)), 4, 16, 10_000);
+
+    long start = System.nanoTime();
+    Assertions.assertSame(BLOCK, filter.evaluateRequestHeaders(null, Collections.emptyMap()));
+    Assertions.assertSame(
+        BLOCK, filter.evaluateRequestBody(null, "body", Collections.emptyMap()));
+    // the slow filter is not waited for
+    Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+  }
+
+  @Test
+  public void timeoutFailsOpen() {
+    ParallelMultiFilter filter =
+        new ParallelMultiFilter(
+            Arrays.asList(filter(() -> FilterResult.ALLOW), filter(this::awaitRelease)), 2, 16, 50);
+
+    long start = System.nanoTime();
+    Assertions.assertSame(
+        FilterResult.ALLOW, filter.evaluateRequestHeaders(null, Collections.emptyMap()));
+    Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+  }
+
+  @Test
+  public void exceptionFailsOpen() {
+    ParallelMultiFilter filter =
+        new ParallelMultiFilter(
+            Arrays.asList(
+                filter(
+                    () -> {
+                      throw new IllegalStateException("filter failure");
+                    }),
+                filter(() -> FilterResult.ALLOW)),
+            2,
+            16,
+            10_000);
+
+    Assertions.assertSame(
+        FilterResult.ALLOW, filter.evaluateRequestHeaders(null, Collections.emptyMap()));
+    Assertions.assertSame(
+        FilterResult.ALLOW, filter.evaluateRequestBody(null, "body", Collections.emptyMap()));
+  }
+
+  @Test
+  public void contextIsPropagated() {
+    Supplier<FilterResult> blockInRequestContext =
+        () -> "request-1".equals(Context.current().get(REQUEST_KEY)) ? BLOCK : FilterResult.ALLOW;
+    ParallelMultiFilter filter =
+        new ParallelMultiFilter(
+            Arrays.asList(filter(blockInRequestContext), filter(blockInRequestContext)),
+            2,
+            16,
+            10_000);
+
+    Assertions.assertSame(
+        FilterResult.ALLOW, filter.evaluateRequestHeaders(null, Collections.emptyMap()));
+    Scope scope = Context.current().with(REQUEST_KEY, "request-1").makeCurrent();
+    try {
+      Assertions.assertSame(BLOCK, filter.evaluateRequestHeaders(null, Collections.emptyMap()));
+    } finally {
+      scope.close();
+    }
+  }
+
+  @Test
+  public void saturatedExecutorFailsOpen() {
+    // one filter runs, one is queued and the last one is rejected
+    ParallelMultiFilter filter =
+        new ParallelMultiFilter(
+            Arrays.asList(
+                filter(this::awaitRelease), filter(this::awaitRelease), filter(this::awaitRelease)),
+            1,
+            1,
+            50);
+
+    long start = System.nanoTime();
+    Assertions.assertSame(
+        FilterResult.ALLOW, filter.evaluateRequestHeaders(null, Collections.emptyMap()));
+    // the rejected filter is not evaluated on the calling thread
+    Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+  }
+
+  private FilterResult awaitRelease() {
+    try {
+      release.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return BLOCK;
+  }
+
+  private static Filter filter(Supplier<FilterResult> result) {
+    return new Filter() {
+      @Override
+      public FilterResult evaluateRequestHeaders(Span span, Map<String, String> headers) {
+        return result.get();
+      }
+
+      @Override
+      public FilterResult evaluateRequestBody(
+          Span span, String body, Map<String, String> headers) {
+        return result.get();
+      }
+    };
+  }
+}
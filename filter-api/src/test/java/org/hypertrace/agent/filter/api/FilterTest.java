@@ -0,0 +1,117 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.filter.api;
+
+import io.opentelemetry.api.trace.Span;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import org.hypertrace.agent.core.filter.FilterResult;
+import org.hypertrace.agent.core.filter.RequestBodyEvaluation;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class FilterTest {
+
+  private static final FilterResult BLOCK = new FilterResult(true, 403, "blocked");
+
+  @Test
+  public void defaultEvaluationPassesWholeBody() {
+    BodyFilter filter = new BodyFilter(true);
+    Map<String, String> headers = Collections.singletonMap("http.request.header.a", "b");
+    RequestBodyEvaluation evaluation = filter.startRequestBodyEvaluation(null, headers);
+
+    Assertions.assertSame(
+        FilterResult.ALLOW,
+        evaluation.evaluateChunk(ByteBuffer.wrap("block".getBytes(StandardCharsets.UTF_8))));
+    ByteBuffer direct = ByteBuffer.allocateDirect(5);
+    direct.put("=true".getBytes(StandardCharsets.UTF_8)).flip();
+    Assertions.assertSame(FilterResult.ALLOW, evaluation.evaluateChunk(direct.asReadOnlyBuffer()));
+    Assertions.assertNull(filter.body);
+
+    Assertions.assertSame(BLOCK, evaluation.evaluateEnd());
+    Assertions.assertEquals("block=true", filter.body);
+    Assertions.assertSame(headers, filter.headers);
+  }
+
+  @Test
+  public void defaultEvaluationPassesCharacters() {
+    BodyFilter filter = new BodyFilter(true);
+    RequestBodyEvaluation evaluation =
+        filter.startRequestBodyEvaluation(null, Collections.emptyMap());
+
+    CharBuffer chunk = CharBuffer.wrap("xblock=true");
+    chunk.position(1);
+    evaluation.evaluateChunk(chunk);
+
+    Assertions.assertSame(BLOCK, evaluation.evaluateEnd());
+    Assertions.assertEquals("block=true", filter.body);
+  }
+
+  @Test
+  public void defaultEvaluationAllowsIfBodyIsNotEvaluated() {
+    BodyFilter filter = new BodyFilter(false);
+    RequestBodyEvaluation evaluation =
+        filter.startRequestBodyEvaluation(null, Collections.emptyMap());
+
+    evaluation.evaluateChunk(CharBuffer.wrap("block=true"));
+    Assertions.assertSame(FilterResult.ALLOW, evaluation.evaluateEnd());
+    Assertions.assertNull(filter.body);
+  }
+
+  @Test
+  public void bufferedBodyIsTruncated() {
+    BodyFilter filter = new BodyFilter(true);
+    RequestBodyEvaluation evaluation =
+        new BufferedRequestBodyEvaluation(filter, null, Collections.emptyMap(), 5);
+
+    evaluation.evaluateChunk(ByteBuffer.wrap("blo".getBytes(StandardCharsets.UTF_8)));
+    evaluation.evaluateChunk(ByteBuffer.wrap("ck=true".getBytes(StandardCharsets.UTF_8)));
+
+    Assertions.assertSame(FilterResult.ALLOW, evaluation.evaluateEnd());
+    Assertions.assertEquals("block", filter.body);
+  }
+
+  static class BodyFilter implements Filter {
+    private final boolean evaluatesBody;
+    String body;
+    Map<String, String> headers;
+
+    BodyFilter(boolean evaluatesBody) {
+      this.evaluatesBody = evaluatesBody;
+    }
+
+    @Override
+    public FilterResult evaluateRequestHeaders(Span span, Map<String, String> headers) {
+      return FilterResult.ALLOW;
+    }
+
+    @Override
+    public FilterResult evaluateRequestBody(Span span, String body, Map<String, String> headers) {
+      this.body = body;
+      this.headers = headers;
+      return body.contains("block=true") ? BLOCK : FilterResult.ALLOW;
+    }
+
+    @Override
+    public boolean evaluatesRequestBody() {
+      return evaluatesBody;
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.filter.api;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class HeaderViewTest {
+
+  private static final String PREFIX = "http.request.header.";
+
+  @Test
+  public void lookupIgnoresCase() {
+    HeaderView view = view(new SimpleEntry<>("content-type", "application/json"));
+
+    Assertions.assertEquals("application/json", view.get(PREFIX + "content-type"));
+    Assertions.assertEquals("application/json", view.get(PREFIX + "Content-Type"));
+    Assertions.assertTrue(view.containsKey(PREFIX + "CONTENT-TYPE"));
+    Assertions.assertFalse(view.containsKey(PREFIX + "accept"));
+    Assertions.assertNull(view.get(PREFIX + "Accept"));
+  }
+
+  @Test
+  public void multiValueHeaderKeepsLastValue() {
+    HeaderView view =
+        view(
+            new SimpleEntry<>("accept", "text/plain"),
+            new SimpleEntry<>("x-forwarded-for", "10.0.0.1"),
+            new SimpleEntry<>("accept", "application/json"));
+
+    Assertions.assertEquals(2, view.size());
+    Assertions.assertEquals("application/json", view.get(PREFIX + "accept"));
+    Assertions.assertEquals("10.0.0.1", view.get(PREFIX + "x-forwarded-for"));
+  }
+
+  @Test
+  public void headersAreCopiedOnFirstAccess() {
+    AtomicInteger collected = new AtomicInteger();
+    HeaderView view =
+        new HeaderView() {
+          @Override
+          protected void collect(Map<String, String> headers) {
+            collected.incrementAndGet();
+            headers.put(PREFIX + "host", "localhost");
+          }
+        };
+    Assertions.assertFalse(view.isMaterialized());
+    Assertions.assertEquals(0, collected.get());
+
+    Assertions.assertEquals("localhost", view.get(PREFIX + "host"));
+    Assertions.assertEquals(1, view.size());
+    Assertions.assertTrue(view.isMaterialized());
+    Assertions.assertEquals(1, collected.get());
+    Assertions.assertThrows(UnsupportedOperationException.class, () -> view.put("a", "b"));
+  }
+
+  @Test
+  public void concurrentReadersCopyOnce() throws Exception {
+    AtomicInteger collected = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    HeaderView view =
+        new HeaderView() {
+          @Override
+          protected void collect(Map<String, String> headers) {
+            collected.incrementAndGet();
+            for (int i = 0; i < 100; i++) {
+              headers.put(PREFIX + "h" + i, String.valueOf(i));
+            }
+          }
+        };
+
+    int readers = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(readers);
+    try {
+      Future<?>[] futures = new Future<?>[readers];
+      for (int i = 0; i < readers; i++) {
+        futures[i] =
+            executor.submit(
+                () -> {
+                  start.await();
+                  Assertions.assertEquals(100, view.size());
+                  Assertions.assertEquals("99", view.get(PREFIX + "H99"));
+                  return null;
+                });
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    Assertions.assertEquals(1, collected.get());
+  }
+
+  @SafeVarargs
+  private static HeaderView view(Map.Entry<String, String>... nativeHeaders) {
+    return new HeaderView() {
+      @Override
+      protected void collect(Map<String, String> headers) {
+        for (Map.Entry<String, String> entry : nativeHeaders) {
+          headers.put(PREFIX + entry.getKey().toLowerCase(), entry.getValue());
+        }
+      }
+    };
+  }
+}
@@ -39,6 +39,7 @@ import net.bytebuddy.matcher.ElementMatcher;
 import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
 import org.apache.http.protocol.HttpContext;
+import org.hypertrace.agent.core.config.InstrumentationConfig;
 
 @AutoService(InstrumentationModule.class)
 public class ApacheAsyncClientInstrumentationModule extends InstrumentationModule {
@@ -56,6 +57,11 @@ public class ApacheAsyncClientInstrumentationModule extends InstrumentationModul
 
   @Override
   public List<TypeInstrumentation> typeInstrumentations() {
+    if (!InstrumentationConfig.ConfigProvider.isModuleEnabled(
+        ApacheAsyncHttpClientInstrumentationName.PRIMARY,
+        ApacheAsyncHttpClientInstrumentationName.OTHER)) {
+      return Collections.emptyList();
+    }
     return Collections.singletonList(new HttpAsyncClientInstrumentation());
   }
 
@@ -30,12 +30,14 @@ import io.opentelemetry.javaagent.extension.instrumentation.InstrumentationModul
 import io.opentelemetry.javaagent.extension.instrumentation.TypeInstrumentation;
 import io.opentelemetry.javaagent.extension.instrumentation.TypeTransformer;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
 import org.apache.http.HttpMessage;
 import org.apache.http.HttpResponse;
+import org.hypertrace.agent.core.config.InstrumentationConfig;
 import org.hypertrace.agent.core.instrumentation.HypertraceCallDepthThreadLocalMap;
 
 @AutoService(InstrumentationModule.class)
@@ -52,6 +54,10 @@ public class ApacheClientInstrumentationModule extends InstrumentationModule {
 
   @Override
   public List<TypeInstrumentation> typeInstrumentations() {
+    if (!InstrumentationConfig.ConfigProvider.isModuleEnabled(
+        ApacheHttpClientInstrumentationName.PRIMARY, ApacheHttpClientInstrumentationName.OTHER)) {
+      return Collections.emptyList();
+    }
     return Arrays.asList(new HttpEntityInstrumentation(), new ApacheClientInstrumentation());
   }
 
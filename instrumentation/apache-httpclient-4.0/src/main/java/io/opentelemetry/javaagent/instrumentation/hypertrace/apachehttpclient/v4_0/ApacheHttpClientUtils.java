@@ -19,26 +19,26 @@ package io.opentelemetry.javaagent.instrumentation.hypertrace.apachehttpclient.v
 import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.apachehttpclient.v4_0.ApacheHttpClientObjectRegistry.SpanAndAttributeKey;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
 import java.util.function.Function;
-import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
 import org.apache.http.Header;
 import org.apache.http.HeaderIterator;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpMessage;
+import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
+import org.hypertrace.agent.core.config.CaptureFlags;
 import org.hypertrace.agent.core.config.InstrumentationConfig;
 import org.hypertrace.agent.core.config.InstrumentationConfig.ConfigProvider;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
-import org.hypertrace.agent.core.instrumentation.utils.ContentTypeCharsetUtils;
+import org.hypertrace.agent.core.instrumentation.utils.ContentEncodingUtils;
+import org.hypertrace.agent.core.instrumentation.utils.ContentTypeInfo;
 import org.hypertrace.agent.core.instrumentation.utils.ContentTypeUtils;
 import org.hypertrace.agent.core.instrumentation.utils.ServiceNameHeaderUtils;
 import org.slf4j.Logger;
@@ -76,72 +76,93 @@ public class ApacheHttpClientUtils {
   }
 
   public static void traceRequest(Span span, HttpMessage request) {
-    if (instrumentationConfig.httpHeaders().request()) {
+    CapturePolicy.Decision capture = CapturePolicy.get().decide(span);
+    if (capture.captureHeaders()
+        && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_HEADERS_REQUEST)) {
       ApacheHttpClientUtils.addRequestHeaders(span, request.headerIterator());
     }
 
     // Add service name header to outgoing requests
     ApacheHttpClientUtils.addClientServiceNameHeader(request);
 
-    if (instrumentationConfig.httpBody().request()
+    if (capture.captureBodies()
+        && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_REQUEST)
         && request instanceof HttpEntityEnclosingRequest) {
       HttpEntityEnclosingRequest entityRequest = (HttpEntityEnclosingRequest) request;
       HttpEntity entity = entityRequest.getEntity();
       ApacheHttpClientUtils.traceEntity(
-          span, HypertraceSemanticAttributes.HTTP_REQUEST_BODY, entity);
+          span, HypertraceSemanticAttributes.HTTP_REQUEST_BODY, entity, endpoint(request));
     }
   }
 
+  /**
+   * Traces the response. The request is not at hand here, the response bodies of all endpoints
+   * share one capture budget.
+   */
   public static void traceResponse(Span span, HttpResponse response) {
-    if (instrumentationConfig.httpHeaders().response()) {
+    CapturePolicy.Decision capture = CapturePolicy.get().decide(span);
+    if (capture.captureHeaders()
+        && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_HEADERS_RESPONSE)) {
       ApacheHttpClientUtils.addResponseHeaders(span, response.headerIterator());
     }
 
-    if (instrumentationConfig.httpBody().response()) {
+    if (capture.captureBodies()
+        && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_RESPONSE)) {
       HttpEntity entity = response.getEntity();
       ApacheHttpClientUtils.traceEntity(
-          span, HypertraceSemanticAttributes.HTTP_RESPONSE_BODY, entity);
+          span, HypertraceSemanticAttributes.HTTP_RESPONSE_BODY, entity, null);
     }
   }
 
+  /**
+   * Traces the body of the entity, the endpoint budget is charged only if its content type is
+   * captured.
+   *
+   * @param endpoint request path with a configured budget, null uses the shared budget
+   */
   public static void traceEntity(
-      Span span, AttributeKey<String> bodyAttributeKey, HttpEntity entity) {
+      Span span, AttributeKey<String> bodyAttributeKey, HttpEntity entity, String endpoint) {
     if (entity == null) {
       return;
     }
 
     Header contentType = entity.getContentType();
-    if (contentType == null || !ContentTypeUtils.shouldCapture(contentType.getValue())) {
+    if (contentType == null) {
       return;
     }
-    String charsetStr = ContentTypeUtils.parseCharset(contentType.getValue());
-    Charset charset = ContentTypeCharsetUtils.toCharset(charsetStr);
-    // Get the content encoding header and check if it's gzip
+    ContentTypeInfo contentTypeInfo = ContentTypeUtils.getInfo(contentType.getValue());
+    if (!contentTypeInfo.shouldCapture()
+        || !CapturePolicy.get().tryCaptureBody(endpoint, entity.getContentLength())) {
+      return;
+    }
+    Charset charset = contentTypeInfo.getCharset();
+    // Get the content encoding header and check if it's gzip or deflate
     Header contentEncoding = entity.getContentEncoding();
-    boolean isGzipEncoded =
-        contentEncoding != null
-            && contentEncoding.getValue() != null
-            && contentEncoding.getValue().toLowerCase().contains("gzip");
+    String contentEncodingValue = contentEncoding == null ? null : contentEncoding.getValue();
     if (entity.isRepeatable()) {
+      BoundedByteArrayOutputStream byteArrayOutputStream =
+          BoundedBuffersFactory.createStream(charset);
       try {
-        BoundedByteArrayOutputStream byteArrayOutputStream =
-            BoundedBuffersFactory.createStream(charset);
         entity.writeTo(byteArrayOutputStream);
-        InputStream contentStream = new ByteArrayInputStream(byteArrayOutputStream.toByteArray());
-        if (isGzipEncoded) {
+        String body;
+        if (ContentEncodingUtils.isCompressed(contentEncodingValue)) {
           try {
-            contentStream = new GZIPInputStream(contentStream);
-          } catch (IOException e) {
-            log.error("Failed to create GZIPInputStream", e);
+            body =
+                ContentEncodingUtils.decode(
+                    byteArrayOutputStream.toByteArray(), contentEncodingValue, charset);
+          } catch (ZipException e) {
+            log.error("Failed to decompress the body", e);
             return;
           }
+        } else {
+          body = byteArrayOutputStream.toStringWithSuppliedCharset();
         }
-
-        String body = readInputStream(contentStream, charset);
         span.setAttribute(bodyAttributeKey, body);
 
       } catch (IOException e) {
         throw new RuntimeException(e);
+      } finally {
+        byteArrayOutputStream.release();
       }
       return;
     }
@@ -157,17 +178,23 @@ public class ApacheHttpClientUtils {
         entity, new SpanAndAttributeKey(span, bodyAttributeKey));
   }
 
-  public static String readInputStream(InputStream inputStream, Charset charset)
-      throws IOException {
-    BoundedByteArrayOutputStream outputStream = BoundedBuffersFactory.createStream(charset);
-    try (InputStreamReader reader = new InputStreamReader(inputStream, charset);
-        OutputStreamWriter writer = new OutputStreamWriter(outputStream, charset)) {
-      int c;
-      while ((c = reader.read()) != -1) {
-        writer.write(c);
-      }
-      writer.flush();
+  /**
+   * Returns the endpoint of the request path, the URI is absolute if the request is sent to a
+   * proxy. A client knows no routes, so only a path with a configured budget is an endpoint of its
+   * own.
+   */
+  private static String endpoint(HttpMessage message) {
+    if (!(message instanceof HttpRequest)) {
+      return null;
+    }
+    String uri = ((HttpRequest) message).getRequestLine().getUri();
+    int scheme = uri.indexOf("://");
+    int start = scheme < 0 ? 0 : uri.indexOf('/', scheme + 3);
+    if (start < 0) {
+      return CapturePolicy.get().pathEndpoint("/");
     }
-    return outputStream.toStringWithSuppliedCharset();
+    int query = uri.indexOf('?', start);
+    return CapturePolicy.get()
+        .pathEndpoint(query < 0 ? uri.substring(start) : uri.substring(start, query));
   }
 }
@@ -37,6 +37,7 @@ import net.bytebuddy.matcher.ElementMatcher;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.hypertrace.agent.core.instrumentation.SpanAndBuffer;
+import org.hypertrace.agent.core.instrumentation.StreamCaptureRegistry;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
 import org.hypertrace.agent.core.instrumentation.utils.ContentLengthUtils;
@@ -104,7 +105,13 @@ public class HttpEntityInstrumentation implements TypeInstrumentation {
               clientSpan.attributeKey,
               charset,
               contentEncoding);
-      VirtualField.find(InputStream.class, SpanAndBuffer.class).set(inputStream, spanAndBuffer);
+      VirtualField<InputStream, SpanAndBuffer> contextStore =
+          VirtualField.find(InputStream.class, SpanAndBuffer.class);
+      if (contextStore.get(inputStream) == null) {
+        // getContent of a streamed entity returns the same stream every time
+        StreamCaptureRegistry.register(inputStream);
+      }
+      contextStore.set(inputStream, spanAndBuffer);
     }
   }
 
@@ -134,6 +141,7 @@ public class HttpEntityInstrumentation implements TypeInstrumentation {
 
       VirtualField.find(OutputStream.class, BoundedByteArrayOutputStream.class)
           .set(outputStream, byteArrayOutputStream);
+      StreamCaptureRegistry.register(outputStream);
     }
 
     @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
@@ -150,8 +158,10 @@ public class HttpEntityInstrumentation implements TypeInstrumentation {
           VirtualField.find(OutputStream.class, BoundedByteArrayOutputStream.class);
       BoundedByteArrayOutputStream bufferedOutStream = contextStore.get(outputStream);
       contextStore.set(outputStream, null);
+      StreamCaptureRegistry.unregister(outputStream);
       try {
         String requestBody = bufferedOutStream.toStringWithSuppliedCharset();
+        bufferedOutStream.release();
         spanAndAttributeKey.span.setAttribute(spanAndAttributeKey.attributeKey, requestBody);
       } catch (UnsupportedEncodingException e) {
         // should not happen, the charset has been parsed before
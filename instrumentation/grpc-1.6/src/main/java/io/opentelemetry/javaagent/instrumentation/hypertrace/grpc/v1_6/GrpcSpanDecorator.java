@@ -22,10 +22,10 @@ import io.grpc.Metadata.Key;
 import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.grpc.GrpcSemanticAttributes;
-import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.function.Function;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
+import org.hypertrace.agent.filter.api.HeaderView;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,12 +36,20 @@ public class GrpcSpanDecorator {
   private static final Logger log = LoggerFactory.getLogger(GrpcSpanDecorator.class);
 
   public static void addMessageAttribute(Object message, Span span, AttributeKey<String> key) {
+    String jsonOutput = messageToJson(message);
+    if (jsonOutput != null) {
+      span.setAttribute(key, jsonOutput);
+    }
+  }
+
+  /** Returns the message as JSON or null if it is empty or cannot be converted. */
+  public static String messageToJson(Object message) {
     if (message instanceof Message) {
       Message mb = (Message) message;
       try {
         String jsonOutput = ProtobufMessageConverter.getMessage(mb);
         if (jsonOutput != null && !jsonOutput.isEmpty()) {
-          span.setAttribute(key, jsonOutput);
+          return jsonOutput;
         }
       } catch (Exception e) {
         log.debug("Failed to decode message as JSON: {}", e.getMessage(), e);
@@ -49,6 +57,7 @@ public class GrpcSpanDecorator {
     } else {
       log.debug("message is not an instance of com.google.protobuf.Message");
     }
+    return null;
   }
 
   public static void addMetadataAttributes(
@@ -73,19 +82,24 @@ public class GrpcSpanDecorator {
     }
   }
 
+  /** Returns the metadata keyed by span attribute name, copied on first access. */
   public static Map<String, String> metadataToMap(Metadata metadata) {
-    Map<String, String> mapHeaders = new LinkedHashMap<>(metadata.keys().size());
-    for (String key : metadata.keys()) {
-      if (key.endsWith(Metadata.BINARY_HEADER_SUFFIX)) {
-        continue;
-      }
-      Key<String> stringKey = Key.of(key, Metadata.ASCII_STRING_MARSHALLER);
-      Iterable<String> stringValues = metadata.getAll(stringKey);
-      for (String stringValue : stringValues) {
-        key = GrpcSemanticAttributes.removeHypertracePrefixAndAddColon(key);
-        mapHeaders.put(HypertraceSemanticAttributes.rpcRequestMetadata(key).getKey(), stringValue);
+    return new HeaderView() {
+      @Override
+      protected void collect(Map<String, String> mapHeaders) {
+        for (String key : metadata.keys()) {
+          if (key.endsWith(Metadata.BINARY_HEADER_SUFFIX)) {
+            continue;
+          }
+          Key<String> stringKey = Key.of(key, Metadata.ASCII_STRING_MARSHALLER);
+          Iterable<String> stringValues = metadata.getAll(stringKey);
+          for (String stringValue : stringValues) {
+            key = GrpcSemanticAttributes.removeHypertracePrefixAndAddColon(key);
+            mapHeaders.put(
+                HypertraceSemanticAttributes.rpcRequestMetadata(key).getKey(), stringValue);
+          }
+        }
       }
-    }
-    return mapHeaders;
+    };
   }
 }
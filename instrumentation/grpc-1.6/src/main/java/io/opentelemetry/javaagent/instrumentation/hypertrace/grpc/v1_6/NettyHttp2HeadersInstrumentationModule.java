@@ -32,10 +32,12 @@ import io.opentelemetry.javaagent.extension.instrumentation.TypeTransformer;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.grpc.GrpcSemanticAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
+import org.hypertrace.agent.core.config.InstrumentationConfig;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 
 @AutoService(InstrumentationModule.class)
@@ -58,6 +60,10 @@ public class NettyHttp2HeadersInstrumentationModule extends InstrumentationModul
 
   @Override
   public List<TypeInstrumentation> typeInstrumentations() {
+    if (!InstrumentationConfig.ConfigProvider.isModuleEnabled(
+        GrpcInstrumentationName.PRIMARY, INSTRUMENTATION_NAME_ARRAY)) {
+      return Collections.emptyList();
+    }
     return Arrays.asList(new NettyUtilsInstrumentation());
   }
 
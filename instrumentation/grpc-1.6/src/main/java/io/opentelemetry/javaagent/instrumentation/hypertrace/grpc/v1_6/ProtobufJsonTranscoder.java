@@ -0,0 +1,494 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.grpc.v1_6;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.MessageOrBuilder;
+import io.opentelemetry.instrumentation.api.internal.cache.Cache;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes unrelocated protobuf messages as JSON by walking their fields, without converting them to
+ * relocated messages first.
+ *
+ * <p>The output is the same as of the relocated {@code
+ * JsonFormat.printer().includingDefaultValueFields().preservingProtoFieldNames()}, except that it
+ * is truncated to the given number of characters. Writing stops as soon as the limit is reached.
+ * Messages that contain {@code google.protobuf.Any} are not supported since the type of the packed
+ * message cannot be resolved.
+ */
+final class ProtobufJsonTranscoder {
+
+  private static final DateTimeFormatter TIMESTAMP_FORMAT =
+      DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss");
+  private static final long TIMESTAMP_SECONDS_MIN = -62135596800L;
+  private static final long TIMESTAMP_SECONDS_MAX = 253402300799L;
+  private static final long DURATION_SECONDS_MAX = 315576000000L;
+
+  /**
+   * Indexes of the fields of a message type ordered by number, in which JsonFormat prints them. The
+   * indexes do not reference the descriptor, so the weak key can be collected.
+   */
+  private static final Cache<Descriptor, int[]> plans = Cache.weak();
+
+  private static final StopException LIMIT_REACHED = new StopException();
+  private static final StopException UNSUPPORTED = new StopException();
+
+  private final StringBuilder json;
+  private final int maxLength;
+
+  private ProtobufJsonTranscoder(int maxLength) {
+    this.json = new StringBuilder(Math.min(maxLength, 256));
+    this.maxLength = maxLength;
+  }
+
+  /**
+   * Returns the message as JSON of at most {@code maxLength} characters or null if the message
+   * contains a type that is not supported.
+   */
+  static String toJson(MessageOrBuilder message, int maxLength) {
+    ProtobufJsonTranscoder transcoder = new ProtobufJsonTranscoder(maxLength);
+    try {
+      transcoder.writeMessage(message, 0);
+    } catch (StopException e) {
+      if (e == UNSUPPORTED) {
+        return null;
+      }
+      transcoder.json.setLength(maxLength);
+    }
+    return transcoder.json.toString();
+  }
+
+  private void writeMessage(MessageOrBuilder message, int level) {
+    Descriptor descriptor = message.getDescriptorForType();
+    if (writeWellKnownType(message, descriptor, level)) {
+      return;
+    }
+    append('{');
+    boolean first = true;
+    if (descriptor.isExtendable()) {
+      // extensions are only known to the message
+      Map<FieldDescriptor, Object> fields = new TreeMap<>(message.getAllFields());
+      for (FieldDescriptor field : descriptor.getFields()) {
+        if (!fields.containsKey(field) && isPrinted(message, field)) {
+          fields.put(field, message.getField(field));
+        }
+      }
+      for (Map.Entry<FieldDescriptor, Object> entry : fields.entrySet()) {
+        first = writeFieldSeparator(first, level + 1);
+        writeField(entry.getKey(), entry.getValue(), level + 1);
+      }
+    } else {
+      List<FieldDescriptor> fields = descriptor.getFields();
+      for (int index : plan(descriptor)) {
+        FieldDescriptor field = fields.get(index);
+        if (isPrinted(message, field)) {
+          first = writeFieldSeparator(first, level + 1);
+          writeField(field, message.getField(field), level + 1);
+        }
+      }
+    }
+    newLine(level);
+    append('}');
+  }
+
+  /** Unset fields are printed with the default value, except for messages and oneof members. */
+  private static boolean isPrinted(MessageOrBuilder message, FieldDescriptor field) {
+    if (field.isRepeated()) {
+      return true;
+    }
+    if (field.getJavaType() == FieldDescriptor.JavaType.MESSAGE
+        || field.getContainingOneof() != null) {
+      return message.hasField(field);
+    }
+    return true;
+  }
+
+  private boolean writeFieldSeparator(boolean first, int level) {
+    if (!first) {
+      append(',');
+    }
+    newLine(level);
+    return false;
+  }
+
+  private void writeField(FieldDescriptor field, Object value, int level) {
+    append('"');
+    if (field.isExtension()) {
+      append('[');
+      append(field.getFullName());
+      append(']');
+    } else {
+      append(field.getName());
+    }
+    append("\": ");
+    if (field.isMapField()) {
+      writeMap(field, (List<?>) value, level);
+    } else if (field.isRepeated()) {
+      writeList(field, (List<?>) value, level);
+    } else {
+      writeValue(field, value, false, level);
+    }
+  }
+
+  private void writeList(FieldDescriptor field, List<?> values, int level) {
+    append('[');
+    for (int i = 0; i < values.size(); i++) {
+      if (i > 0) {
+        append(", ");
+      }
+      writeValue(field, values.get(i), false, level);
+    }
+    append(']');
+  }
+
+  private void writeMap(FieldDescriptor field, List<?> entries, int level) {
+    Descriptor entryDescriptor = field.getMessageType();
+    FieldDescriptor keyField = entryDescriptor.findFieldByNumber(1);
+    FieldDescriptor valueField = entryDescriptor.findFieldByNumber(2);
+    append('{');
+    boolean first = true;
+    for (Object entry : entries) {
+      MessageOrBuilder entryMessage = (MessageOrBuilder) entry;
+      first = writeFieldSeparator(first, level + 1);
+      // map keys are always quoted
+      writeValue(keyField, entryMessage.getField(keyField), true, level + 1);
+      append(": ");
+      writeValue(valueField, entryMessage.getField(valueField), false, level + 1);
+    }
+    newLine(level);
+    append('}');
+  }
+
+  private void writeValue(FieldDescriptor field, Object value, boolean quoted, int level) {
+    switch (field.getType()) {
+      case INT32:
+      case SINT32:
+      case SFIXED32:
+      case BOOL:
+        writeMaybeQuoted(value.toString(), quoted);
+        break;
+      case INT64:
+      case SINT64:
+      case SFIXED64:
+        writeMaybeQuoted(value.toString(), true);
+        break;
+      case UINT32:
+      case FIXED32:
+        writeMaybeQuoted(Integer.toUnsignedString((Integer) value), quoted);
+        break;
+      case UINT64:
+      case FIXED64:
+        writeMaybeQuoted(Long.toUnsignedString((Long) value), true);
+        break;
+      case FLOAT:
+        writeFloatingPoint((Float) value, value, quoted);
+        break;
+      case DOUBLE:
+        writeFloatingPoint((Double) value, value, quoted);
+        break;
+      case STRING:
+        writeString((String) value);
+        break;
+      case BYTES:
+        byte[] bytes = ((ByteString) value).toByteArray();
+        writeMaybeQuoted(Base64.getEncoder().encodeToString(bytes), true);
+        break;
+      case ENUM:
+        EnumValueDescriptor enumValue = (EnumValueDescriptor) value;
+        if ("google.protobuf.NullValue".equals(enumValue.getType().getFullName())) {
+          append("null");
+        } else if (enumValue.getIndex() == -1) {
+          // unknown enum value
+          writeMaybeQuoted(Integer.toString(enumValue.getNumber()), quoted);
+        } else {
+          writeMaybeQuoted(enumValue.getName(), true);
+        }
+        break;
+      case MESSAGE:
+      case GROUP:
+        writeMessage((MessageOrBuilder) value, level);
+        break;
+    }
+  }
+
+  private void writeFloatingPoint(double doubleValue, Object value, boolean quoted) {
+    if (Double.isNaN(doubleValue)) {
+      append("\"NaN\"");
+    } else if (Double.isInfinite(doubleValue)) {
+      append(doubleValue < 0 ? "\"-Infinity\"" : "\"Infinity\"");
+    } else {
+      writeMaybeQuoted(value.toString(), quoted);
+    }
+  }
+
+  private boolean writeWellKnownType(MessageOrBuilder message, Descriptor descriptor, int level) {
+    String fullName = descriptor.getFullName();
+    if (!fullName.startsWith("google.protobuf.")) {
+      return false;
+    }
+    switch (fullName) {
+      case "google.protobuf.Any":
+        throw UNSUPPORTED;
+      case "google.protobuf.BoolValue":
+      case "google.protobuf.BytesValue":
+      case "google.protobuf.StringValue":
+      case "google.protobuf.Int32Value":
+      case "google.protobuf.UInt32Value":
+      case "google.protobuf.Int64Value":
+      case "google.protobuf.UInt64Value":
+      case "google.protobuf.FloatValue":
+      case "google.protobuf.DoubleValue":
+        FieldDescriptor valueField = descriptor.findFieldByNumber(1);
+        writeValue(valueField, message.getField(valueField), false, level);
+        return true;
+      case "google.protobuf.Timestamp":
+        writeTimestamp(message, descriptor);
+        return true;
+      case "google.protobuf.Duration":
+        writeDuration(message, descriptor);
+        return true;
+      case "google.protobuf.FieldMask":
+        writeFieldMask(message, descriptor);
+        return true;
+      case "google.protobuf.Struct":
+        FieldDescriptor fieldsField = descriptor.findFieldByNumber(1);
+        writeMap(fieldsField, (List<?>) message.getField(fieldsField), level);
+        return true;
+      case "google.protobuf.Value":
+        Map<FieldDescriptor, Object> kind = message.getAllFields();
+        if (kind.isEmpty()) {
+          append("null");
+        } else {
+          for (Map.Entry<FieldDescriptor, Object> entry : kind.entrySet()) {
+            writeValue(entry.getKey(), entry.getValue(), false, level);
+          }
+        }
+        return true;
+      case "google.protobuf.ListValue":
+        FieldDescriptor valuesField = descriptor.findFieldByNumber(1);
+        writeList(valuesField, (List<?>) message.getField(valuesField), level);
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private void writeTimestamp(MessageOrBuilder message, Descriptor descriptor) {
+    long seconds = (Long) message.getField(descriptor.findFieldByNumber(1));
+    int nanos = (Integer) message.getField(descriptor.findFieldByNumber(2));
+    if (seconds < TIMESTAMP_SECONDS_MIN
+        || seconds > TIMESTAMP_SECONDS_MAX
+        || nanos < 0
+        || nanos > 999_999_999) {
+      // JsonFormat rejects invalid timestamps too
+      throw UNSUPPORTED;
+    }
+    append('"');
+    append(TIMESTAMP_FORMAT.format(LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC)));
+    appendNanos(nanos);
+    append("Z\"");
+  }
+
+  private void writeDuration(MessageOrBuilder message, Descriptor descriptor) {
+    long seconds = (Long) message.getField(descriptor.findFieldByNumber(1));
+    int nanos = (Integer) message.getField(descriptor.findFieldByNumber(2));
+    if (seconds < -DURATION_SECONDS_MAX
+        || seconds > DURATION_SECONDS_MAX
+        || nanos < -999_999_999
+        || nanos > 999_999_999
+        || (seconds < 0 && nanos > 0)
+        || (seconds > 0 && nanos < 0)) {
+      throw UNSUPPORTED;
+    }
+    append('"');
+    if (seconds < 0 || nanos < 0) {
+      append('-');
+      seconds = -seconds;
+      nanos = -nanos;
+    }
+    append(Long.toString(seconds));
+    appendNanos(nanos);
+    append("s\"");
+  }
+
+  /** Appends the fraction of a second with 3, 6 or 9 digits or nothing if it is zero. */
+  private void appendNanos(int nanos) {
+    if (nanos == 0) {
+      return;
+    }
+    String digits = Integer.toString(1_000_000_000 + nanos).substring(1);
+    if (nanos % 1_000_000 == 0) {
+      digits = digits.substring(0, 3);
+    } else if (nanos % 1_000 == 0) {
+      digits = digits.substring(0, 6);
+    }
+    append('.');
+    append(digits);
+  }
+
+  /** Writes the paths converted to lower camel case separated by commas. */
+  private void writeFieldMask(MessageOrBuilder message, Descriptor descriptor) {
+    List<?> paths = (List<?>) message.getField(descriptor.findFieldByNumber(1));
+    StringBuilder jsonPaths = new StringBuilder();
+    for (Object path : paths) {
+      String snakeCase = (String) path;
+      if (snakeCase.isEmpty()) {
+        continue;
+      }
+      if (jsonPaths.length() > 0) {
+        jsonPaths.append(',');
+      }
+      boolean upperCase = false;
+      for (int i = 0; i < snakeCase.length(); i++) {
+        char c = snakeCase.charAt(i);
+        if (c == '_') {
+          upperCase = true;
+        } else if (upperCase) {
+          jsonPaths.append(Character.toUpperCase(c));
+          upperCase = false;
+        } else {
+          jsonPaths.append(Character.toLowerCase(c));
+        }
+      }
+    }
+    writeString(jsonPaths.toString());
+  }
+
+  private void writeMaybeQuoted(String value, boolean quoted) {
+    if (quoted) {
+      append('"');
+      append(value);
+      append('"');
+    } else {
+      append(value);
+    }
+  }
+
+  /** Writes a JSON string escaped the same way as by the default Gson used by JsonFormat. */
+  private void writeString(String value) {
+    append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          append("\\\"");
+          break;
+        case '\\':
+          append("\\\\");
+          break;
+        case '\t':
+          append("\\t");
+          break;
+        case '\b':
+          append("\\b");
+          break;
+        case '\n':
+          append("\\n");
+          break;
+        case '\r':
+          append("\\r");
+          break;
+        case '\f':
+          append("\\f");
+          break;
+        case '<':
+        case '>':
+        case '&':
+        case '=':
+        case '\'':
+        case 0x2028:
+        case 0x2029:
+          appendUnicodeEscape(c);
+          break;
+        default:
+          if (c < 0x20) {
+            appendUnicodeEscape(c);
+          } else {
+            append(c);
+          }
+      }
+    }
+    append('"');
+  }
+
+  private void appendUnicodeEscape(char c) {
+    append("\\u");
+    String hex = Integer.toHexString(c);
+    for (int i = hex.length(); i < 4; i++) {
+      append('0');
+    }
+    append(hex);
+  }
+
+  private void newLine(int level) {
+    append('\n');
+    for (int i = 0; i < level; i++) {
+      append("  ");
+    }
+  }
+
+  private void append(char c) {
+    json.append(c);
+    checkLength();
+  }
+
+  private void append(String s) {
+    json.append(s);
+    checkLength();
+  }
+
+  private void checkLength() {
+    if (json.length() > maxLength) {
+      throw LIMIT_REACHED;
+    }
+  }
+
+  private static int[] plan(Descriptor descriptor) {
+    return plans.computeIfAbsent(descriptor, ProtobufJsonTranscoder::fieldOrder);
+  }
+
+  private static int[] fieldOrder(Descriptor descriptor) {
+    FieldDescriptor[] fields = descriptor.getFields().toArray(new FieldDescriptor[0]);
+    Arrays.sort(fields, Comparator.comparingInt(FieldDescriptor::getNumber));
+    int[] order = new int[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      order[i] = fields[i].getIndex();
+    }
+    return order;
+  }
+
+  /** Unwinds the transcoding, preallocated without a stack trace. */
+  private static final class StopException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    StopException() {
+      super(null, null, false, false);
+    }
+  }
+}
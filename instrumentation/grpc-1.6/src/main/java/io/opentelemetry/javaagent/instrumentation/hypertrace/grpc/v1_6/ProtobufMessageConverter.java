@@ -18,24 +18,37 @@ package io.opentelemetry.javaagent.instrumentation.hypertrace.grpc.v1_6;
 
 import com.google.protobuf.Descriptors;
 import com.google.protobuf.Message;
+import io.opentelemetry.instrumentation.api.internal.cache.Cache;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.com.google.protobuf.DescriptorProtos.FileDescriptorProto;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.com.google.protobuf.Descriptors.Descriptor;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.com.google.protobuf.Descriptors.FileDescriptor;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.com.google.protobuf.DynamicMessage;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.com.google.protobuf.util.JsonFormat;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /** Utility class to convert protobuf messages to JSON. */
 public class ProtobufMessageConverter {
   private static final Logger log = LoggerFactory.getLogger(ProtobufMessageConverter.class);
-  private static final Map<String, FileDescriptor> fileDescriptorCache = new HashMap<>();
+
+  /**
+   * Relocated file descriptors keyed by the original descriptor. The keys are weak and compared by
+   * identity, so files with the same name from different class loaders do not collide and the
+   * entries of an undeployed application are removed. The relocated descriptors do not reference
+   * the original ones.
+   */
+  private static final Cache<Descriptors.FileDescriptor, FileDescriptor> fileDescriptorCache =
+      Cache.weak();
+
+  private static final Cache<Descriptors.Descriptor, Descriptor> messageDescriptorCache =
+      Cache.weak();
+
+  private static final JsonFormat.Printer printer =
+      JsonFormat.printer().includingDefaultValueFields().preservingProtoFieldNames();
 
   /**
    * Converts an unrelocated protobuf message into a relocated DynamicMessage via a byte-array
@@ -69,82 +82,70 @@ public class ProtobufMessageConverter {
     }
   }
 
-  /** Recursively builds relocated file descriptors with all dependencies. */
+  /** Returns the relocated descriptor of the message type, nested types included. */
   private static Descriptor getRelocatedDescriptor(Descriptors.Descriptor originalDescriptor)
       throws Exception {
-    Descriptors.FileDescriptor unrelocatedFileDescriptor = originalDescriptor.getFile();
-
-    // Check if we've already processed this file descriptor
-    String fileKey = unrelocatedFileDescriptor.getName();
-    if (fileDescriptorCache.containsKey(fileKey)) {
-      FileDescriptor relocatedFileDescriptor = fileDescriptorCache.get(fileKey);
-
-      // Check if the message type exists in the relocated descriptor
-      Descriptor messageType =
-          relocatedFileDescriptor.findMessageTypeByName(originalDescriptor.getName());
-      if (messageType == null) {
-        log.debug("Message type not found in cached descriptor: {}", originalDescriptor.getName());
-      }
-
-      return messageType;
+    Descriptor relocatedDescriptor = messageDescriptorCache.get(originalDescriptor);
+    if (relocatedDescriptor != null) {
+      return relocatedDescriptor;
     }
 
-    // Process all dependencies recursively, including transitive ones
-    FileDescriptor fileDescriptor =
-        processFileDescriptorWithDependencies(unrelocatedFileDescriptor, new HashSet<>());
-
-    // Find the message type in the relocated descriptor
-    Descriptor result = fileDescriptor.findMessageTypeByName(originalDescriptor.getName());
-    if (result == null) {
-      log.debug("Message type not found in new descriptor: {}", originalDescriptor.getName());
+    Descriptors.Descriptor containingType = originalDescriptor.getContainingType();
+    if (containingType == null) {
+      FileDescriptor fileDescriptor = getRelocatedFileDescriptor(originalDescriptor.getFile());
+      relocatedDescriptor = fileDescriptor.findMessageTypeByName(originalDescriptor.getName());
+    } else {
+      Descriptor relocatedContainingType = getRelocatedDescriptor(containingType);
+      if (relocatedContainingType != null) {
+        relocatedDescriptor =
+            relocatedContainingType.findNestedTypeByName(originalDescriptor.getName());
+      }
     }
+    if (relocatedDescriptor == null) {
+      log.debug("Message type not found in relocated descriptor: {}", originalDescriptor.getName());
+      return null;
+    }
+    messageDescriptorCache.put(originalDescriptor, relocatedDescriptor);
+    return relocatedDescriptor;
+  }
 
-    return result;
+  private static FileDescriptor getRelocatedFileDescriptor(
+      Descriptors.FileDescriptor unrelocatedFileDescriptor) throws Exception {
+    FileDescriptor relocatedFileDescriptor = fileDescriptorCache.get(unrelocatedFileDescriptor);
+    if (relocatedFileDescriptor != null) {
+      return relocatedFileDescriptor;
+    }
+    return processFileDescriptorWithDependencies(unrelocatedFileDescriptor, new HashMap<>());
   }
 
   /**
    * Process a file descriptor and all its dependencies recursively.
    *
    * @param unrelocatedFileDescriptor The file descriptor to process
-   * @param processedFiles Set of file names that have already been processed to avoid circular
-   *     dependencies
+   * @param processedFiles file descriptors relocated by this call chain, so that a dependency
+   *     shared by several files is relocated once. Protobuf does not allow circular dependencies
+   *     between files.
    * @return The relocated file descriptor
    */
   private static FileDescriptor processFileDescriptorWithDependencies(
-      Descriptors.FileDescriptor unrelocatedFileDescriptor, Set<String> processedFiles)
+      Descriptors.FileDescriptor unrelocatedFileDescriptor,
+      Map<Descriptors.FileDescriptor, FileDescriptor> processedFiles)
       throws Exception {
-    String fileKey = unrelocatedFileDescriptor.getName();
-
-    // Check if we've already processed this file
-    if (fileDescriptorCache.containsKey(fileKey)) {
-      return fileDescriptorCache.get(fileKey);
+    FileDescriptor relocatedFileDescriptor = fileDescriptorCache.get(unrelocatedFileDescriptor);
+    if (relocatedFileDescriptor == null) {
+      relocatedFileDescriptor = processedFiles.get(unrelocatedFileDescriptor);
+    }
+    if (relocatedFileDescriptor != null) {
+      return relocatedFileDescriptor;
     }
-
-    // Mark this file as processed to avoid circular dependencies
-    processedFiles.add(fileKey);
-
-    List<FileDescriptor> dependencies = new ArrayList<>();
 
     // Process all direct dependencies first
-    for (Descriptors.FileDescriptor dependency : unrelocatedFileDescriptor.getDependencies()) {
-      String depKey = dependency.getName();
-
-      // Skip if we've already processed this dependency in this call chain
-      if (processedFiles.contains(depKey)) {
-        if (fileDescriptorCache.containsKey(depKey)) {
-          dependencies.add(fileDescriptorCache.get(depKey));
-        }
-        continue;
-      }
-
-      if (!fileDescriptorCache.containsKey(depKey)) {
-        // Process this dependency recursively
-        FileDescriptor relocatedDep =
-            processFileDescriptorWithDependencies(dependency, processedFiles);
-        dependencies.add(relocatedDep);
-      } else {
-        dependencies.add(fileDescriptorCache.get(depKey));
-      }
+    List<Descriptors.FileDescriptor> unrelocatedDependencies =
+        unrelocatedFileDescriptor.getDependencies();
+    FileDescriptor[] dependencies = new FileDescriptor[unrelocatedDependencies.size()];
+    for (int i = 0; i < dependencies.length; i++) {
+      dependencies[i] =
+          processFileDescriptorWithDependencies(unrelocatedDependencies.get(i), processedFiles);
     }
 
     // Now build the current file descriptor with its dependencies
@@ -153,16 +154,20 @@ public class ProtobufMessageConverter {
     byte[] fileProtoBytes = unrelocatedFileProto.toByteArray();
     FileDescriptorProto relocatedFileProto = FileDescriptorProto.parseFrom(fileProtoBytes);
 
-    FileDescriptor relocatedFileDescriptor =
-        FileDescriptor.buildFrom(relocatedFileProto, dependencies.toArray(new FileDescriptor[0]));
-    fileDescriptorCache.put(fileKey, relocatedFileDescriptor);
-
+    relocatedFileDescriptor = FileDescriptor.buildFrom(relocatedFileProto, dependencies);
+    // keep the descriptor built first if another thread raced us
+    FileDescriptor built = relocatedFileDescriptor;
+    relocatedFileDescriptor =
+        fileDescriptorCache.computeIfAbsent(unrelocatedFileDescriptor, key -> built);
+    processedFiles.put(unrelocatedFileDescriptor, relocatedFileDescriptor);
     return relocatedFileDescriptor;
   }
 
   /**
-   * Method that takes an incoming message, converts it to a relocated one, prints it as JSON using
-   * the relocated JsonFormat
+   * Method that takes an incoming message and prints it as JSON of at most {@link
+   * BoundedBuffersFactory#MAX_SIZE} characters. The message is written directly by {@link
+   * ProtobufJsonTranscoder}, messages it does not support are converted to relocated ones and
+   * printed using the relocated JsonFormat.
    *
    * @param message The incoming (unrelocated) protobuf message.
    * @return JSON string representation of the message
@@ -174,12 +179,18 @@ public class ProtobufMessageConverter {
       return "";
     }
 
+    String json = ProtobufJsonTranscoder.toJson(message, BoundedBuffersFactory.MAX_SIZE);
+    if (json != null) {
+      return json;
+    }
+
     // Convert the unrelocated message into a relocated DynamicMessage.
     DynamicMessage relocatedMessage = convertToRelocatedDynamicMessage(message);
 
-    // Use the relocated JsonFormat to print the message as JSON.
-    JsonFormat.Printer relocatedPrinter =
-        JsonFormat.printer().includingDefaultValueFields().preservingProtoFieldNames();
-    return relocatedPrinter.print(relocatedMessage);
+    // Use the relocated JsonFormat to print the message as JSON, the printer is immutable.
+    json = printer.print(relocatedMessage);
+    return json.length() > BoundedBuffersFactory.MAX_SIZE
+        ? json.substring(0, BoundedBuffersFactory.MAX_SIZE)
+        : json;
   }
 }
@@ -22,6 +22,7 @@ import io.opentelemetry.javaagent.extension.instrumentation.TypeInstrumentation;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.grpc.v1_6.GrpcInstrumentationName;
 import java.util.Collections;
 import java.util.List;
+import org.hypertrace.agent.core.config.InstrumentationConfig;
 
 @AutoService(InstrumentationModule.class)
 public class GrpcClientBodyInstrumentationModule extends InstrumentationModule {
@@ -37,6 +38,10 @@ public class GrpcClientBodyInstrumentationModule extends InstrumentationModule {
 
   @Override
   public List<TypeInstrumentation> typeInstrumentations() {
+    if (!InstrumentationConfig.ConfigProvider.isModuleEnabled(
+        GrpcInstrumentationName.PRIMARY, GrpcInstrumentationName.OTHER)) {
+      return Collections.emptyList();
+    }
     return Collections.singletonList(new GrpcClientBodyInstrumentation());
   }
 }
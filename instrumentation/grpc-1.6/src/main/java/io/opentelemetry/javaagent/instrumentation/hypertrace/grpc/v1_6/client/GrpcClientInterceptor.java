@@ -28,7 +28,9 @@ import io.grpc.MethodDescriptor;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.grpc.v1_6.GrpcInstrumentationName;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.grpc.v1_6.GrpcSpanDecorator;
+import org.hypertrace.agent.core.config.CaptureFlags;
 import org.hypertrace.agent.core.config.InstrumentationConfig;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.utils.ServiceNameHeaderUtils;
 import org.slf4j.Logger;
@@ -55,7 +57,9 @@ public class GrpcClientInterceptor implements ClientInterceptor {
 
       Span currentSpan = Span.current();
       ClientCall<ReqT, RespT> clientCall = next.newCall(method, callOptions);
-      return new GrpcClientInterceptor.TracingClientCall<>(clientCall, currentSpan);
+      CapturePolicy.Decision capture = CapturePolicy.get().decide(currentSpan);
+      return new GrpcClientInterceptor.TracingClientCall<>(
+          clientCall, currentSpan, capture, method.getFullMethodName());
     } catch (Throwable t) {
       log.debug("exception thrown while intercepting grpc client call", t);
       return next.newCall(method, callOptions);
@@ -66,10 +70,18 @@ public class GrpcClientInterceptor implements ClientInterceptor {
       extends ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT> {
 
     private final Span span;
-
-    TracingClientCall(ClientCall<ReqT, RespT> delegate, Span span) {
+    private final CapturePolicy.Decision capture;
+    private final String method;
+
+    TracingClientCall(
+        ClientCall<ReqT, RespT> delegate,
+        Span span,
+        CapturePolicy.Decision capture,
+        String method) {
       super(delegate);
       this.span = span;
+      this.capture = capture;
+      this.method = method;
     }
 
     @Override
@@ -77,11 +89,13 @@ public class GrpcClientInterceptor implements ClientInterceptor {
       // Add service name header to outgoing requests
       headers.put(SERVICE_NAME_METADATA_KEY, ServiceNameHeaderUtils.getClientServiceName());
 
-      super.start(new TracingClientCallListener<>(responseListener, span), headers);
+      super.start(
+          new TracingClientCallListener<>(responseListener, span, capture, method), headers);
 
       try {
         InstrumentationConfig instrumentationConfig = InstrumentationConfig.ConfigProvider.get();
-        if (instrumentationConfig.rpcMetadata().request()) {
+        if (capture.captureHeaders()
+            && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.RPC_METADATA_REQUEST)) {
           GrpcSpanDecorator.addMetadataAttributes(
               headers, span, HypertraceSemanticAttributes::rpcRequestMetadata);
         }
@@ -96,7 +110,9 @@ public class GrpcClientInterceptor implements ClientInterceptor {
 
       try {
         InstrumentationConfig instrumentationConfig = InstrumentationConfig.ConfigProvider.get();
-        if (instrumentationConfig.rpcBody().request()) {
+        if (capture.captureBodies()
+            && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.RPC_BODY_REQUEST)
+            && CapturePolicy.get().tryCaptureBody(method, -1)) {
           GrpcSpanDecorator.addMessageAttribute(
               message, span, HypertraceSemanticAttributes.RPC_REQUEST_BODY);
         }
@@ -109,10 +125,15 @@ public class GrpcClientInterceptor implements ClientInterceptor {
   static final class TracingClientCallListener<RespT>
       extends ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT> {
     private final Span span;
+    private final CapturePolicy.Decision capture;
+    private final String method;
 
-    TracingClientCallListener(Listener<RespT> delegate, Span span) {
+    TracingClientCallListener(
+        Listener<RespT> delegate, Span span, CapturePolicy.Decision capture, String method) {
       super(delegate);
       this.span = span;
+      this.capture = capture;
+      this.method = method;
     }
 
     @Override
@@ -121,7 +142,9 @@ public class GrpcClientInterceptor implements ClientInterceptor {
 
       try {
         InstrumentationConfig instrumentationConfig = InstrumentationConfig.ConfigProvider.get();
-        if (instrumentationConfig.rpcBody().response()) {
+        if (capture.captureBodies()
+            && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.RPC_BODY_RESPONSE)
+            && CapturePolicy.get().tryCaptureBody(method, -1)) {
           GrpcSpanDecorator.addMessageAttribute(
               message, span, HypertraceSemanticAttributes.RPC_RESPONSE_BODY);
         }
@@ -136,7 +159,8 @@ public class GrpcClientInterceptor implements ClientInterceptor {
 
       try {
         InstrumentationConfig instrumentationConfig = InstrumentationConfig.ConfigProvider.get();
-        if (instrumentationConfig.rpcMetadata().response()) {
+        if (capture.captureHeaders()
+            && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.RPC_METADATA_RESPONSE)) {
           GrpcSpanDecorator.addMetadataAttributes(
               headers, span, HypertraceSemanticAttributes::rpcResponseMetadata);
         }
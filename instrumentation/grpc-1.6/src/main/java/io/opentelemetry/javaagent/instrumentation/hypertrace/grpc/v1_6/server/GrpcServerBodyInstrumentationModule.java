@@ -37,6 +37,7 @@ public class GrpcServerBodyInstrumentationModule extends InstrumentationModule {
 
   @Override
   public List<TypeInstrumentation> typeInstrumentations() {
+    // installed even if data capture is disabled, the interceptor evaluates the filter
     return Collections.singletonList(new GrpcServerBodyInstrumentation());
   }
 }
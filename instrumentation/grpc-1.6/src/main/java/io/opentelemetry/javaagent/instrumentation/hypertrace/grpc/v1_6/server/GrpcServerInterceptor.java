@@ -27,11 +27,16 @@ import io.grpc.Status;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.grpc.v1_6.GrpcInstrumentationName;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.grpc.v1_6.GrpcSpanDecorator;
+import java.util.Collections;
 import java.util.Map;
+import org.hypertrace.agent.core.config.CaptureFlags;
 import org.hypertrace.agent.core.config.InstrumentationConfig;
 import org.hypertrace.agent.core.filter.FilterResult;
+import org.hypertrace.agent.core.instrumentation.AsyncBodyCapture;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.filter.FilterRegistry;
+import org.hypertrace.agent.filter.api.Filter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,33 +50,46 @@ public class GrpcServerInterceptor implements ServerInterceptor {
 
     try {
       InstrumentationConfig instrumentationConfig = InstrumentationConfig.ConfigProvider.get();
-      if (!instrumentationConfig.isInstrumentationEnabled(
-          GrpcInstrumentationName.PRIMARY, GrpcInstrumentationName.OTHER)) {
+      if (instrumentationConfig.captureFlags().bits() == 0) {
         return next.startCall(call, headers);
       }
 
       Span currentSpan = Span.current();
-
-      Map<String, String> mapHeaders = GrpcSpanDecorator.metadataToMap(headers);
-
-      if (instrumentationConfig.rpcMetadata().request()) {
+      // nothing is captured if data capture is disabled for the module, the filter still applies
+      CapturePolicy.Decision capture =
+          CapturePolicy.get()
+              .decide(currentSpan, GrpcInstrumentationName.PRIMARY, GrpcInstrumentationName.OTHER);
+      String method = call.getMethodDescriptor().getFullMethodName();
+      Filter filter = FilterRegistry.getFilter();
+
+      boolean captureMetadata =
+          capture.captureHeaders()
+              && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.RPC_METADATA_REQUEST);
+      // the metadata is copied only if it is captured or the filter reads it
+      Map<String, String> mapHeaders =
+          captureMetadata || filter.evaluatesRequestHeaders()
+              ? GrpcSpanDecorator.metadataToMap(headers)
+              : Collections.emptyMap();
+
+      if (captureMetadata) {
         GrpcSpanDecorator.addMetadataAttributes(mapHeaders, currentSpan);
       }
 
-      FilterResult filterResult =
-          FilterRegistry.getFilter().evaluateRequestHeaders(currentSpan, mapHeaders);
-      if (filterResult.shouldBlock()) {
-        // map http codes with grpc codes
-        // We cannot send custom message in grpc calls
-        call.close(mapHttpToGrpcStatus(filterResult.getBlockingStatusCode()), new Metadata());
-        @SuppressWarnings("unchecked")
-        ServerCall.Listener<ReqT> noop = NoopServerCallListener.INSTANCE;
-        return noop;
+      if (filter.evaluatesRequestHeaders()) {
+        FilterResult filterResult = filter.evaluateRequestHeaders(currentSpan, mapHeaders);
+        if (filterResult.shouldBlock()) {
+          // map http codes with grpc codes
+          // We cannot send custom message in grpc calls
+          call.close(mapHttpToGrpcStatus(filterResult.getBlockingStatusCode()), new Metadata());
+          @SuppressWarnings("unchecked")
+          ServerCall.Listener<ReqT> noop = NoopServerCallListener.INSTANCE;
+          return noop;
+        }
       }
 
       Listener<ReqT> serverCall =
-          next.startCall(new TracingServerCall<>(call, currentSpan), headers);
-      return new TracingServerCallListener<>(serverCall, currentSpan);
+          next.startCall(new TracingServerCall<>(call, currentSpan, capture, method), headers);
+      return new TracingServerCallListener<>(serverCall, currentSpan, capture, method);
     } catch (Throwable t) {
       log.debug("exception thrown during intercepting server call", t);
       return next.startCall(call, headers);
@@ -108,10 +126,19 @@ public class GrpcServerInterceptor implements ServerInterceptor {
       extends ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT> {
 
     private final Span span;
-
-    TracingServerCall(ServerCall<ReqT, RespT> delegate, Span span) {
+    private final CapturePolicy.Decision capture;
+    private final String method;
+    private AsyncBodyCapture.Pending responseBody = AsyncBodyCapture.Pending.DONE;
+
+    TracingServerCall(
+        ServerCall<ReqT, RespT> delegate,
+        Span span,
+        CapturePolicy.Decision capture,
+        String method) {
       super(delegate);
       this.span = span;
+      this.capture = capture;
+      this.method = method;
     }
 
     @Override
@@ -120,22 +147,39 @@ public class GrpcServerInterceptor implements ServerInterceptor {
 
       try {
         InstrumentationConfig instrumentationConfig = InstrumentationConfig.ConfigProvider.get();
-        if (instrumentationConfig.rpcBody().response()) {
-          GrpcSpanDecorator.addMessageAttribute(
-              message, span, HypertraceSemanticAttributes.RPC_RESPONSE_BODY);
+        if (capture.captureBodies()
+            && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.RPC_BODY_RESPONSE)
+            && CapturePolicy.get().tryCaptureBody(method, -1)) {
+          // protobuf messages are immutable, they can be converted after they have been sent,
+          // the previous message is awaited so that the last one is kept
+          responseBody.await();
+          responseBody =
+              AsyncBodyCapture.get()
+                  .capture(
+                      span,
+                      HypertraceSemanticAttributes.RPC_RESPONSE_BODY,
+                      () -> GrpcSpanDecorator.messageToJson(message));
         }
       } catch (Throwable t) {
         log.debug("exception thrown while capturing grpc server response body", t);
       }
     }
 
+    @Override
+    public void close(Status status, Metadata trailers) {
+      // the server span ends once the call has been closed
+      responseBody.await();
+      super.close(status, trailers);
+    }
+
     @Override
     public void sendHeaders(Metadata headers) {
       super.sendHeaders(headers);
 
       try {
         InstrumentationConfig instrumentationConfig = InstrumentationConfig.ConfigProvider.get();
-        if (instrumentationConfig.rpcMetadata().response()) {
+        if (capture.captureHeaders()
+            && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.RPC_METADATA_RESPONSE)) {
           GrpcSpanDecorator.addMetadataAttributes(
               headers, span, HypertraceSemanticAttributes::rpcResponseMetadata);
         }
@@ -149,10 +193,15 @@ public class GrpcServerInterceptor implements ServerInterceptor {
       extends ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT> {
 
     private final Span span;
+    private final CapturePolicy.Decision capture;
+    private final String method;
 
-    TracingServerCallListener(Listener<ReqT> delegate, Span span) {
+    TracingServerCallListener(
+        Listener<ReqT> delegate, Span span, CapturePolicy.Decision capture, String method) {
       super(delegate);
       this.span = span;
+      this.capture = capture;
+      this.method = method;
     }
 
     @Override
@@ -161,7 +210,9 @@ public class GrpcServerInterceptor implements ServerInterceptor {
 
       try {
         InstrumentationConfig instrumentationConfig = InstrumentationConfig.ConfigProvider.get();
-        if (instrumentationConfig.rpcBody().request()) {
+        if (capture.captureBodies()
+            && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.RPC_BODY_REQUEST)
+            && CapturePolicy.get().tryCaptureBody(method, -1)) {
           GrpcSpanDecorator.addMessageAttribute(
               message, span, HypertraceSemanticAttributes.RPC_REQUEST_BODY);
         }
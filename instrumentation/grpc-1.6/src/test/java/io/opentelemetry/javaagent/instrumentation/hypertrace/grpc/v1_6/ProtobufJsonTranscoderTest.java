@@ -0,0 +1,238 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.grpc.v1_6;
+
+import com.google.protobuf.Any;
+import com.google.protobuf.BoolValue;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.BytesValue;
+import com.google.protobuf.DoubleValue;
+import com.google.protobuf.Duration;
+import com.google.protobuf.FieldMask;
+import com.google.protobuf.FloatValue;
+import com.google.protobuf.Int32Value;
+import com.google.protobuf.Int64Value;
+import com.google.protobuf.ListValue;
+import com.google.protobuf.Message;
+import com.google.protobuf.NullValue;
+import com.google.protobuf.StringValue;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.UInt64Value;
+import com.google.protobuf.Value;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.com.google.protobuf.util.JsonFormat;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.hypertrace.example.TranscoderProto.AllTypes;
+import org.hypertrace.example.TranscoderProto.Color;
+import org.hypertrace.example.TranscoderProto.Nested;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+
+/** Compares the transcoder output with the relocated JsonFormat it replaces. */
+public class ProtobufJsonTranscoderTest {
+
+  private static final JsonFormat.Printer printer =
+      JsonFormat.printer().includingDefaultValueFields().preservingProtoFieldNames();
+
+  private static final Nested NESTED =
+      Nested.newBuilder().setName("nested \"quoted\"\n").addValues(1).addValues(-2).build();
+
+  private static Map<String, Message> messages() {
+    Map<String, Message> messages = new LinkedHashMap<>();
+    messages.put("default instance", AllTypes.getDefaultInstance());
+    messages.put(
+        "integers",
+        AllTypes.newBuilder()
+            .setInt32Value(Integer.MIN_VALUE)
+            .setInt64Value(Long.MIN_VALUE)
+            .setUint32Value(-1)
+            .setUint64Value(-1L)
+            .setSint32Value(-7)
+            .setSint64Value(Long.MAX_VALUE)
+            .setFixed32Value(-2)
+            .setFixed64Value(Long.MIN_VALUE)
+            .setSfixed32Value(Integer.MAX_VALUE)
+            .setSfixed64Value(-9007199254740993L)
+            .addRepeatedInt64(1)
+            .addRepeatedInt64(-1)
+            .build());
+    messages.put(
+        "floating point",
+        AllTypes.newBuilder()
+            .setFloatValue(0.1f)
+            .setDoubleValue(1e-300)
+            .addRepeatedDouble(Double.NaN)
+            .addRepeatedDouble(Double.POSITIVE_INFINITY)
+            .addRepeatedDouble(Double.NEGATIVE_INFINITY)
+            .addRepeatedDouble(-0.0)
+            .addRepeatedDouble(1234567.125)
+            .build());
+    messages.put("float NaN", AllTypes.newBuilder().setFloatValue(Float.NaN).build());
+    messages.put(
+        "strings and bytes",
+        AllTypes.newBuilder()
+            .setStringValue("unicode \u00e9\u4e2d\ud83d\ude00 control \u0001\t\\ </script> \u2028")
+            .setBytesValue(ByteString.copyFrom(new byte[] {0, -1, 127, -128, 62, 63}))
+            .addRepeatedString("")
+            .addRepeatedString("a'b")
+            .setBoolValue(true)
+            .build());
+    messages.put(
+        "enums",
+        AllTypes.newBuilder()
+            .setColor(Color.GREEN)
+            .addRepeatedColor(Color.RED)
+            .addRepeatedColorValue(42)
+            .addRepeatedColor(Color.COLOR_UNSPECIFIED)
+            .build());
+    messages.put("unknown enum value", AllTypes.newBuilder().setColorValue(-5).build());
+    messages.put(
+        "nested messages",
+        AllTypes.newBuilder()
+            .setNested(NESTED)
+            .addRepeatedNested(NESTED)
+            .addRepeatedNested(Nested.getDefaultInstance())
+            .build());
+    messages.put(
+        "maps",
+        AllTypes.newBuilder()
+            .putStringMap("b", 2)
+            .putStringMap("a", -1)
+            .putInt64Map(Long.MIN_VALUE, NESTED)
+            .putInt64Map(3, Nested.getDefaultInstance())
+            .putBoolMap(true, "yes")
+            .putBoolMap(false, "no")
+            .putValueMap("null", Value.newBuilder().setNullValue(NullValue.NULL_VALUE).build())
+            .putValueMap("number", Value.newBuilder().setNumberValue(2.5).build())
+            .build());
+    messages.put("oneof string", AllTypes.newBuilder().setChoiceString("").build());
+    messages.put("oneof message", AllTypes.newBuilder().setChoiceNested(NESTED).build());
+    messages.put(
+        "timestamps and durations",
+        AllTypes.newBuilder()
+            .setTimestamp(Timestamp.newBuilder().setSeconds(-62135596800L).setNanos(1000))
+            .setDuration(Duration.newBuilder().setSeconds(-3).setNanos(-500_000_000))
+            .build());
+    messages.put(
+        "timestamp nanos",
+        AllTypes.newBuilder()
+            .setTimestamp(Timestamp.newBuilder().setSeconds(1700000000L).setNanos(123456789))
+            .setDuration(Duration.newBuilder().setNanos(120_000_000))
+            .build());
+    messages.put(
+        "timestamp millis",
+        AllTypes.newBuilder()
+            .setTimestamp(Timestamp.newBuilder().setSeconds(253402300799L).setNanos(5_000_000))
+            .setDuration(Duration.newBuilder().setSeconds(315576000000L).setNanos(7000))
+            .build());
+    messages.put(
+        "struct, value and list",
+        AllTypes.newBuilder()
+            .setStructValue(
+                Struct.newBuilder()
+                    .putFields("string", Value.newBuilder().setStringValue("s").build())
+                    .putFields("bool", Value.newBuilder().setBoolValue(false).build())
+                    .putFields(
+                        "struct",
+                        Value.newBuilder()
+                            .setStructValue(
+                                Struct.newBuilder()
+                                    .putFields(
+                                        "list",
+                                        Value.newBuilder()
+                                            .setListValue(ListValue.getDefaultInstance())
+                                            .build()))
+                            .build()))
+            .setValue(Value.newBuilder().setNullValue(NullValue.NULL_VALUE))
+            .setListValue(
+                ListValue.newBuilder()
+                    .addValues(Value.newBuilder().setNumberValue(1))
+                    .addValues(Value.newBuilder().setStringValue("two")))
+            .build());
+    messages.put(
+        "wrappers",
+        AllTypes.newBuilder()
+            .setInt32Wrapper(Int32Value.newBuilder().setValue(-1))
+            .setInt64Wrapper(Int64Value.newBuilder().setValue(Long.MAX_VALUE))
+            .setUint64Wrapper(UInt64Value.newBuilder().setValue(-1L))
+            .setFloatWrapper(FloatValue.newBuilder().setValue(Float.NEGATIVE_INFINITY))
+            .setDoubleWrapper(DoubleValue.newBuilder().setValue(0.5))
+            .setBoolWrapper(BoolValue.getDefaultInstance())
+            .setStringWrapper(StringValue.newBuilder().setValue("wrapped"))
+            .setBytesWrapper(BytesValue.newBuilder().setValue(ByteString.copyFromUtf8("bytes")))
+            .build());
+    messages.put(
+        "field mask",
+        AllTypes.newBuilder()
+            .setFieldMask(FieldMask.newBuilder().addPaths("nested.name").addPaths("int64_value"))
+            .build());
+    return messages;
+  }
+
+  @TestFactory
+  public Stream<DynamicTest> matchesJsonFormat() {
+    return messages().entrySet().stream()
+        .map(
+            entry ->
+                DynamicTest.dynamicTest(
+                    entry.getKey(),
+                    () ->
+                        Assertions.assertEquals(
+                            printWithJsonFormat(entry.getValue()),
+                            ProtobufJsonTranscoder.toJson(entry.getValue(), Integer.MAX_VALUE))));
+  }
+
+  @TestFactory
+  public Stream<DynamicTest> truncatesToMaxLength() {
+    return messages().entrySet().stream()
+        .map(
+            entry ->
+                DynamicTest.dynamicTest(
+                    entry.getKey(),
+                    () -> {
+                      String expected = printWithJsonFormat(entry.getValue());
+                      for (int maxLength :
+                          Arrays.asList(
+                              0, 1, 17, expected.length() / 2, expected.length() - 1)) {
+                        Assertions.assertEquals(
+                            expected.substring(0, maxLength),
+                            ProtobufJsonTranscoder.toJson(entry.getValue(), maxLength));
+                      }
+                      Assertions.assertEquals(
+                          expected,
+                          ProtobufJsonTranscoder.toJson(entry.getValue(), expected.length()));
+                    }));
+  }
+
+  @Test
+  public void anyIsLeftToJsonFormat() {
+    AllTypes message =
+        AllTypes.newBuilder().setAny(Any.pack(Int32Value.newBuilder().setValue(1).build())).build();
+
+    // the type of the packed message cannot be resolved by the transcoder
+    Assertions.assertNull(ProtobufJsonTranscoder.toJson(message, Integer.MAX_VALUE));
+  }
+
+  private static String printWithJsonFormat(Message message) throws Exception {
+    return printer.print(ProtobufMessageConverter.convertToRelocatedDynamicMessage(message));
+  }
+}
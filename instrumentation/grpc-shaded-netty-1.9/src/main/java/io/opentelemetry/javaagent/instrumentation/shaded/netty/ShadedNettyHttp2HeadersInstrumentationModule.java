@@ -21,16 +21,23 @@ import io.opentelemetry.javaagent.extension.instrumentation.InstrumentationModul
 import io.opentelemetry.javaagent.extension.instrumentation.TypeInstrumentation;
 import java.util.Collections;
 import java.util.List;
+import org.hypertrace.agent.core.config.InstrumentationConfig;
 
 @AutoService(InstrumentationModule.class)
 public final class ShadedNettyHttp2HeadersInstrumentationModule extends InstrumentationModule {
 
+  private static final String PRIMARY = "grpc-netty";
+  private static final String[] OTHER = {"ht", "grpc-netty-ht"};
+
   public ShadedNettyHttp2HeadersInstrumentationModule() {
-    super("grpc-netty", "ht", "grpc-netty-ht");
+    super(PRIMARY, OTHER);
   }
 
   @Override
   public List<TypeInstrumentation> typeInstrumentations() {
+    if (!InstrumentationConfig.ConfigProvider.isModuleEnabled(PRIMARY, OTHER)) {
+      return Collections.emptyList();
+    }
     return Collections.singletonList(new ShadedNettyUtilsInstrumentation());
   }
 }
@@ -3,6 +3,7 @@ plugins {
     id("net.bytebuddy.byte-buddy")
     id("io.opentelemetry.instrumentation.auto-instrumentation")
     muzzle
+    id("me.champeau.jmh")
 }
 
 evaluationDependsOn(":javaagent-tooling")
@@ -21,6 +22,23 @@ afterEvaluate{
     ).configure()
 }
 
+jmh {
+    profilers.add("gc")
+}
+
+// -PjmhAgent attaches the agent to the benchmark forks, to measure the overhead of the stream advice
+if (project.hasProperty("jmhAgent")) {
+    jmh {
+        jvmArgsAppend.add(provider {
+            val agentJar = project(":javaagent").tasks.named<Jar>("shadowJar").get()
+            "-javaagent:${agentJar.archiveFile.get().asFile.absolutePath}"
+        })
+    }
+    tasks.named("jmh") {
+        dependsOn(":javaagent:shadowJar")
+    }
+}
+
 val versions: Map<String, String> by extra
 
 dependencies {
@@ -0,0 +1,118 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.java.outputstream;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Write throughput of streams that never carry a capture buffer, every {@link
+ * java.io.OutputStream} subclass is advised by the agent. Run with {@code ./gradlew
+ * :instrumentation:java-streams:jmh} and with {@code -PjmhAgent}, which attaches the agent to the
+ * benchmark forks, to compare the two.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamWriteBenchmark {
+
+  /** The files are rewound once they reach this size, so that the disk does not fill up. */
+  private static final long MAX_FILE_SIZE = 64 * 1024 * 1024;
+
+  @Param({"16", "1024"})
+  int writeSize;
+
+  private byte[] data;
+  private File file;
+  private File bufferedFile;
+  private FileOutputStream fileOutputStream;
+  private FileOutputStream bufferedFileOutputStream;
+  private BufferedOutputStream bufferedOutputStream;
+  private long written;
+  private long bufferedWritten;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    data = new byte[writeSize];
+    file = File.createTempFile("stream-write-benchmark", ".bin");
+    bufferedFile = File.createTempFile("stream-write-benchmark-buffered", ".bin");
+    fileOutputStream = new FileOutputStream(file);
+    bufferedFileOutputStream = new FileOutputStream(bufferedFile);
+    bufferedOutputStream = new BufferedOutputStream(bufferedFileOutputStream);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    fileOutputStream.close();
+    bufferedOutputStream.close();
+    file.delete();
+    bufferedFile.delete();
+  }
+
+  @Benchmark
+  public void fileOutputStream() throws IOException {
+    fileOutputStream.write(data);
+    written += data.length;
+    if (written >= MAX_FILE_SIZE) {
+      fileOutputStream.getChannel().position(0);
+      written = 0;
+    }
+  }
+
+  @Benchmark
+  public void bufferedOutputStream() throws IOException {
+    bufferedOutputStream.write(data);
+    bufferedWritten += data.length;
+    if (bufferedWritten >= MAX_FILE_SIZE) {
+      rewindBuffered();
+    }
+  }
+
+  @Benchmark
+  public void bufferedOutputStreamSingleByte() throws IOException {
+    bufferedOutputStream.write(1);
+    bufferedWritten++;
+    if (bufferedWritten >= MAX_FILE_SIZE) {
+      rewindBuffered();
+    }
+  }
+
+  private void rewindBuffered() throws IOException {
+    bufferedOutputStream.flush();
+    bufferedFileOutputStream.getChannel().position(0);
+    bufferedWritten = 0;
+  }
+}
@@ -37,8 +37,10 @@ import java.util.List;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
+import org.hypertrace.agent.core.config.InstrumentationConfig;
 import org.hypertrace.agent.core.instrumentation.HypertraceCallDepthThreadLocalMap;
 import org.hypertrace.agent.core.instrumentation.SpanAndBuffer;
+import org.hypertrace.agent.core.instrumentation.StreamCaptureRegistry;
 
 /**
  * {@link InputStream} instrumentation. The type matcher applies to all implementations. However
@@ -56,12 +58,18 @@ import org.hypertrace.agent.core.instrumentation.SpanAndBuffer;
 @AutoService(InstrumentationModule.class)
 public class InputStreamInstrumentationModule extends InstrumentationModule {
 
+  private static final String PRIMARY = "inputstream";
+  private static final String[] OTHER = {"ht"};
+
   public InputStreamInstrumentationModule() {
-    super("inputstream", "ht");
+    super(PRIMARY, OTHER);
   }
 
   @Override
   public List<TypeInstrumentation> typeInstrumentations() {
+    if (!InstrumentationConfig.ConfigProvider.isModuleEnabled(PRIMARY, OTHER)) {
+      return Collections.emptyList();
+    }
     return Collections.singletonList(new InputStreamInstrumentation());
   }
 
@@ -256,7 +264,7 @@ public class InputStreamInstrumentationModule extends InstrumentationModule {
   public static class InputStream_Available {
     @Advice.OnMethodExit(suppress = Throwable.class)
     public static void exit(@Advice.This InputStream thizz, @Advice.Return int available) {
-      if (available != 0) {
+      if (available != 0 || !StreamCaptureRegistry.mayCapture(thizz)) {
         return;
       }
       VirtualField<InputStream, SpanAndBuffer> contextStore =
@@ -271,6 +279,7 @@ public class InputStreamInstrumentationModule extends InstrumentationModule {
             spanAndBuffer.charset,
             spanAndBuffer.contentEncoding);
         contextStore.set(thizz, null);
+        StreamCaptureRegistry.unregister(thizz);
       }
     }
   }
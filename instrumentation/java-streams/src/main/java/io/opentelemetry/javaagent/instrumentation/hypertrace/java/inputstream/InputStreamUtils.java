@@ -23,22 +23,20 @@ import io.opentelemetry.api.trace.SpanBuilder;
 import io.opentelemetry.api.trace.Tracer;
 import io.opentelemetry.context.Context;
 import io.opentelemetry.instrumentation.api.util.VirtualField;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.nio.charset.Charset;
-import java.util.zip.GZIPInputStream;
+import java.util.Arrays;
+import java.util.List;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
 import org.hypertrace.agent.core.instrumentation.HypertraceCallDepthThreadLocalMap;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.SpanAndBuffer;
-import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
-import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
+import org.hypertrace.agent.core.instrumentation.SpanAttributeReader;
+import org.hypertrace.agent.core.instrumentation.StreamCaptureRegistry;
+import org.hypertrace.agent.core.instrumentation.utils.ContentEncodingUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,61 +49,32 @@ public class InputStreamUtils {
   private static final Tracer TRACER =
       GlobalOpenTelemetry.get().getTracer("org.hypertrace.java.inputstream");
 
-  private static Method getAttribute = null;
-  private static boolean hasGetAttributeMethod = true;
+  /** Attributes of the parent span that are copied to the additional data span. */
+  private static final List<AttributeKey<String>> PARENT_ATTRIBUTES =
+      Arrays.asList(
+          HypertraceSemanticAttributes.HTTP_REQUEST_HEADER_CONTENT_TYPE,
+          HypertraceSemanticAttributes.HTTP_RESPONSE_HEADER_CONTENT_TYPE,
+          HypertraceSemanticAttributes.HTTP_RESPONSE_HEADER_CONTENT_ENCODING);
 
   /**
    * Adds an attribute to span. If the span is ended it adds the attributed to a newly created
-   * child.
+   * child. Nothing is added if the span has not been sampled.
    */
   public static void addAttribute(Span span, AttributeKey<String> attributeKey, String value) {
     if (span.isRecording()) {
       span.setAttribute(attributeKey, value);
-    } else {
+    } else if (CapturePolicy.isCaptured(span)) {
       SpanBuilder spanBuilder =
           TRACER
               .spanBuilder(HypertraceSemanticAttributes.ADDITIONAL_DATA_SPAN_NAME)
               .setParent(Context.root().with(span))
               .setAttribute(attributeKey, value);
 
-      // Also add content type if present
-      if (span.getClass().getName().equals("io.opentelemetry.sdk.trace.SdkSpan")) {
-        try {
-          if (getAttribute == null) {
-            if (hasGetAttributeMethod) {
-              getAttribute = span.getClass().getDeclaredMethod("getAttribute", AttributeKey.class);
-              getAttribute.setAccessible(true);
-            }
-          }
-          if (getAttribute != null) {
-            Object reqContentType =
-                getAttribute.invoke(
-                    span, HypertraceSemanticAttributes.HTTP_REQUEST_HEADER_CONTENT_TYPE);
-            if (reqContentType != null) {
-              spanBuilder.setAttribute("http.request.header.content-type", (String) reqContentType);
-            }
-            Object resContentType =
-                getAttribute.invoke(
-                    span, HypertraceSemanticAttributes.HTTP_RESPONSE_HEADER_CONTENT_TYPE);
-            if (resContentType != null) {
-              spanBuilder.setAttribute(
-                  "http.response.header.content-type", (String) resContentType);
-            }
-            Object resContentEncoding =
-                getAttribute.invoke(
-                    span, HypertraceSemanticAttributes.HTTP_RESPONSE_HEADER_CONTENT_ENCODING);
-            if (resContentEncoding != null) {
-              spanBuilder.setAttribute(
-                  "http.response.header.content-encoding", (String) resContentEncoding);
-            }
-          }
-        } catch (IllegalAccessException | InvocationTargetException e) {
-          // ignore and continue
-          log.debug("Could not invoke getAttribute on SdkSpan", e);
-        } catch (NoSuchMethodException e) {
-          log.debug("getAttribute method not found in SdkSpan class", e);
-          // do not attempt to get this method again
-          hasGetAttributeMethod = false;
+      // Also add content type and encoding if present
+      for (AttributeKey<String> key : PARENT_ATTRIBUTES) {
+        String parentValue = SpanAttributeReader.getAttribute(span, key);
+        if (parentValue != null) {
+          spanBuilder.setAttribute(key, parentValue);
         }
       }
       spanBuilder.startSpan().end();
@@ -118,17 +87,16 @@ public class InputStreamUtils {
       ByteArrayOutputStream buffer,
       Charset charset,
       String contentEncoding) {
+    if (!CapturePolicy.isCaptured(span)) {
+      return;
+    }
     try {
       byte[] data = buffer.toByteArray();
 
-      // if content-encoding is gzip,
-      if (contentEncoding != null && contentEncoding.toLowerCase().contains("gzip")) {
-        try (GZIPInputStream gzipInputStream =
-            new GZIPInputStream(new ByteArrayInputStream(data))) {
-          InputStreamReader reader = new InputStreamReader(gzipInputStream, charset);
-          String body = readInputStream(reader, charset);
-          InputStreamUtils.addAttribute(span, attributeKey, body);
-        }
+      // if content-encoding is gzip or deflate,
+      if (ContentEncodingUtils.isCompressed(contentEncoding)) {
+        String body = ContentEncodingUtils.decode(data, contentEncoding, charset);
+        InputStreamUtils.addAttribute(span, attributeKey, body);
       } else {
         // No decompression needed, convert directly to string
         String body = new String(data, charset);
@@ -143,6 +111,9 @@ public class InputStreamUtils {
 
   public static SpanAndBuffer check(
       InputStream inputStream, VirtualField<InputStream, SpanAndBuffer> contextStore) {
+    if (!StreamCaptureRegistry.mayCapture(inputStream)) {
+      return null;
+    }
     SpanAndBuffer spanAndBuffer = contextStore.get(inputStream);
     if (spanAndBuffer == null) {
       return null;
@@ -167,6 +138,7 @@ public class InputStreamUtils {
           spanAndBuffer.charset,
           spanAndBuffer.contentEncoding);
       contextStore.set(inputStream, null);
+      StreamCaptureRegistry.unregister(inputStream);
     }
   }
 
@@ -182,6 +154,7 @@ public class InputStreamUtils {
           spanAndBuffer.charset,
           spanAndBuffer.contentEncoding);
       VirtualField.find(InputStream.class, SpanAndBuffer.class).set(inputStream, null);
+      StreamCaptureRegistry.unregister(inputStream);
     }
   }
 
@@ -203,6 +176,7 @@ public class InputStreamUtils {
           spanAndBuffer.charset,
           spanAndBuffer.contentEncoding);
       contextStore.set(inputStream, null);
+      StreamCaptureRegistry.unregister(inputStream);
     }
   }
 
@@ -214,6 +188,7 @@ public class InputStreamUtils {
       throws IOException {
     spanAndBuffer.byteArrayBuffer.write(b);
     contextStore.set(inputStream, null);
+    StreamCaptureRegistry.unregister(inputStream);
   }
 
   public static void readNBytes(
@@ -232,21 +207,9 @@ public class InputStreamUtils {
           spanAndBuffer.charset,
           spanAndBuffer.contentEncoding);
       contextStore.set(inputStream, null);
+      StreamCaptureRegistry.unregister(inputStream);
     } else {
       spanAndBuffer.byteArrayBuffer.write(b, off, read);
     }
   }
-
-  public static String readInputStream(InputStreamReader inputReader, Charset charset)
-      throws IOException {
-    BoundedByteArrayOutputStream outputStream = BoundedBuffersFactory.createStream(charset);
-    try (OutputStreamWriter writer = new OutputStreamWriter(outputStream, charset)) {
-      int c;
-      while ((c = inputReader.read()) != -1) {
-        writer.write(c);
-      }
-      writer.flush();
-    }
-    return outputStream.toStringWithSuppliedCharset();
-  }
 }
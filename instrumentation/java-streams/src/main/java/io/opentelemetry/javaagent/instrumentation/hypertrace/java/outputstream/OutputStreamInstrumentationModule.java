@@ -35,7 +35,9 @@ import java.util.List;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
+import org.hypertrace.agent.core.config.InstrumentationConfig;
 import org.hypertrace.agent.core.instrumentation.HypertraceCallDepthThreadLocalMap;
+import org.hypertrace.agent.core.instrumentation.StreamCaptureRegistry;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
 
 /**
@@ -45,17 +47,24 @@ import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputSt
  *
  * <p>If the stream is in the {@link io.opentelemetry.instrumentation.api.util.VirtualField} then
  * arguments to write methods are also passed to the buffered stream (value) from the map. The
- * buffered stream is then used by other instrumentations to capture body.
+ * buffered stream is then used by other instrumentations to capture body. Streams that are not
+ * registered in the {@link StreamCaptureRegistry} skip the lookup.
  */
 @AutoService(InstrumentationModule.class)
 public class OutputStreamInstrumentationModule extends InstrumentationModule {
 
+  private static final String PRIMARY = "outputstream";
+  private static final String[] OTHER = {"ht"};
+
   public OutputStreamInstrumentationModule() {
-    super("outputstream", "ht");
+    super(PRIMARY, OTHER);
   }
 
   @Override
   public List<TypeInstrumentation> typeInstrumentations() {
+    if (!InstrumentationConfig.ConfigProvider.isModuleEnabled(PRIMARY, OTHER)) {
+      return Collections.emptyList();
+    }
     return Collections.singletonList(new OutputStreamInstrumentation());
   }
 
@@ -96,6 +105,9 @@ public class OutputStreamInstrumentationModule extends InstrumentationModule {
     @Advice.OnMethodEnter(suppress = Throwable.class)
     public static BoundedByteArrayOutputStream enter(
         @Advice.This OutputStream thizz, @Advice.Argument(0) int b) {
+      if (!StreamCaptureRegistry.mayCapture(thizz)) {
+        return null;
+      }
       BoundedByteArrayOutputStream buffer =
           VirtualField.find(OutputStream.class, BoundedByteArrayOutputStream.class).get(thizz);
       if (buffer == null) {
@@ -122,6 +134,9 @@ public class OutputStreamInstrumentationModule extends InstrumentationModule {
     @Advice.OnMethodEnter(suppress = Throwable.class)
     public static BoundedByteArrayOutputStream enter(
         @Advice.This OutputStream thizz, @Advice.Argument(0) byte b[]) throws IOException {
+      if (!StreamCaptureRegistry.mayCapture(thizz)) {
+        return null;
+      }
       BoundedByteArrayOutputStream buffer =
           VirtualField.find(OutputStream.class, BoundedByteArrayOutputStream.class).get(thizz);
       if (buffer == null) {
@@ -151,6 +166,9 @@ public class OutputStreamInstrumentationModule extends InstrumentationModule {
         @Advice.Argument(0) byte b[],
         @Advice.Argument(1) int off,
         @Advice.Argument(2) int len) {
+      if (!StreamCaptureRegistry.mayCapture(thizz)) {
+        return null;
+      }
       BoundedByteArrayOutputStream buffer =
           VirtualField.find(OutputStream.class, BoundedByteArrayOutputStream.class).get(thizz);
       if (buffer == null) {
@@ -20,6 +20,8 @@ import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.util.AttributeKey;
 import java.nio.charset.Charset;
 import java.util.Map;
+import org.hypertrace.agent.core.filter.RequestBodyEvaluation;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
 
@@ -36,6 +38,22 @@ public class AttributeKeys {
       io.opentelemetry.javaagent.instrumentation.netty.v4_0.AttributeKeys.attributeKey(
           AttributeKeys.class.getName() + ".request-headers");
 
+  public static final AttributeKey<String> REQUEST_BODY =
+      io.opentelemetry.javaagent.instrumentation.netty.v4_0.AttributeKeys.attributeKey(
+          AttributeKeys.class.getName() + ".request-body");
+
+  public static final AttributeKey<RequestBodyEvaluation> REQUEST_BODY_EVALUATION =
+      io.opentelemetry.javaagent.instrumentation.netty.v4_0.AttributeKeys.attributeKey(
+          AttributeKeys.class.getName() + ".request-body-evaluation");
+
+  public static final AttributeKey<CapturePolicy.Decision> CAPTURE_DECISION =
+      io.opentelemetry.javaagent.instrumentation.netty.v4_0.AttributeKeys.attributeKey(
+          AttributeKeys.class.getName() + ".capture-decision");
+
+  public static final AttributeKey<String> CAPTURE_ENDPOINT =
+      io.opentelemetry.javaagent.instrumentation.netty.v4_0.AttributeKeys.attributeKey(
+          AttributeKeys.class.getName() + ".capture-endpoint");
+
   public static final AttributeKey<String> RESPONSE_HEADER_CONTENT_ENCODING =
       io.opentelemetry.javaagent.instrumentation.netty.v4_0.AttributeKeys.attributeKey(
           HypertraceSemanticAttributes.HTTP_RESPONSE_HEADER_CONTENT_ENCODING.getKey());
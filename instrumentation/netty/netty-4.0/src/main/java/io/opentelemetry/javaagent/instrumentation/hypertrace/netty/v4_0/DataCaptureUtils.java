@@ -25,20 +25,62 @@ import io.netty.util.Attribute;
 import io.netty.util.AttributeKey;
 import io.opentelemetry.api.trace.Span;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.InputStream;
 import java.nio.charset.Charset;
-import java.util.zip.GZIPInputStream;
+import org.hypertrace.agent.core.config.EnvironmentProperties;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
+import org.hypertrace.agent.core.instrumentation.utils.ContentEncodingUtils;
 import org.hypertrace.agent.core.instrumentation.utils.ContentTypeCharsetUtils;
 
 public class DataCaptureUtils {
 
+  /**
+   * Keep retained slices of the received buffers instead of copying the body, see {@link
+   * RetainedByteBufOutputStream}.
+   */
+  private static final boolean RETAIN_BUFFERS =
+      EnvironmentProperties.getBoolean("ht.data.capture.netty.retain.buffers", false);
+
   private DataCaptureUtils() {}
 
+  /** Sets the buffer used by {@link #captureBody} to the channel attribute. */
+  public static void createBuffer(
+      Channel channel,
+      AttributeKey<BoundedByteArrayOutputStream> attributeKey,
+      int contentLength,
+      Charset charset) {
+    BoundedByteArrayOutputStream previous =
+        channel.attr(attributeKey).getAndSet(newBuffer(channel, contentLength, charset));
+    if (previous != null) {
+      previous.release();
+    }
+  }
+
+  /** Returns a new buffer for a body, see {@link #appendBody} and {@link #setBody}. */
+  public static BoundedByteArrayOutputStream newBuffer(
+      Channel channel, int contentLength, Charset charset) {
+    return RETAIN_BUFFERS
+        ? new RetainedByteBufOutputStream(channel.alloc(), BoundedBuffersFactory.MAX_SIZE, charset)
+        : BoundedBuffersFactory.createStream(contentLength, charset);
+  }
+
+  /** Releases body buffers that have not been captured e.g. when the channel is closed. */
+  public static void releaseBuffers(Channel channel) {
+    releaseBuffer(channel, AttributeKeys.REQUEST_BODY_BUFFER);
+    releaseBuffer(channel, AttributeKeys.RESPONSE_BODY_BUFFER);
+  }
+
+  private static void releaseBuffer(
+      Channel channel, AttributeKey<BoundedByteArrayOutputStream> attributeKey) {
+    BoundedByteArrayOutputStream buffer = channel.attr(attributeKey).getAndSet(null);
+    if (buffer != null) {
+      buffer.release();
+    }
+  }
+
   public static void captureBody(
       Span span,
       Channel channel,
@@ -54,41 +96,109 @@ public class DataCaptureUtils {
       return;
     }
 
-    ByteBuf content = castToBuf(httpContentOrBuffer);
-    if (content != null && content.isReadable()) {
-      final ByteArrayOutputStream finalBuffer = buffer;
-      content.forEachByte(
-          value -> {
-            finalBuffer.write(value);
-            return true;
-          });
+    appendBody(buffer, httpContentOrBuffer);
+    if (httpContentOrBuffer instanceof LastHttpContent) {
+      bufferAttr.remove();
+      setBody(span, attributeKey.name(), buffer, contentEncoding, charset);
+    }
+  }
+
+  /**
+   * Appends the content to the body buffer of the channel attribute like {@link #captureBody}, but
+   * returns the body instead of setting it to the span.
+   *
+   * @return the body after the last content or null
+   */
+  public static String readBody(
+      Channel channel,
+      AttributeKey<BoundedByteArrayOutputStream> attributeKey,
+      Object httpContentOrBuffer,
+      String contentEncoding,
+      Charset charset) {
+    Attribute<BoundedByteArrayOutputStream> bufferAttr = channel.attr(attributeKey);
+    BoundedByteArrayOutputStream buffer = bufferAttr.get();
+    if (buffer == null) {
+      return null;
     }
 
+    appendBody(buffer, httpContentOrBuffer);
     if (httpContentOrBuffer instanceof LastHttpContent) {
       bufferAttr.remove();
-      try {
-        byte[] data = buffer.toByteArray();
+      return decodeBody(buffer, contentEncoding, charset);
+    }
+    return null;
+  }
 
-        String body;
-        if (charset == null) {
-          charset = ContentTypeCharsetUtils.getDefaultCharset();
-        }
-        // Decode based on content encoding
-        if (contentEncoding != null && contentEncoding.toLowerCase().contains("gzip")) {
-          try (GZIPInputStream gzipStream = new GZIPInputStream(new ByteArrayInputStream(data))) {
-            InputStreamReader reader = new InputStreamReader(gzipStream, charset);
-            body = readInputStream(reader, charset);
-          }
-        } else {
-          body = new String(data, charset);
+  /** Appends the content of a {@link HttpContent} or {@link ByteBuf} to the body buffer. */
+  public static void appendBody(BoundedByteArrayOutputStream buffer, Object httpContentOrBuffer) {
+    ByteBuf content = castToBuf(httpContentOrBuffer);
+    if (content == null || !content.isReadable()) {
+      return;
+    }
+    if (buffer instanceof RetainedByteBufOutputStream) {
+      ((RetainedByteBufOutputStream) buffer).retain(content);
+    } else {
+      // bulk copy of at most the remaining capacity
+      int length =
+          Math.min(content.readableBytes(), BoundedBuffersFactory.MAX_SIZE - buffer.size());
+      if (length > 0) {
+        try {
+          content.getBytes(content.readerIndex(), buffer, length);
+        } catch (IOException e) {
+          // should not happen, the buffer does not throw
         }
-        span.setAttribute(attributeKey.name(), body);
-      } catch (IOException e) {
-        // eg: unsupported charset
       }
     }
   }
 
+  /**
+   * Decodes the buffered body, sets it to the span attribute and releases the buffer.
+   *
+   * @return the body or null if it could not be decoded
+   */
+  public static String setBody(
+      Span span,
+      String attributeName,
+      BoundedByteArrayOutputStream buffer,
+      String contentEncoding,
+      Charset charset) {
+    String body = decodeBody(buffer, contentEncoding, charset);
+    if (body != null) {
+      span.setAttribute(attributeName, body);
+    }
+    return body;
+  }
+
+  /**
+   * Decodes the buffered body and releases the buffer.
+   *
+   * @return the body or null if it could not be decoded
+   */
+  public static String decodeBody(
+      BoundedByteArrayOutputStream buffer, String contentEncoding, Charset charset) {
+    try {
+      if (charset == null) {
+        charset = ContentTypeCharsetUtils.getDefaultCharset();
+      }
+      if (ContentEncodingUtils.isCompressed(contentEncoding)) {
+        return ContentEncodingUtils.decode(newInputStream(buffer), contentEncoding, charset);
+      }
+      return buffer.toString(charset.name());
+    } catch (IOException e) {
+      // eg: unsupported charset
+      return null;
+    } finally {
+      buffer.release();
+    }
+  }
+
+  private static InputStream newInputStream(BoundedByteArrayOutputStream buffer) {
+    if (buffer instanceof RetainedByteBufOutputStream) {
+      return ((RetainedByteBufOutputStream) buffer).newInputStream();
+    }
+    return new ByteArrayInputStream(buffer.toByteArray());
+  }
+
   private static ByteBuf castToBuf(Object msg) {
     if (msg instanceof ByteBuf) {
       return (ByteBuf) msg;
@@ -99,6 +209,15 @@ public class DataCaptureUtils {
     return null;
   }
 
+  /**
+   * Returns the endpoint the capture budget of a request URI is charged for. Netty knows no routes,
+   * so only a path with a configured budget is an endpoint of its own.
+   */
+  public static String endpoint(String uri) {
+    int query = uri.indexOf('?');
+    return CapturePolicy.get().pathEndpoint(query < 0 ? uri : uri.substring(0, query));
+  }
+
   // see io.netty.handler.codec.http.HttpUtil
   public static CharSequence getContentType(HttpMessage message) {
     return message.headers().get("content-type");
@@ -111,17 +230,4 @@ public class DataCaptureUtils {
   public static CharSequence getContentEncoding(HttpMessage message) {
     return message.headers().get("content-encoding");
   }
-
-  public static String readInputStream(InputStreamReader inputReader, Charset charset)
-      throws IOException {
-    BoundedByteArrayOutputStream outputStream = BoundedBuffersFactory.createStream(charset);
-    try (OutputStreamWriter writer = new OutputStreamWriter(outputStream, charset)) {
-      int c;
-      while ((c = inputReader.read()) != -1) {
-        writer.write(c);
-      }
-      writer.flush();
-    }
-    return outputStream.toStringWithSuppliedCharset();
-  }
 }
@@ -37,9 +37,9 @@ import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.client.H
 import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.client.HttpClientResponseTracingHandler;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.client.HttpClientTracingHandler;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.server.HttpServerBlockingRequestHandler;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.server.HttpServerDataCaptureHandler;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.server.HttpServerRequestTracingHandler;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.server.HttpServerResponseTracingHandler;
-import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.server.HttpServerTracingHandler;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
@@ -91,26 +91,23 @@ public class NettyChannelPipelineInstrumentation implements TypeInstrumentation
         // Server pipeline handlers
         if (handler instanceof HttpServerCodec) {
           // replace OTEL response handler because it closes request span before body (especially
-          // chunked) is captured
+          // chunked) is captured, one shared handler captures and evaluates the exchange in a
+          // single pass
           pipeline.replace(
               io.opentelemetry.javaagent.instrumentation.netty.v4_0.server.HttpServerTracingHandler
                   .class
                   .getName(),
-              HttpServerTracingHandler.class.getName(),
-              new HttpServerTracingHandler());
+              HttpServerDataCaptureHandler.class.getName(),
+              HttpServerDataCaptureHandler.INSTANCE);
 
           // add OTEL request handler to start spans
           pipeline.addBefore(
-              HttpServerTracingHandler.class.getName(),
+              HttpServerDataCaptureHandler.class.getName(),
               io.opentelemetry.javaagent.instrumentation.netty.v4_0.server
                   .HttpServerRequestTracingHandler.class
                   .getName(),
               new io.opentelemetry.javaagent.instrumentation.netty.v4_0.server
                   .HttpServerRequestTracingHandler());
-
-          pipeline.addLast(
-              HttpServerBlockingRequestHandler.class.getName(),
-              new HttpServerBlockingRequestHandler());
         } else if (handler instanceof HttpRequestDecoder) {
           pipeline.addLast(
               HttpServerRequestTracingHandler.class.getName(),
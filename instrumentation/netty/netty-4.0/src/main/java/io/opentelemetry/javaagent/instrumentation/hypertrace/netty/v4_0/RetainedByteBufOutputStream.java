@@ -0,0 +1,149 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.CompositeByteBuf;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
+
+/**
+ * {@link BoundedByteArrayOutputStream} that keeps retained slices of the captured {@link ByteBuf}s
+ * in a {@link CompositeByteBuf} instead of copying them. The body is decoded once, straight from the
+ * (possibly pooled direct) buffers, when it is finalized.
+ *
+ * <p>The slices keep the original buffers alive, therefore {@link #release()} has to be called
+ * when the body is captured or the channel is closed.
+ */
+public class RetainedByteBufOutputStream extends BoundedByteArrayOutputStream {
+
+  // avoid consolidation (a copy) of the composite buffer for bodies split into many small chunks
+  private static final int MAX_COMPONENTS = 1024;
+
+  private final CompositeByteBuf composite;
+  private boolean released;
+
+  public RetainedByteBufOutputStream(ByteBufAllocator allocator, int maxCapacity, Charset charset) {
+    // the array of the parent stream is never used
+    super(maxCapacity, 0, charset);
+    this.composite = allocator.compositeBuffer(MAX_COMPONENTS);
+  }
+
+  /** Retains a slice of the readable bytes of the buffer, capped at the remaining capacity. */
+  public void retain(ByteBuf content) {
+    if (released) {
+      return;
+    }
+    int length = Math.min(content.readableBytes(), maxCapacity - composite.readableBytes());
+    if (length <= 0) {
+      return;
+    }
+    composite.addComponent(content.slice(content.readerIndex(), length).retain());
+    composite.writerIndex(composite.writerIndex() + length);
+  }
+
+  /** Returns a stream over the retained bytes, the stream does not release the buffers. */
+  public InputStream newInputStream() {
+    return new ByteBufInputStream(composite.duplicate());
+  }
+
+  @Override
+  public void write(int b) {
+    if (released || composite.readableBytes() >= maxCapacity) {
+      return;
+    }
+    composite.writeByte(b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    if (released) {
+      return;
+    }
+    len = Math.min(len, maxCapacity - composite.readableBytes());
+    if (len > 0) {
+      composite.writeBytes(b, off, len);
+    }
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    if (released) {
+      return;
+    }
+    composite.getBytes(composite.readerIndex(), out, composite.readableBytes());
+  }
+
+  @Override
+  public int size() {
+    return released ? 0 : composite.readableBytes();
+  }
+
+  @Override
+  public void reset() {
+    if (!released) {
+      composite.removeComponents(0, composite.numComponents());
+      composite.clear();
+    }
+  }
+
+  @Override
+  public byte[] toByteArray() {
+    byte[] data = new byte[size()];
+    if (data.length > 0) {
+      composite.getBytes(composite.readerIndex(), data);
+    }
+    return data;
+  }
+
+  @Override
+  public String toStringWithSuppliedCharset() {
+    return released ? "" : composite.toString(charset);
+  }
+
+  @Override
+  public String toString() {
+    return released ? "" : composite.toString(Charset.defaultCharset());
+  }
+
+  @Override
+  public String toString(String charsetName) throws UnsupportedEncodingException {
+    if (released) {
+      return "";
+    }
+    try {
+      return composite.toString(Charset.forName(charsetName));
+    } catch (IllegalArgumentException e) {
+      throw new UnsupportedEncodingException(charsetName);
+    }
+  }
+
+  /** Releases the retained slices, the stream is empty afterwards. */
+  @Override
+  public void release() {
+    if (!released) {
+      released = true;
+      composite.release();
+    }
+  }
+}
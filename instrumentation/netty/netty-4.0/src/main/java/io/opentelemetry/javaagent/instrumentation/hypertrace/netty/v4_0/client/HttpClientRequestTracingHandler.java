@@ -24,19 +24,19 @@ import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpMessage;
 import io.netty.handler.codec.http.HttpRequest;
-import io.netty.util.Attribute;
 import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.context.Context;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.AttributeKeys;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.DataCaptureUtils;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.NettyInstrumentationName;
 import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
+import org.hypertrace.agent.core.config.CaptureFlags;
 import org.hypertrace.agent.core.config.InstrumentationConfig;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
-import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
-import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
 import org.hypertrace.agent.core.instrumentation.utils.ContentLengthUtils;
 import org.hypertrace.agent.core.instrumentation.utils.ContentTypeCharsetUtils;
 import org.hypertrace.agent.core.instrumentation.utils.ContentTypeUtils;
@@ -63,10 +63,16 @@ public class HttpClientRequestTracingHandler extends ChannelOutboundHandlerAdapt
 
     if (msg instanceof HttpRequest) {
       HttpRequest httpRequest = (HttpRequest) msg;
-
-      Map<String, String> headersMap = headersToMap(httpRequest);
-      if (instrumentationConfig.httpHeaders().request()) {
-        headersMap.forEach(span::setAttribute);
+      String endpoint = DataCaptureUtils.endpoint(httpRequest.getUri());
+      // the decision of the trace is taken again by the response handler
+      CapturePolicy.Decision capture =
+          CapturePolicy.get()
+              .decide(span, NettyInstrumentationName.PRIMARY, NettyInstrumentationName.OTHER);
+      channel.attr(AttributeKeys.CAPTURE_ENDPOINT).set(endpoint);
+
+      if (capture.captureHeaders()
+          && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_HEADERS_REQUEST)) {
+        headersToMap(httpRequest).forEach(span::setAttribute);
       }
 
       // Add service name header to outgoing requests
@@ -77,28 +83,29 @@ public class HttpClientRequestTracingHandler extends ChannelOutboundHandlerAdapt
               ServiceNameHeaderUtils.getClientServiceName());
 
       CharSequence contentType = DataCaptureUtils.getContentType(httpRequest);
-      if (instrumentationConfig.httpBody().request()
+      CharSequence contentLengthHeader = DataCaptureUtils.getContentLength(httpRequest);
+      int contentLength = ContentLengthUtils.parseLength(contentLengthHeader);
+      // the endpoint budget is charged only for a body that is captured
+      if (capture.captureBodies()
+          && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_REQUEST)
           && contentType != null
-          && ContentTypeUtils.shouldCapture(contentType.toString())) {
-
-        CharSequence contentLengthHeader = DataCaptureUtils.getContentLength(httpRequest);
-        int contentLength = ContentLengthUtils.parseLength(contentLengthHeader);
+          && ContentTypeUtils.shouldCapture(contentType.toString())
+          && CapturePolicy.get()
+              .tryCaptureBody(endpoint, contentLengthHeader != null ? contentLength : -1)) {
 
-        String charsetString = ContentTypeUtils.parseCharset(contentType.toString());
-        Charset charset = ContentTypeCharsetUtils.toCharset(charsetString);
+        Charset charset = ContentTypeUtils.getInfo(contentType.toString()).getCharset();
 
-        // set the buffer to capture response body
-        // the buffer is used byt captureBody method
-        Attribute<BoundedByteArrayOutputStream> bufferAttr =
-            ctx.channel().attr(AttributeKeys.REQUEST_BODY_BUFFER);
-        bufferAttr.set(BoundedBuffersFactory.createStream(contentLength, charset));
+        // set the buffer to capture the body
+        // the buffer is used by captureBody method
+        DataCaptureUtils.createBuffer(
+            channel, AttributeKeys.REQUEST_BODY_BUFFER, contentLength, charset);
 
         channel.attr(AttributeKeys.CHARSET).set(charset);
       }
     }
 
     if ((msg instanceof HttpContent || msg instanceof ByteBuf)
-        && instrumentationConfig.httpBody().request()) {
+        && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_REQUEST)) {
       Charset charset = channel.attr(AttributeKeys.CHARSET).get();
       if (charset == null) {
         charset = ContentTypeCharsetUtils.getDefaultCharset();
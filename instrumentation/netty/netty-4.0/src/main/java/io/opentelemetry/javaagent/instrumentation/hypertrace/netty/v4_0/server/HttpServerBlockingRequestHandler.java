@@ -16,6 +16,7 @@
 
 package io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.server;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
@@ -25,21 +26,38 @@ import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.util.Attribute;
 import io.netty.util.ReferenceCountUtil;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.context.Context;
 import io.opentelemetry.instrumentation.netty.v4.common.HttpRequestAndChannel;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.AttributeKeys;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import org.hypertrace.agent.core.filter.FilterResult;
+import org.hypertrace.agent.core.filter.RequestBodyEvaluation;
 import org.hypertrace.agent.filter.FilterRegistry;
+import org.hypertrace.agent.filter.api.Filter;
 
 public class HttpServerBlockingRequestHandler extends ChannelInboundHandlerAdapter {
 
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    ctx.channel().attr(AttributeKeys.REQUEST_BODY_EVALUATION).remove();
+    ctx.channel().attr(AttributeKeys.REQUEST_HEADERS).remove();
+    ctx.channel().attr(AttributeKeys.REQUEST_BODY).remove();
+    super.channelInactive(ctx);
+  }
+
   @Override
   public void channelRead(ChannelHandlerContext ctx, Object msg) {
+    Filter filter = FilterRegistry.getFilter();
+    if (!filter.evaluatesRequestHeaders() && !filter.evaluatesRequestBody()) {
+      ctx.fireChannelRead(msg);
+      return;
+    }
     Channel channel = ctx.channel();
     Context context =
         channel
@@ -54,19 +72,49 @@ public class HttpServerBlockingRequestHandler extends ChannelInboundHandlerAdapt
 
     if (msg instanceof HttpRequest) {
       Attribute<Map<String, String>> headersAttr = channel.attr(AttributeKeys.REQUEST_HEADERS);
-      Map<String, String> headers = headersAttr.getAndRemove();
-      if (headers != null) {
-        FilterResult filterResult =
-            FilterRegistry.getFilter().evaluateRequestHeaders(span, headers);
+      // the headers are kept for a body that is evaluated once it has been read
+      boolean evaluatesBodyLater =
+          filter.evaluatesRequestBody() && !filter.evaluatesRequestBodyIncrementally();
+      Map<String, String> headers =
+          evaluatesBodyLater ? headersAttr.get() : headersAttr.getAndRemove();
+      if (headers != null && filter.evaluatesRequestHeaders()) {
+        FilterResult filterResult = filter.evaluateRequestHeaders(span, headers);
         if (filterResult.shouldBlock()) {
           forbidden(ctx, (HttpRequest) msg, filterResult);
           return;
         }
       }
+      // replaces the evaluation of a previous request on the connection that did not complete
+      channel
+          .attr(AttributeKeys.REQUEST_BODY_EVALUATION)
+          .set(
+              filter.evaluatesRequestBodyIncrementally()
+                  ? filter.startRequestBodyEvaluation(span, headers)
+                  : null);
     }
-    if (msg instanceof HttpContent) {
-      FilterResult filterResult = FilterRegistry.getFilter().evaluateRequestBody(span, null, null);
+    RequestBodyEvaluation bodyEvaluation =
+        msg instanceof HttpContent
+            ? channel.attr(AttributeKeys.REQUEST_BODY_EVALUATION).get()
+            : null;
+    if (bodyEvaluation != null) {
+      FilterResult filterResult = evaluateChunk(bodyEvaluation, (HttpContent) msg);
+      if (filterResult.shouldBlock() || msg instanceof LastHttpContent) {
+        channel.attr(AttributeKeys.REQUEST_BODY_EVALUATION).remove();
+      }
+      if (filterResult.shouldBlock()) {
+        ReferenceCountUtil.release(msg);
+        Attribute<?> requestAttr = channel.attr(AttributeKeys.REQUEST);
+        HttpRequest req = ((HttpRequestAndChannel) (requestAttr.get())).request();
+        forbidden(ctx, req, filterResult);
+        return;
+      }
+    } else if (msg instanceof LastHttpContent && filter.evaluatesRequestBody()) {
+      // evaluated once per request with the body decoded by the request handler
+      String body = channel.attr(AttributeKeys.REQUEST_BODY).getAndRemove();
+      Map<String, String> headers = channel.attr(AttributeKeys.REQUEST_HEADERS).getAndRemove();
+      FilterResult filterResult = filter.evaluateRequestBody(span, body, headers);
       if (filterResult.shouldBlock()) {
+        ReferenceCountUtil.release(msg);
         Attribute<?> requestAttr = channel.attr(AttributeKeys.REQUEST);
         HttpRequest req = ((HttpRequestAndChannel) (requestAttr.get())).request();
         forbidden(ctx, req, filterResult);
@@ -76,6 +124,23 @@ public class HttpServerBlockingRequestHandler extends ChannelInboundHandlerAdapt
     ctx.fireChannelRead(msg);
   }
 
+  static FilterResult evaluateChunk(
+      RequestBodyEvaluation bodyEvaluation, HttpContent httpContent) {
+    ByteBuf content = httpContent.content();
+    if (content.isReadable()) {
+      for (ByteBuffer chunk : content.nioBuffers()) {
+        FilterResult filterResult = bodyEvaluation.evaluateChunk(chunk.asReadOnlyBuffer());
+        if (filterResult.shouldBlock()) {
+          return filterResult;
+        }
+      }
+    }
+    if (httpContent instanceof LastHttpContent) {
+      return bodyEvaluation.evaluateEnd();
+    }
+    return FilterResult.ALLOW;
+  }
+
   static void forbidden(ChannelHandlerContext ctx, HttpRequest request, FilterResult filterResult) {
     DefaultFullHttpResponse blockResponse =
         new DefaultFullHttpResponse(
@@ -23,22 +23,24 @@ import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpMessage;
 import io.netty.handler.codec.http.HttpRequest;
-import io.netty.util.Attribute;
 import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.context.Context;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.AttributeKeys;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.DataCaptureUtils;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.NettyInstrumentationName;
 import java.nio.charset.Charset;
-import java.util.HashMap;
 import java.util.Map;
+import org.hypertrace.agent.core.config.CaptureFlags;
 import org.hypertrace.agent.core.config.InstrumentationConfig;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
-import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
-import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
 import org.hypertrace.agent.core.instrumentation.utils.ContentLengthUtils;
 import org.hypertrace.agent.core.instrumentation.utils.ContentTypeCharsetUtils;
 import org.hypertrace.agent.core.instrumentation.utils.ContentTypeUtils;
+import org.hypertrace.agent.filter.FilterRegistry;
+import org.hypertrace.agent.filter.api.Filter;
+import org.hypertrace.agent.filter.api.HeaderView;
 
 public class HttpServerRequestTracingHandler extends ChannelInboundHandlerAdapter {
 
@@ -61,54 +63,94 @@ public class HttpServerRequestTracingHandler extends ChannelInboundHandlerAdapte
 
     if (msg instanceof HttpRequest) {
       HttpRequest httpRequest = (HttpRequest) msg;
+      int contentLength =
+          ContentLengthUtils.parseLength(DataCaptureUtils.getContentLength(httpRequest));
+      // one decision for the exchange, it is used by the response handler too
+      CapturePolicy.Decision capture =
+          CapturePolicy.get()
+              .decide(span, NettyInstrumentationName.PRIMARY, NettyInstrumentationName.OTHER);
+      channel.attr(AttributeKeys.CAPTURE_DECISION).set(capture);
+      channel
+          .attr(AttributeKeys.CAPTURE_ENDPOINT)
+          .set(DataCaptureUtils.endpoint(httpRequest.getUri()));
 
-      Map<String, String> headersMap = headersToMap(httpRequest);
-      if (instrumentationConfig.httpHeaders().request()) {
-        headersMap.forEach(span::setAttribute);
+      if (capture.captureHeaders()
+          && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_HEADERS_REQUEST)) {
+        for (Map.Entry<String, String> entry : httpRequest.headers().entries()) {
+          span.setAttribute(
+              HypertraceSemanticAttributes.httpRequestHeader(entry.getKey()), entry.getValue());
+        }
+      }
+      Filter filter = FilterRegistry.getFilter();
+      if (filter.evaluatesRequestHeaders() || filter.evaluatesRequestBody()) {
+        // used by blocking handler, the headers are copied only if the filter reads them
+        channel.attr(AttributeKeys.REQUEST_HEADERS).set(headerView(httpRequest));
       }
-      // used by blocking handler
-      channel.attr(AttributeKeys.REQUEST_HEADERS).set(headersMap);
 
+      // the body is buffered for the filter even if it is not captured for this trace
       CharSequence contentType = DataCaptureUtils.getContentType(httpRequest);
-      if (instrumentationConfig.httpBody().request()
+      if (instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_REQUEST)
+          && (capture.captureBodies() || filter.evaluatesRequestBody())
           && contentType != null
           && ContentTypeUtils.shouldCapture(contentType.toString())) {
 
-        CharSequence contentLengthHeader = DataCaptureUtils.getContentLength(httpRequest);
-        int contentLength = ContentLengthUtils.parseLength(contentLengthHeader);
-
-        String charsetString = ContentTypeUtils.parseCharset(contentType.toString());
-        Charset charset = ContentTypeCharsetUtils.toCharset(charsetString);
+        Charset charset = ContentTypeUtils.getInfo(contentType.toString()).getCharset();
 
-        // set the buffer to capture response body
-        // the buffer is used byt captureBody method
-        Attribute<BoundedByteArrayOutputStream> bufferAttr =
-            ctx.channel().attr(AttributeKeys.REQUEST_BODY_BUFFER);
-        bufferAttr.set(BoundedBuffersFactory.createStream(contentLength, charset));
+        // set the buffer to capture the body
+        // the buffer is used by captureBody method
+        DataCaptureUtils.createBuffer(
+            channel, AttributeKeys.REQUEST_BODY_BUFFER, contentLength, charset);
 
         channel.attr(AttributeKeys.CHARSET).set(charset);
       }
     }
 
     if ((msg instanceof HttpContent || msg instanceof ByteBuf)
-        && instrumentationConfig.httpBody().request()) {
+        && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_REQUEST)) {
       Charset charset = channel.attr(AttributeKeys.CHARSET).get();
       if (charset == null) {
         charset = ContentTypeCharsetUtils.getDefaultCharset();
       }
-      DataCaptureUtils.captureBody(
-          span, channel, AttributeKeys.REQUEST_BODY_BUFFER, msg, null, charset);
+      String body =
+          DataCaptureUtils.readBody(channel, AttributeKeys.REQUEST_BODY_BUFFER, msg, null, charset);
+      // the body might have been buffered only for the filter, the endpoint budget is charged only
+      // for a body that is captured
+      CapturePolicy.Decision capture = channel.attr(AttributeKeys.CAPTURE_DECISION).get();
+      if (body != null
+          && capture != null
+          && capture.captureBodies()
+          && CapturePolicy.get()
+              .tryCaptureBody(channel.attr(AttributeKeys.CAPTURE_ENDPOINT).get(), body.length())) {
+        span.setAttribute(HypertraceSemanticAttributes.HTTP_REQUEST_BODY, body);
+      }
+      Filter filter = FilterRegistry.getFilter();
+      if (body != null
+          && filter.evaluatesRequestBody()
+          && !filter.evaluatesRequestBodyIncrementally()) {
+        // evaluated by the blocking handler on the last chunk
+        channel.attr(AttributeKeys.REQUEST_BODY).set(body);
+      }
     }
 
     ctx.fireChannelRead(msg);
   }
 
-  private static Map<String, String> headersToMap(HttpMessage httpMessage) {
-    Map<String, String> map = new HashMap<>();
-    for (Map.Entry<String, String> entry : httpMessage.headers().entries()) {
-      AttributeKey<String> key = HypertraceSemanticAttributes.httpRequestHeader(entry.getKey());
-      map.put(key.getKey(), entry.getValue());
-    }
-    return map;
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    // release the body buffers of an exchange that has not been completed
+    DataCaptureUtils.releaseBuffers(ctx.channel());
+    super.channelInactive(ctx);
+  }
+
+  private static Map<String, String> headerView(HttpMessage httpMessage) {
+    return new HeaderView() {
+      @Override
+      protected void collect(Map<String, String> headers) {
+        for (Map.Entry<String, String> entry : httpMessage.headers().entries()) {
+          AttributeKey<String> key = HypertraceSemanticAttributes.httpRequestHeader(entry.getKey());
+          headers.put(key.getKey(), entry.getValue());
+        }
+      }
+    };
   }
 }
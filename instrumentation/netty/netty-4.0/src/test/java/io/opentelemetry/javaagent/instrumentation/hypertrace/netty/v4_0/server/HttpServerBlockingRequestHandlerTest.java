@@ -0,0 +1,98 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.server;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.AttributeKeys;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import org.hypertrace.agent.core.filter.FilterResult;
+import org.hypertrace.agent.core.filter.RequestBodyEvaluation;
+import org.hypertrace.agent.core.instrumentation.RecordingSpan;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class HttpServerBlockingRequestHandlerTest {
+
+  @Test
+  public void bodyEvaluationIsClearedWhenChannelIsInactive() {
+    EmbeddedChannel channel = new EmbeddedChannel(new HttpServerBlockingRequestHandler());
+    channel.attr(AttributeKeys.REQUEST_BODY_EVALUATION).set(new AllowingEvaluation());
+
+    channel.pipeline().fireChannelInactive();
+
+    Assertions.assertNull(channel.attr(AttributeKeys.REQUEST_BODY_EVALUATION).get());
+  }
+
+  @Test
+  public void requestBodyReadByTracingHandlerIsEvaluated() {
+    EmbeddedChannel channel =
+        new EmbeddedChannel(
+            new HttpServerRequestTracingHandler(), new HttpServerBlockingRequestHandler());
+    HttpRequest httpRequest = HttpServerDataCaptureHandlerTest.jsonRequest();
+    HttpServerDataCaptureHandlerTest.startExchange(channel, new RecordingSpan(), httpRequest);
+    HttpContent content = HttpServerDataCaptureHandlerTest.content("{\"foo\": \"block=true\"}");
+
+    channel.writeInbound(httpRequest, content);
+
+    HttpResponse response = (HttpResponse) channel.readOutbound();
+    Assertions.assertEquals(403, response.getStatus().code());
+    Assertions.assertEquals(0, content.refCnt());
+    Assertions.assertNull(channel.attr(AttributeKeys.REQUEST_BODY).get());
+    Assertions.assertNull(channel.attr(AttributeKeys.REQUEST_HEADERS).get());
+    channel.finish();
+  }
+
+  @Test
+  public void allowedRequestBodyIsPassedOn() {
+    EmbeddedChannel channel =
+        new EmbeddedChannel(
+            new HttpServerRequestTracingHandler(), new HttpServerBlockingRequestHandler());
+    HttpRequest httpRequest = HttpServerDataCaptureHandlerTest.jsonRequest();
+    HttpServerDataCaptureHandlerTest.startExchange(channel, new RecordingSpan(), httpRequest);
+    HttpContent content = HttpServerDataCaptureHandlerTest.content("{\"foo\": \"bar\"}");
+
+    channel.writeInbound(httpRequest, content);
+
+    Assertions.assertNull(channel.readOutbound());
+    Assertions.assertSame(httpRequest, channel.readInbound());
+    Assertions.assertSame(content, channel.readInbound());
+    Assertions.assertNull(channel.attr(AttributeKeys.REQUEST_BODY).get());
+    Assertions.assertNull(channel.attr(AttributeKeys.REQUEST_HEADERS).get());
+    channel.finish();
+  }
+
+  static class AllowingEvaluation implements RequestBodyEvaluation {
+    @Override
+    public FilterResult evaluateChunk(ByteBuffer chunk) {
+      return FilterResult.ALLOW;
+    }
+
+    @Override
+    public FilterResult evaluateChunk(CharBuffer chunk) {
+      return FilterResult.ALLOW;
+    }
+
+    @Override
+    public FilterResult evaluateEnd() {
+      return FilterResult.ALLOW;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.server;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.AttributeKeys;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import org.hypertrace.agent.filter.FilterRegistry;
+import org.hypertrace.agent.filter.api.Filter;
+import org.hypertrace.agent.filter.spi.FilterProviderConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class NoopFilterBlockingHandlerTest {
+
+  private static Filter registeredFilter;
+
+  @BeforeAll
+  public static void noFilter() {
+    registeredFilter = FilterRegistry.getFilter();
+    FilterRegistry.initialize(
+        new FilterProviderConfig(),
+        Collections.emptyList(),
+        new URLClassLoader(new URL[0], null));
+  }
+
+  /** The other tests of the module run with the registered mock filter. */
+  @AfterAll
+  public static void restoreFilter() throws ReflectiveOperationException {
+    Field filter = FilterRegistry.class.getDeclaredField("filter");
+    filter.setAccessible(true);
+    filter.set(null, registeredFilter);
+  }
+
+  @Test
+  public void requestPassesThroughWithoutEvaluation() {
+    EmbeddedChannel channel = new EmbeddedChannel(new HttpServerBlockingRequestHandler());
+    DefaultHttpRequest request =
+        new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/post");
+    request.headers().add("mockblock", "true");
+    LastHttpContent content =
+        new DefaultLastHttpContent(Unpooled.copiedBuffer("block=true", StandardCharsets.UTF_8));
+
+    channel.writeInbound(request, content);
+
+    Assertions.assertSame(request, channel.readInbound());
+    Assertions.assertSame(content, channel.readInbound());
+    Assertions.assertNull(channel.readOutbound());
+    Assertions.assertNull(channel.attr(AttributeKeys.REQUEST_BODY_EVALUATION).get());
+    Assertions.assertEquals(1, content.refCnt());
+    content.release();
+    Assertions.assertFalse(channel.finish());
+  }
+}
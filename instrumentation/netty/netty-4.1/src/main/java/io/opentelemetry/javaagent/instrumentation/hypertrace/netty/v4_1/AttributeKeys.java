@@ -19,6 +19,8 @@ package io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1;
 import io.netty.util.AttributeKey;
 import java.nio.charset.Charset;
 import java.util.Map;
+import org.hypertrace.agent.core.filter.RequestBodyEvaluation;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
 
@@ -33,6 +35,18 @@ public class AttributeKeys {
   public static final AttributeKey<Map<String, String>> REQUEST_HEADERS =
       AttributeKey.valueOf(AttributeKeys.class, "request-headers");
 
+  public static final AttributeKey<String> REQUEST_BODY =
+      AttributeKey.valueOf(AttributeKeys.class, "request-body");
+
+  public static final AttributeKey<RequestBodyEvaluation> REQUEST_BODY_EVALUATION =
+      AttributeKey.valueOf(AttributeKeys.class, "request-body-evaluation");
+
+  public static final AttributeKey<CapturePolicy.Decision> CAPTURE_DECISION =
+      AttributeKey.valueOf(AttributeKeys.class, "capture-decision");
+
+  public static final AttributeKey<String> CAPTURE_ENDPOINT =
+      AttributeKey.valueOf(AttributeKeys.class, "capture-endpoint");
+
   public static final AttributeKey<String> RESPONSE_HEADER_CONTENT_ENCODING =
       AttributeKey.valueOf(
           HypertraceSemanticAttributes.HTTP_RESPONSE_HEADER_CONTENT_ENCODING.getKey());
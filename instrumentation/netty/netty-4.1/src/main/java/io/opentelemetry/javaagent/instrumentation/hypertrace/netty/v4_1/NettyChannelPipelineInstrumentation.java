@@ -37,6 +37,7 @@ import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.client.H
 import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.client.HttpClientResponseTracingHandler;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.client.HttpClientTracingHandler;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.server.HttpServerBlockingRequestHandler;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.server.HttpServerDataCaptureHandler;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.server.HttpServerRequestTracingHandler;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.server.HttpServerResponseTracingHandler;
 import io.opentelemetry.javaagent.instrumentation.netty.v4_1.NettyClientSingletons;
@@ -99,16 +100,9 @@ public class NettyChannelPipelineInstrumentation implements TypeInstrumentation
       try {
         // Server pipeline handlers
         if (handler instanceof HttpServerCodec) {
-
+          // one shared handler captures and evaluates the exchange in a single pass
           pipeline.addLast(
-              HttpServerRequestTracingHandler.class.getName(),
-              new HttpServerRequestTracingHandler());
-          pipeline.addLast(
-              HttpServerBlockingRequestHandler.class.getName(),
-              new HttpServerBlockingRequestHandler());
-          pipeline.addLast(
-              HttpServerResponseTracingHandler.class.getName(),
-              new HttpServerResponseTracingHandler());
+              HttpServerDataCaptureHandler.class.getName(), HttpServerDataCaptureHandler.INSTANCE);
         } else if (handler instanceof HttpRequestDecoder) {
           pipeline.addLast(
               HttpServerRequestTracingHandler.class.getName(),
@@ -46,6 +46,7 @@ public class NettyInstrumentationModule extends InstrumentationModule {
 
   @Override
   public List<TypeInstrumentation> typeInstrumentations() {
+    // installed even if data capture is disabled for the module, the handlers evaluate the filter
     return Collections.singletonList(new NettyChannelPipelineInstrumentation());
   }
 }
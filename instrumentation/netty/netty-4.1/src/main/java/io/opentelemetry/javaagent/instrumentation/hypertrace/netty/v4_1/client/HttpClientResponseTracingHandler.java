@@ -24,21 +24,21 @@ import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpMessage;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.LastHttpContent;
-import io.netty.util.Attribute;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.StatusCode;
 import io.opentelemetry.context.Context;
 import io.opentelemetry.context.Scope;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.AttributeKeys;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.DataCaptureUtils;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.NettyInstrumentationName;
 import io.opentelemetry.javaagent.instrumentation.netty.v4_1.NettyClientSingletons;
 import io.opentelemetry.semconv.SemanticAttributes;
 import java.nio.charset.Charset;
 import java.util.Map;
+import org.hypertrace.agent.core.config.CaptureFlags;
 import org.hypertrace.agent.core.config.InstrumentationConfig;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
-import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
-import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
 import org.hypertrace.agent.core.instrumentation.utils.ContentLengthUtils;
 import org.hypertrace.agent.core.instrumentation.utils.ContentTypeCharsetUtils;
 import org.hypertrace.agent.core.instrumentation.utils.ContentTypeUtils;
@@ -63,26 +63,33 @@ public class HttpClientResponseTracingHandler extends ChannelInboundHandlerAdapt
 
     if (msg instanceof HttpResponse) {
       HttpResponse httpResponse = (HttpResponse) msg;
-      if (instrumentationConfig.httpHeaders().response()) {
+      CapturePolicy.Decision capture =
+          CapturePolicy.get()
+              .decide(span, NettyInstrumentationName.PRIMARY, NettyInstrumentationName.OTHER);
+      if (capture.captureHeaders()
+          && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_HEADERS_RESPONSE)) {
         captureHeaders(span, httpResponse);
       }
 
       CharSequence contentType = DataCaptureUtils.getContentType(httpResponse);
-      if (instrumentationConfig.httpBody().response()
+      CharSequence contentLengthHeader = DataCaptureUtils.getContentLength(httpResponse);
+      int contentLength = ContentLengthUtils.parseLength(contentLengthHeader);
+      // the endpoint budget is charged only for a body that is captured
+      if (capture.captureBodies()
+          && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_RESPONSE)
           && contentType != null
-          && ContentTypeUtils.shouldCapture(contentType.toString())) {
+          && ContentTypeUtils.shouldCapture(contentType.toString())
+          && CapturePolicy.get()
+              .tryCaptureBody(
+                  channel.attr(AttributeKeys.CAPTURE_ENDPOINT).get(),
+                  contentLengthHeader != null ? contentLength : -1)) {
 
-        CharSequence contentLengthHeader = DataCaptureUtils.getContentLength(httpResponse);
-        int contentLength = ContentLengthUtils.parseLength(contentLengthHeader);
+        Charset charset = ContentTypeUtils.getInfo(contentType.toString()).getCharset();
 
-        String charsetString = ContentTypeUtils.parseCharset(contentType.toString());
-        Charset charset = ContentTypeCharsetUtils.toCharset(charsetString);
-
-        // set the buffer to capture response body
-        // the buffer is used byt captureBody method
-        Attribute<BoundedByteArrayOutputStream> bufferAttr =
-            ctx.channel().attr(AttributeKeys.RESPONSE_BODY_BUFFER);
-        bufferAttr.set(BoundedBuffersFactory.createStream(contentLength, charset));
+        // set the buffer to capture the body
+        // the buffer is used by captureBody method
+        DataCaptureUtils.createBuffer(
+            channel, AttributeKeys.RESPONSE_BODY_BUFFER, contentLength, charset);
 
         channel.attr(AttributeKeys.PROVIDED_CHARSET).set(charset);
         // Store content encoding in a channel attribute
@@ -96,7 +103,7 @@ public class HttpClientResponseTracingHandler extends ChannelInboundHandlerAdapt
     }
 
     if ((msg instanceof HttpContent || msg instanceof ByteBuf)
-        && instrumentationConfig.httpBody().response()) {
+        && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_RESPONSE)) {
       // Retrieve content encoding from the channel attribute
       Charset charset = channel.attr(AttributeKeys.PROVIDED_CHARSET).get();
       if (charset == null) {
@@ -134,6 +141,13 @@ public class HttpClientResponseTracingHandler extends ChannelInboundHandlerAdapt
     }
   }
 
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    // release the body buffers of an exchange that has not been completed
+    DataCaptureUtils.releaseBuffers(ctx.channel());
+    super.channelInactive(ctx);
+  }
+
   private static void captureHeaders(Span span, HttpMessage httpMessage) {
     for (Map.Entry<String, String> entry : httpMessage.headers().entries()) {
       span.setAttribute(
@@ -0,0 +1,355 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpMessage;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.instrumentation.netty.v4_1.internal.ServerContext;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.AttributeKeys;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.DataCaptureUtils;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.NettyInstrumentationName;
+import io.opentelemetry.javaagent.instrumentation.netty.v4_1.NettyServerSingletons;
+import io.opentelemetry.semconv.SemanticAttributes;
+import java.util.Deque;
+import java.util.Map;
+import org.hypertrace.agent.core.config.CaptureFlags;
+import org.hypertrace.agent.core.config.InstrumentationConfig;
+import org.hypertrace.agent.core.filter.FilterResult;
+import org.hypertrace.agent.core.filter.RequestBodyEvaluation;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
+import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
+import org.hypertrace.agent.core.instrumentation.utils.ContentLengthUtils;
+import org.hypertrace.agent.core.instrumentation.utils.ContentTypeInfo;
+import org.hypertrace.agent.core.instrumentation.utils.ContentTypeUtils;
+import org.hypertrace.agent.filter.FilterRegistry;
+import org.hypertrace.agent.filter.api.Filter;
+import org.hypertrace.agent.filter.api.HeaderView;
+
+/**
+ * Server handler that captures the request, evaluates the blocking filter and captures the response
+ * in one pass. It replaces {@link HttpServerRequestTracingHandler}, {@link
+ * HttpServerBlockingRequestHandler} and {@link HttpServerResponseTracingHandler} for pipelines with
+ * a {@link io.netty.handler.codec.http.HttpServerCodec}.
+ *
+ * <p>The handler is stateless and shared by all channels, the state of the current exchange is
+ * kept in a single {@link ServerExchangeState} channel attribute.
+ */
+@ChannelHandler.Sharable
+public final class HttpServerDataCaptureHandler extends ChannelDuplexHandler {
+
+  public static final HttpServerDataCaptureHandler INSTANCE = new HttpServerDataCaptureHandler();
+
+  private static final AttributeKey<ServerExchangeState> EXCHANGE_STATE =
+      AttributeKey.valueOf(HttpServerDataCaptureHandler.class, "exchange-state");
+
+  private static final InstrumentationConfig instrumentationConfig =
+      InstrumentationConfig.ConfigProvider.get();
+
+  private HttpServerDataCaptureHandler() {}
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    // release the body buffers of an exchange that has not been completed
+    ServerExchangeState state = ctx.channel().attr(EXCHANGE_STATE).getAndSet(null);
+    if (state != null) {
+      state.release();
+    }
+    super.channelInactive(ctx);
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) {
+    Channel channel = ctx.channel();
+    ServerContext serverContext = serverContext(channel);
+    if (serverContext == null) {
+      ctx.fireChannelRead(msg);
+      return;
+    }
+    Span span = Span.fromContext(serverContext.context());
+    Filter filter = FilterRegistry.getFilter();
+
+    Attribute<ServerExchangeState> stateAttr = channel.attr(EXCHANGE_STATE);
+    ServerExchangeState state = stateAttr.get();
+    if (msg instanceof HttpRequest) {
+      if (state == null) {
+        state = new ServerExchangeState();
+        stateAttr.set(state);
+      }
+      if (!readRequest(ctx, span, filter, state, (HttpRequest) msg)) {
+        return;
+      }
+    } else if (state == null) {
+      ctx.fireChannelRead(msg);
+      return;
+    }
+
+    if (msg instanceof HttpContent || msg instanceof ByteBuf) {
+      FilterResult filterResult = readBody(span, filter, state, msg);
+      if (filterResult.shouldBlock()) {
+        ReferenceCountUtil.release(msg);
+        HttpServerBlockingRequestHandler.forbidden(
+            ctx, serverContext.request().request(), filterResult);
+        return;
+      }
+    }
+    ctx.fireChannelRead(msg);
+  }
+
+  /**
+   * Captures the request headers, prepares the body capture and evaluates the headers with the
+   * filter. Returns false if the request has been blocked.
+   */
+  private static boolean readRequest(
+      ChannelHandlerContext ctx,
+      Span span,
+      Filter filter,
+      ServerExchangeState state,
+      HttpRequest httpRequest) {
+    int contentLength =
+        ContentLengthUtils.parseLength(DataCaptureUtils.getContentLength(httpRequest));
+    // one decision for the exchange, it is used by the response too
+    CapturePolicy.Decision capture =
+        CapturePolicy.get()
+            .decide(span, NettyInstrumentationName.PRIMARY, NettyInstrumentationName.OTHER);
+    state.startRequest(capture, DataCaptureUtils.endpoint(httpRequest.uri()));
+
+    if (capture.captureHeaders()
+        && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_HEADERS_REQUEST)) {
+      for (Map.Entry<String, String> entry : httpRequest.headers().entries()) {
+        span.setAttribute(
+            HypertraceSemanticAttributes.httpRequestHeader(entry.getKey()), entry.getValue());
+      }
+    }
+    // the headers are copied only if the filter reads them
+    Map<String, String> headers =
+        filter.evaluatesRequestHeaders() || filter.evaluatesRequestBody()
+            ? headerView(httpRequest)
+            : null;
+
+    // the body is buffered for the filter even if it is not captured for this trace
+    CharSequence contentType = DataCaptureUtils.getContentType(httpRequest);
+    if (instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_REQUEST)
+        && (capture.captureBodies() || filter.evaluatesRequestBody())
+        && contentType != null) {
+      ContentTypeInfo contentTypeInfo = ContentTypeUtils.getInfo(contentType.toString());
+      // the endpoint budget is charged only for a body that is captured, by its actual size
+      state.captureRequestBody =
+          state.captureRequestBody
+              && contentTypeInfo.shouldCapture()
+              && CapturePolicy.get().tryCaptureBody(state.endpoint, -1);
+      if (contentTypeInfo.shouldCapture()
+          && (state.captureRequestBody || filter.evaluatesRequestBody())) {
+        state.requestCharset = contentTypeInfo.getCharset();
+        state.setRequestBody(
+            DataCaptureUtils.newBuffer(ctx.channel(), contentLength, state.requestCharset));
+      }
+    }
+
+    if (headers != null && filter.evaluatesRequestHeaders()) {
+      FilterResult filterResult = filter.evaluateRequestHeaders(span, headers);
+      if (filterResult.shouldBlock()) {
+        state.release();
+        HttpServerBlockingRequestHandler.forbidden(ctx, httpRequest, filterResult);
+        return false;
+      }
+    }
+    if (filter.evaluatesRequestBodyIncrementally()) {
+      state.requestBodyEvaluation = filter.startRequestBodyEvaluation(span, headers);
+    } else if (filter.evaluatesRequestBody()) {
+      state.requestBodyPending = true;
+      state.requestHeaders = headers;
+    }
+    return true;
+  }
+
+  /**
+   * Captures a chunk of the request body and evaluates it with the filter. A filter that does not
+   * evaluate bodies incrementally is called once per request with the captured body, on the last
+   * chunk or as soon as the capture buffer is full.
+   */
+  private static FilterResult readBody(
+      Span span, Filter filter, ServerExchangeState state, Object msg) {
+    boolean last = msg instanceof LastHttpContent;
+    boolean complete = last;
+    String body = null;
+    BoundedByteArrayOutputStream buffer = state.requestBody;
+    if (buffer != null) {
+      DataCaptureUtils.appendBody(buffer, msg);
+      if (last || buffer.size() >= BoundedBuffersFactory.MAX_SIZE) {
+        // the following chunks would not be captured anyway
+        state.requestBody = null;
+        if (state.captureRequestBody) {
+          CapturePolicy.get().recordBodySize(state.endpoint, buffer.size());
+        }
+        body = DataCaptureUtils.decodeBody(buffer, null, state.requestCharset);
+        // the body might have been buffered only for the filter
+        if (body != null && state.captureRequestBody) {
+          span.setAttribute(HypertraceSemanticAttributes.HTTP_REQUEST_BODY, body);
+        }
+        complete = true;
+      }
+    }
+
+    RequestBodyEvaluation bodyEvaluation = state.requestBodyEvaluation;
+    if (bodyEvaluation != null && msg instanceof HttpContent) {
+      FilterResult filterResult =
+          HttpServerBlockingRequestHandler.evaluateChunk(bodyEvaluation, (HttpContent) msg);
+      if (filterResult.shouldBlock() || last) {
+        state.requestBodyEvaluation = null;
+      }
+      return filterResult;
+    }
+    if (complete && state.requestBodyPending) {
+      state.requestBodyPending = false;
+      Map<String, String> headers = state.requestHeaders;
+      state.requestHeaders = null;
+      return filter.evaluateRequestBody(span, body, headers);
+    }
+    return FilterResult.ALLOW;
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise prm) {
+    Channel channel = ctx.channel();
+    ServerContext serverContext = serverContext(channel);
+    if (serverContext == null) {
+      ctx.write(msg, prm);
+      return;
+    }
+    Span span = Span.fromContext(serverContext.context());
+
+    Attribute<ServerExchangeState> stateAttr = channel.attr(EXCHANGE_STATE);
+    ServerExchangeState state = stateAttr.get();
+    if (state == null) {
+      state = new ServerExchangeState();
+      stateAttr.set(state);
+    }
+    if (msg instanceof HttpResponse) {
+      writeResponse(channel, span, state, (HttpResponse) msg);
+    }
+
+    BoundedByteArrayOutputStream buffer = state.responseBody;
+    if (buffer != null && (msg instanceof HttpContent || msg instanceof ByteBuf)) {
+      DataCaptureUtils.appendBody(buffer, msg);
+      if (msg instanceof LastHttpContent) {
+        state.responseBody = null;
+        CapturePolicy.get().recordBodySize(state.endpoint, buffer.size());
+        DataCaptureUtils.setBody(
+            span,
+            HypertraceSemanticAttributes.HTTP_RESPONSE_BODY.getKey(),
+            buffer,
+            state.responseContentEncoding,
+            state.responseCharset);
+      }
+    }
+
+    try (Scope ignored = serverContext.context().makeCurrent()) {
+      ctx.write(msg, prm);
+    } catch (Throwable throwable) {
+      NettyServerSingletons.instrumenter()
+          .end(serverContext.context(), serverContext.request(), null, throwable);
+      throw throwable;
+    }
+    if (msg instanceof HttpResponse) {
+      int code = ((HttpResponse) msg).status().code();
+      span.setAttribute(SemanticAttributes.HTTP_RESPONSE_STATUS_CODE, code);
+      span.setStatus(code >= 100 && code < 500 ? StatusCode.UNSET : StatusCode.ERROR);
+    }
+    if (msg instanceof LastHttpContent) {
+      // the server context and request are cleared so that the next request of a keep-alive
+      // connection gets a new context and request
+      channel
+          .attr(io.opentelemetry.instrumentation.netty.v4_1.internal.AttributeKeys.SERVER_CONTEXT)
+          .set(null);
+      channel.attr(AttributeKeys.REQUEST).set(null);
+      span.end();
+    }
+  }
+
+  private static void writeResponse(
+      Channel channel, Span span, ServerExchangeState state, HttpResponse httpResponse) {
+    CapturePolicy.Decision capture = state.capture;
+    state.capture = null;
+    if (capture == null) {
+      capture =
+          CapturePolicy.get()
+              .decide(span, NettyInstrumentationName.PRIMARY, NettyInstrumentationName.OTHER);
+    }
+    if (capture.captureHeaders()
+        && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_HEADERS_RESPONSE)) {
+      for (Map.Entry<String, String> entry : httpResponse.headers().entries()) {
+        span.setAttribute(
+            HypertraceSemanticAttributes.httpResponseHeader(entry.getKey()), entry.getValue());
+      }
+    }
+
+    CharSequence contentType = DataCaptureUtils.getContentType(httpResponse);
+    if (capture.captureBodies()
+        && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_RESPONSE)
+        && contentType != null) {
+      ContentTypeInfo contentTypeInfo = ContentTypeUtils.getInfo(contentType.toString());
+      if (contentTypeInfo.shouldCapture()
+          && CapturePolicy.get().tryCaptureBody(state.endpoint, -1)) {
+        int contentLength =
+            ContentLengthUtils.parseLength(DataCaptureUtils.getContentLength(httpResponse));
+        CharSequence contentEncoding = DataCaptureUtils.getContentEncoding(httpResponse);
+        state.responseCharset = contentTypeInfo.getCharset();
+        state.responseContentEncoding = contentEncoding != null ? contentEncoding.toString() : null;
+        state.setResponseBody(
+            DataCaptureUtils.newBuffer(channel, contentLength, state.responseCharset));
+      }
+    }
+  }
+
+  private static ServerContext serverContext(Channel channel) {
+    Deque<ServerContext> serverContexts =
+        channel
+            .attr(io.opentelemetry.instrumentation.netty.v4_1.internal.AttributeKeys.SERVER_CONTEXT)
+            .get();
+    return serverContexts == null ? null : serverContexts.peek();
+  }
+
+  private static Map<String, String> headerView(HttpMessage httpMessage) {
+    return new HeaderView() {
+      @Override
+      protected void collect(Map<String, String> headers) {
+        for (Map.Entry<String, String> entry : httpMessage.headers().entries()) {
+          io.opentelemetry.api.common.AttributeKey<String> key =
+              HypertraceSemanticAttributes.httpRequestHeader(entry.getKey());
+          headers.put(key.getKey(), entry.getValue());
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.server;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+import org.hypertrace.agent.core.filter.RequestBodyEvaluation;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
+
+/**
+ * Data capture state of the current exchange of a channel, stored in a single channel attribute by
+ * {@link HttpServerDataCaptureHandler}. It is reused by the exchanges of a keep-alive connection
+ * and only accessed from the event loop of the channel.
+ */
+final class ServerExchangeState {
+
+  /** Decision of the current exchange, taken on the request and consumed by the response. */
+  CapturePolicy.Decision capture;
+
+  /** Request path the capture budget is charged for. */
+  String endpoint;
+
+  /** True if the request body is set to the span, it is buffered for the filter otherwise. */
+  boolean captureRequestBody;
+
+  RequestBodyEvaluation requestBodyEvaluation;
+
+  /** True until the body has been evaluated by a filter that does not evaluate incrementally. */
+  boolean requestBodyPending;
+
+  /** Headers passed to the body evaluation. */
+  Map<String, String> requestHeaders;
+
+  BoundedByteArrayOutputStream requestBody;
+  Charset requestCharset;
+
+  BoundedByteArrayOutputStream responseBody;
+  Charset responseCharset;
+  String responseContentEncoding;
+
+  /** Resets the request state for a new request, a body that has not been completed is dropped. */
+  void startRequest(CapturePolicy.Decision capture, String endpoint) {
+    this.capture = capture;
+    this.endpoint = endpoint;
+    this.captureRequestBody = capture.captureBodies();
+    this.requestBodyEvaluation = null;
+    this.requestBodyPending = false;
+    this.requestHeaders = null;
+    this.requestCharset = null;
+    setRequestBody(null);
+  }
+
+  void setRequestBody(BoundedByteArrayOutputStream buffer) {
+    if (requestBody != null) {
+      requestBody.release();
+    }
+    requestBody = buffer;
+  }
+
+  void setResponseBody(BoundedByteArrayOutputStream buffer) {
+    if (responseBody != null) {
+      responseBody.release();
+    }
+    responseBody = buffer;
+  }
+
+  /** Releases the body buffers e.g. when the channel is closed. */
+  void release() {
+    setRequestBody(null);
+    setResponseBody(null);
+    requestBodyEvaluation = null;
+    requestHeaders = null;
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RetainedByteBufOutputStreamTest {
+
+  @Test
+  public void retainedSlicesAreReleased() {
+    RetainedByteBufOutputStream stream = newStream(1024);
+    ByteBuf first = buffer("hello ");
+    ByteBuf second = buffer("world");
+
+    stream.retain(first);
+    stream.retain(second);
+    Assertions.assertEquals(2, first.refCnt());
+    Assertions.assertEquals(2, second.refCnt());
+
+    // the codec releases the received buffers, the slices keep them alive
+    first.release();
+    second.release();
+    Assertions.assertEquals(11, stream.size());
+    Assertions.assertEquals("hello world", stream.toStringWithSuppliedCharset());
+
+    stream.release();
+    Assertions.assertEquals(0, first.refCnt());
+    Assertions.assertEquals(0, second.refCnt());
+    Assertions.assertEquals(0, stream.size());
+    Assertions.assertEquals("", stream.toStringWithSuppliedCharset());
+
+    // released twice e.g. on the last content and when the channel is closed
+    stream.release();
+  }
+
+  @Test
+  public void releasedStreamDoesNotRetain() {
+    RetainedByteBufOutputStream stream = newStream(1024);
+    stream.release();
+
+    ByteBuf content = buffer("body");
+    stream.retain(content);
+    stream.write('x');
+    stream.write(new byte[] {1, 2, 3}, 0, 3);
+    Assertions.assertEquals(1, content.refCnt());
+    Assertions.assertEquals(0, stream.size());
+    content.release();
+  }
+
+  @Test
+  public void cappedAtMaxCapacity() {
+    RetainedByteBufOutputStream stream = newStream(8);
+    ByteBuf first = buffer("12345");
+    ByteBuf second = buffer("67890");
+    ByteBuf third = buffer("abc");
+
+    stream.retain(first);
+    stream.retain(second);
+    stream.retain(third);
+    stream.write('x');
+    Assertions.assertEquals(8, stream.size());
+    Assertions.assertEquals("12345678", new String(stream.toByteArray(), StandardCharsets.UTF_8));
+    // nothing is retained once the stream is full
+    Assertions.assertEquals(1, third.refCnt());
+
+    stream.release();
+    Assertions.assertEquals(1, first.refCnt());
+    Assertions.assertEquals(1, second.refCnt());
+    first.release();
+    second.release();
+    third.release();
+  }
+
+  @Test
+  public void growsBeyondMaxComponents() {
+    RetainedByteBufOutputStream stream = newStream(4096);
+    StringBuilder expected = new StringBuilder();
+    ByteBuf[] chunks = new ByteBuf[2000];
+    for (int i = 0; i < chunks.length; i++) {
+      String chunk = String.valueOf((char) ('a' + i % 26));
+      expected.append(chunk);
+      chunks[i] = buffer(chunk);
+      stream.retain(chunks[i]);
+      chunks[i].release();
+    }
+    stream.write("end".getBytes(StandardCharsets.UTF_8), 0, 3);
+    expected.append("end");
+
+    Assertions.assertEquals(expected.length(), stream.size());
+    Assertions.assertEquals(expected.toString(), stream.toStringWithSuppliedCharset());
+    stream.release();
+    for (ByteBuf chunk : chunks) {
+      Assertions.assertEquals(0, chunk.refCnt());
+    }
+  }
+
+  private static RetainedByteBufOutputStream newStream(int maxCapacity) {
+    return new RetainedByteBufOutputStream(
+        UnpooledByteBufAllocator.DEFAULT, maxCapacity, StandardCharsets.UTF_8);
+  }
+
+  private static ByteBuf buffer(String content) {
+    return Unpooled.copiedBuffer(content, StandardCharsets.UTF_8);
+  }
+}
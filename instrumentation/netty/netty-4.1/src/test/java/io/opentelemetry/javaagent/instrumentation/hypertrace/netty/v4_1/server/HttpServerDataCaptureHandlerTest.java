@@ -0,0 +1,174 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.server;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.instrumentation.netty.v4_1.internal.ServerContext;
+import io.opentelemetry.instrumentation.netty.v4.common.HttpRequestAndChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
+import org.hypertrace.agent.core.instrumentation.RecordingSpan;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/** Tests the handler without a server, the requests are written to an {@link EmbeddedChannel}. */
+public class HttpServerDataCaptureHandlerTest {
+
+  private static final AttributeKey<String> REQUEST_BODY_KEY =
+      HypertraceSemanticAttributes.HTTP_REQUEST_BODY;
+  private static final AttributeKey<String> RESPONSE_BODY_KEY =
+      HypertraceSemanticAttributes.HTTP_RESPONSE_BODY;
+
+  @Test
+  public void requestBodyIsCaptured() {
+    RecordingSpan span = new RecordingSpan();
+    HttpRequest httpRequest = jsonRequest();
+    EmbeddedChannel channel = newChannel(span, httpRequest);
+
+    channel.writeInbound(httpRequest, content("{\"foo\": \"bar\"}"));
+
+    Assertions.assertEquals("{\"foo\": \"bar\"}", span.getAttribute(REQUEST_BODY_KEY));
+    channel.finish();
+  }
+
+  @Test
+  public void requestBodyIsEvaluatedButNotCapturedWithoutBodyDecision() {
+    // neither recording nor sampled, nothing is captured for the span
+    RecordingSpan span = new RecordingSpan(false);
+    HttpRequest httpRequest = jsonRequest();
+    EmbeddedChannel channel = newChannel(span, httpRequest);
+
+    channel.writeInbound(httpRequest, content("{\"foo\": \"block=true\"}"));
+
+    // the body has been passed to the mock filter
+    HttpResponse response = (HttpResponse) channel.readOutbound();
+    Assertions.assertEquals(403, response.status().code());
+    Assertions.assertNull(span.getAttribute(REQUEST_BODY_KEY));
+    channel.finish();
+  }
+
+  @Test
+  public void requestHeadersAreBlocked() {
+    RecordingSpan span = new RecordingSpan();
+    HttpRequest httpRequest = jsonRequest();
+    httpRequest.headers().set("mockblock", "true");
+    EmbeddedChannel channel = newChannel(span, httpRequest);
+
+    channel.writeInbound(httpRequest);
+
+    HttpResponse response = (HttpResponse) channel.readOutbound();
+    Assertions.assertEquals(403, response.status().code());
+    Assertions.assertEquals(
+        "true", span.getAttribute(HypertraceSemanticAttributes.httpRequestHeader("mockblock")));
+    Assertions.assertNull(channel.readInbound());
+    channel.finish();
+  }
+
+  @Test
+  public void blockedRequestBodyIsReleased() {
+    RecordingSpan span = new RecordingSpan();
+    HttpRequest httpRequest = jsonRequest();
+    EmbeddedChannel channel = newChannel(span, httpRequest);
+    HttpContent content = content("{\"foo\": \"block=true\"}");
+
+    channel.writeInbound(httpRequest, content);
+
+    HttpResponse response = (HttpResponse) channel.readOutbound();
+    Assertions.assertEquals(403, response.status().code());
+    // the request has been passed on before its body was read, the body is not
+    Assertions.assertSame(httpRequest, channel.readInbound());
+    Assertions.assertNull(channel.readInbound());
+    Assertions.assertEquals(0, content.refCnt());
+    channel.finish();
+  }
+
+  @Test
+  public void eachExchangeOfKeepAliveConnectionIsCaptured() {
+    RecordingSpan firstSpan = new RecordingSpan();
+    HttpRequest firstRequest = jsonRequest();
+    EmbeddedChannel channel = newChannel(firstSpan, firstRequest);
+    channel.writeInbound(firstRequest, content("{\"request\": 1}"));
+    channel.writeOutbound(jsonResponse("{\"response\": 1}"));
+
+    // the next request on the connection gets a new server context
+    RecordingSpan secondSpan = new RecordingSpan();
+    HttpRequest secondRequest = jsonRequest();
+    startExchange(channel, secondSpan, secondRequest);
+    channel.writeInbound(secondRequest, content("{\"request\": 2}"));
+    channel.writeOutbound(jsonResponse("{\"response\": 2}"));
+
+    Assertions.assertEquals("{\"request\": 1}", firstSpan.getAttribute(REQUEST_BODY_KEY));
+    Assertions.assertEquals("{\"response\": 1}", firstSpan.getAttribute(RESPONSE_BODY_KEY));
+    Assertions.assertEquals("{\"request\": 2}", secondSpan.getAttribute(REQUEST_BODY_KEY));
+    Assertions.assertEquals("{\"response\": 2}", secondSpan.getAttribute(RESPONSE_BODY_KEY));
+    channel.finish();
+  }
+
+  private static EmbeddedChannel newChannel(Span span, HttpRequest httpRequest) {
+    EmbeddedChannel channel = new EmbeddedChannel(HttpServerDataCaptureHandler.INSTANCE);
+    startExchange(channel, span, httpRequest);
+    return channel;
+  }
+
+  /** Sets the server context that the server instrumentation creates for each request. */
+  static void startExchange(EmbeddedChannel channel, Span span, HttpRequest httpRequest) {
+    Deque<ServerContext> serverContexts = new ArrayDeque<>();
+    serverContexts.add(
+        ServerContext.create(
+            Context.root().with(span), HttpRequestAndChannel.create(httpRequest, channel)));
+    channel
+        .attr(io.opentelemetry.instrumentation.netty.v4_1.internal.AttributeKeys.SERVER_CONTEXT)
+        .set(serverContexts);
+  }
+
+  static HttpRequest jsonRequest() {
+    HttpRequest httpRequest =
+        new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/post");
+    httpRequest.headers().set("Content-Type", "application/json");
+    return httpRequest;
+  }
+
+  private static HttpResponse jsonResponse(String body) {
+    HttpResponse httpResponse =
+        new DefaultFullHttpResponse(
+            HttpVersion.HTTP_1_1,
+            HttpResponseStatus.OK,
+            Unpooled.copiedBuffer(body.getBytes(StandardCharsets.UTF_8)));
+    httpResponse.headers().set("Content-Type", "application/json");
+    return httpResponse;
+  }
+
+  static HttpContent content(String body) {
+    return new DefaultLastHttpContent(
+        Unpooled.copiedBuffer(body.getBytes(StandardCharsets.UTF_8)));
+  }
+}
@@ -3,6 +3,7 @@ plugins {
     id("net.bytebuddy.byte-buddy")
     id("io.opentelemetry.instrumentation.auto-instrumentation")
     muzzle
+    id("me.champeau.jmh")
 }
 evaluationDependsOn(":javaagent-tooling")
 
@@ -23,9 +24,17 @@ afterEvaluate{
     ).configure()
 }
 
+jmh {
+    profilers.add("gc")
+}
+
 val versions: Map<String, String> by extra
 
 dependencies {
     compileOnly("com.squareup.okhttp3:okhttp:3.0.0")
     testImplementation(project(":testing-common"))
+
+    jmh("com.squareup.okhttp3:okhttp:3.0.0")
+    jmh(project(":javaagent-core"))
+    jmh(testFixtures(project(":javaagent-core")))
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.okhttp.v3_0;
+
+import java.util.concurrent.TimeUnit;
+import okhttp3.Headers;
+import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
+import org.hypertrace.agent.core.instrumentation.RecordingSpan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link OkHttpTracingInterceptor#captureHeaders} against the {@code names()}/{@code
+ * values(name)} walk it replaced. Run with {@code ./gradlew
+ * :instrumentation:okhttp:okhttp-3.0:jmh}, the gc profiler reports the allocations per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderCaptureBenchmark {
+
+  @Param({"8", "32"})
+  int headerCount;
+
+  private Headers headers;
+  private RecordingSpan span;
+
+  @Setup
+  public void setup() {
+    Headers.Builder builder = new Headers.Builder();
+    for (int i = 0; i < headerCount; i++) {
+      builder.add("x-header-" + i, "value-" + i);
+    }
+    headers = builder.build();
+    span = new RecordingSpan();
+  }
+
+  @Benchmark
+  public RecordingSpan captureHeaders() {
+    OkHttpTracingInterceptor.captureHeaders(
+        span, headers, HypertraceSemanticAttributes::httpRequestHeader);
+    return span;
+  }
+
+  @Benchmark
+  public RecordingSpan namesAndValues() {
+    for (String name : headers.names()) {
+      for (String value : headers.values(name)) {
+        span.setAttribute(HypertraceSemanticAttributes.httpRequestHeader(name), value);
+      }
+    }
+    return span;
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.okhttp.v3_0;
+
+import io.opentelemetry.api.trace.Span;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
+
+/**
+ * Request body that captures the first {@link BoundedBuffersFactory#MAX_SIZE} bytes while OkHttp
+ * writes it to the connection, instead of writing the whole body to a separate buffer upfront.
+ */
+final class CapturingRequestBody extends RequestBody {
+
+  // added in OkHttp 3.14, looked up once so that older versions keep their defaults
+  private static final Method IS_ONE_SHOT = findMethod("isOneShot");
+  private static final Method IS_DUPLEX = findMethod("isDuplex");
+
+  private final RequestBody delegate;
+  private final Span span;
+  private final Charset charset;
+  // resolved once, OkHttp asks for them on every write and retry
+  private final boolean oneShot;
+  private final boolean duplex;
+
+  CapturingRequestBody(RequestBody delegate, Span span, Charset charset) {
+    this.delegate = delegate;
+    this.span = span;
+    this.charset = charset;
+    this.oneShot = invoke(IS_ONE_SHOT, delegate);
+    this.duplex = invoke(IS_DUPLEX, delegate);
+  }
+
+  @Override
+  public MediaType contentType() {
+    return delegate.contentType();
+  }
+
+  @Override
+  public long contentLength() throws IOException {
+    return delegate.contentLength();
+  }
+
+  /** Overrides {@code RequestBody#isOneShot()} of OkHttp 3.14 and newer. */
+  public boolean isOneShot() {
+    return oneShot;
+  }
+
+  /** Overrides {@code RequestBody#isDuplex()} of OkHttp 3.14 and newer. */
+  public boolean isDuplex() {
+    return duplex;
+  }
+
+  @Override
+  public void writeTo(BufferedSink sink) throws IOException {
+    BoundedByteArrayOutputStream capture = BoundedBuffersFactory.createStream(charset);
+    try {
+      BufferedSink teeSink = Okio.buffer(new TeeSink(sink, capture));
+      delegate.writeTo(teeSink);
+      // hand the remaining bytes to the connection sink, it is closed by OkHttp
+      teeSink.emit();
+    } finally {
+      // a failed write keeps the bytes sent so far, a retried request overrides the body
+      addBody(capture);
+    }
+  }
+
+  private void addBody(BoundedByteArrayOutputStream capture) {
+    try {
+      span.setAttribute(
+          HypertraceSemanticAttributes.HTTP_REQUEST_BODY, capture.toStringWithSuppliedCharset());
+    } catch (UnsupportedEncodingException e) {
+      // the charset has been resolved from the media type already
+    } finally {
+      capture.release();
+    }
+  }
+
+  private static boolean invoke(Method method, RequestBody delegate) {
+    if (method == null) {
+      return false;
+    }
+    try {
+      return (Boolean) method.invoke(delegate);
+    } catch (ReflectiveOperationException e) {
+      return false;
+    }
+  }
+
+  private static Method findMethod(String name) {
+    try {
+      return RequestBody.class.getMethod(name);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  private static final class TeeSink extends ForwardingSink {
+    private final BoundedByteArrayOutputStream capture;
+
+    TeeSink(BufferedSink delegate, BoundedByteArrayOutputStream capture) {
+      super(delegate);
+      this.capture = capture;
+    }
+
+    @Override
+    public void write(Buffer source, long byteCount) throws IOException {
+      long remaining = BoundedBuffersFactory.MAX_SIZE - capture.size();
+      if (remaining > 0) {
+        source.copyTo(capture, 0, Math.min(byteCount, remaining));
+      }
+      super.write(source, byteCount);
+    }
+  }
+}
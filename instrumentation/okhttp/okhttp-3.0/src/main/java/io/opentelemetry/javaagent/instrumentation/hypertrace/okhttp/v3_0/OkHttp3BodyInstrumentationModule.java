@@ -31,6 +31,7 @@ import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
+import org.hypertrace.agent.core.config.InstrumentationConfig;
 
 @AutoService(InstrumentationModule.class)
 public class OkHttp3BodyInstrumentationModule extends InstrumentationModule {
@@ -46,6 +47,10 @@ public class OkHttp3BodyInstrumentationModule extends InstrumentationModule {
 
   @Override
   public List<TypeInstrumentation> typeInstrumentations() {
+    if (!InstrumentationConfig.ConfigProvider.isModuleEnabled(
+        Okhttp3InstrumentationName.PRIMARY, Okhttp3InstrumentationName.OTHER)) {
+      return Collections.emptyList();
+    }
     return Collections.singletonList(new OkHttp3BodyInstrumentation());
   }
 
@@ -31,17 +31,19 @@ import okhttp3.Response;
 import okhttp3.ResponseBody;
 import okio.Buffer;
 import okio.BufferedSource;
-import okio.GzipSource;
 import okio.Okio;
+import org.hypertrace.agent.core.config.CaptureFlags;
 import org.hypertrace.agent.core.config.InstrumentationConfig;
+import org.hypertrace.agent.core.instrumentation.AsyncBodyCapture;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
+import org.hypertrace.agent.core.instrumentation.utils.ContentEncodingUtils;
 import org.hypertrace.agent.core.instrumentation.utils.ContentTypeUtils;
 import org.hypertrace.agent.core.instrumentation.utils.ServiceNameHeaderUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 public class OkHttpTracingInterceptor implements Interceptor {
-  private static final Logger log = LoggerFactory.getLogger(OkHttpTracingInterceptor.class);
   private static final InstrumentationConfig instrumentationConfig =
       InstrumentationConfig.ConfigProvider.get();
 
@@ -53,89 +55,128 @@ public class OkHttpTracingInterceptor implements Interceptor {
     }
 
     Span span = Span.current();
-
     Request request = chain.request();
-    if (instrumentationConfig.httpHeaders().request()) {
+    // a client knows no routes, paths without a configured budget share one
+    String endpoint = CapturePolicy.get().pathEndpoint(request.url().encodedPath());
+    CapturePolicy.Decision capture = CapturePolicy.get().decide(span);
+
+    if (capture.captureHeaders()
+        && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_HEADERS_REQUEST)) {
       captureHeaders(span, request.headers(), HypertraceSemanticAttributes::httpRequestHeader);
     }
 
     // Add service name header to outgoing requests
     request = addClientSeriveNameHeader(request);
 
-    captureRequestBody(span, request.body());
+    if (capture.captureBodies()) {
+      request = captureRequestBody(span, request, endpoint);
+    }
 
     Response response = chain.proceed(request);
-    if (instrumentationConfig.httpHeaders().response()) {
+    if (capture.captureHeaders()
+        && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_HEADERS_RESPONSE)) {
       captureHeaders(span, response.headers(), HypertraceSemanticAttributes::httpResponseHeader);
     }
-    return captureResponseBody(span, response);
+    return capture.captureBodies() ? captureResponseBody(span, response, endpoint) : response;
   }
 
-  private static void captureRequestBody(Span span, RequestBody requestBody) {
-    if (!instrumentationConfig.httpBody().request()) {
-      return;
+  private static Request captureRequestBody(Span span, Request request, String endpoint)
+      throws IOException {
+    if (!instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_REQUEST)) {
+      return request;
     }
+    RequestBody requestBody = request.body();
     if (requestBody == null) {
-      return;
+      return request;
     }
     MediaType mediaType = requestBody.contentType();
-    if (mediaType == null || !ContentTypeUtils.shouldCapture(mediaType.toString())) {
-      return;
-    }
-    try {
-      Buffer buffer = new Buffer();
-      requestBody.writeTo(buffer);
-      span.setAttribute(HypertraceSemanticAttributes.HTTP_REQUEST_BODY, buffer.readUtf8());
-    } catch (IOException e) {
-      log.error("Could not read request requestBody", e);
+    if (mediaType == null
+        || !ContentTypeUtils.shouldCapture(mediaType.toString())
+        || !CapturePolicy.get().tryCaptureBody(endpoint, requestBody.contentLength())) {
+      return request;
     }
+    RequestBody capturingBody = new CapturingRequestBody(requestBody, span, getCharset(mediaType));
+    return request.newBuilder().method(request.method(), capturingBody).build();
   }
 
-  private static Response captureResponseBody(Span span, final Response response) {
-    if (!instrumentationConfig.httpBody().response()) {
+  /**
+   * Captures at most {@link BoundedBuffersFactory#MAX_SIZE} bytes of the response body. A small
+   * body that has already been read into the source buffer is copied right away, while the client
+   * span is still recording. Other bodies are teed while the application reads them and added to
+   * an additional data span once read completely or closed. The interceptor never reads from the
+   * connection itself, the response is not delayed and never buffered as a whole.
+   */
+  static Response captureResponseBody(Span span, Response response, String endpoint) {
+    if (!instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_RESPONSE)) {
       return response;
     }
-    if (response.body() == null) {
+    ResponseBody responseBody = response.body();
+    if (responseBody == null) {
       return response;
     }
-
-    ResponseBody responseBody = response.body();
     MediaType mediaType = responseBody.contentType();
-    if (mediaType == null || !ContentTypeUtils.shouldCapture(mediaType.toString())) {
+    long contentLength = responseBody.contentLength();
+    if (mediaType == null
+        || !ContentTypeUtils.shouldCapture(mediaType.toString())
+        || !CapturePolicy.get().tryCaptureBody(endpoint, contentLength)) {
       return response;
     }
 
-    try {
-      // Read the entire response body one-shot into a byte-array
-      // responseBody.string(), this looks for the charset if available in content-type header
-      // else defaults to utf-8. So read bytes itself as done here and use for building new response
-      // ref: https://square.github.io/okhttp/3.x/okhttp/okhttp3/ResponseBody.html
-      byte[] byteArray = responseBody.source().readByteArray();
-      String body;
-
-      // Determine the content encoding
-      String contentEncoding = response.header("Content-Encoding");
-      if (contentEncoding != null && contentEncoding.toLowerCase().contains("gzip")) {
-        // Decompress the response body if it is GZIP encoded using GzipSource
-        GzipSource gzipSource = new GzipSource(new Buffer().write(byteArray));
-        BufferedSource bufferedGzipSource = Okio.buffer(gzipSource);
-
-        // capture the decompressed content from gzip source to set as response body in span
-        body = bufferedGzipSource.readString(getCharset(mediaType));
-      } else {
-        // capture the response body for other cases
-        body = new String(byteArray, getCharset(mediaType));
-      }
-
-      span.setAttribute(HypertraceSemanticAttributes.HTTP_RESPONSE_BODY, body);
-
-      // Return the response with its body and encoding exactly the same as the original response
-      return response.newBuilder().body(ResponseBody.create(mediaType, byteArray)).build();
-    } catch (IOException e) {
-      log.error("Could not read response body", e);
+    // responseBody.string() looks for the charset in the content-type header and defaults to
+    // utf-8, the same charset is used to decode the captured bytes
+    Charset charset = getCharset(mediaType);
+    String contentEncoding = response.header("Content-Encoding");
+    BoundedByteArrayOutputStream buffer = BoundedBuffersFactory.createStream(charset);
+    BufferedSource source = responseBody.source();
+    Buffer buffered = source.buffer();
+    if (contentLength >= 0
+        && contentLength <= BoundedBuffersFactory.MAX_SIZE
+        && buffered.size() >= contentLength) {
+      // the application consumes the body from the same buffer
+      buffered.copyTo(buffer, 0, contentLength);
+      captureBody(span, buffer, charset, contentEncoding);
+      return response;
     }
 
-    return response;
+    // the body and its encoding stay exactly the same as in the original response
+    TeeSource teeSource =
+        new TeeSource(
+            source,
+            buffer,
+            BoundedBuffersFactory.MAX_SIZE,
+            captured -> {
+              if (contentLength < 0) {
+                CapturePolicy.get().recordBodySize(endpoint, captured.size());
+              }
+              captureBody(span, captured, charset, contentEncoding);
+            });
+    return response
+        .newBuilder()
+        .body(ResponseBody.create(mediaType, contentLength, Okio.buffer(teeSource)))
+        .build();
+  }
+
+  private static void captureBody(
+      Span span, BoundedByteArrayOutputStream buffer, Charset charset, String contentEncoding) {
+    if (buffer.size() == 0) {
+      buffer.release();
+      return;
+    }
+    // added right away, the client span ends once the response has been returned
+    AsyncBodyCapture.add(
+        span,
+        HypertraceSemanticAttributes.HTTP_RESPONSE_BODY,
+        () -> {
+          try {
+            if (ContentEncodingUtils.isCompressed(contentEncoding)) {
+              // the captured prefix of a large body is decoded as far as it goes
+              return ContentEncodingUtils.decode(buffer.toByteArray(), contentEncoding, charset);
+            }
+            return buffer.toStringWithSuppliedCharset();
+          } finally {
+            buffer.release();
+          }
+        });
   }
 
   // Helper method to determine charset from MediaType if available else default to UTF-8
@@ -146,12 +187,11 @@ public class OkHttpTracingInterceptor implements Interceptor {
     return StandardCharsets.UTF_8; // Default charset
   }
 
-  private static void captureHeaders(
+  static void captureHeaders(
       Span span, Headers headers, Function<String, AttributeKey<String>> headerNameProvider) {
-    for (String name : headers.names()) {
-      for (String value : headers.values(name)) {
-        span.setAttribute(headerNameProvider.apply(name), value);
-      }
+    // walk the headers by index, names() and values(name) copy them into new collections
+    for (int i = 0, size = headers.size(); i < size; i++) {
+      span.setAttribute(headerNameProvider.apply(headers.name(i)), headers.value(i));
     }
   }
 
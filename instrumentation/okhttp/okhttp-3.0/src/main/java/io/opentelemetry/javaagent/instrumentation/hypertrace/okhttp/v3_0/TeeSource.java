@@ -0,0 +1,128 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.okhttp.v3_0;
+
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Source;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
+
+/**
+ * Source that copies the first bytes read by the application into a bounded capture buffer. The
+ * buffer is handed over once the source is exhausted, fails or is closed, whichever happens first.
+ *
+ * <p>A response that is never closed leaks its source. Like OkHttp does for leaked connections, the
+ * source is tracked by a phantom reference, and the buffer of a source that has been garbage
+ * collected without completing is released when the next source is created.
+ */
+final class TeeSource extends ForwardingSource {
+
+  private static final ReferenceQueue<TeeSource> abandonedSources = new ReferenceQueue<>();
+  private static final Set<PendingCapture> pendingCaptures = ConcurrentHashMap.newKeySet();
+
+  private final BoundedByteArrayOutputStream capture;
+  private final int maxBytes;
+  private final Consumer<BoundedByteArrayOutputStream> onComplete;
+  private final PendingCapture pendingCapture;
+  private boolean completed;
+
+  TeeSource(
+      Source delegate,
+      BoundedByteArrayOutputStream capture,
+      int maxBytes,
+      Consumer<BoundedByteArrayOutputStream> onComplete) {
+    super(delegate);
+    this.capture = capture;
+    this.maxBytes = maxBytes;
+    this.onComplete = onComplete;
+    releaseAbandoned();
+    this.pendingCapture = new PendingCapture(this, capture);
+    pendingCaptures.add(pendingCapture);
+  }
+
+  @Override
+  public long read(Buffer sink, long byteCount) throws IOException {
+    long read;
+    try {
+      read = super.read(sink, byteCount);
+    } catch (IOException | RuntimeException e) {
+      // e.g. the call has been canceled, the bytes read so far are still captured
+      complete();
+      throw e;
+    }
+    if (read == -1) {
+      complete();
+      return read;
+    }
+    long remaining = maxBytes - capture.size();
+    if (remaining > 0 && !completed) {
+      // the bytes just read are at the end of the sink
+      sink.copyTo(capture, sink.size() - read, Math.min(read, remaining));
+    }
+    return read;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      complete();
+    }
+  }
+
+  private void complete() {
+    if (!completed) {
+      completed = true;
+      pendingCaptures.remove(pendingCapture);
+      pendingCapture.clear();
+      onComplete.accept(capture);
+    }
+  }
+
+  /** Returns the number of sources that have neither completed nor been released. */
+  static int pendingCount() {
+    return pendingCaptures.size();
+  }
+
+  /** Releases the buffers of sources that have been garbage collected before completing. */
+  static void releaseAbandoned() {
+    Reference<? extends TeeSource> reference;
+    while ((reference = abandonedSources.poll()) != null) {
+      PendingCapture pending = (PendingCapture) reference;
+      if (pendingCaptures.remove(pending)) {
+        pending.capture.release();
+      }
+    }
+  }
+
+  private static final class PendingCapture extends PhantomReference<TeeSource> {
+    private final BoundedByteArrayOutputStream capture;
+
+    PendingCapture(TeeSource source, BoundedByteArrayOutputStream capture) {
+      super(source, abandonedSources);
+      this.capture = capture;
+    }
+  }
+}
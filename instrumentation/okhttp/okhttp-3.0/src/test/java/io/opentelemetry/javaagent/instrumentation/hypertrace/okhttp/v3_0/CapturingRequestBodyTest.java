@@ -0,0 +1,96 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.okhttp.v3_0;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
+import org.hypertrace.agent.core.instrumentation.RecordingSpan;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CapturingRequestBodyTest {
+
+  private static final MediaType JSON = MediaType.get("application/json");
+  private final RecordingSpan span = new RecordingSpan();
+
+  @Test
+  public void bodyIsWrittenAndCaptured() throws IOException {
+    RequestBody body = capturing(RequestBody.create("{\"foo\": \"bar\"}", JSON));
+    Buffer sink = new Buffer();
+
+    body.writeTo(sink);
+
+    Assertions.assertEquals("{\"foo\": \"bar\"}", sink.readUtf8());
+    Assertions.assertEquals(
+        "{\"foo\": \"bar\"}", span.getAttribute(HypertraceSemanticAttributes.HTTP_REQUEST_BODY));
+  }
+
+  @Test
+  public void failedWriteKeepsCapturedBytes() {
+    RequestBody body =
+        capturing(
+            new RequestBody() {
+              @Override
+              public MediaType contentType() {
+                return JSON;
+              }
+
+              @Override
+              public void writeTo(BufferedSink sink) throws IOException {
+                sink.writeUtf8("{\"foo\"");
+                sink.emit();
+                throw new IOException("broken pipe");
+              }
+            });
+
+    Assertions.assertThrows(IOException.class, () -> body.writeTo(new Buffer()));
+    Assertions.assertEquals(
+        "{\"foo\"", span.getAttribute(HypertraceSemanticAttributes.HTTP_REQUEST_BODY));
+  }
+
+  @Test
+  public void oneShotAndDuplexAreDelegated() {
+    RequestBody body =
+        capturing(
+            new RequestBody() {
+              @Override
+              public MediaType contentType() {
+                return JSON;
+              }
+
+              @Override
+              public void writeTo(BufferedSink sink) {}
+
+              @Override
+              public boolean isOneShot() {
+                return true;
+              }
+            });
+
+    Assertions.assertTrue(body.isOneShot());
+    Assertions.assertFalse(body.isDuplex());
+  }
+
+  private RequestBody capturing(RequestBody delegate) {
+    return new CapturingRequestBody(delegate, span, StandardCharsets.UTF_8);
+  }
+}
@@ -21,9 +21,16 @@ import java.util.Map;
 import okhttp3.Headers;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
+import org.hypertrace.agent.core.instrumentation.RecordingSpan;
 import org.hypertrace.agent.testing.AbstractHttpClientTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 
 public class OkHttpTracingInterceptorTest extends AbstractHttpClientTest {
 
@@ -73,4 +80,31 @@ public class OkHttpTracingInterceptorTest extends AbstractHttpClientTest {
     }
     return new Response(null, response.code());
   }
+
+  @Test
+  public void responseBodyOfUnknownLengthIsCapturedWhileRead() throws IOException {
+    String body = "{\"name\": \"streamed\"}";
+    Request request = new Request.Builder().url("http://localhost/stream").get().build();
+    okhttp3.Response streamed =
+        new okhttp3.Response.Builder()
+            .request(request)
+            .protocol(Protocol.HTTP_1_1)
+            .code(200)
+            .message("OK")
+            .body(
+                ResponseBody.create(
+                    new Buffer().writeUtf8(body), MediaType.get("application/json"), -1))
+            .build();
+    RecordingSpan span = new RecordingSpan();
+
+    okhttp3.Response response =
+        OkHttpTracingInterceptor.captureResponseBody(span, streamed, "/stream");
+
+    // the body is teed while the application reads it instead of being buffered upfront
+    Assertions.assertEquals(-1, response.body().contentLength());
+    Assertions.assertNull(span.getAttribute(HypertraceSemanticAttributes.HTTP_RESPONSE_BODY));
+    Assertions.assertEquals(body, response.body().string());
+    Assertions.assertEquals(
+        body, span.getAttribute(HypertraceSemanticAttributes.HTTP_RESPONSE_BODY));
+  }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.okhttp.v3_0;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TeeSourceTest {
+
+  private static final String BODY = "0123456789";
+
+  private final List<String> completed = new ArrayList<>();
+
+  @Test
+  public void capturesBodyOnceExhausted() throws IOException {
+    BufferedSource source = Okio.buffer(teeSource(new Buffer().writeUtf8(BODY), 100));
+
+    Assertions.assertEquals(BODY, source.readUtf8());
+    Assertions.assertEquals(Collections.singletonList(BODY), completed);
+  }
+
+  @Test
+  public void capturesAtMostMaxBytes() throws IOException {
+    BufferedSource source = Okio.buffer(teeSource(new Buffer().writeUtf8(BODY), 4));
+
+    Assertions.assertEquals(BODY, source.readUtf8());
+    Assertions.assertEquals(Collections.singletonList("0123"), completed);
+  }
+
+  @Test
+  public void capturesBytesReadBeforeClose() throws IOException {
+    TeeSource source = teeSource(new Buffer().writeUtf8(BODY), 100);
+
+    Assertions.assertEquals(3, source.read(new Buffer(), 3));
+    source.close();
+    source.close();
+
+    Assertions.assertEquals(Collections.singletonList("012"), completed);
+  }
+
+  @Test
+  public void capturesBytesReadBeforeFailure() throws IOException {
+    Source failing =
+        new ForwardingSource(new Buffer().writeUtf8(BODY)) {
+          private boolean failed;
+
+          @Override
+          public long read(Buffer sink, long byteCount) throws IOException {
+            if (failed) {
+              throw new IOException("canceled");
+            }
+            failed = true;
+            return super.read(sink, 3);
+          }
+        };
+    TeeSource source = teeSource(failing, 100);
+
+    Assertions.assertEquals(3, source.read(new Buffer(), 100));
+    Assertions.assertThrows(IOException.class, () -> source.read(new Buffer(), 100));
+
+    Assertions.assertEquals(Collections.singletonList("012"), completed);
+  }
+
+  @Test
+  public void completedSourceIsNotTracked() throws IOException {
+    int pending = TeeSource.pendingCount();
+    TeeSource source = teeSource(new Buffer().writeUtf8(BODY), 100);
+    Assertions.assertEquals(pending + 1, TeeSource.pendingCount());
+
+    source.close();
+
+    Assertions.assertEquals(pending, TeeSource.pendingCount());
+  }
+
+  @Test
+  public void releasesBufferOfAbandonedSource() throws Exception {
+    AtomicBoolean released = new AtomicBoolean();
+    abandonSource(released);
+
+    for (int i = 0; i < 100 && !released.get(); i++) {
+      System.gc();
+      Thread.sleep(10);
+      TeeSource.releaseAbandoned();
+    }
+
+    Assertions.assertTrue(released.get());
+    Assertions.assertTrue(completed.isEmpty());
+  }
+
+  private void abandonSource(AtomicBoolean released) throws IOException {
+    BoundedByteArrayOutputStream buffer =
+        new BoundedByteArrayOutputStream(100, StandardCharsets.UTF_8) {
+          @Override
+          public void release() {
+            released.set(true);
+          }
+        };
+    TeeSource source =
+        new TeeSource(
+            new Buffer().writeUtf8(BODY),
+            buffer,
+            100,
+            captured -> completed.add(new String(captured.toByteArray(), StandardCharsets.UTF_8)));
+    source.read(new Buffer(), 3);
+  }
+
+  private TeeSource teeSource(Source delegate, int maxBytes) {
+    return new TeeSource(
+        delegate,
+        new BoundedByteArrayOutputStream(100, StandardCharsets.UTF_8),
+        maxBytes,
+        captured -> completed.add(new String(captured.toByteArray(), StandardCharsets.UTF_8)));
+  }
+}
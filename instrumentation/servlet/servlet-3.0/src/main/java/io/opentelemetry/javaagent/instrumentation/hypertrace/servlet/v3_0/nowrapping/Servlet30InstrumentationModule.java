@@ -41,6 +41,7 @@ public class Servlet30InstrumentationModule extends InstrumentationModule {
 
   @Override
   public List<TypeInstrumentation> typeInstrumentations() {
+    // installed even if data capture is disabled for the module, the advice evaluates the filter
     return Arrays.asList(
         new Servlet30AndFilterInstrumentation(),
         new ServletRequestInstrumentation(),
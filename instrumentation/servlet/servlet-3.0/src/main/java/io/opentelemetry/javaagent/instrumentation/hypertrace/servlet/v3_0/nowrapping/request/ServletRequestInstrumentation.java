@@ -114,8 +114,7 @@ public class ServletRequestInstrumentation implements TypeInstrumentation {
       }
 
       ByteBufferSpanPair bufferSpanPair =
-          Utils.createRequestByteBufferSpanPair(
-              httpServletRequest, spanAndObjectPair.getSpan(), spanAndObjectPair.getHeaders());
+          Utils.createRequestByteBufferSpanPair(httpServletRequest, spanAndObjectPair);
       contextStore.set(servletInputStream, bufferSpanPair);
       spanAndObjectPair.setAssociatedObject(servletInputStream);
     }
@@ -166,8 +165,7 @@ public class ServletRequestInstrumentation implements TypeInstrumentation {
       }
 
       CharBufferSpanPair bufferSpanPair =
-          Utils.createRequestCharBufferSpanPair(
-              httpServletRequest, spanAndObjectPair.getSpan(), spanAndObjectPair.getHeaders());
+          Utils.createRequestCharBufferSpanPair(httpServletRequest, spanAndObjectPair);
       contextStore.set(reader, bufferSpanPair);
       spanAndObjectPair.setAssociatedObject(reader);
     }
@@ -243,9 +241,7 @@ public class ServletRequestInstrumentation implements TypeInstrumentation {
         stringMap = stringMapSpanPair.stringMap;
       } else {
         stringMap = new HashMap<>();
-        stringMapSpanPair =
-            Utils.createStringMapSpanPair(
-                stringMap, spanAndObjectPair.getSpan(), spanAndObjectPair.getHeaders());
+        stringMapSpanPair = Utils.createStringMapSpanPair(stringMap, spanAndObjectPair);
         contextStore.set(httpServletRequest, stringMapSpanPair);
       }
 
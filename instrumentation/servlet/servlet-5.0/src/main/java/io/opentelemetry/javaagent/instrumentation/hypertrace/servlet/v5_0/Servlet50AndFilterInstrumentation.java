@@ -23,7 +23,6 @@ import static net.bytebuddy.matcher.ElementMatchers.named;
 import static net.bytebuddy.matcher.ElementMatchers.namedOneOf;
 import static net.bytebuddy.matcher.ElementMatchers.takesArgument;
 
-import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.instrumentation.api.util.VirtualField;
 import io.opentelemetry.javaagent.bootstrap.Java8BytecodeBridge;
@@ -40,13 +39,14 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.Map;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
+import org.hypertrace.agent.core.config.CaptureFlags;
 import org.hypertrace.agent.core.config.InstrumentationConfig;
 import org.hypertrace.agent.core.filter.FilterResult;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
 import org.hypertrace.agent.core.instrumentation.HypertraceCallDepthThreadLocalMap;
 import org.hypertrace.agent.core.instrumentation.HypertraceEvaluationException;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
@@ -58,6 +58,7 @@ import org.hypertrace.agent.core.instrumentation.buffer.CharBufferSpanPair;
 import org.hypertrace.agent.core.instrumentation.buffer.StringMapSpanPair;
 import org.hypertrace.agent.core.instrumentation.utils.ContentTypeUtils;
 import org.hypertrace.agent.filter.FilterRegistry;
+import org.hypertrace.agent.filter.api.Filter;
 
 public class Servlet50AndFilterInstrumentation implements TypeInstrumentation {
 
@@ -87,7 +88,8 @@ public class Servlet50AndFilterInstrumentation implements TypeInstrumentation {
     public static boolean start(
         @Advice.Argument(value = 0) ServletRequest request,
         @Advice.Argument(value = 1) ServletResponse response,
-        @Advice.Local("currentSpan") Span currentSpan) {
+        @Advice.Local("currentSpan") Span currentSpan,
+        @Advice.Local("capture") CapturePolicy.Decision capture) {
 
       int callDepth =
           HypertraceCallDepthThreadLocalMap.incrementCallDepth(Servlet50InstrumentationName.class);
@@ -103,44 +105,59 @@ public class Servlet50AndFilterInstrumentation implements TypeInstrumentation {
       currentSpan = Java8BytecodeBridge.currentSpan();
 
       InstrumentationConfig instrumentationConfig = InstrumentationConfig.ConfigProvider.get();
+      // one decision for the exchange, it is used by the response instrumentation too
+      capture =
+          CapturePolicy.get()
+              .decide(
+                  currentSpan,
+                  Servlet50InstrumentationName.PRIMARY,
+                  Servlet50InstrumentationName.OTHER);
+      VirtualField.find(HttpServletResponse.class, CapturePolicy.Decision.class)
+          .set(httpResponse, capture);
 
       Utils.addSessionId(currentSpan, httpRequest);
 
       // set request headers
-      Enumeration<String> headerNames = httpRequest.getHeaderNames();
-      Map<String, String> headers = new HashMap<>();
-      while (headerNames.hasMoreElements()) {
-        String headerName = headerNames.nextElement();
-        String headerValue = httpRequest.getHeader(headerName);
-        AttributeKey<String> attributeKey =
-            HypertraceSemanticAttributes.httpRequestHeader(headerName);
-
-        if (instrumentationConfig.httpHeaders().request()) {
-          currentSpan.setAttribute(attributeKey, headerValue);
+      if (capture.captureHeaders()
+          && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_HEADERS_REQUEST)) {
+        Enumeration<String> headerNames = httpRequest.getHeaderNames();
+        while (headerNames.hasMoreElements()) {
+          String headerName = headerNames.nextElement();
+          currentSpan.setAttribute(
+              HypertraceSemanticAttributes.httpRequestHeader(headerName),
+              httpRequest.getHeader(headerName));
         }
-        headers.put(attributeKey.getKey(), headerValue);
       }
+      Filter filter = FilterRegistry.getFilter();
+      // the headers are copied only if a filter reads them
+      Map<String, String> headers =
+          filter.evaluatesRequestHeaders() || filter.evaluatesRequestBody()
+              ? Utils.headerView(httpRequest)
+              : Collections.emptyMap();
 
-      FilterResult filterResult =
-          FilterRegistry.getFilter().evaluateRequestHeaders(currentSpan, headers);
-      if (filterResult.shouldBlock()) {
-        try {
-          httpResponse.getWriter().write(filterResult.getBlockingMsg());
-        } catch (IOException ignored) {
+      if (filter.evaluatesRequestHeaders()) {
+        FilterResult filterResult = filter.evaluateRequestHeaders(currentSpan, headers);
+        if (filterResult.shouldBlock()) {
+          try {
+            httpResponse.getWriter().write(filterResult.getBlockingMsg());
+          } catch (IOException ignored) {
+          }
+          httpResponse.setStatus(filterResult.getBlockingStatusCode());
+          // skip execution of the user code
+          return true;
         }
-        httpResponse.setStatus(filterResult.getBlockingStatusCode());
-        // skip execution of the user code
-        return true;
       }
 
-      if (instrumentationConfig.httpBody().request()
+      if (instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_REQUEST)
           && ContentTypeUtils.shouldCapture(httpRequest.getContentType())) {
-        // The HttpServletRequest instrumentation uses this to
-        // enable the instrumentation
-        VirtualField.find(HttpServletRequest.class, SpanAndObjectPair.class)
-            .set(
-                httpRequest,
-                new SpanAndObjectPair(currentSpan, Collections.unmodifiableMap(headers)));
+        CapturePolicy.Decision requestCapture = Utils.requestBodyDecision(httpRequest, capture);
+        // the body is buffered for the filter even if it is not captured for this trace
+        if (requestCapture.captureBodies() || filter.evaluatesRequestBody()) {
+          // The HttpServletRequest instrumentation uses this to
+          // enable the instrumentation
+          VirtualField.find(HttpServletRequest.class, SpanAndObjectPair.class)
+              .set(httpRequest, new SpanAndObjectPair(currentSpan, headers, requestCapture));
+        }
       }
       return false;
     }
@@ -150,7 +167,8 @@ public class Servlet50AndFilterInstrumentation implements TypeInstrumentation {
         @Advice.Argument(0) ServletRequest request,
         @Advice.Argument(1) ServletResponse response,
         @Advice.Thrown(readOnly = false) Throwable throwable,
-        @Advice.Local("currentSpan") Span currentSpan) {
+        @Advice.Local("currentSpan") Span currentSpan,
+        @Advice.Local("capture") CapturePolicy.Decision capture) {
       int callDepth =
           HypertraceCallDepthThreadLocalMap.decrementCallDepth(Servlet50InstrumentationName.class);
       if (callDepth > 0) {
@@ -186,7 +204,10 @@ public class Servlet50AndFilterInstrumentation implements TypeInstrumentation {
             VirtualField.find(HttpServletRequest.class, StringMapSpanPair.class);
 
         if (!request.isAsyncStarted()) {
-          if (instrumentationConfig.httpHeaders().response()) {
+          if (capture.captureHeaders()
+              && instrumentationConfig
+                  .captureFlags()
+                  .isEnabled(CaptureFlags.HTTP_HEADERS_RESPONSE)) {
             if (throwable == null && !httpResponse.isCommitted()) {
               httpResponse.flushBuffer();
             }
@@ -209,10 +230,12 @@ public class Servlet50AndFilterInstrumentation implements TypeInstrumentation {
           }
 
           // capture response body
-          if (instrumentationConfig.httpBody().response()
+          if (capture.captureBodies()
+              && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_RESPONSE)
               && ContentTypeUtils.shouldCapture(httpResponse.getContentType())) {
             Utils.captureResponseBody(
                 currentSpan,
+                Utils.endpoint(httpRequest),
                 httpResponse,
                 responseContextStore,
                 outputStreamContextStore,
@@ -220,7 +243,7 @@ public class Servlet50AndFilterInstrumentation implements TypeInstrumentation {
           }
 
           // remove request body buffers from context stores, otherwise they might get reused
-          if (instrumentationConfig.httpBody().request()
+          if (instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_REQUEST)
               && ContentTypeUtils.shouldCapture(httpRequest.getContentType())) {
             Utils.resetRequestBodyBuffers(
                 httpRequest,
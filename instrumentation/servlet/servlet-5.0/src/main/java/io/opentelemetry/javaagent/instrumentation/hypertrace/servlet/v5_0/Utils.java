@@ -20,13 +20,17 @@ import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.instrumentation.api.util.VirtualField;
 import jakarta.servlet.ServletInputStream;
 import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletMapping;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
+import jakarta.servlet.http.MappingMatch;
 import java.io.BufferedReader;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.util.Enumeration;
 import java.util.Map;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.SpanAndObjectPair;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
@@ -34,6 +38,7 @@ import org.hypertrace.agent.core.instrumentation.buffer.BoundedCharArrayWriter;
 import org.hypertrace.agent.core.instrumentation.buffer.ByteBufferSpanPair;
 import org.hypertrace.agent.core.instrumentation.buffer.CharBufferSpanPair;
 import org.hypertrace.agent.core.instrumentation.buffer.StringMapSpanPair;
+import org.hypertrace.agent.filter.api.HeaderView;
 
 public class Utils {
 
@@ -48,8 +53,55 @@ public class Utils {
     }
   }
 
+  /** Returns the request headers keyed by span attribute name, copied on first access. */
+  public static Map<String, String> headerView(HttpServletRequest httpRequest) {
+    return new HeaderView() {
+      @Override
+      protected void collect(Map<String, String> headers) {
+        Enumeration<String> headerNames = httpRequest.getHeaderNames();
+        while (headerNames.hasMoreElements()) {
+          String headerName = headerNames.nextElement();
+          headers.put(
+              HypertraceSemanticAttributes.httpRequestHeader(headerName).getKey(),
+              httpRequest.getHeader(headerName));
+        }
+      }
+    };
+  }
+
+  /**
+   * Returns the route of the request the capture budget is kept for, i.e. the servlet mapping it
+   * matched instead of the request URI that may contain ids. Path and extension mappings like
+   * {@code /api/*} or {@code *.do} yield the pattern, exact and default mappings the servlet path.
+   */
+  public static String endpoint(HttpServletRequest httpRequest) {
+    HttpServletMapping mapping = httpRequest.getHttpServletMapping();
+    if (mapping != null
+        && (mapping.getMappingMatch() == MappingMatch.PATH
+            || mapping.getMappingMatch() == MappingMatch.EXTENSION)) {
+      return httpRequest.getContextPath() + mapping.getPattern();
+    }
+    return httpRequest.getContextPath() + httpRequest.getServletPath();
+  }
+
+  /**
+   * Returns the decision for the request body of the exchange. The endpoint budget is charged if
+   * the body is captured, only headers are captured once it has been exhausted.
+   */
+  public static CapturePolicy.Decision requestBodyDecision(
+      HttpServletRequest httpRequest, CapturePolicy.Decision capture) {
+    if (capture.captureBodies()
+        && !CapturePolicy.get()
+            .tryCaptureBody(endpoint(httpRequest), httpRequest.getContentLength())) {
+      return CapturePolicy.Decision.HEADERS;
+    }
+    return capture;
+  }
+
+  /** Adds the captured response body to the span if the endpoint budget admits it. */
   public static void captureResponseBody(
       Span span,
+      String endpoint,
       HttpServletResponse httpServletResponse,
       VirtualField<HttpServletResponse, SpanAndObjectPair> responseContextStore,
       VirtualField<ServletOutputStream, BoundedByteArrayOutputStream> streamContextStore,
@@ -66,21 +118,27 @@ public class Utils {
           (ServletOutputStream) responseStreamWriterHolder.getAssociatedObject();
       BoundedByteArrayOutputStream buffer = streamContextStore.get(servletOutputStream);
       if (buffer != null) {
+        streamContextStore.set(servletOutputStream, null);
         try {
-          span.setAttribute(
-              HypertraceSemanticAttributes.HTTP_RESPONSE_BODY,
-              buffer.toStringWithSuppliedCharset());
+          if (CapturePolicy.get().tryCaptureBody(endpoint, buffer.size())) {
+            span.setAttribute(
+                HypertraceSemanticAttributes.HTTP_RESPONSE_BODY,
+                buffer.toStringWithSuppliedCharset());
+          }
         } catch (UnsupportedEncodingException e) {
           // should not happen
+        } finally {
+          buffer.release();
         }
-        streamContextStore.set(servletOutputStream, null);
       }
     } else if (responseStreamWriterHolder.getAssociatedObject() instanceof PrintWriter) {
       PrintWriter printWriter = (PrintWriter) responseStreamWriterHolder.getAssociatedObject();
       BoundedCharArrayWriter buffer = writerContextStore.get(printWriter);
       if (buffer != null) {
-        span.setAttribute(HypertraceSemanticAttributes.HTTP_RESPONSE_BODY, buffer.toString());
         writerContextStore.set(printWriter, null);
+        if (CapturePolicy.get().tryCaptureBody(endpoint, buffer.size())) {
+          span.setAttribute(HypertraceSemanticAttributes.HTTP_RESPONSE_BODY, buffer.toString());
+        }
       }
     }
   }
@@ -106,7 +164,11 @@ public class Utils {
         // capture body explicitly e.g. Jackson does not call ServletInputStream$read() until -1 is
         // returned
         // it does not even call ServletInputStream#available()
-        byteBufferSpanPair.captureBody(HypertraceSemanticAttributes.HTTP_REQUEST_BODY);
+        try {
+          byteBufferSpanPair.captureBody(HypertraceSemanticAttributes.HTTP_REQUEST_BODY);
+        } finally {
+          byteBufferSpanPair.release();
+        }
         streamContextStore.set(servletInputStream, null);
       }
     } else if (requestStreamReaderHolder.getAssociatedObject() instanceof BufferedReader) {
@@ -28,6 +28,7 @@ import jakarta.servlet.http.HttpServletResponse;
 import java.io.BufferedReader;
 import java.io.PrintWriter;
 import java.util.concurrent.atomic.AtomicBoolean;
+import org.hypertrace.agent.core.config.CaptureFlags;
 import org.hypertrace.agent.core.config.InstrumentationConfig;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.SpanAndObjectPair;
@@ -100,13 +101,18 @@ public final class BodyCaptureAsyncListener implements ServletAsyncListener<Http
   private void captureResponseDataAndClearRequestBuffer(
       HttpServletResponse servletResponse, HttpServletRequest servletRequest) {
     if (servletResponse != null) {
-      if (instrumentationConfig.httpBody().response()
+      if (instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_RESPONSE)
           && ContentTypeUtils.shouldCapture(servletResponse.getContentType())) {
         Utils.captureResponseBody(
-            span, servletResponse, responseContextStore, streamContextStore, writerContextStore);
+            span,
+            servletRequest != null ? Utils.endpoint(servletRequest) : null,
+            servletResponse,
+            responseContextStore,
+            streamContextStore,
+            writerContextStore);
       }
 
-      if (instrumentationConfig.httpHeaders().response()) {
+      if (instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_HEADERS_RESPONSE)) {
         for (String headerName : servletResponse.getHeaderNames()) {
           String headerValue = servletResponse.getHeader(headerName);
           span.setAttribute(
@@ -116,7 +122,7 @@ public final class BodyCaptureAsyncListener implements ServletAsyncListener<Http
     }
     if (servletRequest != null) {
       // remove request body buffers from context stores, otherwise they might get reused
-      if (instrumentationConfig.httpBody().request()
+      if (instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_REQUEST)
           && ContentTypeUtils.shouldCapture(servletRequest.getContentType())) {
         Utils.resetRequestBodyBuffers(
             servletRequest,
@@ -20,6 +20,10 @@ import io.opentelemetry.api.trace.Span;
 import jakarta.servlet.http.HttpServletRequest;
 import java.nio.charset.Charset;
 import java.util.Map;
+import org.hypertrace.agent.core.TriFunction;
+import org.hypertrace.agent.core.filter.FilterResult;
+import org.hypertrace.agent.core.filter.RequestBodyEvaluation;
+import org.hypertrace.agent.core.instrumentation.SpanAndObjectPair;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
 import org.hypertrace.agent.core.instrumentation.buffer.ByteBufferSpanPair;
 import org.hypertrace.agent.core.instrumentation.buffer.CharBufferSpanPair;
@@ -33,10 +37,18 @@ public class Utils {
 
   private static final Filter filter = FilterRegistry.getFilter();
 
+  /** Calls the filter only if it evaluates request bodies. */
+  private static final TriFunction<Span, String, Map<String, String>, FilterResult> bodyFilter =
+      filter.evaluatesRequestBody()
+          ? filter::evaluateRequestBody
+          : (span, body, headers) -> FilterResult.ALLOW;
+
   private Utils() {}
 
   public static ByteBufferSpanPair createRequestByteBufferSpanPair(
-      HttpServletRequest httpServletRequest, Span span, Map<String, String> headers) {
+      HttpServletRequest httpServletRequest, SpanAndObjectPair spanAndObjectPair) {
+    Span span = spanAndObjectPair.getSpan();
+    Map<String, String> headers = spanAndObjectPair.getHeaders();
     String charsetStr = httpServletRequest.getCharacterEncoding();
     Charset charset = ContentTypeCharsetUtils.toCharset(charsetStr);
     int contentLength = httpServletRequest.getContentLength();
@@ -46,12 +58,16 @@ public class Utils {
     return new ByteBufferSpanPair(
         span,
         BoundedBuffersFactory.createStream(contentLength, charset),
-        filter::evaluateRequestBody,
-        headers);
+        bodyFilter,
+        headers,
+        startBodyEvaluation(span, headers),
+        spanAndObjectPair.getDecision());
   }
 
   public static CharBufferSpanPair createRequestCharBufferSpanPair(
-      HttpServletRequest httpServletRequest, Span span, Map<String, String> headers) {
+      HttpServletRequest httpServletRequest, SpanAndObjectPair spanAndObjectPair) {
+    Span span = spanAndObjectPair.getSpan();
+    Map<String, String> headers = spanAndObjectPair.getHeaders();
     int contentLength = httpServletRequest.getContentLength();
     if (contentLength < 0) {
       contentLength = ContentLengthUtils.DEFAULT;
@@ -59,20 +75,32 @@ public class Utils {
     return new CharBufferSpanPair(
         span,
         BoundedBuffersFactory.createWriter(contentLength),
-        filter::evaluateRequestBody,
-        headers);
+        bodyFilter,
+        headers,
+        startBodyEvaluation(span, headers),
+        spanAndObjectPair.getDecision());
+  }
+
+  private static RequestBodyEvaluation startBodyEvaluation(Span span, Map<String, String> headers) {
+    if (!filter.evaluatesRequestBodyIncrementally()) {
+      return null;
+    }
+    return filter.startRequestBodyEvaluation(span, headers);
   }
 
   /**
    * Create a StringMapSpanPair.
    *
    * @param stringMap
-   * @param span
-   * @param headers
+   * @param spanAndObjectPair
    * @return
    */
   public static StringMapSpanPair createStringMapSpanPair(
-      Map<String, String> stringMap, Span span, Map<String, String> headers) {
-    return new StringMapSpanPair(span, stringMap, headers);
+      Map<String, String> stringMap, SpanAndObjectPair spanAndObjectPair) {
+    return new StringMapSpanPair(
+        spanAndObjectPair.getSpan(),
+        stringMap,
+        spanAndObjectPair.getHeaders(),
+        spanAndObjectPair.getDecision());
   }
 }
@@ -22,9 +22,12 @@ import static net.bytebuddy.matcher.ElementMatchers.named;
 import static net.bytebuddy.matcher.ElementMatchers.returns;
 import static net.bytebuddy.matcher.ElementMatchers.takesArguments;
 
+import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.instrumentation.api.util.VirtualField;
+import io.opentelemetry.javaagent.bootstrap.Java8BytecodeBridge;
 import io.opentelemetry.javaagent.extension.instrumentation.TypeInstrumentation;
 import io.opentelemetry.javaagent.extension.instrumentation.TypeTransformer;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.servlet.v5_0.Servlet50InstrumentationName;
 import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.ServletResponse;
 import jakarta.servlet.http.HttpServletResponse;
@@ -34,7 +37,9 @@ import java.nio.charset.Charset;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
+import org.hypertrace.agent.core.config.CaptureFlags;
 import org.hypertrace.agent.core.config.InstrumentationConfig;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
 import org.hypertrace.agent.core.instrumentation.HypertraceCallDepthThreadLocalMap;
 import org.hypertrace.agent.core.instrumentation.SpanAndObjectPair;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
@@ -109,10 +114,24 @@ public class ServletResponseInstrumentation implements TypeInstrumentation {
         return;
       }
 
-      // do not capture if data capture is disabled or not supported content type
+      // do not capture if data capture is disabled, bodies are not captured for the exchange or
+      // not supported content type. A response written outside of a server span is still captured.
       InstrumentationConfig instrumentationConfig = InstrumentationConfig.ConfigProvider.get();
+      CapturePolicy.Decision capture =
+          VirtualField.find(HttpServletResponse.class, CapturePolicy.Decision.class)
+              .get(httpServletResponse);
+      Span currentSpan = Java8BytecodeBridge.currentSpan();
+      if (capture == null && currentSpan.getSpanContext().isValid()) {
+        capture =
+            CapturePolicy.get()
+                .decide(
+                    currentSpan,
+                    Servlet50InstrumentationName.PRIMARY,
+                    Servlet50InstrumentationName.OTHER);
+      }
       String contentType = httpServletResponse.getContentType();
-      if (instrumentationConfig.httpBody().response()
+      if (instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_RESPONSE)
+          && (capture == null || capture.captureBodies())
           && ContentTypeUtils.shouldCapture(contentType)) {
 
         String charsetStr = httpServletResponse.getCharacterEncoding();
@@ -169,10 +188,24 @@ public class ServletResponseInstrumentation implements TypeInstrumentation {
         return;
       }
 
-      // do not capture if data capture is disabled or not supported content type
+      // do not capture if data capture is disabled, bodies are not captured for the exchange or
+      // not supported content type. A response written outside of a server span is still captured.
       InstrumentationConfig instrumentationConfig = InstrumentationConfig.ConfigProvider.get();
+      CapturePolicy.Decision capture =
+          VirtualField.find(HttpServletResponse.class, CapturePolicy.Decision.class)
+              .get(httpServletResponse);
+      Span currentSpan = Java8BytecodeBridge.currentSpan();
+      if (capture == null && currentSpan.getSpanContext().isValid()) {
+        capture =
+            CapturePolicy.get()
+                .decide(
+                    currentSpan,
+                    Servlet50InstrumentationName.PRIMARY,
+                    Servlet50InstrumentationName.OTHER);
+      }
       String contentType = httpServletResponse.getContentType();
-      if (instrumentationConfig.httpBody().response()
+      if (instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_RESPONSE)
+          && (capture == null || capture.captureBodies())
           && ContentTypeUtils.shouldCapture(contentType)) {
 
         BoundedCharArrayWriter writer = BoundedBuffersFactory.createWriter();
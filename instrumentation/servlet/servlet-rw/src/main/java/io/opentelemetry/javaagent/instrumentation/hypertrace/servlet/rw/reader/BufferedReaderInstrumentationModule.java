@@ -36,6 +36,8 @@ public class BufferedReaderInstrumentationModule extends InstrumentationModule {
 
   @Override
   public List<TypeInstrumentation> typeInstrumentations() {
+    // installed even if data capture is disabled by one of the names, the servlet request body is
+    // read through the reader for the filter
     return Collections.singletonList(new BufferedReaderInstrumentation());
   }
 }
@@ -21,16 +21,23 @@ import io.opentelemetry.javaagent.extension.instrumentation.InstrumentationModul
 import io.opentelemetry.javaagent.extension.instrumentation.TypeInstrumentation;
 import java.util.Collections;
 import java.util.List;
+import org.hypertrace.agent.core.config.InstrumentationConfig;
 
 @AutoService(InstrumentationModule.class)
 public class PrintWriterInstrumentationModule extends InstrumentationModule {
 
+  private static final String PRIMARY = "printwriter";
+  private static final String[] OTHER = {"servlet", "servlet-3", "ht", "servlet-no-wrapping"};
+
   public PrintWriterInstrumentationModule() {
-    super("printwriter", "servlet", "servlet-3", "ht", "servlet-no-wrapping");
+    super(PRIMARY, OTHER);
   }
 
   @Override
   public List<TypeInstrumentation> typeInstrumentations() {
+    if (!InstrumentationConfig.ConfigProvider.isModuleEnabled(PRIMARY, OTHER)) {
+      return Collections.emptyList();
+    }
     return Collections.singletonList(new PrintWriterInstrumentation());
   }
 }
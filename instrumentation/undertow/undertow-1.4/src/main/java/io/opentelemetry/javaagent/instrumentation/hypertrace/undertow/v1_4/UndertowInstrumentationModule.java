@@ -20,17 +20,25 @@ import com.google.auto.service.AutoService;
 import io.opentelemetry.javaagent.extension.instrumentation.InstrumentationModule;
 import io.opentelemetry.javaagent.extension.instrumentation.TypeInstrumentation;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import org.hypertrace.agent.core.config.InstrumentationConfig;
 
 @AutoService(InstrumentationModule.class)
 public final class UndertowInstrumentationModule extends InstrumentationModule {
 
+  private static final String PRIMARY = "undertow";
+  private static final String[] OTHER = {"undertow-1.4-ht", "ht", "undertow-ht"};
+
   public UndertowInstrumentationModule() {
-    super("undertow", "undertow-1.4-ht", "ht", "undertow-ht");
+    super(PRIMARY, OTHER);
   }
 
   @Override
   public List<TypeInstrumentation> typeInstrumentations() {
+    if (!InstrumentationConfig.ConfigProvider.isModuleEnabled(PRIMARY, OTHER)) {
+      return Collections.emptyList();
+    }
     return Arrays.asList(
         new UndertowHttpServerExchangeInstrumentation(), new StreamSourceChannelInstrumentation());
   }
@@ -45,6 +45,7 @@ public final class BodyCapturingExchangeCompletionListener implements ExchangeCo
       return;
     }
     spanAndBuffer.span.setAttribute(HypertraceSemanticAttributes.HTTP_REQUEST_BODY, body);
+    spanAndBuffer.byteArrayBuffer.release();
     nextListener.proceed();
   }
 }
@@ -21,13 +21,17 @@ import io.opentelemetry.instrumentation.api.util.VirtualField;
 import io.opentelemetry.javaagent.instrumentation.undertow.UndertowSingletons;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.Headers;
+import io.undertow.util.PathTemplateMatch;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import org.hypertrace.agent.core.config.CaptureFlags;
 import org.hypertrace.agent.core.config.InstrumentationConfig.ConfigProvider;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.SpanAndBuffer;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
+import org.hypertrace.agent.core.instrumentation.utils.ContentTypeInfo;
 import org.hypertrace.agent.core.instrumentation.utils.ContentTypeUtils;
 import org.xnio.channels.StreamSourceChannel;
 
@@ -48,14 +52,26 @@ public final class Utils {
       final HttpServerExchange httpServerExchange,
       final StreamSourceChannel returnedChannel,
       final VirtualField<StreamSourceChannel, SpanAndBuffer> contextStore) {
-    if (!ConfigProvider.get().httpBody().request()
-        || !ContentTypeUtils.shouldCapture(
-            httpServerExchange.getRequestHeaders().getFirst(Headers.CONTENT_TYPE))) {
+    if (!ConfigProvider.get().captureFlags().isEnabled(CaptureFlags.HTTP_BODY_REQUEST)) {
+      return;
+    }
+    // the parsed content type and its charset are cached
+    final ContentTypeInfo contentTypeInfo =
+        ContentTypeUtils.getInfo(
+            httpServerExchange.getRequestHeaders().getFirst(Headers.CONTENT_TYPE));
+    if (!contentTypeInfo.shouldCapture()) {
       return;
     }
     final Span span =
         Span.fromContext(UndertowSingletons.helper().getServerContext(httpServerExchange));
-    final Charset charset = Charset.forName(httpServerExchange.getRequestCharset());
+    // the endpoint budget is charged only for a body that is captured
+    if (!CapturePolicy.get().decide(span).captureBodies()
+        || !CapturePolicy.get()
+            .tryCaptureBody(
+                endpoint(httpServerExchange), httpServerExchange.getRequestContentLength())) {
+      return;
+    }
+    final Charset charset = contentTypeInfo.getCharset();
     final BoundedByteArrayOutputStream boundedByteArrayOutputStream =
         BoundedBuffersFactory.createStream(
             (int) httpServerExchange.getRequestContentLength(), charset);
@@ -74,7 +90,21 @@ public final class Utils {
   }
 
   /**
-   * @param readOnlyBuffer that was just read into {@link StreamSourceChannel#read(ByteBuffer)}
+   * Returns the endpoint the capture budget is charged for. It is the path template matched by a
+   * routing handler, a request path is an endpoint only if it has a configured budget.
+   */
+  private static String endpoint(final HttpServerExchange httpServerExchange) {
+    final PathTemplateMatch pathTemplateMatch =
+        httpServerExchange.getAttachment(PathTemplateMatch.ATTACHMENT_KEY);
+    if (pathTemplateMatch != null) {
+      return pathTemplateMatch.getMatchedTemplate();
+    }
+    return CapturePolicy.get().pathEndpoint(httpServerExchange.getRequestPath());
+  }
+
+  /**
+   * @param readOnlyBuffer view of the buffer that was just read into {@link
+   *     StreamSourceChannel#read(ByteBuffer)}, its position and limit are changed
    * @param numBytesRead into the provided {@link ByteBuffer} by {@link
    *     StreamSourceChannel#read(ByteBuffer)}
    * @param spanAndBuffer named tuple retrieved from the {@link VirtualField} where the {@link
@@ -88,12 +118,10 @@ public final class Utils {
     if (numBytesRead <= 0) {
       return;
     }
-    readOnlyBuffer.position(readOnlyBuffer.position() - numBytesRead);
-
-    final BoundedByteArrayOutputStream boundedByteArrayOutputStream = spanAndBuffer.byteArrayBuffer;
-    for (int i = 0; i < numBytesRead; i++) {
-      final byte b = readOnlyBuffer.get();
-      boundedByteArrayOutputStream.write(b);
-    }
+    // the bytes just read end at the position of the buffer, copy them in bulk
+    final int end = readOnlyBuffer.position();
+    readOnlyBuffer.limit(end);
+    readOnlyBuffer.position(end - numBytesRead);
+    spanAndBuffer.byteArrayBuffer.write(readOnlyBuffer);
   }
 }
@@ -21,16 +21,23 @@ import io.opentelemetry.javaagent.extension.instrumentation.InstrumentationModul
 import io.opentelemetry.javaagent.extension.instrumentation.TypeInstrumentation;
 import java.util.Collections;
 import java.util.List;
+import org.hypertrace.agent.core.config.InstrumentationConfig;
 
 @AutoService(InstrumentationModule.class)
 public final class UndertowServletInstrumentationModule extends InstrumentationModule {
 
+  private static final String PRIMARY = "undertow";
+  private static final String[] OTHER = {"undertow-servlet-1.4-ht", "ht", "undertow-ht"};
+
   public UndertowServletInstrumentationModule() {
-    super("undertow", "undertow-servlet-1.4-ht", "ht", "undertow-ht");
+    super(PRIMARY, OTHER);
   }
 
   @Override
   public List<TypeInstrumentation> typeInstrumentations() {
+    if (!InstrumentationConfig.ConfigProvider.isModuleEnabled(PRIMARY, OTHER)) {
+      return Collections.emptyList();
+    }
     return Collections.singletonList(new UndertowHttpServletRequestInstrumentation());
   }
 }
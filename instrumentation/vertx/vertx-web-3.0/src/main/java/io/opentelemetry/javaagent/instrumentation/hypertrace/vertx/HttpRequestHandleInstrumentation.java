@@ -32,8 +32,11 @@ import java.util.Map;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
+import org.hypertrace.agent.core.config.CaptureFlags;
 import org.hypertrace.agent.core.config.InstrumentationConfig;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
+import org.hypertrace.agent.core.instrumentation.utils.ContentLengthUtils;
 import org.hypertrace.agent.core.instrumentation.utils.ContentTypeUtils;
 
 public class HttpRequestHandleInstrumentation implements TypeInstrumentation {
@@ -68,14 +71,17 @@ public class HttpRequestHandleInstrumentation implements TypeInstrumentation {
       Span span = Span.fromContext(contexts.context);
 
       InstrumentationConfig instrumentationConfig = InstrumentationConfig.ConfigProvider.get();
-      if (instrumentationConfig.httpHeaders().request()) {
+      CapturePolicy.Decision capture = CapturePolicy.get().decide(span);
+      if (capture.captureHeaders()
+          && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_HEADERS_REQUEST)) {
         for (Map.Entry<String, String> entry : request.headers()) {
           span.setAttribute(
               HypertraceSemanticAttributes.httpRequestHeader(entry.getKey()), entry.getValue());
         }
       }
 
-      if (instrumentationConfig.httpHeaders().response()) {
+      if (capture.captureHeaders()
+          && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_HEADERS_RESPONSE)) {
         for (Map.Entry<String, String> entry : response.headers()) {
           span.setAttribute(
               HypertraceSemanticAttributes.httpResponseHeader(entry.getKey()), entry.getValue());
@@ -83,8 +89,15 @@ public class HttpRequestHandleInstrumentation implements TypeInstrumentation {
       }
 
       String contentType = response.getHeader("Content-Type");
-      if (instrumentationConfig.httpBody().response()
-          && ContentTypeUtils.shouldCapture(contentType)) {
+      String contentLength = response.getHeader("Content-Length");
+      // the endpoint budget is charged only for a body that is captured
+      if (capture.captureBodies()
+          && instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_RESPONSE)
+          && ContentTypeUtils.shouldCapture(contentType)
+          && CapturePolicy.get()
+              .tryCaptureBody(
+                  CapturePolicy.get().pathEndpoint(request.path()),
+                  contentLength != null ? ContentLengthUtils.parseLength(contentLength) : -1)) {
         VirtualField.find(HttpClientResponse.class, Span.class).set(response, span);
       }
     }
@@ -37,7 +37,9 @@ import java.nio.charset.StandardCharsets;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
+import org.hypertrace.agent.core.config.CaptureFlags;
 import org.hypertrace.agent.core.config.InstrumentationConfig;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
 import org.hypertrace.agent.core.instrumentation.HypertraceCallDepthThreadLocalMap;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
@@ -107,7 +109,11 @@ public class HttpRequestInstrumentation implements TypeInstrumentation {
 
       BoundedCharArrayWriter buffer =
           VirtualField.find(MultiMap.class, BoundedCharArrayWriter.class).get(request.headers());
-      if (buffer != null) {
+      // the endpoint budget is charged only for a body that is captured
+      if (buffer != null
+          && CapturePolicy.get().decide(span).captureBodies()
+          && CapturePolicy.get()
+              .tryCaptureBody(CapturePolicy.get().pathEndpoint(request.path()), buffer.size())) {
         span.setAttribute(HypertraceSemanticAttributes.HTTP_REQUEST_BODY, buffer.toString());
       }
     }
@@ -137,8 +143,11 @@ public class HttpRequestInstrumentation implements TypeInstrumentation {
 
       String contentType = request.headers().get("Content-Type");
       InstrumentationConfig instrumentationConfig = InstrumentationConfig.ConfigProvider.get();
-      if (instrumentationConfig.httpBody().request()
-          && ContentTypeUtils.shouldCapture(contentType)) {
+      if (instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_REQUEST)
+          && ContentTypeUtils.shouldCapture(contentType)
+          && CapturePolicy.get().decide(span).captureBodies()
+          && CapturePolicy.get()
+              .tryCaptureBody(CapturePolicy.get().pathEndpoint(request.path()), -1)) {
         BoundedCharArrayWriter buffer =
             VirtualField.find(MultiMap.class, BoundedCharArrayWriter.class).get(request.headers());
         if (buffer == null) {
@@ -175,8 +184,11 @@ public class HttpRequestInstrumentation implements TypeInstrumentation {
 
       String contentType = request.headers().get("Content-Type");
       InstrumentationConfig instrumentationConfig = InstrumentationConfig.ConfigProvider.get();
-      if (instrumentationConfig.httpBody().request()
-          && ContentTypeUtils.shouldCapture(contentType)) {
+      if (instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_REQUEST)
+          && ContentTypeUtils.shouldCapture(contentType)
+          && CapturePolicy.get().decide(span).captureBodies()
+          && CapturePolicy.get()
+              .tryCaptureBody(CapturePolicy.get().pathEndpoint(request.path()), -1)) {
 
         BoundedCharArrayWriter buffer =
             VirtualField.find(MultiMap.class, BoundedCharArrayWriter.class).get(request.headers());
@@ -210,7 +222,7 @@ public class HttpRequestInstrumentation implements TypeInstrumentation {
 
       String contentType = request.headers().get("Content-Type");
       InstrumentationConfig instrumentationConfig = InstrumentationConfig.ConfigProvider.get();
-      if (instrumentationConfig.httpBody().request()
+      if (instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_REQUEST)
           && ContentTypeUtils.shouldCapture(contentType)) {
 
         VirtualField<MultiMap, BoundedCharArrayWriter> contextStore =
@@ -243,7 +255,7 @@ public class HttpRequestInstrumentation implements TypeInstrumentation {
 
       String contentType = request.headers().get("Content-Type");
       InstrumentationConfig instrumentationConfig = InstrumentationConfig.ConfigProvider.get();
-      if (instrumentationConfig.httpBody().request()
+      if (instrumentationConfig.captureFlags().isEnabled(CaptureFlags.HTTP_BODY_REQUEST)
           && ContentTypeUtils.shouldCapture(contentType)) {
 
         VirtualField<MultiMap, BoundedCharArrayWriter> contextStore =
@@ -22,7 +22,6 @@ import static net.bytebuddy.matcher.ElementMatchers.isMethod;
 import static net.bytebuddy.matcher.ElementMatchers.named;
 import static net.bytebuddy.matcher.ElementMatchers.takesArguments;
 
-import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.instrumentation.api.util.VirtualField;
 import io.opentelemetry.javaagent.extension.instrumentation.TypeInstrumentation;
 import io.opentelemetry.javaagent.extension.instrumentation.TypeTransformer;
@@ -50,6 +49,17 @@ public class HttpResponseInstrumentation implements TypeInstrumentation {
     transformer.applyAdviceToMethod(
         isMethod().and(named("bodyHandler").and(takesArguments(1))),
         HttpResponseInstrumentation.class.getName() + "$ResponseBodyHandler");
+    // streamed responses, bodyHandler sets these handlers too but has already taken the span
+    transformer.applyAdviceToMethod(
+        isMethod().and(named("handler").and(takesArguments(1))),
+        HttpResponseInstrumentation.class.getName() + "$ResponseChunkHandler");
+    transformer.applyAdviceToMethod(
+        isMethod().and(named("endHandler").and(takesArguments(1))),
+        HttpResponseInstrumentation.class.getName() + "$ResponseEndHandler");
+    // a response whose connection is closed before it ends is passed to the exception handler
+    transformer.applyAdviceToMethod(
+        isMethod().and(named("exceptionHandler").and(takesArguments(1))),
+        HttpResponseInstrumentation.class.getName() + "$ResponseExceptionHandler");
   }
 
   public static class ResponseBodyHandler {
@@ -57,19 +67,66 @@ public class HttpResponseInstrumentation implements TypeInstrumentation {
     public static void handleResponseEnter(
         @Advice.This HttpClientResponse response,
         @Advice.Argument(value = 0, readOnly = false) Handler<Buffer> handler) {
-
-      Span span = VirtualField.find(HttpClientResponse.class, Span.class).get(response);
-      if (span == null) {
+      ResponseBodyCapture capture = ResponseBodyCapture.forResponse(response);
+      if (capture == null) {
         // request not traced - e.g. wrong content type
         return;
       }
-      VirtualField.find(HttpClientResponse.class, Span.class).set(response, null);
+      // bodyHandler sets its own chunk and end handlers, they must not capture the body again
+      VirtualField.find(HttpClientResponse.class, ResponseBodyCapture.class).set(response, null);
+      handler = new ResponseBodyWrappingHandler(handler, capture);
+    }
+  }
 
-      // Extract content encoding from the response headers
-      String contentEncoding = response.getHeader("Content-Encoding");
-      String contentType = response.getHeader("Content-Type");
+  public static class ResponseChunkHandler {
+    @Advice.OnMethodEnter(suppress = Throwable.class)
+    public static void handlerEnter(
+        @Advice.This HttpClientResponse response,
+        @Advice.Argument(value = 0, readOnly = false) Handler<Buffer> handler) {
+      if (handler == null || handler instanceof ResponseChunkWrappingHandler) {
+        return;
+      }
+      ResponseBodyCapture capture = ResponseBodyCapture.forResponse(response);
+      if (capture == null) {
+        return;
+      }
+      handler = new ResponseChunkWrappingHandler(handler, capture);
+      if (!capture.hasEndHandler()) {
+        // the buffer is released once the response ends even if the application sets no end
+        // handler, an end handler set later replaces this one and is wrapped as well
+        response.endHandler(new ResponseEndWrappingHandler(null, capture));
+      }
+    }
+  }
+
+  public static class ResponseEndHandler {
+    @Advice.OnMethodEnter(suppress = Throwable.class)
+    public static void endHandlerEnter(
+        @Advice.This HttpClientResponse response,
+        @Advice.Argument(value = 0, readOnly = false) Handler<Void> handler) {
+      if (handler == null || handler instanceof ResponseEndWrappingHandler) {
+        return;
+      }
+      ResponseBodyCapture capture = ResponseBodyCapture.forResponse(response);
+      if (capture != null) {
+        capture.setEndHandler();
+        handler = new ResponseEndWrappingHandler(handler, capture);
+      }
+    }
+  }
 
-      handler = new ResponseBodyWrappingHandler(handler, span, contentEncoding, contentType);
+  public static class ResponseExceptionHandler {
+    @Advice.OnMethodEnter(suppress = Throwable.class)
+    public static void exceptionHandlerEnter(
+        @Advice.This HttpClientResponse response,
+        @Advice.Argument(value = 0, readOnly = false) Handler<Throwable> handler) {
+      if (handler == null || handler instanceof ResponseExceptionWrappingHandler) {
+        return;
+      }
+      ResponseBodyCapture capture = ResponseBodyCapture.forResponse(response);
+      if (capture != null) {
+        handler = new ResponseExceptionWrappingHandler(handler, capture);
+      }
     }
   }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.vertx;
+
+import io.netty.buffer.ByteBuf;
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanBuilder;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.instrumentation.api.util.VirtualField;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientResponse;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.hypertrace.agent.core.config.CaptureFlags;
+import org.hypertrace.agent.core.config.InstrumentationConfig;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
+import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
+import org.hypertrace.agent.core.instrumentation.utils.ContentEncodingUtils;
+import org.hypertrace.agent.core.instrumentation.utils.ContentTypeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Accumulates the chunks of a client response body in a bounded pooled buffer and decodes it once,
+ * when the response has ended. The body is added to an additional data span if the client span has
+ * already ended. Chunks and the end of the response are delivered on the same event loop thread.
+ */
+public class ResponseBodyCapture {
+
+  private static final Tracer tracer =
+      GlobalOpenTelemetry.getTracer("io.opentelemetry.javaagent.vertx-core-3.0");
+
+  private static final Logger log = LoggerFactory.getLogger(ResponseBodyCapture.class);
+
+  private final Span span;
+  private final String encoding;
+  private final String contentType;
+  private BoundedByteArrayOutputStream buffer;
+  private boolean ended;
+  private boolean endHandler;
+
+  public ResponseBodyCapture(Span span, String encoding, String contentType) {
+    this.span = span;
+    this.encoding = encoding;
+    this.contentType = contentType;
+    // there is nothing to add the body to if the span has not been sampled
+    this.ended = !CapturePolicy.isCaptured(span);
+  }
+
+  /**
+   * Returns the capture of a streamed response, it is created when the application sets the first
+   * of its handlers. Returns null if the response is not captured or its body is passed to {@code
+   * bodyHandler}, which has taken the span already.
+   */
+  public static ResponseBodyCapture forResponse(HttpClientResponse response) {
+    ResponseBodyCapture capture =
+        VirtualField.find(HttpClientResponse.class, ResponseBodyCapture.class).get(response);
+    if (capture != null) {
+      return capture;
+    }
+    Span span = VirtualField.find(HttpClientResponse.class, Span.class).get(response);
+    if (span == null) {
+      return null;
+    }
+    VirtualField.find(HttpClientResponse.class, Span.class).set(response, null);
+    capture =
+        new ResponseBodyCapture(
+            span, response.getHeader("Content-Encoding"), response.getHeader("Content-Type"));
+    VirtualField.find(HttpClientResponse.class, ResponseBodyCapture.class).set(response, capture);
+    return capture;
+  }
+
+  /** Returns true if the application has set an end handler. */
+  public boolean hasEndHandler() {
+    return endHandler;
+  }
+
+  public void setEndHandler() {
+    endHandler = true;
+  }
+
+  public void append(Buffer chunk) {
+    if (ended) {
+      return;
+    }
+    if (buffer == null) {
+      buffer = BoundedBuffersFactory.createStream(StandardCharsets.UTF_8);
+    }
+    int length = Math.min(chunk.length(), BoundedBuffersFactory.MAX_SIZE - buffer.size());
+    if (length > 0) {
+      // the byte buf is a duplicate sharing the chunk's memory, its bytes are not copied twice
+      ByteBuf byteBuf = chunk.getByteBuf();
+      for (ByteBuffer nioBuffer : byteBuf.nioBuffers(byteBuf.readerIndex(), length)) {
+        buffer.write(nioBuffer);
+      }
+    }
+  }
+
+  public void end() {
+    if (ended) {
+      return;
+    }
+    ended = true;
+    if (buffer == null) {
+      return;
+    }
+    try {
+      addBody(decode());
+    } catch (IOException e) {
+      log.debug("Could not capture response body", e);
+    } finally {
+      buffer.release();
+      buffer = null;
+    }
+  }
+
+  private String decode() throws IOException {
+    if (ContentEncodingUtils.isCompressed(encoding)) {
+      try {
+        return ContentEncodingUtils.decode(
+            buffer.toByteArray(), encoding, ContentTypeUtils.getInfo(contentType).getCharset());
+      } catch (IOException e) {
+        log.debug("Could not decode {} response body", encoding, e);
+      }
+    }
+    return buffer.toStringWithSuppliedCharset();
+  }
+
+  private void addBody(String body) {
+    if (span.isRecording()) {
+      span.setAttribute(HypertraceSemanticAttributes.HTTP_RESPONSE_BODY, body);
+      return;
+    }
+    SpanBuilder spanBuilder =
+        tracer
+            .spanBuilder(HypertraceSemanticAttributes.ADDITIONAL_DATA_SPAN_NAME)
+            .setParent(Context.root().with(span))
+            .setAttribute(HypertraceSemanticAttributes.HTTP_RESPONSE_BODY, body);
+    // the client span has the same content type if response headers are captured
+    if (contentType != null
+        && InstrumentationConfig.ConfigProvider.get()
+            .captureFlags()
+            .isEnabled(CaptureFlags.HTTP_HEADERS_RESPONSE)) {
+      spanBuilder.setAttribute(
+          HypertraceSemanticAttributes.HTTP_RESPONSE_HEADER_CONTENT_TYPE, contentType);
+    }
+    spanBuilder.startSpan().end();
+  }
+}
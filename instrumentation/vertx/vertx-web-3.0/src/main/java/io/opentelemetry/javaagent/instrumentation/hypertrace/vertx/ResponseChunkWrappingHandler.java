@@ -0,0 +1,38 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.vertx;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+
+/** Captures the chunks passed to {@code HttpClientResponse.handler}. */
+public class ResponseChunkWrappingHandler implements Handler<Buffer> {
+
+  private final Handler<Buffer> wrapped;
+  private final ResponseBodyCapture capture;
+
+  public ResponseChunkWrappingHandler(Handler<Buffer> wrapped, ResponseBodyCapture capture) {
+    this.wrapped = wrapped;
+    this.capture = capture;
+  }
+
+  @Override
+  public void handle(Buffer event) {
+    capture.append(event);
+    wrapped.handle(event);
+  }
+}
@@ -14,15 +14,24 @@
  * limitations under the License.
  */
 
-package io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.server;
+package io.opentelemetry.javaagent.instrumentation.hypertrace.vertx;
 
-import io.netty.channel.CombinedChannelDuplexHandler;
+import io.vertx.core.Handler;
 
-public class HttpServerTracingHandler
-    extends CombinedChannelDuplexHandler<
-        HttpServerRequestTracingHandler, HttpServerResponseTracingHandler> {
+/** Adds the chunks captured so far if the response fails before it has ended. */
+public class ResponseExceptionWrappingHandler implements Handler<Throwable> {
 
-  public HttpServerTracingHandler() {
-    super(new HttpServerRequestTracingHandler(), new HttpServerResponseTracingHandler());
+  private final Handler<Throwable> wrapped;
+  private final ResponseBodyCapture capture;
+
+  public ResponseExceptionWrappingHandler(Handler<Throwable> wrapped, ResponseBodyCapture capture) {
+    this.wrapped = wrapped;
+    this.capture = capture;
+  }
+
+  @Override
+  public void handle(Throwable event) {
+    capture.end();
+    wrapped.handle(event);
   }
 }
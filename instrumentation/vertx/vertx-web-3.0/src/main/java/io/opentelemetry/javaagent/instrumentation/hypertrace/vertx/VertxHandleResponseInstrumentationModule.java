@@ -21,12 +21,16 @@ import io.opentelemetry.javaagent.extension.instrumentation.InstrumentationModul
 import io.opentelemetry.javaagent.extension.instrumentation.TypeInstrumentation;
 import java.util.Collections;
 import java.util.List;
+import org.hypertrace.agent.core.config.InstrumentationConfig;
 
 @AutoService(InstrumentationModule.class)
 public class VertxHandleResponseInstrumentationModule extends InstrumentationModule {
 
+  private static final String PRIMARY = "vertx";
+  private static final String[] OTHER = {};
+
   public VertxHandleResponseInstrumentationModule() {
-    super("vertx");
+    super(PRIMARY, OTHER);
   }
 
   @Override
@@ -38,6 +42,9 @@ public class VertxHandleResponseInstrumentationModule extends InstrumentationMod
 
   @Override
   public List<TypeInstrumentation> typeInstrumentations() {
+    if (!InstrumentationConfig.ConfigProvider.isModuleEnabled(PRIMARY, OTHER)) {
+      return Collections.emptyList();
+    }
     return Collections.singletonList(new HttpRequestHandleInstrumentation());
   }
 }
@@ -20,13 +20,18 @@ import com.google.auto.service.AutoService;
 import io.opentelemetry.javaagent.extension.instrumentation.InstrumentationModule;
 import io.opentelemetry.javaagent.extension.instrumentation.TypeInstrumentation;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import org.hypertrace.agent.core.config.InstrumentationConfig;
 
 @AutoService(InstrumentationModule.class)
 public class VertxInstrumentationModule extends InstrumentationModule {
 
+  private static final String PRIMARY = "vertx-client";
+  private static final String[] OTHER = {"vertx", "ht", "vertx-ht", "vertx-client-ht"};
+
   public VertxInstrumentationModule() {
-    super("vertx-client", "vertx", "ht", "vertx-ht", "vertx-client-ht");
+    super(PRIMARY, OTHER);
   }
 
   @Override
@@ -36,6 +41,9 @@ public class VertxInstrumentationModule extends InstrumentationModule {
 
   @Override
   public List<TypeInstrumentation> typeInstrumentations() {
+    if (!InstrumentationConfig.ConfigProvider.isModuleEnabled(PRIMARY, OTHER)) {
+      return Collections.emptyList();
+    }
     return Arrays.asList(new HttpRequestInstrumentation(), new HttpResponseInstrumentation());
   }
 }
@@ -16,6 +16,8 @@
 
 package io.opentelemetry.javaagent.instrumentation.hypertrace.vertx;
 
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.trace.v1.Span;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.VertxOptions;
@@ -25,12 +27,18 @@ import io.vertx.core.http.HttpClientOptions;
 import io.vertx.core.http.HttpClientRequest;
 import io.vertx.core.http.HttpClientResponse;
 import io.vertx.core.http.HttpMethod;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import org.hypertrace.agent.testing.AbstractHttpClientTest;
+import org.hypertrace.agent.testing.TestHttpServer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 
 public class VertxClientInstrumentationTest extends AbstractHttpClientTest {
 
+  private static final String GET_JSON_PATH_FORMAT = "http://localhost:%d/get_json";
+
   private final Vertx vertx = Vertx.vertx(new VertxOptions());
   private final HttpClientOptions clientOptions = new HttpClientOptions();
   private final HttpClient httpClient = vertx.createHttpClient(clientOptions);
@@ -83,6 +91,66 @@ public class VertxClientInstrumentationTest extends AbstractHttpClientTest {
         responseHandler.responseStatus);
   }
 
+  @Test
+  public void getJsonStreamed() throws Exception {
+    CountDownLatch ended = new CountDownLatch(1);
+    StringBuilder body = new StringBuilder();
+
+    httpClient
+        .requestAbs(HttpMethod.GET, String.format(GET_JSON_PATH_FORMAT, testHttpServer.port()))
+        .handler(
+            response ->
+                response
+                    .handler(chunk -> body.append(chunk.toString()))
+                    .endHandler(event -> ended.countDown()))
+        .end();
+
+    ended.await();
+    Assertions.assertEquals(TestHttpServer.GetJsonHandler.RESPONSE_BODY, body.toString());
+    assertResponseBodySpan();
+  }
+
+  @Test
+  public void getJsonStreamedWithoutEndHandler() throws Exception {
+    String expectedBody = TestHttpServer.GetJsonHandler.RESPONSE_BODY;
+    CountDownLatch read = new CountDownLatch(1);
+    StringBuilder body = new StringBuilder();
+
+    httpClient
+        .requestAbs(HttpMethod.GET, String.format(GET_JSON_PATH_FORMAT, testHttpServer.port()))
+        .handler(
+            response ->
+                response.handler(
+                    chunk -> {
+                      body.append(chunk.toString());
+                      if (body.length() == expectedBody.length()) {
+                        read.countDown();
+                      }
+                    }))
+        .end();
+
+    read.await();
+    // the body is added once the response ends although the application has no end handler
+    assertResponseBodySpan();
+  }
+
+  private static void assertResponseBodySpan() throws Exception {
+    TEST_WRITER.waitForTraces(1);
+    List<List<Span>> traces =
+        TEST_WRITER.waitForSpans(2, span -> span.getKind().equals(Span.SpanKind.SPAN_KIND_SERVER));
+    Assertions.assertEquals(1, traces.size());
+    Assertions.assertTrue(
+        traces.get(0).stream()
+            .anyMatch(
+                span -> {
+                  AnyValue responseBody =
+                      TEST_WRITER.getAttributesMap(span).get("http.response.body");
+                  return responseBody != null
+                      && TestHttpServer.GetJsonHandler.RESPONSE_BODY.equals(
+                          responseBody.getStringValue());
+                }));
+  }
+
   static class ResponseHandler implements Handler<HttpClientResponse> {
 
     int responseStatus;
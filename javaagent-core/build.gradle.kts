@@ -1,5 +1,6 @@
 plugins {
     `java-library`
+    `java-test-fixtures`
     id("org.hypertrace.publish-maven-central-plugin")
 }
 
@@ -11,3 +12,8 @@ dependencies {
     implementation("org.slf4j:slf4j-api:${versions["slf4j"]}")
     implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-yaml:${versions["jackson"]}")
 }
+
+// the test fixtures are shared with the instrumentation tests through testing-common
+val javaComponent = components["java"] as AdhocComponentWithVariants
+javaComponent.withVariantsFromConfiguration(configurations["testFixturesApiElements"]) { skip() }
+javaComponent.withVariantsFromConfiguration(configurations["testFixturesRuntimeElements"]) { skip() }
@@ -0,0 +1,158 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.config;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Immutable view of the data capture config with one bit per captured entity. It is computed once
+ * per config by {@link InstrumentationConfig#captureFlags()}, checking a flag is a mask of a final
+ * int instead of the lookups of the config values.
+ *
+ * <p>Data capture can also be disabled for single instrumentation modules by any of their names,
+ * e.g. {@code outputstream} or {@code printwriter}.
+ */
+public final class CaptureFlags {
+
+  public static final int HTTP_HEADERS_REQUEST = 1;
+  public static final int HTTP_HEADERS_RESPONSE = 1 << 1;
+  public static final int HTTP_BODY_REQUEST = 1 << 2;
+  public static final int HTTP_BODY_RESPONSE = 1 << 3;
+  public static final int RPC_METADATA_REQUEST = 1 << 4;
+  public static final int RPC_METADATA_RESPONSE = 1 << 5;
+  public static final int RPC_BODY_REQUEST = 1 << 6;
+  public static final int RPC_BODY_RESPONSE = 1 << 7;
+
+  /** All HTTP flags. */
+  public static final int HTTP =
+      HTTP_HEADERS_REQUEST | HTTP_HEADERS_RESPONSE | HTTP_BODY_REQUEST | HTTP_BODY_RESPONSE;
+
+  /** All RPC flags. */
+  public static final int RPC =
+      RPC_METADATA_REQUEST | RPC_METADATA_RESPONSE | RPC_BODY_REQUEST | RPC_BODY_RESPONSE;
+
+  public static final CaptureFlags NONE = new CaptureFlags(0, Collections.emptySet());
+
+  private final int bits;
+  private final Set<String> disabledInstrumentations;
+
+  private CaptureFlags(int bits, Set<String> disabledInstrumentations) {
+    this.bits = bits;
+    this.disabledInstrumentations = disabledInstrumentations;
+  }
+
+  public static CaptureFlags of(int bits) {
+    return bits == 0 ? NONE : new CaptureFlags(bits, Collections.emptySet());
+  }
+
+  /** Computes the flags of the config. */
+  public static CaptureFlags of(InstrumentationConfig config) {
+    return of(config.httpHeaders(), config.httpBody(), config.rpcMetadata(), config.rpcBody());
+  }
+
+  /** Computes the flags of the data capture config of each entity. */
+  public static CaptureFlags of(
+      InstrumentationConfig.Message httpHeaders,
+      InstrumentationConfig.Message httpBody,
+      InstrumentationConfig.Message rpcMetadata,
+      InstrumentationConfig.Message rpcBody) {
+    return of(
+        bits(httpHeaders, HTTP_HEADERS_REQUEST, HTTP_HEADERS_RESPONSE)
+            | bits(httpBody, HTTP_BODY_REQUEST, HTTP_BODY_RESPONSE)
+            | bits(rpcMetadata, RPC_METADATA_REQUEST, RPC_METADATA_RESPONSE)
+            | bits(rpcBody, RPC_BODY_REQUEST, RPC_BODY_RESPONSE));
+  }
+
+  private static int bits(InstrumentationConfig.Message message, int request, int response) {
+    return (message.request() ? request : 0) | (message.response() ? response : 0);
+  }
+
+  public int bits() {
+    return bits;
+  }
+
+  /** Returns true if all the given flags are enabled. */
+  public boolean isEnabled(int flags) {
+    return (bits & flags) == flags;
+  }
+
+  /** Returns true if any of the given flags is enabled. */
+  public boolean isAnyEnabled(int flags) {
+    return (bits & flags) != 0;
+  }
+
+  /**
+   * Returns flags that disable data capture for the instrumentation modules with any of the names.
+   *
+   * @param disabledInstrumentations immutable set of instrumentation names
+   */
+  public CaptureFlags withDisabledInstrumentations(Set<String> disabledInstrumentations) {
+    if (bits == 0 || disabledInstrumentations.isEmpty()) {
+      return this;
+    }
+    return new CaptureFlags(bits, disabledInstrumentations);
+  }
+
+  /** Parses a comma separated list of instrumentation names, null or blank is an empty set. */
+  public static Set<String> parseInstrumentationNames(String value) {
+    if (value == null || value.trim().isEmpty()) {
+      return Collections.emptySet();
+    }
+    Set<String> names = new HashSet<>();
+    for (String name : value.split(",")) {
+      if (!name.trim().isEmpty()) {
+        names.add(name.trim());
+      }
+    }
+    return Collections.unmodifiableSet(names);
+  }
+
+  /** Returns false if nothing is captured or if the instrumentation has been disabled. */
+  public boolean isInstrumentationEnabled(String primaryName, String[] otherNames) {
+    return bits != 0 && isModuleEnabled(primaryName, otherNames);
+  }
+
+  /**
+   * Returns false if data capture has been disabled for the instrumentation module by its primary
+   * name or any of its other names.
+   */
+  public boolean isModuleEnabled(String primaryName, String[] otherNames) {
+    if (disabledInstrumentations.isEmpty()) {
+      return true;
+    }
+    if (disabledInstrumentations.contains(primaryName)) {
+      return false;
+    }
+    for (String name : otherNames) {
+      if (disabledInstrumentations.contains(name)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "CaptureFlags{"
+        + Integer.toBinaryString(bits)
+        + ", disabledInstrumentations="
+        + disabledInstrumentations
+        + "}";
+  }
+}
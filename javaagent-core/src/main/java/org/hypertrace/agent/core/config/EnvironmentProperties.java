@@ -0,0 +1,60 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.config;
+
+/**
+ * Reads agent properties that are not part of the agent config file. A property can be set as a
+ * system property (e.g. {@code ht.data.capture.foo}) or as an environment variable (e.g. {@code
+ * HT_DATA_CAPTURE_FOO}), the system property takes precedence.
+ */
+public final class EnvironmentProperties {
+
+  private EnvironmentProperties() {}
+
+  public static String getProperty(String name) {
+    return System.getProperty(name, System.getenv(name.replaceAll("\\.", "_").toUpperCase()));
+  }
+
+  public static boolean getBoolean(String name, boolean defaultValue) {
+    String value = getProperty(name);
+    return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+  }
+
+  public static int getInt(String name, int defaultValue) {
+    String value = getProperty(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  public static double getDouble(String name, double defaultValue) {
+    String value = getProperty(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Double.parseDouble(value.trim());
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+}
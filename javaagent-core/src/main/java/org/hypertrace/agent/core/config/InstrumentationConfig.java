@@ -49,21 +49,17 @@ public interface InstrumentationConfig {
     boolean response();
   }
 
-  default boolean isInstrumentationEnabled(String primaryName, String[] otherNames) {
-    // the instNames is not used because the config does not support it at the moment.
+  /**
+   * Data capture config as flags. Implementations should compute them once per config, the default
+   * computes them on every call.
+   */
+  default CaptureFlags captureFlags() {
+    return CaptureFlags.of(this);
+  }
 
+  default boolean isInstrumentationEnabled(String primaryName, String[] otherNames) {
     // disabled if all is disabled
-    if (!httpBody().request()
-        && !httpBody().response()
-        && !httpHeaders().request()
-        && !httpHeaders().response()
-        && !rpcBody().request()
-        && !rpcBody().response()
-        && !rpcMetadata().request()
-        && !rpcMetadata().response()) {
-      return false;
-    }
-    return true;
+    return captureFlags().isInstrumentationEnabled(primaryName, otherNames);
   }
 
   class ConfigProvider {
@@ -100,6 +96,17 @@ public interface InstrumentationConfig {
       return instrumentationConfig;
     }
 
+    /**
+     * Returns false if data capture has been disabled for the instrumentation module by one of its
+     * names. Modules that only capture data check it when they are installed, so disabled modules
+     * are not applied at all. Modules that evaluate the filter stay installed and capture nothing,
+     * see {@link org.hypertrace.agent.core.instrumentation.CapturePolicy}.
+     */
+    public static boolean isModuleEnabled(String primaryName, String[] otherNames) {
+      InstrumentationConfig config = get();
+      return config == null || config.captureFlags().isModuleEnabled(primaryName, otherNames);
+    }
+
     public static InstrumentationConfig get() {
       if (instrumentationConfig == null) {
         synchronized (ConfigProvider.class) {
@@ -18,6 +18,9 @@ package org.hypertrace.agent.core.filter;
 
 public class FilterResult {
 
+  /** Result that does not block the request, shared to avoid allocating it for every request. */
+  public static final FilterResult ALLOW = new FilterResult(false, 0, "");
+
   private final boolean shouldBlock;
   private final int blockingStatusCode;
   private final String blockingMsg;
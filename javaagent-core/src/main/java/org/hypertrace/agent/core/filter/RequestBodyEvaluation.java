@@ -0,0 +1,55 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.filter;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * Evaluates the body of a single request incrementally, as the application reads it. A blocking
+ * result stops the request without reading the rest of the body.
+ *
+ * <p>The chunks are read-only and valid only for the duration of the call, an evaluation that needs
+ * the data later has to copy it. Depending on the instrumented API the body is passed either as
+ * bytes or as characters. Instances are used by the thread processing the request.
+ */
+public interface RequestBodyEvaluation {
+
+  /**
+   * Evaluates the next chunk of the body read as bytes.
+   *
+   * @param chunk the bytes read by the application
+   * @return filter result
+   */
+  FilterResult evaluateChunk(ByteBuffer chunk);
+
+  /**
+   * Evaluates the next chunk of the body read as characters.
+   *
+   * @param chunk the characters read by the application
+   * @return filter result
+   */
+  FilterResult evaluateChunk(CharBuffer chunk);
+
+  /**
+   * Called when the instrumentation considers the body complete e.g. at the end of the stream. It
+   * can be called again if the application reads more data afterwards.
+   *
+   * @return filter result
+   */
+  FilterResult evaluateEnd();
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Context;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hypertrace.agent.core.config.EnvironmentProperties;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedCharArrayWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serializes captured bodies and adds them to the span off the application thread.
+ *
+ * <p>Only for bodies that are not evaluated by filters and whose serialization overlaps with work
+ * the application still does before the span ends, e.g. gRPC response messages converted while
+ * the call goes on. The captured data is handed to a bounded queue drained by a small pool of
+ * daemon threads. When the queue is full or the pipeline is disabled (default) the body is added
+ * on the calling thread as before. The instrumentation {@link Pending#await() awaits} the capture
+ * before the span ends: a body that is still queued is added on the awaiting thread, one that is
+ * being serialized by a worker is not waited for and is added to an additional data child span,
+ * see {@link HypertraceSemanticAttributes#ADDITIONAL_DATA_SPAN_NAME}. So is a body captured after
+ * the span ended (e.g. a streamed response read by the application later), see {@link #add}.
+ *
+ * <p>Enabled by {@code ht.data.capture.async.workers} (number of threads, 0 disables) and bounded
+ * by {@code ht.data.capture.async.queue.size}.
+ */
+public final class AsyncBodyCapture {
+
+  private static final Logger log = LoggerFactory.getLogger(AsyncBodyCapture.class);
+
+  private static final String TRACER_NAME = "org.hypertrace.agent.core.body-capture";
+
+  private static final AsyncBodyCapture INSTANCE =
+      new AsyncBodyCapture(
+          EnvironmentProperties.getInt("ht.data.capture.async.workers", 0),
+          EnvironmentProperties.getInt("ht.data.capture.async.queue.size", 1024));
+
+  public static AsyncBodyCapture get() {
+    return INSTANCE;
+  }
+
+  private final ThreadPoolExecutor executor;
+
+  AsyncBodyCapture(int workers, int queueSize) {
+    if (workers <= 0 || queueSize <= 0) {
+      this.executor = null;
+      return;
+    }
+    this.executor =
+        new ThreadPoolExecutor(
+            workers,
+            workers,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize),
+            new DaemonThreadFactory(),
+            // never block the application thread, capture inline when the queue is full
+            new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  public boolean isEnabled() {
+    return executor != null;
+  }
+
+  /**
+   * Adds the body to the span. The buffer must not be written to anymore, it is released once the
+   * body has been decoded.
+   */
+  public Pending capture(
+      Span span, AttributeKey<String> attributeKey, BoundedByteArrayOutputStream buffer) {
+    return capture(
+        span,
+        attributeKey,
+        () -> {
+          try {
+            return buffer.toStringWithSuppliedCharset();
+          } finally {
+            buffer.release();
+          }
+        });
+  }
+
+  /** Adds the body to the span. The buffer must not be written to anymore. */
+  public Pending capture(
+      Span span, AttributeKey<String> attributeKey, BoundedCharArrayWriter buffer) {
+    return capture(span, attributeKey, buffer::toString);
+  }
+
+  /**
+   * Adds the body returned by the serializer to the span. The serializer must only access data
+   * that is not modified by the application anymore. Nothing is added if it returns null.
+   *
+   * @return the capture, it has to be awaited before the span ends
+   */
+  public Pending capture(
+      Span span, AttributeKey<String> attributeKey, Callable<String> serializer) {
+    if (executor == null || !span.isRecording()) {
+      add(span, attributeKey, serializer);
+      return Pending.DONE;
+    }
+    Pending pending = new Pending(span, attributeKey, serializer);
+    executor.execute(pending);
+    return pending;
+  }
+
+  /**
+   * Adds the body returned by the serializer to the span on the calling thread. The body of a
+   * streamed response can be read after the span ended, it is then added to a child span unless
+   * the span would be dropped anyway. Nothing is added if the serializer returns null.
+   */
+  public static void add(Span span, AttributeKey<String> attributeKey, Callable<String> serializer) {
+    if (span.isRecording()) {
+      addBody(span, attributeKey, serialize(attributeKey, serializer));
+    } else if (CapturePolicy.isCaptured(span)) {
+      addToChildSpan(span, attributeKey, serialize(attributeKey, serializer));
+    }
+  }
+
+  void shutdown() throws InterruptedException {
+    if (executor != null) {
+      executor.shutdown();
+      executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+  }
+
+  private static void addBody(Span span, AttributeKey<String> attributeKey, String body) {
+    if (body != null) {
+      span.setAttribute(attributeKey, body);
+    }
+  }
+
+  private static void addToChildSpan(Span span, AttributeKey<String> attributeKey, String body) {
+    if (body != null) {
+      GlobalOpenTelemetry.getTracer(TRACER_NAME)
+          .spanBuilder(HypertraceSemanticAttributes.ADDITIONAL_DATA_SPAN_NAME)
+          .setParent(Context.root().with(span))
+          .setAttribute(attributeKey, body)
+          .startSpan()
+          .end();
+    }
+  }
+
+  private static String serialize(AttributeKey<String> attributeKey, Callable<String> serializer) {
+    try {
+      return serializer.call();
+    } catch (Exception e) {
+      log.debug("Failed to serialize body {}", attributeKey, e);
+      return null;
+    }
+  }
+
+  /**
+   * A body that is added to the span by a worker. Whichever of the worker and the awaiting thread
+   * claims it first serializes it, so it is never added twice. The worker adds it to the span only
+   * if {@link #await()} has not been called in the meantime, i.e. never after the span ended.
+   */
+  public static final class Pending implements Runnable {
+
+    /** A body that has already been added on the calling thread. */
+    public static final Pending DONE = new Pending(null, null, null);
+
+    private static final int QUEUED = 0;
+    private static final int SERIALIZING = 1;
+    private static final int ADDING = 2;
+    private static final int ADDED = 3;
+    private static final int ABANDONED = 4;
+
+    private final Span span;
+    private final AttributeKey<String> attributeKey;
+    private final Callable<String> serializer;
+    private final AtomicInteger state;
+
+    private Pending(Span span, AttributeKey<String> attributeKey, Callable<String> serializer) {
+      this.span = span;
+      this.attributeKey = attributeKey;
+      this.serializer = serializer;
+      this.state = new AtomicInteger(serializer == null ? ADDED : QUEUED);
+    }
+
+    @Override
+    public void run() {
+      if (!state.compareAndSet(QUEUED, SERIALIZING)) {
+        return;
+      }
+      String body = serialize(attributeKey, serializer);
+      if (state.compareAndSet(SERIALIZING, ADDING)) {
+        try {
+          addBody(span, attributeKey, body);
+        } finally {
+          state.set(ADDED);
+        }
+      } else if (CapturePolicy.isCaptured(span)) {
+        // the span may have ended since await() returned
+        addToChildSpan(span, attributeKey, body);
+      }
+    }
+
+    /**
+     * Returns once the body can no longer be added to the span after it ends. A body that is still
+     * queued is added on the calling thread, one that is being serialized by a worker is left to
+     * the worker, which adds it to a child span.
+     */
+    public void await() {
+      if (state.compareAndSet(QUEUED, SERIALIZING)) {
+        try {
+          addBody(span, attributeKey, serialize(attributeKey, serializer));
+        } finally {
+          state.set(ADDED);
+        }
+        return;
+      }
+      if (state.compareAndSet(SERIALIZING, ABANDONED)) {
+        return;
+      }
+      // the worker is setting the attribute right now
+      while (state.get() == ADDING) {
+        Thread.yield();
+      }
+    }
+  }
+
+  private static class DaemonThreadFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "hypertrace-body-capture-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import io.opentelemetry.api.common.AttributeKey;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded intern table of attribute keys with a common prefix, e.g. {@code http.request.header.}.
+ *
+ * <p>Keys are looked up by the raw name as received, all casings of a name share the same key with
+ * the lowercased name. Once the table is full new names are not cached anymore so that random
+ * header names cannot grow it indefinitely.
+ */
+final class AttributeKeyCache {
+
+  private final String prefix;
+  private final int maxSize;
+  private final ConcurrentHashMap<String, AttributeKey<String>> keys = new ConcurrentHashMap<>();
+
+  AttributeKeyCache(String prefix, int maxSize) {
+    this.prefix = prefix;
+    this.maxSize = maxSize;
+  }
+
+  AttributeKey<String> get(String name) {
+    AttributeKey<String> key = keys.get(name);
+    if (key != null) {
+      return key;
+    }
+    String lowerCaseName = name.toLowerCase();
+    key = keys.get(lowerCaseName);
+    if (key == null) {
+      key = AttributeKey.stringKey(prefix + lowerCaseName);
+      cache(lowerCaseName, key);
+    }
+    if (!lowerCaseName.equals(name)) {
+      cache(name, key);
+    }
+    return key;
+  }
+
+  int size() {
+    return keys.size();
+  }
+
+  private void cache(String name, AttributeKey<String> key) {
+    if (keys.size() < maxSize) {
+      keys.putIfAbsent(name, key);
+    }
+  }
+}
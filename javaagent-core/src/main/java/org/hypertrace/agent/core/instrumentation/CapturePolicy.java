@@ -0,0 +1,142 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import io.opentelemetry.api.trace.Span;
+import org.hypertrace.agent.core.config.EnvironmentProperties;
+import org.hypertrace.agent.core.config.InstrumentationConfig;
+
+/**
+ * Decides per trace which data is captured, on top of the data capture config.
+ *
+ * <p>Nothing is captured for a span that is neither recording nor sampled, the data would be
+ * dropped anyway. Bodies are additionally sampled by {@code ht.data.capture.body.sample.ratio}
+ * (0.0 - 1.0, default 1.0), it is read once at startup and not reloaded. The body decision is
+ * derived from the upper half of the trace id so that all spans of a trace agree and it is
+ * independent of the trace id ratio sampler, which uses the lower half. Bodies of an endpoint are
+ * only captured within its budget, see {@link CaptureRateLimiter}.
+ */
+public final class CapturePolicy {
+
+  /** Which data is captured for a span. */
+  public enum Decision {
+    NONE(false, false),
+    HEADERS(true, false),
+    ALL(true, true);
+
+    private final boolean headers;
+    private final boolean bodies;
+
+    Decision(boolean headers, boolean bodies) {
+      this.headers = headers;
+      this.bodies = bodies;
+    }
+
+    public boolean captureHeaders() {
+      return headers;
+    }
+
+    public boolean captureBodies() {
+      return bodies;
+    }
+  }
+
+  private static final CapturePolicy INSTANCE =
+      new CapturePolicy(
+          EnvironmentProperties.getDouble("ht.data.capture.body.sample.ratio", 1.0),
+          CaptureRateLimiter.get());
+
+  public static CapturePolicy get() {
+    return INSTANCE;
+  }
+
+  private final boolean allBodies;
+  private final long bodyUpperBound;
+  private final CaptureRateLimiter rateLimiter;
+
+  CapturePolicy(double bodySampleRatio, CaptureRateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+    this.allBodies = !(bodySampleRatio < 1.0);
+    this.bodyUpperBound =
+        bodySampleRatio > 0.0 ? (long) (bodySampleRatio * Long.MAX_VALUE) : Long.MIN_VALUE;
+  }
+
+  public Decision decide(Span span) {
+    if (!isCaptured(span)) {
+      return Decision.NONE;
+    }
+    if (allBodies) {
+      return Decision.ALL;
+    }
+    long random = upperTraceIdBits(span.getSpanContext().getTraceId()) >>> 1;
+    return random < bodyUpperBound ? Decision.ALL : Decision.HEADERS;
+  }
+
+  /**
+   * Decides for a span of an instrumentation module. Nothing is captured if data capture has been
+   * disabled for the module by any of its names, the module still evaluates the filter.
+   */
+  public Decision decide(Span span, String primaryName, String[] otherNames) {
+    if (!InstrumentationConfig.ConfigProvider.isModuleEnabled(primaryName, otherNames)) {
+      return Decision.NONE;
+    }
+    return decide(span);
+  }
+
+  /**
+   * Returns true if a body of the endpoint can be captured and charges its budget. It is called
+   * once the body is actually going to be captured, i.e. after the body config and content type
+   * checks passed for a span with a {@link Decision#captureBodies()} decision.
+   *
+   * @param endpoint route, servlet mapping or RPC method, null uses the shared budget
+   * @param expectedBytes size of the body if known upfront, negative otherwise. A body of unknown
+   *     size is charged by {@link #recordBodySize(String, long)} once it has been captured.
+   */
+  public boolean tryCaptureBody(String endpoint, long expectedBytes) {
+    return rateLimiter.tryAcquire(endpoint, expectedBytes);
+  }
+
+  /**
+   * Returns the endpoint the body of a request path is charged to when the framework does not
+   * provide a route. Only a path with a configured budget is an endpoint of its own, other paths
+   * share one budget. A budget per path would never be exhausted for paths with ids in them.
+   */
+  public String pathEndpoint(String path) {
+    return rateLimiter.hasEndpointBudget(path) ? path : null;
+  }
+
+  /** Charges the endpoint budget with the size of a body of unknown size that has been captured. */
+  public void recordBodySize(String endpoint, long bytes) {
+    rateLimiter.recordBytes(endpoint, bytes);
+  }
+
+  /**
+   * Returns false if data for the span would be dropped, e.g. it should not be added to an
+   * additional data child span of an ended span that has not been sampled.
+   */
+  public static boolean isCaptured(Span span) {
+    return span.isRecording() || span.getSpanContext().isSampled();
+  }
+
+  private static long upperTraceIdBits(String traceId) {
+    long bits = 0;
+    for (int i = 0; i < 16 && i < traceId.length(); i++) {
+      bits = (bits << 4) | Character.digit(traceId.charAt(i), 16) & 0xf;
+    }
+    return bits;
+  }
+}
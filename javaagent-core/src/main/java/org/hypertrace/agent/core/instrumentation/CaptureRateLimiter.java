@@ -0,0 +1,295 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.hypertrace.agent.core.config.EnvironmentProperties;
+import org.hypertrace.agent.core.config.InstrumentationConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Token bucket limiter for body capture, keyed by endpoint (route or RPC method).
+ *
+ * <p>Every endpoint gets its own budget of captures per second and captured bytes per second. A
+ * request path is not an endpoint unless it has a configured budget, see {@link
+ * CapturePolicy#pathEndpoint(String)}. A
+ * capture is admitted while both buckets have tokens, the bytes of a capture may exceed the
+ * remaining tokens and are paid back by the following captures. Budgets are configured by:
+ *
+ * <ul>
+ *   <li>{@code ht.data.capture.limit.captures.per.second} - default captures per second
+ *   <li>{@code ht.data.capture.limit.bytes.per.second} - default captured bytes per second
+ *   <li>{@code ht.data.capture.limit.endpoints} - per endpoint budgets, e.g. {@code
+ *       /health=0,/poll=1:4096} (captures per second and optionally bytes per second)
+ * </ul>
+ *
+ * A negative budget (default) is unlimited. When the system load per processor exceeds {@code
+ * ht.data.capture.limit.cpu.threshold} (default 0.75) the limited budgets are reduced down to a
+ * tenth as the load approaches the number of processors. The budgets are read once at startup and
+ * not reloaded.
+ */
+public final class CaptureRateLimiter {
+
+  private static final Logger log = LoggerFactory.getLogger(CaptureRateLimiter.class);
+
+  /**
+   * Max number of endpoints with their own bucket. Buckets idle for {@link #IDLE_NANOS} are evicted
+   * when it is reached, further endpoints share one bucket until then.
+   */
+  static final int MAX_ENDPOINTS = 1024;
+
+  static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(60);
+  private static final long EVICTION_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private static final long LOAD_SAMPLE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final double MIN_SCALE = 0.1;
+
+  private static final CaptureRateLimiter INSTANCE =
+      new CaptureRateLimiter(
+          EnvironmentProperties.getInt("ht.data.capture.limit.captures.per.second", -1),
+          EnvironmentProperties.getInt("ht.data.capture.limit.bytes.per.second", -1),
+          parseBudgets(EnvironmentProperties.getProperty("ht.data.capture.limit.endpoints")),
+          EnvironmentProperties.getDouble("ht.data.capture.limit.cpu.threshold", 0.75),
+          maxBodySizeBytes());
+
+  public static CaptureRateLimiter get() {
+    return INSTANCE;
+  }
+
+  private final Budget defaultBudget;
+  private final Map<String, Budget> endpointBudgets;
+  private final boolean enabled;
+  private final double cpuThreshold;
+  private final long maxBytesPerCapture;
+  private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+  private final TokenBucket overflowBucket;
+  private final OperatingSystemMXBean operatingSystem;
+
+  private volatile double scale = 1.0;
+  private volatile long nextLoadSampleNanos;
+  private volatile long nextEvictionNanos;
+
+  CaptureRateLimiter(
+      int capturesPerSecond,
+      int bytesPerSecond,
+      Map<String, Budget> endpointBudgets,
+      double cpuThreshold,
+      long maxBytesPerCapture) {
+    this.defaultBudget = new Budget(capturesPerSecond, bytesPerSecond);
+    this.endpointBudgets = endpointBudgets;
+    this.enabled = !defaultBudget.isUnlimited() || !endpointBudgets.isEmpty();
+    this.cpuThreshold = cpuThreshold;
+    this.maxBytesPerCapture = maxBytesPerCapture;
+    long now = System.nanoTime();
+    this.overflowBucket = new TokenBucket(defaultBudget, now);
+    this.nextLoadSampleNanos = now;
+    this.nextEvictionNanos = now;
+    this.operatingSystem =
+        cpuThreshold < 1.0 ? ManagementFactory.getOperatingSystemMXBean() : null;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Returns true if a body can be captured for the endpoint and charges its budget.
+   *
+   * @param endpoint route or RPC method, null uses the shared bucket
+   * @param bytes expected size of the captured body, negative if unknown. It is capped at the max
+   *     body size.
+   */
+  public boolean tryAcquire(String endpoint, long bytes) {
+    return tryAcquire(endpoint, bytes, System.nanoTime());
+  }
+
+  boolean tryAcquire(String endpoint, long bytes, long now) {
+    if (!enabled) {
+      return true;
+    }
+    long size = Math.min(bytes, maxBytesPerCapture);
+    return bucket(endpoint, now).tryAcquire(size, scale(now), now);
+  }
+
+  /** Charges the bytes of a body that has been captured for the endpoint. */
+  public void recordBytes(String endpoint, long bytes) {
+    if (!enabled || bytes <= 0) {
+      return;
+    }
+    long now = System.nanoTime();
+    bucket(endpoint, now).record(Math.min(bytes, maxBytesPerCapture), scale(now), now);
+  }
+
+  /** Returns true if {@code ht.data.capture.limit.endpoints} configures a budget for the endpoint. */
+  boolean hasEndpointBudget(String endpoint) {
+    return endpoint != null && endpointBudgets.containsKey(endpoint);
+  }
+
+  private TokenBucket bucket(String endpoint, long now) {
+    if (endpoint == null) {
+      return overflowBucket;
+    }
+    TokenBucket bucket = buckets.get(endpoint);
+    if (bucket != null) {
+      return bucket;
+    }
+    Budget budget = endpointBudgets.get(endpoint);
+    if (budget == null && buckets.size() >= MAX_ENDPOINTS && !evictIdleBuckets(now)) {
+      return overflowBucket;
+    }
+    TokenBucket newBucket = new TokenBucket(budget != null ? budget : defaultBudget, now);
+    bucket = buckets.putIfAbsent(endpoint, newBucket);
+    return bucket != null ? bucket : newBucket;
+  }
+
+  /** Evicts the idle buckets at most once per interval, returns true if there is room again. */
+  private boolean evictIdleBuckets(long now) {
+    if (now - nextEvictionNanos < 0) {
+      return false;
+    }
+    // racy, concurrent evictions only remove the same idle buckets
+    nextEvictionNanos = now + EVICTION_INTERVAL_NANOS;
+    // an idle bucket has been refilled, a new bucket for its endpoint starts in the same state
+    buckets.values().removeIf(bucket -> bucket.isIdle(now));
+    return buckets.size() < MAX_ENDPOINTS;
+  }
+
+  int endpointCount() {
+    return buckets.size();
+  }
+
+  /** Returns the factor by which the budgets are reduced under CPU pressure. */
+  private double scale(long now) {
+    if (operatingSystem == null || now - nextLoadSampleNanos < 0) {
+      return scale;
+    }
+    // racy, the load is sampled again at most by a few threads at the same time
+    nextLoadSampleNanos = now + LOAD_SAMPLE_INTERVAL_NANOS;
+    double load =
+        operatingSystem.getSystemLoadAverage() / operatingSystem.getAvailableProcessors();
+    double newScale = 1.0;
+    if (load > cpuThreshold) {
+      newScale = Math.max(MIN_SCALE, (1.0 - load) / (1.0 - cpuThreshold));
+    }
+    this.scale = newScale;
+    return newScale;
+  }
+
+  static Map<String, Budget> parseBudgets(String value) {
+    if (value == null || value.trim().isEmpty()) {
+      return Collections.emptyMap();
+    }
+    Map<String, Budget> budgets = new HashMap<>();
+    for (String entry : value.split(",")) {
+      int separator = entry.lastIndexOf('=');
+      if (separator <= 0) {
+        log.warn("Ignoring invalid capture budget {}", entry);
+        continue;
+      }
+      String[] limits = entry.substring(separator + 1).split(":");
+      try {
+        int captures = Integer.parseInt(limits[0].trim());
+        int bytes = limits.length > 1 ? Integer.parseInt(limits[1].trim()) : -1;
+        budgets.put(entry.substring(0, separator).trim(), new Budget(captures, bytes));
+      } catch (NumberFormatException e) {
+        log.warn("Ignoring invalid capture budget {}", entry);
+      }
+    }
+    return budgets;
+  }
+
+  private static long maxBodySizeBytes() {
+    InstrumentationConfig config = InstrumentationConfig.ConfigProvider.get();
+    return config != null ? config.maxBodySizeBytes() : Long.MAX_VALUE;
+  }
+
+  /** Captures and bytes per second, negative values are unlimited. */
+  static final class Budget {
+    final int capturesPerSecond;
+    final int bytesPerSecond;
+
+    Budget(int capturesPerSecond, int bytesPerSecond) {
+      this.capturesPerSecond = capturesPerSecond;
+      this.bytesPerSecond = bytesPerSecond;
+    }
+
+    boolean isUnlimited() {
+      return capturesPerSecond < 0 && bytesPerSecond < 0;
+    }
+  }
+
+  private static final class TokenBucket {
+    private final Budget budget;
+    // at least one capture fits into the bucket of a budget of less than one capture per second
+    private final double captureCapacity;
+    private double captures;
+    private double bytes;
+    private long lastRefillNanos;
+
+    TokenBucket(Budget budget, long now) {
+      this.budget = budget;
+      this.captureCapacity =
+          budget.capturesPerSecond > 0 ? Math.max(1, budget.capturesPerSecond) : 0;
+      this.captures = captureCapacity;
+      this.bytes = Math.max(0, budget.bytesPerSecond);
+      this.lastRefillNanos = now;
+    }
+
+    synchronized boolean tryAcquire(long size, double scale, long now) {
+      refill(scale, now);
+      if ((budget.capturesPerSecond >= 0 && captures < 1)
+          || (budget.bytesPerSecond >= 0 && bytes <= 0)) {
+        return false;
+      }
+      if (budget.capturesPerSecond >= 0) {
+        captures -= 1;
+      }
+      if (size > 0) {
+        bytes -= size;
+      }
+      return true;
+    }
+
+    synchronized void record(long size, double scale, long now) {
+      refill(scale, now);
+      bytes -= size;
+    }
+
+    synchronized boolean isIdle(long now) {
+      return now - lastRefillNanos > IDLE_NANOS;
+    }
+
+    private void refill(double scale, long now) {
+      double seconds = (now - lastRefillNanos) / 1e9;
+      lastRefillNanos = now;
+      if (budget.capturesPerSecond > 0) {
+        captures =
+            Math.min(captureCapacity, captures + seconds * budget.capturesPerSecond * scale);
+      }
+      if (budget.bytesPerSecond > 0) {
+        bytes = Math.min(budget.bytesPerSecond, bytes + seconds * budget.bytesPerSecond * scale);
+      }
+    }
+  }
+}
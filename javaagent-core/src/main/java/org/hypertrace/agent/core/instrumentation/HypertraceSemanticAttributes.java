@@ -29,12 +29,24 @@ public class HypertraceSemanticAttributes {
    */
   public static final String ADDITIONAL_DATA_SPAN_NAME = "additional-data";
 
+  /** Max number of cached keys per prefix, a request usually has a few dozen headers. */
+  private static final int MAX_CACHED_KEYS = 1024;
+
+  private static final AttributeKeyCache HTTP_REQUEST_HEADERS =
+      new AttributeKeyCache("http.request.header.", MAX_CACHED_KEYS);
+  private static final AttributeKeyCache HTTP_RESPONSE_HEADERS =
+      new AttributeKeyCache("http.response.header.", MAX_CACHED_KEYS);
+  private static final AttributeKeyCache RPC_REQUEST_METADATA =
+      new AttributeKeyCache("rpc.request.metadata.", MAX_CACHED_KEYS);
+  private static final AttributeKeyCache RPC_RESPONSE_METADATA =
+      new AttributeKeyCache("rpc.response.metadata.", MAX_CACHED_KEYS);
+
   public static AttributeKey<String> httpRequestHeader(String header) {
-    return AttributeKey.stringKey("http.request.header." + header.toLowerCase());
+    return HTTP_REQUEST_HEADERS.get(header);
   }
 
   public static AttributeKey<String> httpResponseHeader(String header) {
-    return AttributeKey.stringKey("http.response.header." + header.toLowerCase());
+    return HTTP_RESPONSE_HEADERS.get(header);
   }
 
   public static final AttributeKey<String> HTTP_REQUEST_BODY =
@@ -60,10 +72,10 @@ public class HypertraceSemanticAttributes {
       AttributeKey.stringKey("rpc.response.body");
 
   public static final AttributeKey<String> rpcRequestMetadata(String key) {
-    return AttributeKey.stringKey("rpc.request.metadata." + key.toLowerCase());
+    return RPC_REQUEST_METADATA.get(key);
   }
 
   public static final AttributeKey<String> rpcResponseMetadata(String key) {
-    return AttributeKey.stringKey("rpc.response.metadata." + key.toLowerCase());
+    return RPC_RESPONSE_METADATA.get(key);
   }
 }
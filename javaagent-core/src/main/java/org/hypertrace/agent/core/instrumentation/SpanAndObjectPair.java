@@ -23,11 +23,19 @@ public class SpanAndObjectPair {
 
   private final Span span;
   private final Map<String, String> headers;
+  private final CapturePolicy.Decision decision;
   private Object associatedObject;
 
   public SpanAndObjectPair(Span span, Map<String, String> headers) {
+    this(span, headers, CapturePolicy.Decision.ALL);
+  }
+
+  /** @param decision the body is only set to the span if bodies are captured */
+  public SpanAndObjectPair(
+      Span span, Map<String, String> headers, CapturePolicy.Decision decision) {
     this.span = span;
     this.headers = headers;
+    this.decision = decision;
   }
 
   public Span getSpan() {
@@ -45,4 +53,8 @@ public class SpanAndObjectPair {
   public Map<String, String> getHeaders() {
     return headers;
   }
+
+  public CapturePolicy.Decision getDecision() {
+    return decision;
+  }
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads attributes back from a span, e.g. the content type of an ended span for its additional
+ * data span.
+ *
+ * <p>The API does not expose span attributes. The SDK span implements {@code
+ * io.opentelemetry.sdk.trace.ReadableSpan#getAttribute}, but the SDK is not visible to the agent
+ * core. The public interface declaring {@code getAttribute(AttributeKey)} is therefore resolved
+ * once per span class into a {@link MethodHandle}, there is no reflective call per attribute.
+ */
+public final class SpanAttributeReader {
+
+  private static final Logger log = LoggerFactory.getLogger(SpanAttributeReader.class);
+
+  private static final MethodType GET_ATTRIBUTE_TYPE =
+      MethodType.methodType(Object.class, AttributeKey.class);
+  private static final MethodType INVOKE_TYPE =
+      MethodType.methodType(Object.class, Span.class, AttributeKey.class);
+
+  /** Accessor per span class, null handle if the span does not expose its attributes. */
+  private static final ClassValue<Accessor> ACCESSORS =
+      new ClassValue<Accessor>() {
+        @Override
+        protected Accessor computeValue(Class<?> spanClass) {
+          return new Accessor(findGetAttribute(spanClass));
+        }
+      };
+
+  private SpanAttributeReader() {}
+
+  /** Returns the value of the attribute, null if it is not set or cannot be read from the span. */
+  @SuppressWarnings("unchecked")
+  public static <T> T getAttribute(Span span, AttributeKey<T> key) {
+    MethodHandle getAttribute = ACCESSORS.get(span.getClass()).getAttribute;
+    if (getAttribute == null) {
+      return null;
+    }
+    try {
+      return (T) (Object) getAttribute.invokeExact(span, (AttributeKey<?>) key);
+    } catch (Throwable t) {
+      log.debug("Could not read attribute {} of span", key, t);
+      return null;
+    }
+  }
+
+  private static MethodHandle findGetAttribute(Class<?> spanClass) {
+    for (Class<?> type = spanClass; type != null; type = type.getSuperclass()) {
+      for (Class<?> spanInterface : type.getInterfaces()) {
+        MethodHandle getAttribute = findGetAttributeInInterface(spanInterface);
+        if (getAttribute != null) {
+          return getAttribute;
+        }
+      }
+    }
+    log.debug("Span {} does not expose its attributes", spanClass.getName());
+    return null;
+  }
+
+  private static MethodHandle findGetAttributeInInterface(Class<?> spanInterface) {
+    if (!Modifier.isPublic(spanInterface.getModifiers())) {
+      return null;
+    }
+    try {
+      Method method = spanInterface.getMethod("getAttribute", AttributeKey.class);
+      if (method.getDeclaringClass() == spanInterface) {
+        return MethodHandles.publicLookup()
+            .findVirtual(spanInterface, "getAttribute", GET_ATTRIBUTE_TYPE)
+            .asType(INVOKE_TYPE);
+      }
+    } catch (NoSuchMethodException | IllegalAccessException | RuntimeException e) {
+      // not declared by this interface, continue with its super interfaces
+    }
+    for (Class<?> superInterface : spanInterface.getInterfaces()) {
+      MethodHandle getAttribute = findGetAttributeInInterface(superInterface);
+      if (getAttribute != null) {
+        return getAttribute;
+      }
+    }
+    return null;
+  }
+
+  private static final class Accessor {
+    final MethodHandle getAttribute;
+
+    Accessor(MethodHandle getAttribute) {
+      this.getAttribute = getAttribute;
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the {@link java.io.InputStream}s and {@link java.io.OutputStream}s that carry a capture
+ * buffer in a {@code VirtualField}.
+ *
+ * <p>The stream advice applies to every stream in the JVM, but only a few streams are ever
+ * captured. The advice looks up the buffer only while a capture is active and only for streams
+ * of a class that has been registered before, other streams (e.g. file streams) exit after a
+ * single volatile read. A stream must be unregistered when its buffer is removed. The streams are
+ * weakly referenced, a stream that is abandoned before it has been read completely (e.g. closed
+ * early or failed) stops counting as an active capture once it has been garbage collected.
+ */
+public final class StreamCaptureRegistry {
+
+  private static final AtomicInteger activeCaptures = new AtomicInteger();
+
+  private static final Set<StreamReference> activeStreams = ConcurrentHashMap.newKeySet();
+  private static final ReferenceQueue<Object> collectedStreams = new ReferenceQueue<>();
+
+  private static final ClassValue<CapturedClass> capturedClasses =
+      new ClassValue<CapturedClass>() {
+        @Override
+        protected CapturedClass computeValue(Class<?> streamClass) {
+          return new CapturedClass();
+        }
+      };
+
+  private StreamCaptureRegistry() {}
+
+  /** Registers a stream whose buffer has been stored, registering it again has no effect. */
+  public static void register(Object stream) {
+    expungeCollected();
+    capturedClasses.get(stream.getClass()).captured = true;
+    if (activeStreams.add(new StreamReference(stream, collectedStreams))) {
+      activeCaptures.incrementAndGet();
+    }
+  }
+
+  /** Unregisters a stream whose buffer has been removed. */
+  public static void unregister(Object stream) {
+    if (activeStreams.remove(new StreamReference(stream, null))) {
+      activeCaptures.decrementAndGet();
+    }
+  }
+
+  /** Returns false if the stream cannot carry a capture buffer. */
+  public static boolean mayCapture(Object stream) {
+    if (activeCaptures.get() == 0) {
+      return false;
+    }
+    expungeCollected();
+    return activeCaptures.get() > 0 && capturedClasses.get(stream.getClass()).captured;
+  }
+
+  /** Returns the number of registered streams that have not been unregistered or collected. */
+  static int activeCaptures() {
+    return activeCaptures.get();
+  }
+
+  static void expungeCollected() {
+    Reference<?> reference;
+    while ((reference = collectedStreams.poll()) != null) {
+      if (activeStreams.remove(reference)) {
+        activeCaptures.decrementAndGet();
+      }
+    }
+  }
+
+  private static final class CapturedClass {
+    volatile boolean captured;
+  }
+
+  /** Weak reference that is equal to the references of the same stream. */
+  private static final class StreamReference extends WeakReference<Object> {
+    private final int hashCode;
+
+    StreamReference(Object stream, ReferenceQueue<Object> queue) {
+      super(stream, queue);
+      this.hashCode = System.identityHashCode(stream);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof StreamReference)) {
+        return false;
+      }
+      Object stream = get();
+      return stream != null && stream == ((StreamReference) obj).get();
+    }
+  }
+}
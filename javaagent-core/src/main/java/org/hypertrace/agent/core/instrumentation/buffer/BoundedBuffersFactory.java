@@ -23,17 +23,23 @@ public class BoundedBuffersFactory {
 
   public static final int MAX_SIZE = InstrumentationConfig.ConfigProvider.get().maxBodySizeBytes();
 
+  private static final int SEGMENT_SIZE = 4096;
+  private static final int SEGMENTS_PER_STRIPE = 16;
+
+  private static final ByteSegmentPool SEGMENT_POOL =
+      new ByteSegmentPool(
+          SEGMENT_SIZE, Runtime.getRuntime().availableProcessors(), SEGMENTS_PER_STRIPE);
+
   public static BoundedByteArrayOutputStream createStream(Charset charset) {
-    return new BoundedByteArrayOutputStream(MAX_SIZE, charset);
+    return new PooledByteArrayOutputStream(SEGMENT_POOL, MAX_SIZE, charset);
   }
 
+  /**
+   * The initial size is not used anymore, the pooled stream grows segment by segment up to {@link
+   * #MAX_SIZE}.
+   */
   public static BoundedByteArrayOutputStream createStream(int initialSize, Charset charset) {
-    if (initialSize > MAX_SIZE) {
-      initialSize = MAX_SIZE;
-    }
-    return initialSize >= 0
-        ? new BoundedByteArrayOutputStream(MAX_SIZE, initialSize, charset)
-        : new BoundedByteArrayOutputStream(MAX_SIZE, charset);
+    return createStream(charset);
   }
 
   public static BoundedCharArrayWriter createWriter() {
@@ -19,6 +19,7 @@ package org.hypertrace.agent.core.instrumentation.buffer;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 /**
@@ -27,15 +28,15 @@ import java.nio.charset.Charset;
  */
 public class BoundedByteArrayOutputStream extends ByteArrayOutputStream {
 
-  private final int maxCapacity;
-  private final Charset charset;
+  protected final int maxCapacity;
+  protected final Charset charset;
 
   BoundedByteArrayOutputStream(int maxCapacity, Charset charset) {
     this.maxCapacity = maxCapacity;
     this.charset = charset;
   }
 
-  BoundedByteArrayOutputStream(int maxCapacity, int size, Charset charset) {
+  protected BoundedByteArrayOutputStream(int maxCapacity, int size, Charset charset) {
     super(size);
     this.maxCapacity = maxCapacity;
     this.charset = charset;
@@ -68,4 +69,28 @@ public class BoundedByteArrayOutputStream extends ByteArrayOutputStream {
     }
     super.write(b, off, len);
   }
+
+  /**
+   * Writes the remaining bytes of the buffer up to the max capacity in bulk. The position of the
+   * buffer is not changed.
+   */
+  public void write(ByteBuffer buffer) {
+    int len = Math.min(buffer.remaining(), maxCapacity - size());
+    if (len <= 0) {
+      return;
+    }
+    if (buffer.hasArray()) {
+      write(buffer.array(), buffer.arrayOffset() + buffer.position(), len);
+      return;
+    }
+    byte[] bytes = new byte[len];
+    buffer.duplicate().get(bytes, 0, len);
+    write(bytes, 0, len);
+  }
+
+  /**
+   * Releases the storage held by this buffer once its content has been captured. No-op for the heap
+   * backed buffer, see {@link PooledByteArrayOutputStream}.
+   */
+  public void release() {}
 }
@@ -20,29 +20,68 @@ import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.trace.Span;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.Objects;
 import org.hypertrace.agent.core.TriFunction;
 import org.hypertrace.agent.core.filter.FilterResult;
+import org.hypertrace.agent.core.filter.RequestBodyEvaluation;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
 import org.hypertrace.agent.core.instrumentation.HypertraceEvaluationException;
 
 public class ByteBufferSpanPair {
 
+  private static final int PENDING_SIZE = 256;
+
   public final Span span;
   private final BoundedByteArrayOutputStream buffer;
   private final Map<String, String> headers;
   private boolean bufferCaptured;
   private final TriFunction<Span, String, Map<String, String>, FilterResult> filter;
+  private final RequestBodyEvaluation bodyEvaluation;
+  private final CapturePolicy.Decision decision;
+  // single bytes read by the application are evaluated in one chunk
+  private byte[] pending;
+  private int pendingCount;
 
   public ByteBufferSpanPair(
       Span span,
       BoundedByteArrayOutputStream buffer,
       TriFunction<Span, String, Map<String, String>, FilterResult> filter,
       Map<String, String> headers) {
+    this(span, buffer, filter, headers, null);
+  }
+
+  /**
+   * @param bodyEvaluation if not null the body is evaluated incrementally by it instead of by the
+   *     filter function
+   */
+  public ByteBufferSpanPair(
+      Span span,
+      BoundedByteArrayOutputStream buffer,
+      TriFunction<Span, String, Map<String, String>, FilterResult> filter,
+      Map<String, String> headers,
+      RequestBodyEvaluation bodyEvaluation) {
+    this(span, buffer, filter, headers, bodyEvaluation, CapturePolicy.Decision.ALL);
+  }
+
+  /**
+   * @param decision the body is only set to the span if bodies are captured, it is still passed to
+   *     the filter
+   */
+  public ByteBufferSpanPair(
+      Span span,
+      BoundedByteArrayOutputStream buffer,
+      TriFunction<Span, String, Map<String, String>, FilterResult> filter,
+      Map<String, String> headers,
+      RequestBodyEvaluation bodyEvaluation,
+      CapturePolicy.Decision decision) {
     this.span = span;
     this.buffer = buffer;
     this.filter = Objects.requireNonNull(filter);
     this.headers = headers;
+    this.bodyEvaluation = bodyEvaluation;
+    this.decision = decision;
   }
 
   public void captureBody(AttributeKey<String> attributeKey) {
@@ -52,31 +91,69 @@ public class ByteBufferSpanPair {
     bufferCaptured = true;
 
     String requestBody = null;
-    try {
-      requestBody = buffer.toStringWithSuppliedCharset();
-    } catch (UnsupportedEncodingException e) {
-      // ignore charset has been parsed before
+    if (decision.captureBodies() || bodyEvaluation == null) {
+      try {
+        requestBody = buffer.toStringWithSuppliedCharset();
+      } catch (UnsupportedEncodingException e) {
+        // ignore charset has been parsed before
+      }
     }
-    span.setAttribute(attributeKey, requestBody);
-    final FilterResult filterResult;
-    filterResult = filter.apply(span, requestBody, headers);
-    if (filterResult.shouldBlock()) {
-      throw new HypertraceEvaluationException(filterResult);
+    if (decision.captureBodies()) {
+      span.setAttribute(attributeKey, requestBody);
+    }
+    if (bodyEvaluation != null) {
+      evaluatePending();
+      checkResult(bodyEvaluation.evaluateEnd());
+    } else {
+      checkResult(filter.apply(span, requestBody, headers));
     }
   }
 
   public void writeToBuffer(byte singleByte) {
     bufferCaptured = false;
     buffer.write(singleByte);
+    if (bodyEvaluation != null) {
+      if (pending == null) {
+        pending = new byte[PENDING_SIZE];
+      }
+      pending[pendingCount++] = singleByte;
+      if (pendingCount == pending.length) {
+        evaluatePending();
+      }
+    }
   }
 
   public void writeToBuffer(byte[] b, int offset, int len) {
     bufferCaptured = false;
     buffer.write(b, offset, len);
+    if (bodyEvaluation != null) {
+      evaluatePending();
+      checkResult(
+          bodyEvaluation.evaluateChunk(ByteBuffer.wrap(b, offset, len).asReadOnlyBuffer()));
+    }
   }
 
   public void writeToBuffer(byte[] b) throws IOException {
-    bufferCaptured = false;
-    buffer.write(b);
+    writeToBuffer(b, 0, b.length);
+  }
+
+  private void evaluatePending() {
+    if (pendingCount > 0) {
+      int count = pendingCount;
+      pendingCount = 0;
+      checkResult(
+          bodyEvaluation.evaluateChunk(ByteBuffer.wrap(pending, 0, count).asReadOnlyBuffer()));
+    }
+  }
+
+  private static void checkResult(FilterResult filterResult) {
+    if (filterResult.shouldBlock()) {
+      throw new HypertraceEvaluationException(filterResult);
+    }
+  }
+
+  /** Releases the buffer once the body will not be read anymore e.g. at the end of the request. */
+  public void release() {
+    buffer.release();
   }
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.buffer;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free, bounded pool of fixed-size byte segments used by {@link PooledByteArrayOutputStream}.
+ *
+ * <p>The pool is split into stripes selected by the calling thread id so that request threads
+ * rarely contend on the same slots. Segments are only cached, never tracked: a segment that is not
+ * returned is simply garbage collected, and a segment returned to a full stripe is dropped.
+ */
+final class ByteSegmentPool {
+
+  private final int segmentSize;
+  private final int stripeMask;
+  private final int slotsPerStripe;
+  private final AtomicReferenceArray<byte[]> slots;
+
+  ByteSegmentPool(int segmentSize, int stripes, int slotsPerStripe) {
+    if (segmentSize <= 0 || stripes <= 0 || slotsPerStripe <= 0) {
+      throw new IllegalArgumentException("segment size, stripes and slots must be positive");
+    }
+    // round up to a power of two so that the stripe can be selected with a mask
+    int stripeCount = Integer.highestOneBit(stripes);
+    if (stripeCount < stripes) {
+      stripeCount <<= 1;
+    }
+    this.segmentSize = segmentSize;
+    this.stripeMask = stripeCount - 1;
+    this.slotsPerStripe = slotsPerStripe;
+    this.slots = new AtomicReferenceArray<>(stripeCount * slotsPerStripe);
+  }
+
+  int segmentSize() {
+    return segmentSize;
+  }
+
+  /** Returns a pooled segment or a newly allocated one if the stripe is empty. */
+  byte[] acquire() {
+    int start = stripeStart();
+    for (int i = start; i < start + slotsPerStripe; i++) {
+      byte[] segment = slots.get(i);
+      if (segment != null && slots.compareAndSet(i, segment, null)) {
+        return segment;
+      }
+    }
+    return new byte[segmentSize];
+  }
+
+  /** Returns the segment to the pool. Segments of a foreign size are ignored. */
+  void release(byte[] segment) {
+    if (segment == null || segment.length != segmentSize) {
+      return;
+    }
+    int start = stripeStart();
+    for (int i = start; i < start + slotsPerStripe; i++) {
+      if (slots.get(i) == null && slots.compareAndSet(i, null, segment)) {
+        return;
+      }
+    }
+  }
+
+  private int stripeStart() {
+    return ((int) Thread.currentThread().getId() & stripeMask) * slotsPerStripe;
+  }
+}
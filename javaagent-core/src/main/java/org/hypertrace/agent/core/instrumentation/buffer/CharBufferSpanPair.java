@@ -19,17 +19,27 @@ package org.hypertrace.agent.core.instrumentation.buffer;
 import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.trace.Span;
 import java.io.IOException;
+import java.nio.CharBuffer;
 import java.util.Map;
 import org.hypertrace.agent.core.TriFunction;
 import org.hypertrace.agent.core.filter.FilterResult;
+import org.hypertrace.agent.core.filter.RequestBodyEvaluation;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
 import org.hypertrace.agent.core.instrumentation.HypertraceEvaluationException;
 
 public class CharBufferSpanPair {
 
+  private static final int PENDING_SIZE = 256;
+
   public final Span span;
   public final Map<String, String> headers;
   private final BoundedCharArrayWriter buffer;
   private final TriFunction<Span, String, Map<String, String>, FilterResult> filter;
+  private final RequestBodyEvaluation bodyEvaluation;
+  private final CapturePolicy.Decision decision;
+  // single characters read by the application are evaluated in one chunk
+  private char[] pending;
+  private int pendingCount;
 
   /**
    * A flag to signalize that buffer has been added to span. For instance Jetty calls reader#read in
@@ -42,10 +52,39 @@ public class CharBufferSpanPair {
       BoundedCharArrayWriter buffer,
       TriFunction<Span, String, Map<String, String>, FilterResult> filter,
       Map<String, String> headers) {
+    this(span, buffer, filter, headers, null);
+  }
+
+  /**
+   * @param bodyEvaluation if not null the body is evaluated incrementally by it instead of by the
+   *     filter function
+   */
+  public CharBufferSpanPair(
+      Span span,
+      BoundedCharArrayWriter buffer,
+      TriFunction<Span, String, Map<String, String>, FilterResult> filter,
+      Map<String, String> headers,
+      RequestBodyEvaluation bodyEvaluation) {
+    this(span, buffer, filter, headers, bodyEvaluation, CapturePolicy.Decision.ALL);
+  }
+
+  /**
+   * @param decision the body is only set to the span if bodies are captured, it is still passed to
+   *     the filter
+   */
+  public CharBufferSpanPair(
+      Span span,
+      BoundedCharArrayWriter buffer,
+      TriFunction<Span, String, Map<String, String>, FilterResult> filter,
+      Map<String, String> headers,
+      RequestBodyEvaluation bodyEvaluation,
+      CapturePolicy.Decision decision) {
     this.span = span;
     this.buffer = buffer;
     this.headers = headers;
     this.filter = filter;
+    this.bodyEvaluation = bodyEvaluation;
+    this.decision = decision;
   }
 
   public void captureBody(AttributeKey<String> attributeKey) {
@@ -53,32 +92,70 @@ public class CharBufferSpanPair {
       return;
     }
     bufferCaptured = true;
-    String requestBody = buffer.toString();
-    span.setAttribute(attributeKey, requestBody);
-    final FilterResult filterResult;
-    filterResult = filter.apply(span, requestBody, headers);
-    if (filterResult.shouldBlock()) {
-      throw new HypertraceEvaluationException(filterResult);
+    String requestBody = null;
+    if (decision.captureBodies() || bodyEvaluation == null) {
+      requestBody = buffer.toString();
+    }
+    if (decision.captureBodies()) {
+      span.setAttribute(attributeKey, requestBody);
+    }
+    if (bodyEvaluation != null) {
+      evaluatePending();
+      checkResult(bodyEvaluation.evaluateEnd());
+    } else {
+      checkResult(filter.apply(span, requestBody, headers));
     }
   }
 
   public void writeToBuffer(byte singleByte) {
     bufferCaptured = false;
     buffer.write(singleByte);
+    if (bodyEvaluation != null) {
+      if (pending == null) {
+        pending = new char[PENDING_SIZE];
+      }
+      pending[pendingCount++] = (char) singleByte;
+      if (pendingCount == pending.length) {
+        evaluatePending();
+      }
+    }
   }
 
   public void writeToBuffer(char[] c, int offset, int len) {
     bufferCaptured = false;
     buffer.write(c, offset, len);
+    if (bodyEvaluation != null) {
+      evaluatePending();
+      checkResult(
+          bodyEvaluation.evaluateChunk(CharBuffer.wrap(c, offset, len).asReadOnlyBuffer()));
+    }
   }
 
   public void writeToBuffer(char[] c) throws IOException {
-    bufferCaptured = false;
-    buffer.write(c);
+    writeToBuffer(c, 0, c.length);
   }
 
   public void writeLine(String line) throws IOException {
     bufferCaptured = false;
     buffer.write(line);
+    if (bodyEvaluation != null) {
+      evaluatePending();
+      checkResult(bodyEvaluation.evaluateChunk(CharBuffer.wrap(line)));
+    }
+  }
+
+  private void evaluatePending() {
+    if (pendingCount > 0) {
+      int count = pendingCount;
+      pendingCount = 0;
+      checkResult(
+          bodyEvaluation.evaluateChunk(CharBuffer.wrap(pending, 0, count).asReadOnlyBuffer()));
+    }
+  }
+
+  private static void checkResult(FilterResult filterResult) {
+    if (filterResult.shouldBlock()) {
+      throw new HypertraceEvaluationException(filterResult);
+    }
   }
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.buffer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * {@link BoundedByteArrayOutputStream} that stores the data in fixed-size segments taken from a
+ * {@link ByteSegmentPool} instead of a single growing array.
+ *
+ * <p>The buffer is owned by the thread that captures the body, therefore none of the methods are
+ * synchronized. Segments are handed back to the pool by {@link #release()} once the body has been
+ * added to the span.
+ */
+public class PooledByteArrayOutputStream extends BoundedByteArrayOutputStream {
+
+  private static final byte[][] NO_SEGMENTS = new byte[0][];
+
+  private final ByteSegmentPool pool;
+
+  private byte[][] segments = NO_SEGMENTS;
+  private int segmentCount;
+  private byte[] tail;
+  private int tailCount;
+  private int size;
+
+  PooledByteArrayOutputStream(ByteSegmentPool pool, int maxCapacity, Charset charset) {
+    // the array of the parent stream is never used
+    super(maxCapacity, 0, charset);
+    this.pool = pool;
+  }
+
+  @Override
+  public void write(int b) {
+    if (size >= maxCapacity) {
+      return;
+    }
+    if (tail == null || tailCount == tail.length) {
+      nextSegment();
+    }
+    tail[tailCount++] = (byte) b;
+    size++;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    if (off < 0 || len < 0 || off > b.length - len) {
+      throw new IndexOutOfBoundsException();
+    }
+    len = Math.min(len, maxCapacity - size);
+    while (len > 0) {
+      if (tail == null || tailCount == tail.length) {
+        nextSegment();
+      }
+      int n = Math.min(len, tail.length - tailCount);
+      System.arraycopy(b, off, tail, tailCount, n);
+      tailCount += n;
+      size += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  /** Copies the bytes straight into the segments, also from direct and read-only buffers. */
+  @Override
+  public void write(ByteBuffer buffer) {
+    int len = Math.min(buffer.remaining(), maxCapacity - size);
+    if (len <= 0) {
+      return;
+    }
+    ByteBuffer source = buffer.duplicate();
+    while (len > 0) {
+      if (tail == null || tailCount == tail.length) {
+        nextSegment();
+      }
+      int n = Math.min(len, tail.length - tailCount);
+      source.get(tail, tailCount, n);
+      tailCount += n;
+      size += n;
+      len -= n;
+    }
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    for (int i = 0; i < segmentCount; i++) {
+      out.write(segments[i], 0, segmentLength(i));
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public void reset() {
+    release();
+  }
+
+  @Override
+  public byte[] toByteArray() {
+    byte[] data = new byte[size];
+    int pos = 0;
+    for (int i = 0; i < segmentCount; i++) {
+      int len = segmentLength(i);
+      System.arraycopy(segments[i], 0, data, pos, len);
+      pos += len;
+    }
+    return data;
+  }
+
+  @Override
+  public String toStringWithSuppliedCharset() {
+    return decode(charset);
+  }
+
+  @Override
+  public String toString() {
+    return decode(Charset.defaultCharset());
+  }
+
+  @Override
+  public String toString(String charsetName) throws UnsupportedEncodingException {
+    if (segmentCount == 1) {
+      return new String(segments[0], 0, size, charsetName);
+    }
+    return new String(toByteArray(), charsetName);
+  }
+
+  /**
+   * Returns all segments to the pool and empties the buffer. The buffer can be written to again
+   * afterwards.
+   */
+  @Override
+  public void release() {
+    for (int i = 0; i < segmentCount; i++) {
+      pool.release(segments[i]);
+      segments[i] = null;
+    }
+    segmentCount = 0;
+    tail = null;
+    tailCount = 0;
+    size = 0;
+  }
+
+  private String decode(Charset charset) {
+    if (segmentCount == 1) {
+      // common case, decode straight from the segment without an intermediate copy
+      return new String(segments[0], 0, size, charset);
+    }
+    return new String(toByteArray(), charset);
+  }
+
+  private int segmentLength(int index) {
+    return index == segmentCount - 1 ? tailCount : segments[index].length;
+  }
+
+  private void nextSegment() {
+    if (segmentCount == segments.length) {
+      byte[][] grown = new byte[Math.max(4, segments.length * 2)][];
+      System.arraycopy(segments, 0, grown, 0, segmentCount);
+      segments = grown;
+    }
+    tail = pool.acquire();
+    tailCount = 0;
+    segments[segmentCount++] = tail;
+  }
+}
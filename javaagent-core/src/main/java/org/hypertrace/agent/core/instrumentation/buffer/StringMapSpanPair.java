@@ -21,6 +21,7 @@ import static org.hypertrace.agent.core.instrumentation.utils.ContentTypeUtils.c
 import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.trace.Span;
 import java.util.Map;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
 
 /** Created to represent the request body that is in x-www-form-urlencoded format. */
 public class StringMapSpanPair {
@@ -28,14 +29,25 @@ public class StringMapSpanPair {
   public final Span span;
   public final Map<String, String> headers;
   public final Map<String, String> stringMap;
+  private final CapturePolicy.Decision decision;
 
   /** A flag to signalize that map has been added to span. */
   private boolean mapCaptured;
 
   public StringMapSpanPair(Span span, Map<String, String> stringMap, Map<String, String> headers) {
+    this(span, stringMap, headers, CapturePolicy.Decision.ALL);
+  }
+
+  /** @param decision the map is only set to the span if bodies are captured */
+  public StringMapSpanPair(
+      Span span,
+      Map<String, String> stringMap,
+      Map<String, String> headers,
+      CapturePolicy.Decision decision) {
     this.span = span;
     this.stringMap = stringMap;
     this.headers = headers;
+    this.decision = decision;
   }
 
   /**
@@ -44,7 +56,7 @@ public class StringMapSpanPair {
    * @param attributeKey
    */
   public void captureBody(AttributeKey<String> attributeKey) {
-    if (!mapCaptured) {
+    if (!mapCaptured && decision.captureBodies()) {
       String json = convertToJSONString(stringMap);
       span.setAttribute(attributeKey, json);
       mapCaptured = true;
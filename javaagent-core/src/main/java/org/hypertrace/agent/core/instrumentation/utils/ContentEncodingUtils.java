@@ -0,0 +1,312 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
+
+/**
+ * Decodes gzip and deflate compressed bodies to text.
+ *
+ * <p>The body is inflated and decoded in bulk and decoding stops as soon as the max body size is
+ * reached, the rest of the compressed input is never inflated. The {@link Inflater}, the work
+ * buffers and the {@link CharsetDecoder} are reused per thread.
+ */
+public class ContentEncodingUtils {
+  private ContentEncodingUtils() {}
+
+  private static final int BUFFER_SIZE = 8192;
+  private static final int INITIAL_CHARS = 1024;
+
+  private static final int GZIP_MAGIC_1 = 0x1f;
+  private static final int GZIP_MAGIC_2 = 0x8b;
+  private static final int GZIP_TRAILER_SIZE = 8;
+  // gzip header flags
+  private static final int FHCRC = 2;
+  private static final int FEXTRA = 4;
+  private static final int FNAME = 8;
+  private static final int FCOMMENT = 16;
+
+  private static final ThreadLocal<Decoder> DECODER = ThreadLocal.withInitial(Decoder::new);
+
+  /** Returns true if the content encoding is gzip or deflate. */
+  public static boolean isCompressed(String contentEncoding) {
+    return isGzip(contentEncoding) || isDeflate(contentEncoding);
+  }
+
+  public static String decode(byte[] compressed, String contentEncoding, Charset charset)
+      throws IOException {
+    return decode(new ByteArrayInputStream(compressed), contentEncoding, charset);
+  }
+
+  public static String decode(InputStream compressed, String contentEncoding, Charset charset)
+      throws IOException {
+    return decode(compressed, contentEncoding, charset, BoundedBuffersFactory.MAX_SIZE);
+  }
+
+  /**
+   * Inflates and decodes at most {@code maxBytes} of the compressed body. A content encoding other
+   * than gzip is treated as deflate, callers check {@link #isCompressed(String)} first.
+   *
+   * @throws ZipException if the input is not in gzip or deflate format
+   */
+  public static String decode(
+      InputStream compressed, String contentEncoding, Charset charset, int maxBytes)
+      throws IOException {
+    Decoder decoder = DECODER.get();
+    boolean shared = !decoder.inUse;
+    if (!shared) {
+      // should not happen, but do not share the state with the outer call
+      decoder = new Decoder();
+    }
+    decoder.inUse = true;
+    try {
+      return decoder.decode(compressed, isGzip(contentEncoding), charset, maxBytes);
+    } finally {
+      if (shared) {
+        decoder.clear();
+      } else {
+        // release the native memory of the one-off inflater right away
+        decoder.inflater.end();
+      }
+    }
+  }
+
+  private static boolean isGzip(String contentEncoding) {
+    return contentEncoding != null && contentEncoding.toLowerCase().contains("gzip");
+  }
+
+  private static boolean isDeflate(String contentEncoding) {
+    return contentEncoding != null && contentEncoding.toLowerCase().contains("deflate");
+  }
+
+  private static class Decoder {
+    // raw deflate, the gzip and zlib wrappers are parsed here
+    private final Inflater inflater = new Inflater(true);
+    private final byte[] input = new byte[BUFFER_SIZE];
+    private final ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE);
+    private CharsetDecoder charsetDecoder;
+
+    private InputStream in;
+    private int inputPos;
+    private int inputLimit;
+    private boolean inUse;
+
+    String decode(InputStream in, boolean gzip, Charset charset, int maxBytes) throws IOException {
+      this.in = in;
+      CharsetDecoder charsetDecoder = charsetDecoder(charset);
+      CharBuffer chars = CharBuffer.allocate(Math.max(0, Math.min(maxBytes, INITIAL_CHARS)));
+
+      if (gzip) {
+        readGzipHeader();
+      } else {
+        skipZlibHeader();
+      }
+      int remaining = maxBytes;
+      boolean truncated = false;
+      while (true) {
+        if (remaining == 0) {
+          truncated = true;
+          break;
+        }
+        int n = inflate(Math.min(output.remaining(), remaining));
+        if (n > 0) {
+          remaining -= n;
+          output.flip();
+          chars = decode(charsetDecoder, chars, false);
+          output.compact();
+        } else if (inflater.finished()) {
+          if (!gzip || !nextGzipMember()) {
+            break;
+          }
+        } else if (inflater.needsInput()) {
+          if (!fill()) {
+            // truncated input, keep what has been inflated so far
+            break;
+          }
+          inflater.setInput(input, inputPos, inputLimit - inputPos);
+        } else if (inflater.needsDictionary()) {
+          throw new ZipException("Preset dictionary is not supported");
+        }
+      }
+
+      output.flip();
+      if (truncated) {
+        // leftover bytes are an incomplete character cut by the limit, drop them
+        chars = decode(charsetDecoder, chars, false);
+      } else {
+        chars = decode(charsetDecoder, chars, true);
+        while (charsetDecoder.flush(chars).isOverflow()) {
+          chars = grow(chars);
+        }
+      }
+      chars.flip();
+      return chars.toString();
+    }
+
+    void clear() {
+      inflater.reset();
+      output.clear();
+      in = null;
+      inputPos = 0;
+      inputLimit = 0;
+      inUse = false;
+    }
+
+    private CharsetDecoder charsetDecoder(Charset charset) {
+      if (charsetDecoder == null || !charsetDecoder.charset().equals(charset)) {
+        // same replacement behavior as InputStreamReader
+        charsetDecoder =
+            charset
+                .newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      }
+      return charsetDecoder.reset();
+    }
+
+    private CharBuffer decode(CharsetDecoder charsetDecoder, CharBuffer chars, boolean endOfInput) {
+      while (true) {
+        CoderResult result = charsetDecoder.decode(output, chars, endOfInput);
+        if (!result.isOverflow()) {
+          return chars;
+        }
+        chars = grow(chars);
+      }
+    }
+
+    private int inflate(int length) throws ZipException {
+      try {
+        int n = inflater.inflate(output.array(), output.position(), length);
+        output.position(output.position() + n);
+        return n;
+      } catch (DataFormatException e) {
+        throw new ZipException(e.getMessage());
+      }
+    }
+
+    private void readGzipHeader() throws IOException {
+      if (readByte() != GZIP_MAGIC_1 || readByte() != GZIP_MAGIC_2) {
+        throw new ZipException("Not in GZIP format");
+      }
+      if (readByte() != 8) {
+        throw new ZipException("Unsupported compression method");
+      }
+      int flags = readByte();
+      // mtime, extra flags and os
+      skipBytes(6);
+      if ((flags & FEXTRA) == FEXTRA) {
+        skipBytes(readByte() | (readByte() << 8));
+      }
+      if ((flags & FNAME) == FNAME) {
+        skipZeroTerminated();
+      }
+      if ((flags & FCOMMENT) == FCOMMENT) {
+        skipZeroTerminated();
+      }
+      if ((flags & FHCRC) == FHCRC) {
+        skipBytes(2);
+      }
+      inflater.setInput(input, inputPos, inputLimit - inputPos);
+    }
+
+    /** Deflate is zlib wrapped deflate, but some servers send raw deflate data. */
+    private void skipZlibHeader() throws IOException {
+      if (!fill()) {
+        throw new ZipException("Not in deflate format");
+      }
+      if (inputLimit - inputPos >= 2) {
+        int cmf = input[inputPos] & 0xff;
+        int flg = input[inputPos + 1] & 0xff;
+        if ((cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0) {
+          if ((flg & 0x20) != 0) {
+            throw new ZipException("Preset dictionary is not supported");
+          }
+          inputPos += 2;
+        }
+      }
+      inflater.setInput(input, inputPos, inputLimit - inputPos);
+    }
+
+    /** Skips the trailer of the current member and starts the next one of a multi-member body. */
+    private boolean nextGzipMember() throws IOException {
+      inputPos = inputLimit - inflater.getRemaining();
+      inflater.reset();
+      try {
+        skipBytes(GZIP_TRAILER_SIZE);
+        if (inputPos == inputLimit && !fill()) {
+          return false;
+        }
+        readGzipHeader();
+        return true;
+      } catch (ZipException e) {
+        // truncated trailer or trailing garbage, same as GZIPInputStream ignore it
+        return false;
+      }
+    }
+
+    private boolean fill() throws IOException {
+      int n = in.read(input, 0, input.length);
+      while (n == 0) {
+        n = in.read(input, 0, input.length);
+      }
+      if (n < 0) {
+        inputPos = 0;
+        inputLimit = 0;
+        return false;
+      }
+      inputPos = 0;
+      inputLimit = n;
+      return true;
+    }
+
+    private int readByte() throws IOException {
+      if (inputPos == inputLimit && !fill()) {
+        throw new ZipException("Unexpected end of gzip header");
+      }
+      return input[inputPos++] & 0xff;
+    }
+
+    private void skipBytes(int count) throws IOException {
+      for (int i = 0; i < count; i++) {
+        readByte();
+      }
+    }
+
+    private void skipZeroTerminated() throws IOException {
+      while (readByte() != 0) {}
+    }
+
+    private static CharBuffer grow(CharBuffer chars) {
+      CharBuffer grown = CharBuffer.allocate(Math.max(INITIAL_CHARS, chars.capacity() * 2));
+      chars.flip();
+      grown.put(chars);
+      return grown;
+    }
+  }
+}
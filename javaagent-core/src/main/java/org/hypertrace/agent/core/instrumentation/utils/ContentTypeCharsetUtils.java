@@ -18,6 +18,7 @@ package org.hypertrace.agent.core.instrumentation.utils;
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,10 +30,24 @@ public class ContentTypeCharsetUtils {
   // default for HTTP 1.1 https://www.w3.org/International/articles/http-charset/index
   private static final Charset DEFAULT_CHARSET = StandardCharsets.ISO_8859_1;
 
+  private static final int MAX_CACHED_CHARSETS = 64;
+  private static final ConcurrentHashMap<String, Charset> CHARSETS = new ConcurrentHashMap<>();
+
   public static Charset toCharset(String charsetName) {
     if (charsetName == null || charsetName.isEmpty()) {
       return DEFAULT_CHARSET;
     }
+    Charset charset = CHARSETS.get(charsetName);
+    if (charset == null) {
+      charset = forName(charsetName);
+      if (CHARSETS.size() < MAX_CACHED_CHARSETS) {
+        CHARSETS.put(charsetName, charset);
+      }
+    }
+    return charset;
+  }
+
+  private static Charset forName(String charsetName) {
     try {
       return Charset.forName(charsetName);
     } catch (Exception e) {
@@ -0,0 +1,51 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.utils;
+
+import java.nio.charset.Charset;
+
+/** Immutable result of parsing a content type header value, see {@link ContentTypeUtils}. */
+public final class ContentTypeInfo {
+
+  static final ContentTypeInfo NONE =
+      new ContentTypeInfo(false, null, ContentTypeCharsetUtils.getDefaultCharset());
+
+  private final boolean shouldCapture;
+  private final String charsetName;
+  private final Charset charset;
+
+  ContentTypeInfo(boolean shouldCapture, String charsetName, Charset charset) {
+    this.shouldCapture = shouldCapture;
+    this.charsetName = charsetName;
+    this.charset = charset;
+  }
+
+  /** Returns true if the body with this content type should be captured. */
+  public boolean shouldCapture() {
+    return shouldCapture;
+  }
+
+  /** Returns the charset parameter of the content type or null if it is not present. */
+  public String getCharsetName() {
+    return charsetName;
+  }
+
+  /** Returns the charset of the content type or the default charset if it is not present. */
+  public Charset getCharset() {
+    return charset;
+  }
+}
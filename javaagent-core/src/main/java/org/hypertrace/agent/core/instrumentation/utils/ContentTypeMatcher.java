@@ -0,0 +1,146 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+
+/**
+ * Case-insensitive matcher that finds any of the allowed content types in a content type value.
+ *
+ * <p>The allowed content types are compiled to an Aho-Corasick automaton with all transitions
+ * precomputed, the value is scanned once without lowercasing or copying it. Content types are
+ * ASCII tokens, characters outside of ASCII never match.
+ */
+final class ContentTypeMatcher {
+
+  private static final int ALPHABET = 128;
+
+  private final int[][] transitions;
+  private final boolean[] accepting;
+  private final boolean matchesAll;
+
+  ContentTypeMatcher(String[] contentTypes) {
+    List<int[]> trie = new ArrayList<>();
+    List<Boolean> terminal = new ArrayList<>();
+    trie.add(newState());
+    terminal.add(false);
+
+    boolean emptyPattern = false;
+    for (String contentType : contentTypes) {
+      if (contentType == null) {
+        continue;
+      }
+      if (contentType.isEmpty()) {
+        // an empty allowed content type is contained in every value
+        emptyPattern = true;
+        continue;
+      }
+      String pattern = contentType.toLowerCase(Locale.ROOT);
+      int state = 0;
+      boolean ascii = true;
+      for (int i = 0; i < pattern.length(); i++) {
+        char c = pattern.charAt(i);
+        if (c >= ALPHABET) {
+          ascii = false;
+          break;
+        }
+        int next = trie.get(state)[c];
+        if (next < 0) {
+          next = trie.size();
+          trie.add(newState());
+          terminal.add(false);
+          trie.get(state)[c] = next;
+        }
+        state = next;
+      }
+      if (ascii) {
+        terminal.set(state, true);
+      }
+    }
+    this.matchesAll = emptyPattern;
+
+    int stateCount = trie.size();
+    this.transitions = trie.toArray(new int[stateCount][]);
+    this.accepting = new boolean[stateCount];
+    for (int i = 0; i < stateCount; i++) {
+      accepting[i] = terminal.get(i);
+    }
+    compile();
+  }
+
+  boolean matches(String value) {
+    if (value == null) {
+      return false;
+    }
+    if (matchesAll) {
+      return true;
+    }
+    int state = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c >= 'A' && c <= 'Z') {
+        c = (char) (c + ('a' - 'A'));
+      }
+      state = c < ALPHABET ? transitions[state][c] : 0;
+      if (accepting[state]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Resolves the failure links so that every state has a transition for every character. */
+  private void compile() {
+    int[] failure = new int[transitions.length];
+    Queue<Integer> queue = new ArrayDeque<>();
+    int[] root = transitions[0];
+    for (int c = 0; c < ALPHABET; c++) {
+      if (root[c] > 0) {
+        failure[root[c]] = 0;
+        queue.add(root[c]);
+      } else {
+        root[c] = 0;
+      }
+    }
+    while (!queue.isEmpty()) {
+      int state = queue.remove();
+      // a state that contains an allowed content type as a suffix accepts too
+      accepting[state] |= accepting[failure[state]];
+      for (int c = 0; c < ALPHABET; c++) {
+        int next = transitions[state][c];
+        if (next > 0) {
+          failure[next] = transitions[failure[state]][c];
+          queue.add(next);
+        } else {
+          transitions[state][c] = transitions[failure[state]][c];
+        }
+      }
+    }
+  }
+
+  private static int[] newState() {
+    // -1 marks a missing transition until the automaton is compiled
+    int[] state = new int[ALPHABET];
+    Arrays.fill(state, -1);
+    return state;
+  }
+}
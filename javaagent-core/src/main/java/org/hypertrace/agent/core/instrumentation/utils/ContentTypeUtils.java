@@ -18,10 +18,20 @@ package org.hypertrace.agent.core.instrumentation.utils;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.concurrent.ConcurrentHashMap;
 import org.hypertrace.agent.core.config.DataCaptureConfig;
 
 public class ContentTypeUtils {
-  private final String[] collectableContentTypes;
+  private final ContentTypeMatcher collectableContentTypes;
+
+  /**
+   * Parsed content type values. There are only a few distinct values in practice, the size is
+   * bounded in case a client sends random values.
+   */
+  private final ConcurrentHashMap<String, ContentTypeInfo> contentTypeInfos =
+      new ConcurrentHashMap<>();
+
+  private static final int MAX_CACHED_CONTENT_TYPES = 256;
 
   private static final String[] DEFAULT_CONTENT_TYPES =
       new String[] {"json", "graphql", "xml", "x-www-form-urlencoded"};
@@ -37,9 +47,9 @@ public class ContentTypeUtils {
     DataCaptureConfig dataCaptureConfig = DataCaptureConfig.ConfigProvider.get();
 
     if (dataCaptureConfig == null) {
-      collectableContentTypes = DEFAULT_CONTENT_TYPES;
+      collectableContentTypes = new ContentTypeMatcher(DEFAULT_CONTENT_TYPES);
     } else {
-      collectableContentTypes = dataCaptureConfig.getAllowedContentTypes();
+      collectableContentTypes = new ContentTypeMatcher(dataCaptureConfig.getAllowedContentTypes());
     }
   }
 
@@ -64,24 +74,39 @@ public class ContentTypeUtils {
   }
 
   /**
-   * Determines if the content type should be captured by the agent.
-   *
-   * @param contentType
-   * @return
+   * Drops the collectable content types and the parsed values, they are loaded again from the
+   * DataCaptureConfig on next use. Called when the config has been reloaded.
    */
-  private boolean shouldCapture_(String contentType) {
+  public static synchronized void reset() {
+    instance = null;
+  }
+
+  private ContentTypeInfo getInfo_(String contentType) {
     if (contentType == null) {
-      return false;
+      return ContentTypeInfo.NONE;
     }
-    contentType = contentType.toLowerCase();
-
-    for (String nextValidContentType : collectableContentTypes) {
-      if (contentType.contains(nextValidContentType)) {
-        return true;
+    ContentTypeInfo info = contentTypeInfos.get(contentType);
+    if (info == null) {
+      String charsetName = parseCharset_(contentType);
+      info =
+          new ContentTypeInfo(
+              collectableContentTypes.matches(contentType),
+              charsetName,
+              ContentTypeCharsetUtils.toCharset(charsetName));
+      if (contentTypeInfos.size() < MAX_CACHED_CONTENT_TYPES) {
+        contentTypeInfos.put(contentType, info);
       }
     }
+    return info;
+  }
 
-    return false;
+  /**
+   * Returns whether the body with this content type should be captured and its charset.
+   *
+   * @param contentType request or response content type, can be null
+   */
+  public static ContentTypeInfo getInfo(String contentType) {
+    return getInstance().getInfo_(contentType);
   }
 
   /**
@@ -91,14 +116,14 @@ public class ContentTypeUtils {
    * @return whether body with this content type should be captured or not
    */
   public static boolean shouldCapture(String contentType) {
-    return getInstance().shouldCapture_(contentType);
+    return getInfo(contentType).shouldCapture();
   }
 
   public static String parseCharset(String contentType) {
-    if (contentType == null) {
-      return null;
-    }
+    return getInfo(contentType).getCharsetName();
+  }
 
+  private static String parseCharset_(String contentType) {
     contentType = contentType.toLowerCase();
     int indexOfCharset = contentType.indexOf(CHARSET_EQUALS);
     if (indexOfCharset == -1) {
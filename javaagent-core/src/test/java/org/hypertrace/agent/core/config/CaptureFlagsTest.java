@@ -0,0 +1,80 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.config;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CaptureFlagsTest {
+
+  private static final InstrumentationConfig.Message NONE = message(false, false);
+
+  @Test
+  public void flagsOfMessages() {
+    CaptureFlags flags =
+        CaptureFlags.of(message(true, false), message(false, true), NONE, message(true, true));
+
+    Assertions.assertTrue(flags.isEnabled(CaptureFlags.HTTP_HEADERS_REQUEST));
+    Assertions.assertFalse(flags.isEnabled(CaptureFlags.HTTP_HEADERS_RESPONSE));
+    Assertions.assertFalse(flags.isEnabled(CaptureFlags.HTTP_BODY_REQUEST));
+    Assertions.assertTrue(flags.isEnabled(CaptureFlags.HTTP_BODY_RESPONSE));
+    Assertions.assertFalse(flags.isAnyEnabled(CaptureFlags.RPC_METADATA_REQUEST));
+    Assertions.assertTrue(
+        flags.isEnabled(CaptureFlags.RPC_BODY_REQUEST | CaptureFlags.RPC_BODY_RESPONSE));
+    Assertions.assertFalse(flags.isEnabled(CaptureFlags.HTTP));
+    Assertions.assertTrue(flags.isAnyEnabled(CaptureFlags.HTTP));
+    Assertions.assertTrue(flags.isInstrumentationEnabled("netty", new String[0]));
+  }
+
+  @Test
+  public void nothingCaptured() {
+    CaptureFlags flags = CaptureFlags.of(NONE, NONE, NONE, NONE);
+    Assertions.assertSame(CaptureFlags.NONE, flags);
+    Assertions.assertFalse(flags.isAnyEnabled(CaptureFlags.HTTP | CaptureFlags.RPC));
+    Assertions.assertFalse(flags.isInstrumentationEnabled("netty", new String[0]));
+  }
+
+  @Test
+  public void disabledInstrumentations() {
+    CaptureFlags flags =
+        CaptureFlags.of(CaptureFlags.HTTP)
+            .withDisabledInstrumentations(
+                CaptureFlags.parseInstrumentationNames(" printwriter,, grpc "));
+
+    Assertions.assertTrue(flags.isEnabled(CaptureFlags.HTTP));
+    Assertions.assertTrue(flags.isInstrumentationEnabled("netty", new String[] {"ht"}));
+    Assertions.assertFalse(flags.isInstrumentationEnabled("grpc", new String[] {"ht"}));
+    Assertions.assertFalse(
+        flags.isModuleEnabled("servlet-writer", new String[] {"ht", "printwriter"}));
+    Assertions.assertTrue(
+        CaptureFlags.parseInstrumentationNames(" ").isEmpty(), "blank list disables nothing");
+  }
+
+  private static InstrumentationConfig.Message message(boolean request, boolean response) {
+    return new InstrumentationConfig.Message() {
+      @Override
+      public boolean request() {
+        return request;
+      }
+
+      @Override
+      public boolean response() {
+        return response;
+      }
+    };
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class AsyncBodyCaptureTest {
+
+  @Test
+  public void disabledCapturesInline() {
+    AsyncBodyCapture capture = new AsyncBodyCapture(0, 16);
+    Assertions.assertFalse(capture.isEnabled());
+
+    RecordingSpan span = new RecordingSpan();
+    Thread caller = Thread.currentThread();
+    capture.capture(
+        span,
+        HypertraceSemanticAttributes.HTTP_RESPONSE_BODY,
+        () -> Thread.currentThread() == caller ? "inline" : "worker");
+    Assertions.assertEquals(
+        "inline", span.getAttribute(HypertraceSemanticAttributes.HTTP_RESPONSE_BODY));
+  }
+
+  @Test
+  public void enabledCapturesOnWorker() throws InterruptedException {
+    AsyncBodyCapture capture = new AsyncBodyCapture(1, 16);
+    Assertions.assertTrue(capture.isEnabled());
+
+    RecordingSpan span = new RecordingSpan();
+    Thread caller = Thread.currentThread();
+    capture.capture(
+        span,
+        HypertraceSemanticAttributes.HTTP_RESPONSE_BODY,
+        () -> Thread.currentThread() == caller ? "inline" : "worker");
+    capture.capture(span, HypertraceSemanticAttributes.HTTP_REQUEST_BODY, () -> null);
+    capture.shutdown();
+
+    Assertions.assertEquals(
+        "worker", span.getAttribute(HypertraceSemanticAttributes.HTTP_RESPONSE_BODY));
+    Assertions.assertNull(span.getAttribute(HypertraceSemanticAttributes.HTTP_REQUEST_BODY));
+  }
+
+  @Test
+  public void awaitAddsQueuedBodyBeforeSpanEnds() throws InterruptedException {
+    AsyncBodyCapture capture = new AsyncBodyCapture(1, 16);
+
+    CountDownLatch workerBusy = new CountDownLatch(1);
+    CountDownLatch releaseWorker = new CountDownLatch(1);
+    RecordingSpan busySpan = new RecordingSpan();
+    capture.capture(
+        busySpan,
+        HypertraceSemanticAttributes.HTTP_RESPONSE_BODY,
+        () -> {
+          workerBusy.countDown();
+          releaseWorker.await();
+          return "busy";
+        });
+    workerBusy.await();
+
+    RecordingSpan span = new RecordingSpan();
+    AsyncBodyCapture.Pending pending =
+        capture.capture(span, HypertraceSemanticAttributes.HTTP_RESPONSE_BODY, () -> "queued");
+    pending.await();
+    span.end();
+    Assertions.assertEquals(
+        "queued", span.getAttribute(HypertraceSemanticAttributes.HTTP_RESPONSE_BODY));
+
+    busySpan.end();
+    releaseWorker.countDown();
+    capture.shutdown();
+    // the queued task has been claimed by the awaiting thread, the worker must not add it again
+    Assertions.assertEquals(0, span.lateAttributes());
+  }
+
+  @Test
+  public void awaitDoesNotWaitForWorker() throws InterruptedException {
+    AsyncBodyCapture capture = new AsyncBodyCapture(1, 16);
+
+    CountDownLatch workerBusy = new CountDownLatch(1);
+    CountDownLatch releaseWorker = new CountDownLatch(1);
+    RecordingSpan span = new RecordingSpan();
+    AsyncBodyCapture.Pending pending =
+        capture.capture(
+            span,
+            HypertraceSemanticAttributes.HTTP_RESPONSE_BODY,
+            () -> {
+              workerBusy.countDown();
+              releaseWorker.await();
+              return "slow";
+            });
+    workerBusy.await();
+
+    long start = System.nanoTime();
+    pending.await();
+    Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    span.end();
+
+    releaseWorker.countDown();
+    capture.shutdown();
+    // the worker adds the abandoned body to a child span, never to the ended span
+    Assertions.assertFalse(span.hasAttributes());
+    Assertions.assertEquals(0, span.lateAttributes());
+  }
+
+  @Test
+  public void endedSpanIsNotModified() throws InterruptedException {
+    AsyncBodyCapture capture = new AsyncBodyCapture(1, 16);
+
+    RecordingSpan span = new RecordingSpan();
+    span.end();
+    AsyncBodyCapture.Pending pending =
+        capture.capture(span, HypertraceSemanticAttributes.HTTP_RESPONSE_BODY, () -> "late");
+    pending.await();
+    capture.shutdown();
+
+    Assertions.assertSame(AsyncBodyCapture.Pending.DONE, pending);
+    Assertions.assertFalse(span.hasAttributes());
+    Assertions.assertEquals(0, span.lateAttributes());
+  }
+}
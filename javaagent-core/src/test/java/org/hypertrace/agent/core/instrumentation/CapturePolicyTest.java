@@ -0,0 +1,110 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import java.util.Collections;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CapturePolicyTest {
+
+  private static final String LOW_TRACE_ID = "00000000000000010000000000000001";
+  private static final String HIGH_TRACE_ID = "f0000000000000000000000000000001";
+
+  private static final CaptureRateLimiter UNLIMITED =
+      new CaptureRateLimiter(-1, -1, Collections.emptyMap(), 1.0, Long.MAX_VALUE);
+
+  @Test
+  public void notSampledCapturesNothing() {
+    Span span = span(LOW_TRACE_ID, TraceFlags.getDefault());
+    Assertions.assertFalse(CapturePolicy.isCaptured(span));
+    Assertions.assertEquals(
+        CapturePolicy.Decision.NONE, new CapturePolicy(1.0, UNLIMITED).decide(span));
+  }
+
+  @Test
+  public void sampledCapturesAll() {
+    Span span = span(HIGH_TRACE_ID, TraceFlags.getSampled());
+    Assertions.assertTrue(CapturePolicy.isCaptured(span));
+    Assertions.assertEquals(
+        CapturePolicy.Decision.ALL, new CapturePolicy(1.0, UNLIMITED).decide(span));
+  }
+
+  @Test
+  public void bodySampleRatio() {
+    Span low = span(LOW_TRACE_ID, TraceFlags.getSampled());
+    Span high = span(HIGH_TRACE_ID, TraceFlags.getSampled());
+
+    CapturePolicy half = new CapturePolicy(0.5, UNLIMITED);
+    Assertions.assertEquals(CapturePolicy.Decision.ALL, half.decide(low));
+    Assertions.assertEquals(CapturePolicy.Decision.HEADERS, half.decide(high));
+    Assertions.assertTrue(half.decide(high).captureHeaders());
+    Assertions.assertFalse(half.decide(high).captureBodies());
+
+    CapturePolicy none = new CapturePolicy(0.0, UNLIMITED);
+    Assertions.assertEquals(CapturePolicy.Decision.HEADERS, none.decide(low));
+  }
+
+  @Test
+  public void exhaustedEndpointBudgetSkipsBody() {
+    Span span = span(LOW_TRACE_ID, TraceFlags.getSampled());
+    CaptureRateLimiter limiter =
+        new CaptureRateLimiter(
+            -1, -1, CaptureRateLimiter.parseBudgets("/orders=1"), 1.0, Long.MAX_VALUE);
+    CapturePolicy policy = new CapturePolicy(1.0, limiter);
+    // deciding does not charge the budget, only capturing a body does
+    Assertions.assertEquals(CapturePolicy.Decision.ALL, policy.decide(span));
+    Assertions.assertEquals(CapturePolicy.Decision.ALL, policy.decide(span));
+    Assertions.assertTrue(policy.tryCaptureBody("/orders", -1));
+    Assertions.assertFalse(policy.tryCaptureBody("/orders", -1));
+    Assertions.assertTrue(policy.tryCaptureBody("/users", -1));
+  }
+
+  @Test
+  public void requestPathsShareTheDefaultBudget() {
+    CaptureRateLimiter limiter =
+        new CaptureRateLimiter(
+            2, -1, CaptureRateLimiter.parseBudgets("/health=0"), 1.0, Long.MAX_VALUE);
+    CapturePolicy policy = new CapturePolicy(1.0, limiter);
+
+    // every id of /users/{id} is charged to the shared budget instead of a budget of its own
+    long now = System.nanoTime();
+    int captured = 0;
+    for (int i = 0; i < 10_000; i++) {
+      String endpoint = policy.pathEndpoint("/users/" + i);
+      Assertions.assertNull(endpoint);
+      if (limiter.tryAcquire(endpoint, -1, now)) {
+        captured++;
+      }
+    }
+    Assertions.assertEquals(2, captured);
+    Assertions.assertEquals(0, limiter.endpointCount());
+
+    // a path with a configured budget keeps it
+    Assertions.assertEquals("/health", policy.pathEndpoint("/health"));
+    Assertions.assertFalse(policy.tryCaptureBody(policy.pathEndpoint("/health"), -1));
+  }
+
+  private static Span span(String traceId, TraceFlags traceFlags) {
+    return Span.wrap(
+        SpanContext.create(traceId, "0000000000000001", traceFlags, TraceState.getDefault()));
+  }
+}
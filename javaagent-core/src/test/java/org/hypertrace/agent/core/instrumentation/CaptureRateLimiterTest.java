@@ -0,0 +1,101 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import java.util.Collections;
+import java.util.Map;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CaptureRateLimiterTest {
+
+  @Test
+  public void unlimitedByDefault() {
+    CaptureRateLimiter limiter =
+        new CaptureRateLimiter(-1, -1, Collections.emptyMap(), 1.0, Long.MAX_VALUE);
+    Assertions.assertFalse(limiter.isEnabled());
+    for (int i = 0; i < 100; i++) {
+      Assertions.assertTrue(limiter.tryAcquire("/orders", 1024));
+    }
+  }
+
+  @Test
+  public void capturesPerSecond() {
+    CaptureRateLimiter limiter =
+        new CaptureRateLimiter(2, -1, Collections.emptyMap(), 1.0, Long.MAX_VALUE);
+    Assertions.assertTrue(limiter.tryAcquire("/orders", -1));
+    Assertions.assertTrue(limiter.tryAcquire("/orders", -1));
+    Assertions.assertFalse(limiter.tryAcquire("/orders", -1));
+    // every endpoint has its own budget
+    Assertions.assertTrue(limiter.tryAcquire("/users", -1));
+  }
+
+  @Test
+  public void bytesPerSecond() {
+    CaptureRateLimiter limiter =
+        new CaptureRateLimiter(-1, 100, Collections.emptyMap(), 1.0, Long.MAX_VALUE);
+    // a capture can exceed the remaining bytes, it is paid back by the following captures
+    Assertions.assertTrue(limiter.tryAcquire("/orders", 10_000));
+    Assertions.assertFalse(limiter.tryAcquire("/orders", 1));
+
+    Assertions.assertTrue(limiter.tryAcquire("/users", 10));
+    limiter.recordBytes("/users", 10_000);
+    Assertions.assertFalse(limiter.tryAcquire("/users", 1));
+  }
+
+  @Test
+  public void bytesCappedAtMaxBodySize() {
+    CaptureRateLimiter limiter = new CaptureRateLimiter(-1, 100, Collections.emptyMap(), 1.0, 80);
+    Assertions.assertTrue(limiter.tryAcquire("/orders", 1000));
+    Assertions.assertTrue(limiter.tryAcquire("/orders", 1000));
+    Assertions.assertFalse(limiter.tryAcquire("/orders", 1000));
+  }
+
+  @Test
+  public void endpointBudgets() {
+    Map<String, CaptureRateLimiter.Budget> budgets =
+        CaptureRateLimiter.parseBudgets("/health=0, /poll=1:4096,invalid,/bad=x");
+    Assertions.assertEquals(2, budgets.size());
+    Assertions.assertEquals(1, budgets.get("/poll").capturesPerSecond);
+    Assertions.assertEquals(4096, budgets.get("/poll").bytesPerSecond);
+
+    CaptureRateLimiter limiter = new CaptureRateLimiter(-1, -1, budgets, 1.0, Long.MAX_VALUE);
+    Assertions.assertTrue(limiter.isEnabled());
+    Assertions.assertFalse(limiter.tryAcquire("/health", -1));
+    Assertions.assertTrue(limiter.tryAcquire("/poll", -1));
+    Assertions.assertFalse(limiter.tryAcquire("/poll", -1));
+    Assertions.assertTrue(limiter.tryAcquire("/orders", -1));
+  }
+
+  @Test
+  public void idleEndpointsAreEvicted() {
+    CaptureRateLimiter limiter =
+        new CaptureRateLimiter(1, -1, Collections.emptyMap(), 1.0, Long.MAX_VALUE);
+    long now = System.nanoTime();
+    for (int i = 0; i < CaptureRateLimiter.MAX_ENDPOINTS; i++) {
+      Assertions.assertTrue(limiter.tryAcquire("/orders/" + i, -1, now));
+    }
+    // further endpoints share one bucket while the others are in use
+    Assertions.assertTrue(limiter.tryAcquire("/users/1", -1, now));
+    Assertions.assertFalse(limiter.tryAcquire("/users/2", -1, now));
+    Assertions.assertEquals(CaptureRateLimiter.MAX_ENDPOINTS, limiter.endpointCount());
+
+    long later = now + CaptureRateLimiter.IDLE_NANOS + 1;
+    Assertions.assertTrue(limiter.tryAcquire("/users/2", -1, later));
+    Assertions.assertEquals(1, limiter.endpointCount());
+  }
+}
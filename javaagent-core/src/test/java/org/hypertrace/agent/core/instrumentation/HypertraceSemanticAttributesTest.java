@@ -47,4 +47,26 @@ public class HypertraceSemanticAttributesTest {
         "rpc.response.metadata.md",
         HypertraceSemanticAttributes.rpcResponseMetadata("MD").getKey());
   }
+
+  @Test
+  public void sharedKeyForAllCasings() {
+    Assertions.assertSame(
+        HypertraceSemanticAttributes.httpRequestHeader("X-Request-Id"),
+        HypertraceSemanticAttributes.httpRequestHeader("x-request-id"));
+    Assertions.assertSame(
+        HypertraceSemanticAttributes.httpRequestHeader("X-Request-Id"),
+        HypertraceSemanticAttributes.httpRequestHeader("X-REQUEST-ID"));
+    Assertions.assertNotSame(
+        HypertraceSemanticAttributes.httpRequestHeader("x-request-id"),
+        HypertraceSemanticAttributes.httpResponseHeader("x-request-id"));
+  }
+
+  @Test
+  public void boundedKeyCache() {
+    AttributeKeyCache cache = new AttributeKeyCache("http.request.header.", 2);
+    Assertions.assertSame(cache.get("A"), cache.get("a"));
+    Assertions.assertEquals(2, cache.size());
+    Assertions.assertEquals("http.request.header.b", cache.get("b").getKey());
+    Assertions.assertEquals(2, cache.size());
+  }
 }
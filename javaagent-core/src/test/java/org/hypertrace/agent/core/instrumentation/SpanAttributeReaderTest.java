@@ -0,0 +1,65 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import java.lang.reflect.Proxy;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SpanAttributeReaderTest {
+
+  /** Stands in for the SDK ReadableSpan. */
+  public interface ReadableTestSpan extends Span {
+    <T> T getAttribute(AttributeKey<T> key);
+  }
+
+  @Test
+  public void readsAttributeOfReadableSpan() {
+    Span span =
+        (Span)
+            Proxy.newProxyInstance(
+                SpanAttributeReaderTest.class.getClassLoader(),
+                new Class<?>[] {ReadableTestSpan.class},
+                (proxy, method, args) -> {
+                  if (method.getName().equals("getAttribute")
+                      && HypertraceSemanticAttributes.HTTP_RESPONSE_HEADER_CONTENT_TYPE.equals(
+                          args[0])) {
+                    return "application/json";
+                  }
+                  return null;
+                });
+
+    Assertions.assertEquals(
+        "application/json",
+        SpanAttributeReader.getAttribute(
+            span, HypertraceSemanticAttributes.HTTP_RESPONSE_HEADER_CONTENT_TYPE));
+    Assertions.assertNull(
+        SpanAttributeReader.getAttribute(
+            span, HypertraceSemanticAttributes.HTTP_REQUEST_HEADER_CONTENT_TYPE));
+  }
+
+  @Test
+  public void spanWithoutAttributes() {
+    Span span = Span.wrap(SpanContext.getInvalid());
+    Assertions.assertNull(
+        SpanAttributeReader.getAttribute(
+            span, HypertraceSemanticAttributes.HTTP_RESPONSE_HEADER_CONTENT_TYPE));
+  }
+}
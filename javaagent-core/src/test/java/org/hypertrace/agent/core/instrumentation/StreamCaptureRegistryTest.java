@@ -0,0 +1,72 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class StreamCaptureRegistryTest {
+
+  @Test
+  public void onlyRegisteredClassesWhileActive() {
+    ByteArrayInputStream captured = new ByteArrayInputStream(new byte[0]);
+    ByteArrayInputStream sameClass = new ByteArrayInputStream(new byte[0]);
+    BufferedOutputStream otherClass = new BufferedOutputStream(new ByteArrayOutputStream());
+    Assertions.assertFalse(StreamCaptureRegistry.mayCapture(captured));
+
+    StreamCaptureRegistry.register(captured);
+    Assertions.assertTrue(StreamCaptureRegistry.mayCapture(captured));
+    Assertions.assertTrue(StreamCaptureRegistry.mayCapture(sameClass));
+    Assertions.assertFalse(StreamCaptureRegistry.mayCapture(otherClass));
+
+    StreamCaptureRegistry.unregister(captured);
+    Assertions.assertFalse(StreamCaptureRegistry.mayCapture(captured));
+  }
+
+  @Test
+  public void registeringTwiceCountsOnce() {
+    ByteArrayInputStream captured = new ByteArrayInputStream(new byte[0]);
+    int active = StreamCaptureRegistry.activeCaptures();
+
+    StreamCaptureRegistry.register(captured);
+    StreamCaptureRegistry.register(captured);
+    Assertions.assertEquals(active + 1, StreamCaptureRegistry.activeCaptures());
+
+    StreamCaptureRegistry.unregister(captured);
+    StreamCaptureRegistry.unregister(captured);
+    Assertions.assertEquals(active, StreamCaptureRegistry.activeCaptures());
+  }
+
+  @Test
+  public void abandonedStreamIsNotActiveOnceCollected() throws InterruptedException {
+    int active = StreamCaptureRegistry.activeCaptures();
+    // registered and never unregistered, e.g. closed before the end of the body
+    StreamCaptureRegistry.register(new ByteArrayInputStream(new byte[0]));
+    Assertions.assertEquals(active + 1, StreamCaptureRegistry.activeCaptures());
+
+    for (int i = 0; i < 100 && StreamCaptureRegistry.activeCaptures() > active; i++) {
+      System.gc();
+      Thread.sleep(10);
+      StreamCaptureRegistry.expungeCollected();
+    }
+
+    Assertions.assertEquals(active, StreamCaptureRegistry.activeCaptures());
+  }
+}
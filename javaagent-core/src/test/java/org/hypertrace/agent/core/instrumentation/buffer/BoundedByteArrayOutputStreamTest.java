@@ -17,6 +17,7 @@
 package org.hypertrace.agent.core.instrumentation.buffer;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import org.junit.jupiter.api.Assertions;
@@ -68,4 +69,20 @@ public class BoundedByteArrayOutputStreamTest {
     Assertions.assertEquals(5, boundedBuffer.size());
     Assertions.assertEquals("01234", boundedBuffer.toString());
   }
+
+  @Test
+  public void writeByteBuffer() {
+    BoundedByteArrayOutputStream boundedBuffer =
+        new BoundedByteArrayOutputStream(15, DEFAULT_CHARSET);
+
+    ByteBuffer heap = ByteBuffer.wrap(("xx" + ONE_TO_TEN).getBytes(), 2, 10).slice();
+    boundedBuffer.write(heap);
+    Assertions.assertEquals(0, heap.position());
+    ByteBuffer direct = ByteBuffer.allocateDirect(10);
+    direct.put(ONE_TO_TEN.getBytes());
+    direct.flip();
+    boundedBuffer.write(direct.asReadOnlyBuffer());
+    Assertions.assertEquals(15, boundedBuffer.size());
+    Assertions.assertEquals(ONE_TO_TEN + "01234", boundedBuffer.toString());
+  }
 }
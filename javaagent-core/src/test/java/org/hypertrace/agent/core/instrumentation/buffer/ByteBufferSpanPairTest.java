@@ -0,0 +1,154 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.buffer;
+
+import io.opentelemetry.api.trace.Span;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicReference;
+import org.hypertrace.agent.core.filter.FilterResult;
+import org.hypertrace.agent.core.filter.RequestBodyEvaluation;
+import org.hypertrace.agent.core.instrumentation.CapturePolicy;
+import org.hypertrace.agent.core.instrumentation.HypertraceEvaluationException;
+import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
+import org.hypertrace.agent.core.instrumentation.RecordingSpan;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ByteBufferSpanPairTest {
+
+  @Test
+  public void blocksOnChunk() {
+    RecordingEvaluation evaluation = new RecordingEvaluation("evil");
+    ByteBufferSpanPair pair = newPair(evaluation);
+
+    byte[] chunk = "harmless ".getBytes(StandardCharsets.UTF_8);
+    pair.writeToBuffer(chunk, 0, chunk.length);
+    byte[] evil = "evil payload".getBytes(StandardCharsets.UTF_8);
+    HypertraceEvaluationException exception =
+        Assertions.assertThrows(
+            HypertraceEvaluationException.class, () -> pair.writeToBuffer(evil, 0, evil.length));
+    Assertions.assertEquals(403, exception.getFilterResult().getBlockingStatusCode());
+    Assertions.assertEquals("harmless evil payload", evaluation.body.toString());
+    Assertions.assertFalse(evaluation.ended);
+  }
+
+  @Test
+  public void singleBytesEvaluatedAtEnd() {
+    RecordingEvaluation evaluation = new RecordingEvaluation("evil");
+    ByteBufferSpanPair pair = newPair(evaluation);
+
+    for (byte b : "good".getBytes(StandardCharsets.UTF_8)) {
+      pair.writeToBuffer(b);
+    }
+    Assertions.assertEquals("", evaluation.body.toString());
+    pair.captureBody(HypertraceSemanticAttributes.HTTP_REQUEST_BODY);
+    Assertions.assertEquals("good", evaluation.body.toString());
+    Assertions.assertTrue(evaluation.ended);
+  }
+
+  @Test
+  public void bodyIsEvaluatedButNotCapturedWithoutBodyDecision() {
+    for (CapturePolicy.Decision decision :
+        EnumSet.of(CapturePolicy.Decision.NONE, CapturePolicy.Decision.HEADERS)) {
+      RecordingSpan span = new RecordingSpan();
+      AtomicReference<String> evaluated = new AtomicReference<>();
+      ByteBufferSpanPair pair =
+          new ByteBufferSpanPair(
+              span,
+              new BoundedByteArrayOutputStream(1024, StandardCharsets.UTF_8),
+              (s, body, headers) -> {
+                evaluated.set(body);
+                return FilterResult.ALLOW;
+              },
+              null,
+              null,
+              decision);
+
+      byte[] body = "body".getBytes(StandardCharsets.UTF_8);
+      pair.writeToBuffer(body, 0, body.length);
+      pair.captureBody(HypertraceSemanticAttributes.HTTP_REQUEST_BODY);
+
+      Assertions.assertEquals("body", evaluated.get());
+      Assertions.assertNull(span.getAttribute(HypertraceSemanticAttributes.HTTP_REQUEST_BODY));
+    }
+  }
+
+  @Test
+  public void bodyIsCapturedWithBodyDecision() {
+    RecordingSpan span = new RecordingSpan();
+    ByteBufferSpanPair pair =
+        new ByteBufferSpanPair(
+            span,
+            new BoundedByteArrayOutputStream(1024, StandardCharsets.UTF_8),
+            (s, body, headers) -> FilterResult.ALLOW,
+            null,
+            null,
+            CapturePolicy.Decision.ALL);
+
+    byte[] body = "body".getBytes(StandardCharsets.UTF_8);
+    pair.writeToBuffer(body, 0, body.length);
+    pair.captureBody(HypertraceSemanticAttributes.HTTP_REQUEST_BODY);
+
+    Assertions.assertEquals(
+        "body", span.getAttribute(HypertraceSemanticAttributes.HTTP_REQUEST_BODY));
+  }
+
+  private static ByteBufferSpanPair newPair(RequestBodyEvaluation evaluation) {
+    return new ByteBufferSpanPair(
+        Span.getInvalid(),
+        new BoundedByteArrayOutputStream(1024, StandardCharsets.UTF_8),
+        (span, body, headers) -> {
+          throw new AssertionError("body is evaluated incrementally");
+        },
+        null,
+        evaluation);
+  }
+
+  static class RecordingEvaluation implements RequestBodyEvaluation {
+    final StringBuilder body = new StringBuilder();
+    final String blocked;
+    boolean ended;
+
+    RecordingEvaluation(String blocked) {
+      this.blocked = blocked;
+    }
+
+    @Override
+    public FilterResult evaluateChunk(ByteBuffer chunk) {
+      Assertions.assertTrue(chunk.isReadOnly());
+      return evaluateChunk(StandardCharsets.UTF_8.decode(chunk));
+    }
+
+    @Override
+    public FilterResult evaluateChunk(CharBuffer chunk) {
+      body.append(chunk);
+      if (body.indexOf(blocked) >= 0) {
+        return new FilterResult(true, 403, "blocked");
+      }
+      return FilterResult.ALLOW;
+    }
+
+    @Override
+    public FilterResult evaluateEnd() {
+      ended = true;
+      return FilterResult.ALLOW;
+    }
+  }
+}
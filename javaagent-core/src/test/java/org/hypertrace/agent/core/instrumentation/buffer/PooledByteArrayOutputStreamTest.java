@@ -0,0 +1,119 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.buffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PooledByteArrayOutputStreamTest {
+
+  private static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
+  private static final String ONE_TO_TEN = "0123456789";
+
+  @Test
+  public void writeAcrossSegments() throws IOException {
+    ByteSegmentPool pool = new ByteSegmentPool(4, 1, 4);
+    PooledByteArrayOutputStream buffer = new PooledByteArrayOutputStream(pool, 15, DEFAULT_CHARSET);
+
+    buffer.write(ONE_TO_TEN.getBytes());
+    Assertions.assertEquals(10, buffer.size());
+    buffer.write("0123456".getBytes());
+    Assertions.assertEquals(15, buffer.size());
+    Assertions.assertEquals(ONE_TO_TEN + "01234", buffer.toStringWithSuppliedCharset());
+    Assertions.assertArrayEquals((ONE_TO_TEN + "01234").getBytes(), buffer.toByteArray());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    buffer.writeTo(out);
+    Assertions.assertEquals(ONE_TO_TEN + "01234", out.toString());
+  }
+
+  @Test
+  public void writeByteSmallerSizeAsBuffer() throws IOException {
+    ByteSegmentPool pool = new ByteSegmentPool(2, 1, 4);
+    PooledByteArrayOutputStream buffer = new PooledByteArrayOutputStream(pool, 5, DEFAULT_CHARSET);
+
+    for (char c : "012345".toCharArray()) {
+      buffer.write(c);
+    }
+    Assertions.assertEquals(5, buffer.size());
+    buffer.write("01234".getBytes());
+    Assertions.assertEquals(5, buffer.size());
+    Assertions.assertEquals("01234", buffer.toStringWithSuppliedCharset());
+  }
+
+  @Test
+  public void multiByteCharacterSplitAcrossSegments() {
+    ByteSegmentPool pool = new ByteSegmentPool(3, 1, 4);
+    PooledByteArrayOutputStream buffer = new PooledByteArrayOutputStream(pool, 64, DEFAULT_CHARSET);
+
+    byte[] bytes = "aa\u00e9\u20ac".getBytes(DEFAULT_CHARSET);
+    buffer.write(bytes, 0, bytes.length);
+    Assertions.assertEquals("aa\u00e9\u20ac", buffer.toStringWithSuppliedCharset());
+  }
+
+  @Test
+  public void writeByteBufferAcrossSegments() {
+    ByteSegmentPool pool = new ByteSegmentPool(4, 1, 4);
+    PooledByteArrayOutputStream buffer = new PooledByteArrayOutputStream(pool, 15, DEFAULT_CHARSET);
+
+    ByteBuffer direct = ByteBuffer.allocateDirect(16);
+    direct.put(ONE_TO_TEN.getBytes());
+    direct.flip();
+    buffer.write(direct.asReadOnlyBuffer());
+    Assertions.assertEquals(0, direct.position());
+    direct.position(3);
+    buffer.write(direct);
+    Assertions.assertEquals(3, direct.position());
+    Assertions.assertEquals(ONE_TO_TEN + "34567", buffer.toStringWithSuppliedCharset());
+  }
+
+  @Test
+  public void releaseReturnsSegmentsToPool() {
+    ByteSegmentPool pool = new ByteSegmentPool(4, 1, 4);
+    PooledByteArrayOutputStream buffer = new PooledByteArrayOutputStream(pool, 64, DEFAULT_CHARSET);
+
+    buffer.write(ONE_TO_TEN.getBytes(), 0, 4);
+    buffer.release();
+    Assertions.assertEquals(0, buffer.size());
+    Assertions.assertEquals("", buffer.toStringWithSuppliedCharset());
+
+    // the segment is handed out again, segments are not cleared
+    Assertions.assertEquals("0123", new String(pool.acquire(), DEFAULT_CHARSET));
+
+    buffer.write(ONE_TO_TEN.getBytes(), 4, 6);
+    Assertions.assertEquals("456789", buffer.toStringWithSuppliedCharset());
+  }
+
+  @Test
+  public void poolIsBounded() {
+    ByteSegmentPool pool = new ByteSegmentPool(4, 1, 1);
+    byte[] first = pool.acquire();
+    byte[] second = pool.acquire();
+    pool.release(first);
+    pool.release(second);
+    Assertions.assertSame(first, pool.acquire());
+    Assertions.assertNotSame(second, pool.acquire());
+    // segments of a foreign size are not pooled
+    pool.release(new byte[3]);
+    Assertions.assertEquals(4, pool.acquire().length);
+  }
+}
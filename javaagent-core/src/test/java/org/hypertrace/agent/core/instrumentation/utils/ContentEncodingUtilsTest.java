@@ -0,0 +1,106 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ContentEncodingUtilsTest {
+
+  private static final String BODY = "{\"greeting\": \"hello \u00e9\u20ac\"}";
+
+  @Test
+  public void isCompressed() {
+    Assertions.assertTrue(ContentEncodingUtils.isCompressed("gzip"));
+    Assertions.assertTrue(ContentEncodingUtils.isCompressed("GZIP"));
+    Assertions.assertTrue(ContentEncodingUtils.isCompressed("deflate"));
+    Assertions.assertFalse(ContentEncodingUtils.isCompressed("br"));
+    Assertions.assertFalse(ContentEncodingUtils.isCompressed(null));
+  }
+
+  @Test
+  public void gzip() throws IOException {
+    Assertions.assertEquals(BODY, decode(gzip(BODY), "gzip", 1024));
+  }
+
+  @Test
+  public void gzipMultipleMembers() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(gzip("first "));
+    out.write(gzip("second"));
+    Assertions.assertEquals("first second", decode(out.toByteArray(), "gzip", 1024));
+  }
+
+  @Test
+  public void deflate() throws IOException {
+    Assertions.assertEquals(BODY, decode(deflate(BODY, false), "deflate", 1024));
+    Assertions.assertEquals(BODY, decode(deflate(BODY, true), "deflate", 1024));
+  }
+
+  @Test
+  public void stopsAtMaxSize() throws IOException {
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < 100_000; i++) {
+      body.append(i % 10);
+    }
+    Assertions.assertEquals("0123456789012", decode(gzip(body.toString()), "gzip", 13));
+  }
+
+  @Test
+  public void dropsCharacterCutByMaxSize() throws IOException {
+    // the euro sign is encoded with 3 bytes
+    Assertions.assertEquals("ab", decode(gzip("ab\u20ac"), "gzip", 4));
+  }
+
+  @Test
+  public void notGzip() {
+    Assertions.assertThrows(
+        ZipException.class, () -> decode(BODY.getBytes(StandardCharsets.UTF_8), "gzip", 1024));
+  }
+
+  private static String decode(byte[] compressed, String encoding, int maxBytes)
+      throws IOException {
+    return ContentEncodingUtils.decode(
+        new ByteArrayInputStream(compressed), encoding, StandardCharsets.UTF_8, maxBytes);
+  }
+
+  private static byte[] gzip(String body) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(body.getBytes(StandardCharsets.UTF_8));
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] deflate(String body, boolean raw) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+    try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater)) {
+      deflate.write(body.getBytes(StandardCharsets.UTF_8));
+    }
+    deflater.end();
+    return out.toByteArray();
+  }
+}
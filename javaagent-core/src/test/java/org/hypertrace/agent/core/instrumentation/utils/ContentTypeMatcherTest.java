@@ -0,0 +1,52 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ContentTypeMatcherTest {
+
+  @Test
+  public void matchesAnywhereIgnoringCase() {
+    ContentTypeMatcher matcher = new ContentTypeMatcher(ContentTypeUtils.getDefaultContentTypes());
+    Assertions.assertTrue(matcher.matches("application/JSON; charset=utf-8"));
+    Assertions.assertTrue(matcher.matches("application/vnd.api+json"));
+    Assertions.assertTrue(matcher.matches("text/XML"));
+    Assertions.assertTrue(matcher.matches("application/x-www-form-urlencoded"));
+    Assertions.assertFalse(matcher.matches("text/plain"));
+    Assertions.assertFalse(matcher.matches("application/js\u00f6n"));
+    Assertions.assertFalse(matcher.matches(""));
+    Assertions.assertFalse(matcher.matches(null));
+  }
+
+  @Test
+  public void overlappingContentTypes() {
+    ContentTypeMatcher matcher = new ContentTypeMatcher(new String[] {"abcd", "bc", "Xyz"});
+    Assertions.assertTrue(matcher.matches("abc"));
+    Assertions.assertTrue(matcher.matches("aabcd"));
+    Assertions.assertTrue(matcher.matches("xxYZ"));
+    Assertions.assertFalse(matcher.matches("acbd"));
+    Assertions.assertFalse(matcher.matches("xy"));
+  }
+
+  @Test
+  public void emptyContentType() {
+    Assertions.assertFalse(new ContentTypeMatcher(new String[0]).matches("application/json"));
+    Assertions.assertTrue(new ContentTypeMatcher(new String[] {""}).matches("text/plain"));
+  }
+}
@@ -16,6 +16,7 @@
 
 package org.hypertrace.agent.core.instrumentation.utils;
 
+import java.nio.charset.StandardCharsets;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -39,6 +40,20 @@ class ContentTypeUtilsTest {
     }
   }
 
+  @Test
+  public void contentTypeInfo() {
+    ContentTypeInfo info = ContentTypeUtils.getInfo("application/json; charset=UTF-16");
+    Assertions.assertTrue(info.shouldCapture());
+    Assertions.assertEquals("utf-16", info.getCharsetName());
+    Assertions.assertEquals(StandardCharsets.UTF_16, info.getCharset());
+    Assertions.assertSame(info, ContentTypeUtils.getInfo("application/json; charset=UTF-16"));
+
+    info = ContentTypeUtils.getInfo(null);
+    Assertions.assertFalse(info.shouldCapture());
+    Assertions.assertNull(info.getCharsetName());
+    Assertions.assertEquals(ContentTypeCharsetUtils.getDefaultCharset(), info.getCharset());
+  }
+
   @Test
   public void utf8Charset() {
     Assertions.assertEquals(
@@ -0,0 +1,124 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Span that keeps its attributes in memory, for tests that run without the agent. Attributes set
+ * while the span is not recording are kept as well and counted as late attributes.
+ */
+public class RecordingSpan implements Span {
+  private final Map<AttributeKey<?>, Object> attributes = new ConcurrentHashMap<>();
+  private final AtomicInteger lateAttributes = new AtomicInteger();
+  private final SpanContext spanContext;
+  private volatile boolean recording;
+
+  /** Creates a sampled span that records until it ends. */
+  public RecordingSpan() {
+    this(true);
+  }
+
+  /** Creates a span that is neither sampled nor recording if {@code sampled} is false. */
+  public RecordingSpan(boolean sampled) {
+    this.recording = sampled;
+    this.spanContext =
+        SpanContext.create(
+            "0af7651916cd43dd8448eb211c80319c",
+            "b7ad6b7169203331",
+            sampled ? TraceFlags.getSampled() : TraceFlags.getDefault(),
+            TraceState.getDefault());
+  }
+
+  @SuppressWarnings("unchecked")
+  public <T> T getAttribute(AttributeKey<T> key) {
+    return (T) attributes.get(key);
+  }
+
+  public boolean hasAttributes() {
+    return !attributes.isEmpty();
+  }
+
+  /** Returns the number of attributes set while the span was not recording. */
+  public int lateAttributes() {
+    return lateAttributes.get();
+  }
+
+  @Override
+  public <T> Span setAttribute(AttributeKey<T> key, T value) {
+    if (!recording) {
+      lateAttributes.incrementAndGet();
+    }
+    attributes.put(key, value);
+    return this;
+  }
+
+  @Override
+  public Span addEvent(String name, Attributes attributes) {
+    return this;
+  }
+
+  @Override
+  public Span addEvent(String name, Attributes attributes, long timestamp, TimeUnit unit) {
+    return this;
+  }
+
+  @Override
+  public Span setStatus(StatusCode statusCode, String description) {
+    return this;
+  }
+
+  @Override
+  public Span recordException(Throwable exception, Attributes additionalAttributes) {
+    return this;
+  }
+
+  @Override
+  public Span updateName(String name) {
+    return this;
+  }
+
+  @Override
+  public void end() {
+    recording = false;
+  }
+
+  @Override
+  public void end(long timestamp, TimeUnit unit) {
+    recording = false;
+  }
+
+  @Override
+  public SpanContext getSpanContext() {
+    return spanContext;
+  }
+
+  @Override
+  public boolean isRecording() {
+    return recording;
+  }
+}
@@ -24,28 +24,39 @@ import org.hypertrace.agent.core.config.DataCaptureConfig;
 
 /**
  * An implementation of the DataCaptureConfig interface, which can provide the names of the content
- * types that can be captured.
+ * types that can be captured. The content types follow the config reloaded by {@link
+ * HypertraceConfigWatcher}.
  */
 @AutoService(DataCaptureConfig.class)
 public class DataCaptureConfigImpl implements DataCaptureConfig {
 
-  private final Config.AgentConfig agentConfig = HypertraceConfig.get();
+  /** Content types of a published config, the snapshot is replaced when the config changes. */
+  private static final class ContentTypes {
+    private final Config.AgentConfig agentConfig;
+    private final String[] allowedContentTypes;
 
-  private final Config.DataCapture dataCaptureConfig =
-      (agentConfig != null) ? agentConfig.getDataCapture() : null;
+    private ContentTypes(Config.AgentConfig agentConfig, String[] allowedContentTypes) {
+      this.agentConfig = agentConfig;
+      this.allowedContentTypes = allowedContentTypes;
+    }
+  }
 
-  private String[] allAllowedContentTypes;
+  private volatile ContentTypes contentTypes;
 
   public DataCaptureConfigImpl() {
     super();
   }
 
   public String[] getAllowedContentTypes() {
-    if (allAllowedContentTypes != null) {
-      return allAllowedContentTypes;
+    Config.AgentConfig currentConfig = HypertraceConfig.get();
+    ContentTypes current = contentTypes;
+    if (current == null || current.agentConfig != currentConfig) {
+      // racing threads compute equal snapshots, the last one is kept
+      current = new ContentTypes(currentConfig, loadContentTypes(currentConfig));
+      contentTypes = current;
     }
-
-    return loadContentTypes();
+    // a copy, the snapshot is shared by all callers
+    return current.allowedContentTypes.clone();
   }
 
   /**
@@ -53,23 +64,17 @@ public class DataCaptureConfigImpl implements DataCaptureConfig {
    *
    * @return an array of the content types
    */
-  private synchronized String[] loadContentTypes() {
-    if (allAllowedContentTypes == null) {
-      if (dataCaptureConfig == null) {
-        allAllowedContentTypes = new String[0];
-      } else {
-        List<StringValue> listOfTypes = dataCaptureConfig.getAllowedContentTypesList();
-        String[] allAllowedContentTypes = new String[listOfTypes.size()];
-        int idx = 0;
-        for (StringValue nextStringValue : listOfTypes) {
-          allAllowedContentTypes[idx] = nextStringValue.getValue();
-          idx++;
-        }
-
-        this.allAllowedContentTypes = allAllowedContentTypes;
-      }
+  private static String[] loadContentTypes(Config.AgentConfig agentConfig) {
+    if (agentConfig == null) {
+      return new String[0];
+    }
+    List<StringValue> listOfTypes = agentConfig.getDataCapture().getAllowedContentTypesList();
+    String[] allAllowedContentTypes = new String[listOfTypes.size()];
+    int idx = 0;
+    for (StringValue nextStringValue : listOfTypes) {
+      allAllowedContentTypes[idx] = nextStringValue.getValue();
+      idx++;
     }
-
     return allAllowedContentTypes;
   }
 }
@@ -27,6 +27,7 @@ import org.hypertrace.agent.config.v1.Config.MetricReporterType;
 import org.hypertrace.agent.config.v1.Config.PropagationFormat;
 import org.hypertrace.agent.config.v1.Config.Reporting;
 import org.hypertrace.agent.config.v1.Config.TraceReporterType;
+import org.hypertrace.agent.core.config.EnvironmentProperties;
 
 public class EnvironmentConfig {
 
@@ -55,6 +56,12 @@ public class EnvironmentConfig {
   public static final String CAPTURE_HTTP_BODY_PREFIX = CAPTURE_PREFIX + "http.body.";
   public static final String CAPTURE_RPC_METADATA_PREFIX = CAPTURE_PREFIX + "rpc.metadata.";
   public static final String CAPTURE_RPC_BODY_PREFIX = CAPTURE_PREFIX + "rpc.body.";
+  /**
+   * Comma separated names of instrumentations that do not capture data. Server instrumentations
+   * stay installed and still evaluate the filter.
+   */
+  public static final String CAPTURE_DISABLED_INSTRUMENTATIONS =
+      CAPTURE_PREFIX + "disabled.instrumentations";
 
   private static final String JAVAAGENT_PREFIX = HT_PREFIX + "javaagent.";
   public static final String JAVAAGENT_FILTER_JAR_PATHS = JAVAAGENT_PREFIX + "filter.jar.paths";
@@ -184,6 +191,6 @@ public class EnvironmentConfig {
   }
 
   public static String getProperty(String name) {
-    return System.getProperty(name, System.getenv(name.replaceAll("\\.", "_").toUpperCase()));
+    return EnvironmentProperties.getProperty(name);
   }
 }
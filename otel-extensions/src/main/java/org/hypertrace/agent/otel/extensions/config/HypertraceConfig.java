@@ -100,6 +100,42 @@ public class HypertraceConfig {
     return agentConfig;
   }
 
+  /**
+   * Loads the config file again and publishes it if it has changed. The current config is kept if
+   * the file cannot be loaded, e.g. while it is being written.
+   *
+   * @return the new config or null if it has not been published
+   */
+  static AgentConfig reload(String filename) {
+    File configFile = new File(filename);
+    if (!isReadable(configFile) || configFile.length() == 0) {
+      // unlike at startup the defaults are not applied, they would replace the current config
+      log.warn("Config file {} is missing or empty, keeping the current config", filename);
+      return null;
+    }
+    AgentConfig newConfig;
+    try {
+      newConfig = parse(configFile);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Could not reload config from {}, keeping the current config", filename, e);
+      return null;
+    }
+    synchronized (HypertraceConfig.class) {
+      if (newConfig.equals(agentConfig)) {
+        return null;
+      }
+      agentConfig = newConfig;
+    }
+    try {
+      log.info(
+          "Config reloaded: {}",
+          JsonFormat.printer().omittingInsignificantWhitespace().print(newConfig));
+    } catch (IOException e) {
+      log.info("Config reloaded from {}", filename);
+    }
+    return newConfig;
+  }
+
   /** Reset the config, use only in tests. */
   @VisibleForTesting
   public static void reset() {
@@ -120,16 +156,23 @@ public class HypertraceConfig {
   @VisibleForTesting
   static AgentConfig load(String filename) throws IOException {
     File configFile = new File(filename);
-    if (!configFile.exists() || configFile.isDirectory() || !configFile.canRead()) {
+    if (!isReadable(configFile)) {
       log.error("Config file {} does not exist", filename);
       AgentConfig.Builder configBuilder = AgentConfig.newBuilder();
       return EnvironmentConfig.applyPropertiesAndEnvVars(applyDefaults(configBuilder)).build();
     }
+    return parse(configFile);
+  }
+
+  private static boolean isReadable(File configFile) {
+    return configFile.exists() && !configFile.isDirectory() && configFile.canRead();
+  }
 
+  private static AgentConfig parse(File configFile) throws IOException {
     AgentConfig.Builder configBuilder = AgentConfig.newBuilder();
     Parser jsonParser = JsonFormat.parser().ignoringUnknownFields();
     try (InputStream fileInputStream = new FileInputStream(configFile)) {
-      if (filename.toLowerCase().endsWith("json")) {
+      if (configFile.getName().toLowerCase().endsWith("json")) {
         Reader targetReader = new InputStreamReader(fileInputStream);
         jsonParser.merge(targetReader, configBuilder);
       } else {
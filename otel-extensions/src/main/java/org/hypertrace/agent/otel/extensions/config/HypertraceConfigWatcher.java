@@ -0,0 +1,115 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.otel.extensions.config;
+
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.hypertrace.agent.config.v1.Config.AgentConfig;
+import org.hypertrace.agent.core.config.EnvironmentProperties;
+import org.hypertrace.agent.core.instrumentation.utils.ContentTypeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Polls the config file {@code ht.config.file} and publishes the config again when the file has
+ * been modified. Instrumentations read the published config through {@link
+ * HypertraceConfig#get()}, a single volatile read, so e.g. body capture can be turned off without
+ * a restart.
+ *
+ * <p>The file is polled every {@code ht.config.reload.interval.seconds} (default 30), 0 disables
+ * reloading. Polling is used instead of a WatchService because config maps mounted in a container
+ * are replaced through a symlink swap of their directory. Only the data capture settings take
+ * effect on reload, except for the max body size. Reporting, propagation and the service name are
+ * applied once at startup. So are the data capture properties that are not part of the config
+ * file, e.g. {@code ht.data.capture.body.sample.ratio} and the {@code ht.data.capture.limit.*}
+ * budgets.
+ */
+public final class HypertraceConfigWatcher implements Runnable {
+
+  private static final Logger log = LoggerFactory.getLogger(HypertraceConfigWatcher.class);
+
+  static final String RELOAD_INTERVAL_PROPERTY = "ht.config.reload.interval.seconds";
+  private static final int DEFAULT_RELOAD_INTERVAL_SECONDS = 30;
+
+  private final File configFile;
+  private long lastModified;
+  private long length;
+
+  HypertraceConfigWatcher(File configFile) {
+    this.configFile = configFile;
+    this.lastModified = configFile.lastModified();
+    this.length = configFile.length();
+  }
+
+  /** Starts polling the config file, if one is configured. */
+  public static void start() {
+    String configFile = EnvironmentConfig.getProperty(EnvironmentConfig.CONFIG_FILE_PROPERTY);
+    int interval =
+        EnvironmentProperties.getInt(RELOAD_INTERVAL_PROPERTY, DEFAULT_RELOAD_INTERVAL_SECONDS);
+    if (configFile == null || interval <= 0) {
+      return;
+    }
+    ScheduledExecutorService executor =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "hypertrace-config-watcher");
+              thread.setDaemon(true);
+              return thread;
+            });
+    executor.scheduleWithFixedDelay(
+        new HypertraceConfigWatcher(new File(configFile)), interval, interval, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public void run() {
+    try {
+      checkForUpdate();
+    } catch (RuntimeException e) {
+      // keep polling, a failed run must not cancel the schedule
+      log.warn("Could not check config file {} for updates", configFile, e);
+    }
+  }
+
+  /**
+   * Reloads the config if the file has been modified since the last check.
+   *
+   * @return true if a changed config has been published
+   */
+  boolean checkForUpdate() {
+    if (!configFile.isFile()) {
+      // e.g. while the file is being replaced, the current config is kept
+      return false;
+    }
+    long modified = configFile.lastModified();
+    long size = configFile.length();
+    if (modified == lastModified && size == length) {
+      return false;
+    }
+    lastModified = modified;
+    length = size;
+
+    AgentConfig agentConfig = HypertraceConfig.reload(configFile.getPath());
+    if (agentConfig == null) {
+      return false;
+    }
+    // the content type matcher caches the allowed content types of the previous config
+    ContentTypeUtils.reset();
+    return true;
+  }
+}
@@ -17,76 +17,125 @@
 package org.hypertrace.agent.otel.extensions.config;
 
 import com.google.auto.service.AutoService;
+import java.util.Set;
 import org.hypertrace.agent.config.v1.Config;
 import org.hypertrace.agent.config.v1.Config.AgentConfig;
 import org.hypertrace.agent.config.v1.Config.DataCapture;
 import org.hypertrace.agent.config.v1.Config.Message;
+import org.hypertrace.agent.core.config.CaptureFlags;
 import org.hypertrace.agent.core.config.InstrumentationConfig;
 
+/**
+ * {@link InstrumentationConfig} backed by {@link HypertraceConfig}. The data capture settings
+ * follow the config reloaded by {@link HypertraceConfigWatcher}, the max body size is read once at
+ * startup because the capture buffers are sized by it. So are the instrumentations with disabled
+ * data capture, {@link EnvironmentConfig#CAPTURE_DISABLED_INSTRUMENTATIONS}, because modules are
+ * only installed at startup.
+ */
 @AutoService(InstrumentationConfig.class)
 public class InstrumentationConfigImpl implements InstrumentationConfig {
 
-  private final AgentConfig agentConfig = HypertraceConfig.get();
+  private final int maxBodySizeBytes;
+  private final Set<String> disabledInstrumentations;
 
-  private final Message httpHeaders;
-  private final Message httpBody;
-  private final Message rpcMetadata;
-  private final Message rpcBody;
+  private volatile Snapshot snapshot;
 
   public InstrumentationConfigImpl() {
-    DataCapture dataCapture = agentConfig.getDataCapture();
-    this.httpHeaders = new MessageImpl(dataCapture.getHttpHeaders());
-    this.httpBody = new MessageImpl(dataCapture.getHttpBody());
-    this.rpcMetadata = new MessageImpl(dataCapture.getRpcMetadata());
-    this.rpcBody = new MessageImpl(dataCapture.getRpcBody());
+    AgentConfig agentConfig = HypertraceConfig.get();
+    this.maxBodySizeBytes = agentConfig.getDataCapture().getBodyMaxSizeBytes().getValue();
+    this.disabledInstrumentations =
+        CaptureFlags.parseInstrumentationNames(
+            EnvironmentConfig.getProperty(EnvironmentConfig.CAPTURE_DISABLED_INSTRUMENTATIONS));
+    this.snapshot = new Snapshot(agentConfig, disabledInstrumentations);
+  }
+
+  /** Returns the settings of the current config, rebuilt only when it has been reloaded. */
+  private Snapshot snapshot() {
+    Snapshot snapshot = this.snapshot;
+    AgentConfig agentConfig = HypertraceConfig.get();
+    if (snapshot.agentConfig != agentConfig) {
+      snapshot = new Snapshot(agentConfig, disabledInstrumentations);
+      this.snapshot = snapshot;
+    }
+    return snapshot;
   }
 
   @Override
   public int maxBodySizeBytes() {
-    return agentConfig.getDataCapture().getBodyMaxSizeBytes().getValue();
+    return maxBodySizeBytes;
   }
 
   @Override
   public String getServiceName() {
-    return agentConfig.getServiceName().getValue();
+    return snapshot().agentConfig.getServiceName().getValue();
   }
 
   @Override
   public Message httpHeaders() {
-    return this.httpHeaders;
+    return snapshot().httpHeaders;
   }
 
   @Override
   public Message httpBody() {
-    return this.httpBody;
+    return snapshot().httpBody;
   }
 
   @Override
   public Message rpcMetadata() {
-    return this.rpcMetadata;
+    return snapshot().rpcMetadata;
   }
 
   @Override
   public Message rpcBody() {
-    return this.rpcBody;
+    return snapshot().rpcBody;
+  }
+
+  @Override
+  public CaptureFlags captureFlags() {
+    return snapshot().captureFlags;
+  }
+
+  /** Immutable data capture settings of one config. */
+  private static final class Snapshot {
+
+    private final AgentConfig agentConfig;
+    private final Message httpHeaders;
+    private final Message httpBody;
+    private final Message rpcMetadata;
+    private final Message rpcBody;
+    private final CaptureFlags captureFlags;
+
+    Snapshot(AgentConfig agentConfig, Set<String> disabledInstrumentations) {
+      this.agentConfig = agentConfig;
+      DataCapture dataCapture = agentConfig.getDataCapture();
+      this.httpHeaders = new MessageImpl(dataCapture.getHttpHeaders());
+      this.httpBody = new MessageImpl(dataCapture.getHttpBody());
+      this.rpcMetadata = new MessageImpl(dataCapture.getRpcMetadata());
+      this.rpcBody = new MessageImpl(dataCapture.getRpcBody());
+      this.captureFlags =
+          CaptureFlags.of(httpHeaders, httpBody, rpcMetadata, rpcBody)
+              .withDisabledInstrumentations(disabledInstrumentations);
+    }
   }
 
   private static final class MessageImpl implements Message {
 
-    private final Config.Message message;
+    private final boolean request;
+    private final boolean response;
 
     public MessageImpl(Config.Message message) {
-      this.message = message;
+      this.request = message.getRequest().getValue();
+      this.response = message.getResponse().getValue();
     }
 
     @Override
     public boolean request() {
-      return message.getRequest().getValue();
+      return request;
     }
 
     @Override
     public boolean response() {
-      return message.getResponse().getValue();
+      return response;
     }
   }
 }
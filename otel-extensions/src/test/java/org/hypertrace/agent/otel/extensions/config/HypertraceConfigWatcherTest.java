@@ -0,0 +1,108 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.otel.extensions.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.hypertrace.agent.core.config.InstrumentationConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class HypertraceConfigWatcherTest {
+
+  @AfterEach
+  public void resetConfig() {
+    HypertraceConfig.reset();
+  }
+
+  @Test
+  public void publishesModifiedConfig(@TempDir File tempFolder) throws IOException {
+    File configFile = new File(tempFolder, "config.yaml");
+    write(configFile, "dataCapture:\n  httpBody:\n    request: true\n");
+    HypertraceConfig.reset();
+    InstrumentationConfig instrumentationConfig = new InstrumentationConfigImpl();
+    Assertions.assertTrue(instrumentationConfig.httpBody().request());
+
+    HypertraceConfigWatcher watcher = new HypertraceConfigWatcher(configFile);
+    Assertions.assertFalse(watcher.checkForUpdate());
+
+    write(configFile, "dataCapture:\n  httpBody:\n    request: false\n");
+    configFile.setLastModified(configFile.lastModified() + 2000);
+    Assertions.assertTrue(watcher.checkForUpdate());
+    Assertions.assertFalse(
+        HypertraceConfig.get().getDataCapture().getHttpBody().getRequest().getValue());
+    Assertions.assertFalse(instrumentationConfig.httpBody().request());
+    Assertions.assertTrue(instrumentationConfig.httpBody().response());
+
+    // not modified since the last check
+    Assertions.assertFalse(watcher.checkForUpdate());
+  }
+
+  @Test
+  public void keepsConfigOfInvalidFile(@TempDir File tempFolder) throws IOException {
+    File configFile = new File(tempFolder, "config.yaml");
+    write(configFile, "dataCapture:\n  httpBody:\n    request: true\n");
+    HypertraceConfigWatcher watcher = new HypertraceConfigWatcher(configFile);
+    HypertraceConfig.reset();
+    InstrumentationConfig instrumentationConfig = new InstrumentationConfigImpl();
+
+    write(configFile, "dataCapture: [");
+    configFile.setLastModified(configFile.lastModified() + 2000);
+    Assertions.assertFalse(watcher.checkForUpdate());
+    Assertions.assertTrue(instrumentationConfig.httpBody().request());
+
+    Assertions.assertTrue(configFile.delete());
+    Assertions.assertFalse(watcher.checkForUpdate());
+    Assertions.assertTrue(instrumentationConfig.httpBody().request());
+  }
+
+  @Test
+  public void keepsReloadedConfigOfMissingOrEmptyFile(@TempDir File tempFolder) throws IOException {
+    File configFile = new File(tempFolder, "config.yaml");
+    write(configFile, "dataCapture:\n  httpBody:\n    request: true\n");
+    HypertraceConfigWatcher watcher = new HypertraceConfigWatcher(configFile);
+    HypertraceConfig.reset();
+    InstrumentationConfig instrumentationConfig = new InstrumentationConfigImpl();
+
+    // differs from the defaults, which must not be published on a failed reload
+    write(configFile, "dataCapture:\n  httpBody:\n    request: false\n");
+    configFile.setLastModified(configFile.lastModified() + 2000);
+    Assertions.assertTrue(watcher.checkForUpdate());
+
+    write(configFile, "");
+    configFile.setLastModified(configFile.lastModified() + 2000);
+    Assertions.assertFalse(watcher.checkForUpdate());
+    Assertions.assertFalse(instrumentationConfig.httpBody().request());
+
+    write(configFile, "dataCapture: [");
+    configFile.setLastModified(configFile.lastModified() + 2000);
+    Assertions.assertFalse(watcher.checkForUpdate());
+    Assertions.assertFalse(instrumentationConfig.httpBody().request());
+
+    Assertions.assertTrue(configFile.delete());
+    Assertions.assertNull(HypertraceConfig.reload(configFile.getPath()));
+    Assertions.assertFalse(instrumentationConfig.httpBody().request());
+  }
+
+  private static void write(File file, String content) throws IOException {
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -28,6 +28,7 @@ val versions: Map<String, String> by extra
 
 dependencies {
     api(project(":otel-extensions"))
+    api(testFixtures(project(":javaagent-core")))
 
     compileOnly("org.junit.jupiter:junit-jupiter-api:5.7.0")
     runtimeOnly("org.junit.jupiter:junit-jupiter-engine:5.7.0")